@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.LocalCacheScope;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+
+/**
+ * 基准测试使用的内存 HSQLDB 数据库： 每个博客对应一个作者和若干文章
+ */
+final class BenchmarkDatabase {
+
+  static final int BLOG_COUNT = 100;
+  static final int POSTS_PER_BLOG = 10;
+
+  private BenchmarkDatabase() {
+  }
+
+  static PooledDataSource createDataSource(String name) {
+    return new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:" + name, "sa", "");
+  }
+
+  static SqlSessionFactory createSqlSessionFactory(String name) throws SQLException {
+    DataSource dataSource = createDataSource(name);
+    populate(dataSource);
+    Configuration configuration = new Configuration(new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+    // 每次都真正执行映射， 不命中一级缓存
+    configuration.setLocalCacheScope(LocalCacheScope.STATEMENT);
+    configuration.addMapper(BlogBenchmarkMapper.class);
+    return new SqlSessionFactoryBuilder().build(configuration);
+  }
+
+  private static void populate(DataSource dataSource) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("drop table post if exists");
+        statement.execute("drop table blog if exists");
+        statement.execute("drop table author if exists");
+        statement.execute("create table author (id int primary key, username varchar(32), password varchar(32), email varchar(64), bio varchar(255))");
+        statement.execute("create table blog (id int primary key, title varchar(64), author_id int)");
+        statement.execute("create table post (id int primary key, blog_id int, subject varchar(64), body varchar(255))");
+      }
+      try (PreparedStatement author = connection.prepareStatement("insert into author values (?, ?, ?, ?, ?)");
+           PreparedStatement blog = connection.prepareStatement("insert into blog values (?, ?, ?)");
+           PreparedStatement post = connection.prepareStatement("insert into post values (?, ?, ?, ?)")) {
+        for (int i = 1; i <= BLOG_COUNT; i++) {
+          author.setInt(1, i);
+          author.setString(2, "author" + i);
+          author.setString(3, "password" + i);
+          author.setString(4, "author" + i + "@example.com");
+          author.setString(5, "bio of author " + i);
+          author.addBatch();
+          blog.setInt(1, i);
+          blog.setString(2, "blog " + i);
+          blog.setInt(3, i);
+          blog.addBatch();
+          for (int j = 0; j < POSTS_PER_BLOG; j++) {
+            post.setInt(1, i * POSTS_PER_BLOG + j);
+            post.setInt(2, i);
+            post.setString(3, "subject " + j);
+            post.setString(4, "body of post " + j + " in blog " + i);
+            post.addBatch();
+          }
+        }
+        author.executeBatch();
+        blog.executeBatch();
+        post.executeBatch();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PerpetualCache / LruCache 的 get 与 put， 键空间为缓存容量的两倍
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CacheBenchmark {
+
+  private static final int CACHE_SIZE = 1024;
+  private static final int KEY_SPACE = CACHE_SIZE * 2;
+
+  @Param({"PERPETUAL", "LRU"})
+  public String cacheType;
+
+  private Cache cache;
+  private Integer[] keys;
+  private int index;
+
+  @Setup
+  public void setup() {
+    cache = new PerpetualCache("benchmark");
+    if ("LRU".equals(cacheType)) {
+      LruCache lruCache = new LruCache(cache);
+      lruCache.setSize(CACHE_SIZE);
+      cache = lruCache;
+    }
+    keys = new Integer[KEY_SPACE];
+    for (int i = 0; i < KEY_SPACE; i++) {
+      keys[i] = i;
+    }
+    for (int i = 0; i < CACHE_SIZE; i++) {
+      cache.putObject(keys[i], keys[i]);
+    }
+  }
+
+  @Benchmark
+  public Object get() {
+    return cache.getObject(nextKey());
+  }
+
+  @Benchmark
+  public Object put() {
+    Integer key = nextKey();
+    cache.putObject(key, key);
+    return key;
+  }
+
+  private Integer nextKey() {
+    index = (index + 1) & (KEY_SPACE - 1);
+    return keys[index];
+  }
+
+}
@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CacheKey： 与 BaseExecutor#createCacheKey 相同的组成方式
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+  private static final String STATEMENT_ID = "org.apache.ibatis.domain.blog.mappers.BlogMapper.selectBlog";
+  private static final String SQL = "select id, title, author_id from blog where id = ? and title like ?";
+
+  private CacheKey cacheKey;
+  private CacheKey equalCacheKey;
+
+  @Setup
+  public void setup() {
+    cacheKey = createCacheKey();
+    equalCacheKey = createCacheKey();
+  }
+
+  @Benchmark
+  public CacheKey create() {
+    return createCacheKey();
+  }
+
+  @Benchmark
+  public int createAndHash() {
+    return createCacheKey().hashCode();
+  }
+
+  @Benchmark
+  public boolean equalKeys() {
+    return cacheKey.equals(equalCacheKey);
+  }
+
+  private static CacheKey createCacheKey() {
+    CacheKey key = new CacheKey();
+    key.update(STATEMENT_ID);
+    key.update(0);
+    key.update(Integer.MAX_VALUE);
+    key.update(SQL);
+    key.update(101);
+    key.update("%mybatis%");
+    key.update("development");
+    return key;
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.scripting.xmltags.ForEachSqlNode;
+import org.apache.ibatis.scripting.xmltags.IfSqlNode;
+import org.apache.ibatis.scripting.xmltags.MixedSqlNode;
+import org.apache.ibatis.scripting.xmltags.SqlNode;
+import org.apache.ibatis.scripting.xmltags.StaticTextSqlNode;
+import org.apache.ibatis.scripting.xmltags.WhereSqlNode;
+import org.apache.ibatis.session.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DynamicSqlSource#getBoundSql： where + if + foreach
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DynamicSqlSourceBenchmark {
+
+  @Param({"false", "true"})
+  public boolean shapeCacheEnabled;
+
+  private DynamicSqlSource sqlSource;
+  private Map<String, Object> parameter;
+
+  @Setup
+  public void setup() {
+    Configuration configuration = new Configuration();
+    configuration.setDynamicSqlShapeCacheEnabled(shapeCacheEnabled);
+    sqlSource = new DynamicSqlSource(configuration, mixed(
+        new StaticTextSqlNode("select * from blog"),
+        new WhereSqlNode(configuration, mixed(
+            new IfSqlNode(new StaticTextSqlNode("and title like #{title}"), "title != null"),
+            new IfSqlNode(new StaticTextSqlNode("and author_id = #{authorId}"), "authorId != null"),
+            new IfSqlNode(mixed(
+                new StaticTextSqlNode("and id in"),
+                new ForEachSqlNode(configuration, new StaticTextSqlNode("#{id}"), "ids", "index", "id", "(", ")", ",")),
+                "ids != null and ids.size() > 0")))));
+    parameter = new HashMap<>();
+    parameter.put("title", "%mybatis%");
+    parameter.put("authorId", null);
+    parameter.put("ids", Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8));
+  }
+
+  @Benchmark
+  public BoundSql getBoundSql() {
+    return sqlSource.getBoundSql(parameter);
+  }
+
+  private static MixedSqlNode mixed(SqlNode... contents) {
+    return new MixedSqlNode(Arrays.asList(contents));
+  }
+
+}
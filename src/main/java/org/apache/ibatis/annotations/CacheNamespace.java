@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2016 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -21,8 +21,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import org.apache.ibatis.cache.EstimatedSizeWeigher;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
 
 /**
  * @author Clinton Begin
@@ -38,12 +40,58 @@ public @interface CacheNamespace {
 
   long flushInterval() default 0;
 
+  /**
+   * Time to live of each cached object in milliseconds, 0 means the objects do not expire individually.
+   */
+  long timeToLive() default 0;
+
+  /**
+   * Maximum random amount in milliseconds subtracted from {@link #timeToLive()} of each object.
+   */
+  long timeToLiveJitter() default 0;
+
+  /**
+   * Period in milliseconds before expiry in which one reader misses to reload the object.
+   */
+  long refreshAhead() default 0;
+
   int size() default 1024;
 
+  /**
+   * Maximum total weight of the cached objects, 0 means unbounded.
+   * Applies to the LRU and FIFO evictions.
+   */
+  long maxWeight() default 0;
+
+  /**
+   * Weigher used with {@link #maxWeight()}.
+   */
+  Class<? extends org.apache.ibatis.cache.CacheWeigher> weigher() default EstimatedSizeWeigher.class;
+
   boolean readWrite() default true;
+
+  /**
+   * Serializer used to copy values when {@link #readWrite()} is true.
+   */
+  Class<? extends org.apache.ibatis.cache.serializer.CacheSerializer> serializer() default JdkCacheSerializer.class;
+
+  /**
+   * Whether the serialized values of a read/write cache are stored off-heap.
+   */
+  boolean offHeap() default false;
   
   boolean blocking() default false;
 
+  /**
+   * Whether concurrent misses of the same key share a single query, an alternative to {@link #blocking()}.
+   */
+  boolean singleFlight() default false;
+
+  /**
+   * Milliseconds to wait for a shared query before running it again, 0 means waiting until it ends.
+   */
+  long singleFlightTimeout() default 0;
+
   /**
    * Property values for a implementation object.
    * @since 3.4.2
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2016 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -21,6 +21,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import org.apache.ibatis.mapping.FetchType;
+import org.apache.ibatis.mapping.ResultMapping;
 
 /**
  * @author Clinton Begin
@@ -33,4 +34,16 @@ public @interface One {
 
   FetchType fetchType() default FetchType.DEFAULT;
 
+  /**
+   * Number of parent objects loaded by one query when fetchType is BATCH,
+   * or when the property is lazy loaded and batchKeyProperty is set.
+   */
+  int batchSize() default ResultMapping.DEFAULT_BATCH_SIZE;
+
+  /**
+   * Comma separated properties of the nested results matching the column values when fetchType is BATCH.
+   * Setting it on a lazy loaded property loads the property of the sibling results together on first access.
+   */
+  String batchKeyProperty() default "";
+
 }
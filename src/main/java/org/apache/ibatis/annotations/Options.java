@@ -63,4 +63,10 @@ public @interface Options {
   String keyColumn() default "";
   
   String resultSets() default "";
+
+  /**
+   * Comma separated tables the statement depends on, used when the cacheInvalidationScope setting is TABLE.
+   * When empty they are parsed from the SQL.
+   */
+  String tables() default "";
 }
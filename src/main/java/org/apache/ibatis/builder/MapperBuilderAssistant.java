@@ -26,8 +26,10 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheWeigher;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.mapping.CacheBuilder;
@@ -136,18 +138,93 @@ public class MapperBuilderAssistant extends BaseBuilder {
       boolean readWrite,
       boolean blocking,
       Properties props) {
+    return useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, null, false, blocking, props);
+  }
+
+  public Cache useNewCache(Class<? extends Cache> typeClass,
+      Class<? extends Cache> evictionClass,
+      Long flushInterval,
+      Integer size,
+      boolean readWrite,
+      Class<? extends CacheSerializer> serializerClass,
+      boolean offHeap,
+      boolean blocking,
+      Properties props) {
+    return useNewCache(typeClass, evictionClass, flushInterval, size, null, null, readWrite, serializerClass, offHeap, blocking, props);
+  }
+
+  public Cache useNewCache(Class<? extends Cache> typeClass,
+      Class<? extends Cache> evictionClass,
+      Long flushInterval,
+      Integer size,
+      Long maxWeight,
+      Class<? extends CacheWeigher> weigherClass,
+      boolean readWrite,
+      Class<? extends CacheSerializer> serializerClass,
+      boolean offHeap,
+      boolean blocking,
+      Properties props) {
+    return useNewCache(typeClass, evictionClass, flushInterval, null, null, null, size, maxWeight, weigherClass,
+        readWrite, serializerClass, offHeap, blocking, props);
+  }
+
+  public Cache useNewCache(Class<? extends Cache> typeClass,
+      Class<? extends Cache> evictionClass,
+      Long flushInterval,
+      Long timeToLive,
+      Long timeToLiveJitter,
+      Long refreshAhead,
+      Integer size,
+      Long maxWeight,
+      Class<? extends CacheWeigher> weigherClass,
+      boolean readWrite,
+      Class<? extends CacheSerializer> serializerClass,
+      boolean offHeap,
+      boolean blocking,
+      Properties props) {
+    return useNewCache(typeClass, evictionClass, flushInterval, timeToLive, timeToLiveJitter, refreshAhead, size, maxWeight,
+        weigherClass, readWrite, serializerClass, offHeap, blocking, false, null, props);
+  }
+
+  public Cache useNewCache(Class<? extends Cache> typeClass,
+      Class<? extends Cache> evictionClass,
+      Long flushInterval,
+      Long timeToLive,
+      Long timeToLiveJitter,
+      Long refreshAhead,
+      Integer size,
+      Long maxWeight,
+      Class<? extends CacheWeigher> weigherClass,
+      boolean readWrite,
+      Class<? extends CacheSerializer> serializerClass,
+      boolean offHeap,
+      boolean blocking,
+      boolean singleFlight,
+      Long singleFlightTimeout,
+      Properties props) {
     // 建造者模式
-    Cache cache = new CacheBuilder(currentNamespace)
+    CacheBuilder cacheBuilder = new CacheBuilder(currentNamespace)
         .implementation(valueOrDefault(typeClass, PerpetualCache.class))
         .addDecorator(valueOrDefault(evictionClass, LruCache.class))
         .clearInterval(flushInterval)
+        .timeToLive(timeToLive)
+        .timeToLiveJitter(timeToLiveJitter)
+        .refreshAhead(refreshAhead)
         .size(size)
+        .maxWeight(maxWeight)
+        .weigher(weigherClass)
         .readWrite(readWrite)
+        .serializer(serializerClass)
+        .offHeap(offHeap)
         .blocking(blocking)
-        .properties(props)
-        .build();
+        .singleFlight(singleFlight)
+        .singleFlightTimeout(singleFlightTimeout)
+        .typeAliasRegistry(configuration.getTypeAliasRegistry())
+        .properties(props);
+    Cache cache = cacheBuilder.build();
     // 将对象添加到 configuration 中
     configuration.addCache(cache);
+    configuration.addCacheDefinition(cache.getId(), cacheBuilder);
     // 给当前命名空间的缓存成员变量赋值
     currentCache = cache;
     return cache;
@@ -295,6 +372,34 @@ public class MapperBuilderAssistant extends BaseBuilder {
       String databaseId,
       LanguageDriver lang,
       String resultSets) {
+    return addMappedStatement(id, sqlSource, statementType, sqlCommandType, fetchSize, timeout,
+        parameterMap, parameterType, resultMap, resultType, resultSetType,
+        flushCache, useCache, resultOrdered, keyGenerator, keyProperty,
+        keyColumn, databaseId, lang, resultSets, null);
+  }
+
+  public MappedStatement addMappedStatement(
+      String id,
+      SqlSource sqlSource,
+      StatementType statementType,
+      SqlCommandType sqlCommandType,
+      Integer fetchSize,
+      Integer timeout,
+      String parameterMap,
+      Class<?> parameterType,
+      String resultMap,
+      Class<?> resultType,
+      ResultSetType resultSetType,
+      boolean flushCache,
+      boolean useCache,
+      boolean resultOrdered,
+      KeyGenerator keyGenerator,
+      String keyProperty,
+      String keyColumn,
+      String databaseId,
+      LanguageDriver lang,
+      String resultSets,
+      String tables) {
 
     if (unresolvedCacheRef) {
       throw new IncompleteElementException("Cache-ref not yet resolved");
@@ -315,6 +420,7 @@ public class MapperBuilderAssistant extends BaseBuilder {
         .lang(lang)
         .resultOrdered(resultOrdered)
         .resultSets(resultSets)
+        .tables(tables)
         .resultMaps(getStatementResultMaps(resultMap, resultType, id))
         .resultSetType(resultSetType)
         .flushCacheRequired(valueOrDefault(flushCache, !isSelect))
@@ -402,6 +508,31 @@ public class MapperBuilderAssistant extends BaseBuilder {
       String resultSet,
       String foreignColumn,
       boolean lazy) {
+    return buildResultMapping(resultType, property, column, javaType, jdbcType, nestedSelect, nestedResultMap, notNullColumn,
+        columnPrefix, typeHandler, flags, resultSet, foreignColumn, lazy, 0, null);
+  }
+
+  /**
+   * @param batchSize 大于 0 时批量加载嵌套查询
+   * @param batchKeyProperty 批量加载时， 嵌套查询结果中与 column 对应的属性
+   */
+  public ResultMapping buildResultMapping(
+      Class<?> resultType,
+      String property,
+      String column,
+      Class<?> javaType,
+      JdbcType jdbcType,
+      String nestedSelect,
+      String nestedResultMap,
+      String notNullColumn,
+      String columnPrefix,
+      Class<? extends TypeHandler<?>> typeHandler,
+      List<ResultFlag> flags,
+      String resultSet,
+      String foreignColumn,
+      boolean lazy,
+      int batchSize,
+      String batchKeyProperty) {
     Class<?> javaTypeClass = resolveResultJavaType(resultType, property, javaType);
     TypeHandler<?> typeHandlerInstance = resolveTypeHandler(javaTypeClass, typeHandler);
     List<ResultMapping> composites = parseCompositeColumnName(column);
@@ -417,6 +548,8 @@ public class MapperBuilderAssistant extends BaseBuilder {
         .columnPrefix(columnPrefix)
         .foreignColumn(foreignColumn)
         .lazy(lazy)
+        .batchSize(batchSize)
+        .batchKeyProperty(batchKeyProperty)
         .build();
   }
 
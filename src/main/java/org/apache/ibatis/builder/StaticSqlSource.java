@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.builder;
 
+import java.io.Serializable;
 import java.util.List;
 
 import org.apache.ibatis.mapping.BoundSql;
@@ -26,7 +27,9 @@ import org.apache.ibatis.session.Configuration;
  * @author Clinton Begin
  * 静态SQLSource
  */
-public class StaticSqlSource implements SqlSource {
+public class StaticSqlSource implements SqlSource, Serializable {
+
+  private static final long serialVersionUID = 6988890062619731302L;
 
   // sql
   private final String sql;
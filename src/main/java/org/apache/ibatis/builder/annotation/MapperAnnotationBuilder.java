@@ -34,6 +34,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ibatis.annotations.Arg;
 import org.apache.ibatis.annotations.CacheNamespace;
@@ -203,8 +204,15 @@ public class MapperAnnotationBuilder {
     if (cacheDomain != null) {
       Integer size = cacheDomain.size() == 0 ? null : cacheDomain.size();
       Long flushInterval = cacheDomain.flushInterval() == 0 ? null : cacheDomain.flushInterval();
+      Long timeToLive = cacheDomain.timeToLive() == 0 ? null : cacheDomain.timeToLive();
+      Long timeToLiveJitter = cacheDomain.timeToLiveJitter() == 0 ? null : cacheDomain.timeToLiveJitter();
+      Long refreshAhead = cacheDomain.refreshAhead() == 0 ? null : cacheDomain.refreshAhead();
+      Long maxWeight = cacheDomain.maxWeight() == 0 ? null : cacheDomain.maxWeight();
+      Long singleFlightTimeout = cacheDomain.singleFlightTimeout() == 0 ? null : cacheDomain.singleFlightTimeout();
       Properties props = convertToProperties(cacheDomain.properties());
-      assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size, cacheDomain.readWrite(), cacheDomain.blocking(), props);
+      assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, timeToLive, timeToLiveJitter,
+          refreshAhead, size, maxWeight, cacheDomain.weigher(), cacheDomain.readWrite(), cacheDomain.serializer(),
+          cacheDomain.offHeap(), cacheDomain.blocking(), cacheDomain.singleFlight(), singleFlightTimeout, props);
     }
   }
 
@@ -395,7 +403,8 @@ public class MapperAnnotationBuilder {
           null,
           languageDriver,
           // ResultSets
-          options != null ? nullOrEmpty(options.resultSets()) : null);
+          options != null ? nullOrEmpty(options.resultSets()) : null,
+          options != null ? nullOrEmpty(options.tables()) : null);
     }
   }
   
@@ -427,6 +436,12 @@ public class MapperAnnotationBuilder {
   private Class<?> getReturnType(Method method) {
     Class<?> returnType = method.getReturnType();
     Type resolvedReturnType = TypeParameterResolver.resolveReturnType(method, type);
+    // CompletableFuture<T> 按 T 解析结果类型， 与 MapperMethod.MethodSignature 保持一致
+    if (CompletableFuture.class.equals(returnType)) {
+      resolvedReturnType = resolveFutureValueType(resolvedReturnType);
+      returnType = resolvedReturnType instanceof ParameterizedType
+          ? (Class<?>) ((ParameterizedType) resolvedReturnType).getRawType() : (Class<?>) resolvedReturnType;
+    }
     if (resolvedReturnType instanceof Class) {
       returnType = (Class<?>) resolvedReturnType;
       if (returnType.isArray()) {
@@ -481,6 +496,16 @@ public class MapperAnnotationBuilder {
     return returnType;
   }
 
+  private static Type resolveFutureValueType(Type futureType) {
+    if (futureType instanceof ParameterizedType) {
+      Type valueType = ((ParameterizedType) futureType).getActualTypeArguments()[0];
+      if (valueType instanceof Class<?> || valueType instanceof ParameterizedType) {
+        return valueType;
+      }
+    }
+    return Object.class;
+  }
+
   private SqlSource getSqlSourceFromAnnotations(Method method, Class<?> parameterType, LanguageDriver languageDriver) {
     try {
       Class<? extends Annotation> sqlAnnotationType = getSqlAnnotationType(method);
@@ -539,11 +564,11 @@ public class MapperAnnotationBuilder {
     return chooseAnnotationType(method, SQL_ANNOTATION_TYPES);
   }
 
-  private Class<? extends Annotation> getSqlProviderAnnotationType(Method method) {
+  static Class<? extends Annotation> getSqlProviderAnnotationType(Method method) {
     return chooseAnnotationType(method, SQL_PROVIDER_ANNOTATION_TYPES);
   }
 
-  private Class<? extends Annotation> chooseAnnotationType(Method method, Set<Class<? extends Annotation>> types) {
+  private static Class<? extends Annotation> chooseAnnotationType(Method method, Set<Class<? extends Annotation>> types) {
     for (Class<? extends Annotation> type : types) {
       Annotation annotation = method.getAnnotation(type);
       if (annotation != null) {
@@ -576,7 +601,9 @@ public class MapperAnnotationBuilder {
           flags,
           null,
           null,
-          isLazy(result));
+          isLazy(result),
+          batchSize(result),
+          nullOrEmpty(result.one().select().length() > 0 ? result.one().batchKeyProperty() : result.many().batchKeyProperty()));
       resultMappings.add(resultMapping);
     }
   }
@@ -602,6 +629,28 @@ public class MapperAnnotationBuilder {
     return isLazy;
   }
   
+  /**
+   * fetchType 为 BATCH， 或延迟加载且设置了 batchKeyProperty 时的 batchSize， 否则为 0
+   */
+  private int batchSize(Result result) {
+    if (result.one().select().length() > 0 && (FetchType.BATCH == result.one().fetchType()
+        || isLazy(result) && result.one().batchKeyProperty().length() > 0)) {
+      return validBatchSize(result, result.one().batchSize());
+    } else if (result.many().select().length() > 0 && (FetchType.BATCH == result.many().fetchType()
+        || isLazy(result) && result.many().batchKeyProperty().length() > 0)) {
+      return validBatchSize(result, result.many().batchSize());
+    }
+    return 0;
+  }
+
+  private int validBatchSize(Result result, int batchSize) {
+    // 为 0 时会被当作不批量加载， 不能静默忽略
+    if (batchSize < 1) {
+      throw new BuilderException("The batchSize of property '" + result.property() + "' must be greater than 0, but was " + batchSize + ".");
+    }
+    return batchSize;
+  }
+
   private boolean hasNestedSelect(Result result) {
     if (result.one().select().length() > 0 && result.many().select().length() > 0) {
       throw new BuilderException("Cannot use both @One and @Many annotations in the same @Result");
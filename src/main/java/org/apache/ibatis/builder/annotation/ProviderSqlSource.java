@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,11 @@
  */
 package org.apache.ibatis.builder.annotation;
 
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
@@ -32,7 +37,9 @@ import org.apache.ibatis.session.Configuration;
  * @author Clinton Begin
  * @author Kazuki Shimizu
  */
-public class ProviderSqlSource implements SqlSource {
+public class ProviderSqlSource implements SqlSource, Serializable {
+
+  private static final long serialVersionUID = -7818717224032786332L;
 
   private final Configuration configuration;
   private final SqlSourceBuilder sqlSourceParser;
@@ -42,6 +49,9 @@ public class ProviderSqlSource implements SqlSource {
   private Class<?>[] providerMethodParameterTypes;
   private ProviderContext providerContext;
   private Integer providerContextIndex;
+  // 所在的 Mapper 接口及方法， 序列化时据此重新查找 SQL 提供者注解
+  private final Class<?> mapperType;
+  private final Method mapperMethod;
 
   /**
    * @deprecated Please use the {@link #ProviderSqlSource(Configuration, Object, Class, Method)} instead of this.
@@ -56,6 +66,8 @@ public class ProviderSqlSource implements SqlSource {
    */
   public ProviderSqlSource(Configuration configuration, Object provider, Class<?> mapperType, Method mapperMethod) {
     String providerMethodName;
+    this.mapperType = mapperType;
+    this.mapperMethod = mapperMethod;
     try {
       this.configuration = configuration;
       this.sqlSourceParser = new SqlSourceBuilder(configuration);
@@ -97,6 +109,17 @@ public class ProviderSqlSource implements SqlSource {
     }
   }
 
+  /**
+   * Method 不能序列化， 只写出 Mapper 接口、方法名及参数类型， 读取时重新创建
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    if (mapperMethod == null) {
+      throw new NotSerializableException("SqlProvider method " + providerType.getName() + "." + providerMethod.getName()
+          + " is not bound to a mapper method");
+    }
+    return new SerializedProviderSqlSource(configuration, mapperType, mapperMethod);
+  }
+
   @Override
   public BoundSql getBoundSql(Object parameterObject) {
     SqlSource sqlSource = createSqlSource(parameterObject);
@@ -172,4 +195,34 @@ public class ProviderSqlSource implements SqlSource {
     return PropertyParser.parse(sql, configuration.getVariables());
   }
 
+  private static class SerializedProviderSqlSource implements Serializable {
+
+    private static final long serialVersionUID = 3462851926347612035L;
+
+    private final Configuration configuration;
+    private final Class<?> mapperType;
+    private final String methodName;
+    private final Class<?>[] parameterTypes;
+
+    SerializedProviderSqlSource(Configuration configuration, Class<?> mapperType, Method mapperMethod) {
+      this.configuration = configuration;
+      this.mapperType = mapperType;
+      this.methodName = mapperMethod.getName();
+      this.parameterTypes = mapperMethod.getParameterTypes();
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+      try {
+        Method mapperMethod = mapperType.getMethod(methodName, parameterTypes);
+        Class<? extends Annotation> providerAnnotationType = MapperAnnotationBuilder.getSqlProviderAnnotationType(mapperMethod);
+        if (providerAnnotationType == null) {
+          throw new InvalidObjectException("Method " + mapperType.getName() + "." + methodName + " has no SqlProvider annotation");
+        }
+        return new ProviderSqlSource(configuration, mapperMethod.getAnnotation(providerAnnotationType), mapperType, mapperMethod);
+      } catch (NoSuchMethodException e) {
+        throw new InvalidObjectException("Method " + mapperType.getName() + "." + methodName + " not found");
+      }
+    }
+  }
+
 }
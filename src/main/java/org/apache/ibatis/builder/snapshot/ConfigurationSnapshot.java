@@ -0,0 +1,648 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.ErrorContext;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.io.ResolverUtil;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.parsing.XNode;
+import org.apache.ibatis.parsing.XPathParser;
+import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.scripting.LanguageDriverRegistry;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 配置快照。
+ * <p>
+ * 构建期（如打包时）调用 {@link #create} 解析配置文件， 把解析映射文件得到的 MappedStatement、ResultMap、ParameterMap、
+ * 缓存的定义、key 生成器及 Mapper 接口写成二进制文件。 启动时配置文件、各映射文件（包括 Mapper 接口的 class 文件）
+ * 及其中引用的变量都与快照一致就直接从快照中恢复， 不再解析映射文件； 有任何变化都回退为正常解析。
+ * <p>
+ * 配置文件本身仍然正常解析， 环境、插件、TypeHandler 等都在运行期创建， 快照只替代 mappers 节点。
+ * 解析映射文件时用到的设置（databaseId、 lazyLoadingEnabled、 useGeneratedKeys 等）也记录在快照中， 与当前配置不同时同样回退为正常解析。
+ * package 节点扫描到的 Mapper 接口及 Mapper 接口旁边的映射文件（包括当时不存在的）也记录在快照中， 有增减时同样回退为正常解析。
+ * 映射文件中的 sql 片段不写入快照， 启动后再添加的映射文件不能引用快照中映射文件的 sql 片段。
+ * 读取时只还原 MyBatis 的类、 常用的集合类型以及创建快照时记录的类（Mapper 接口、 结果类型等）。
+ *
+ * @see org.apache.ibatis.session.SqlSessionFactoryBuilder#build(InputStream, InputStream, String, Properties)
+ */
+public final class ConfigurationSnapshot {
+
+  private static final Log log = LogFactory.getLog(ConfigurationSnapshot.class);
+
+  private static final int MAGIC = 0x4d425353;
+  // 快照格式的版本， 格式或快照中的类不兼容时递增
+  private static final int VERSION = 3;
+  // 创建快照时不存在的资源（Mapper 接口旁边的映射文件）， CRC32 的值不会是负数
+  private static final long ABSENT = -1L;
+
+  private static final String NAMESPACE_PREFIX = "namespace:";
+  private static final String INTERFACE_PREFIX = "interface ";
+  private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{([^}]+)\\}");
+  // 快照中可以出现的 JDK 类， MyBatis 自身的类另外判断
+  private static final Set<String> JDK_CLASSES = new HashSet<>(Arrays.asList(
+      "java.lang.Object", "java.lang.String", "java.lang.Boolean", "java.lang.Character", "java.lang.Number",
+      "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double",
+      "java.lang.Enum", "java.util.ArrayList", "java.util.LinkedList", "java.util.HashMap", "java.util.LinkedHashMap",
+      "java.util.TreeMap", "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet", "java.util.Arrays$ArrayList",
+      "java.util.Collections$EmptyList", "java.util.Collections$EmptyMap", "java.util.Collections$EmptySet",
+      "java.util.Collections$SingletonList", "java.util.Collections$SingletonMap", "java.util.Collections$SingletonSet",
+      "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList",
+      "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableMap",
+      "java.util.Collections$UnmodifiableSet", "java.util.Collections$UnmodifiableSortedMap",
+      "java.util.Collections$UnmodifiableSortedSet"));
+
+  // 解析映射文件时用到的设置 -> 创建快照时的取值
+  private final Map<String, String> settings;
+  // 映射文件中引用的变量 -> 创建快照时的取值
+  private final Map<String, String> variables;
+  // 映射文件及 Mapper 接口 -> 校验和
+  private final Map<String, Long> resourceChecksums;
+  // package 节点的包名 -> 扫描到的 Mapper 接口
+  private final Map<String, String> mapperPackages;
+  // 快照引用的 MyBatis 及 JDK_CLASSES 以外的类， 如 Mapper 接口、 结果类型、 TypeHandler
+  private final Set<String> referencedClasses;
+  private final byte[] payload;
+
+  private ConfigurationSnapshot(Map<String, String> settings, Map<String, String> variables, Map<String, Long> resourceChecksums,
+      Map<String, String> mapperPackages, Set<String> referencedClasses, byte[] payload) {
+    this.settings = settings;
+    this.variables = variables;
+    this.resourceChecksums = resourceChecksums;
+    this.mapperPackages = mapperPackages;
+    this.referencedClasses = referencedClasses;
+    this.payload = payload;
+  }
+
+  /**
+   * 解析配置文件（包括其中所有的映射文件）并写出快照
+   */
+  public static void create(InputStream config, OutputStream out) throws IOException {
+    create(config, null, null, out);
+  }
+
+  public static void create(InputStream config, String environment, Properties properties, OutputStream out) throws IOException {
+    byte[] bytes = toByteArray(config);
+    try {
+      Configuration configuration = new XMLConfigBuilder(new ByteArrayInputStream(bytes), environment, properties).parse();
+      write(configuration, checksum(bytes), mapperPackages(bytes, configuration.getVariables()), out);
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
+  /**
+   * 读取快照， 快照无效或者创建后配置文件有变化时返回 null
+   *
+   * @param in 快照
+   * @param config 配置文件的内容
+   */
+  public static ConfigurationSnapshot read(InputStream in, byte[] config) {
+    try {
+      DataInputStream dataIn = new DataInputStream(in);
+      if (dataIn.readInt() != MAGIC || dataIn.readInt() != VERSION) {
+        log.warn("Ignoring configuration snapshot with an unknown format.");
+        return null;
+      }
+      if (dataIn.readLong() != checksum(config)) {
+        log.debug("Configuration snapshot is out of date, the configuration file has changed.");
+        return null;
+      }
+      Map<String, String> settings = readValues(dataIn);
+      Map<String, String> variables = readValues(dataIn);
+      int resourceCount = dataIn.readInt();
+      Map<String, Long> resourceChecksums = new LinkedHashMap<>();
+      for (int i = 0; i < resourceCount; i++) {
+        resourceChecksums.put(dataIn.readUTF(), dataIn.readLong());
+      }
+      Map<String, String> mapperPackages = readValues(dataIn);
+      int classCount = dataIn.readInt();
+      Set<String> referencedClasses = new HashSet<>();
+      for (int i = 0; i < classCount; i++) {
+        referencedClasses.add(dataIn.readUTF());
+      }
+      byte[] payload = new byte[dataIn.readInt()];
+      long payloadChecksum = dataIn.readLong();
+      dataIn.readFully(payload);
+      if (checksum(payload) != payloadChecksum) {
+        log.warn("Ignoring corrupted configuration snapshot.");
+        return null;
+      }
+      return new ConfigurationSnapshot(settings, variables, resourceChecksums, mapperPackages, referencedClasses, payload);
+    } catch (IOException e) {
+      log.warn("Could not read configuration snapshot. Cause: " + e);
+      return null;
+    }
+  }
+
+  /**
+   * 各映射文件及其中引用的变量与快照一致时， 把快照中的内容添加到 configuration 并返回 true；
+   * 否则不修改 configuration， 返回 false
+   *
+   * @param packageNames mappers 中 package 节点的包名
+   */
+  public boolean restore(Configuration configuration, Collection<String> packageNames) {
+    Map<String, String> currentSettings = settings(configuration);
+    for (Map.Entry<String, String> setting : settings.entrySet()) {
+      String value = currentSettings.get(setting.getKey());
+      if (value == null ? setting.getValue() != null : !value.equals(setting.getValue())) {
+        log.debug("Configuration snapshot is out of date, setting '" + setting.getKey() + "' has changed.");
+        return false;
+      }
+    }
+    if (!currentSettings.keySet().equals(settings.keySet())) {
+      log.debug("Configuration snapshot is out of date, it was created with different settings.");
+      return false;
+    }
+    Properties currentVariables = configuration.getVariables();
+    for (Map.Entry<String, String> variable : variables.entrySet()) {
+      String value = currentVariables == null ? null : currentVariables.getProperty(variable.getKey());
+      if (value == null ? variable.getValue() != null : !value.equals(variable.getValue())) {
+        log.debug("Configuration snapshot is out of date, variable '" + variable.getKey() + "' has changed.");
+        return false;
+      }
+    }
+    for (Map.Entry<String, Long> resource : resourceChecksums.entrySet()) {
+      long checksum;
+      try {
+        checksum = checksum(readResource(resource.getKey()));
+      } catch (IOException e) {
+        checksum = ABSENT;
+      }
+      if (resource.getValue() != checksum) {
+        log.debug("Configuration snapshot is out of date, " + resource.getKey() + " has changed.");
+        return false;
+      }
+    }
+    if (!scanMapperPackages(packageNames).equals(mapperPackages)) {
+      log.debug("Configuration snapshot is out of date, the mapper interfaces found in the mapper packages have changed.");
+      return false;
+    }
+
+    // 先全部读出， 读取失败时 configuration 保持不变
+    Map<String, Cache> caches = new LinkedHashMap<>();
+    List<String> loadedResources;
+    List<CacheBuilder> cacheDefinitions;
+    Map<String, String> cacheRefs;
+    List<ParameterMap> parameterMaps;
+    List<ResultMap> resultMaps;
+    List<MappedStatement> mappedStatements;
+    Map<String, KeyGenerator> keyGenerators;
+    List<Class<?>> mappers;
+    try (SnapshotInputStream in = new SnapshotInputStream(new ByteArrayInputStream(payload), configuration, caches, referencedClasses)) {
+      loadedResources = in.readValue();
+      cacheDefinitions = in.readValue();
+      for (CacheBuilder cacheDefinition : cacheDefinitions) {
+        Cache cache = cacheDefinition.build();
+        caches.put(cache.getId(), cache);
+      }
+      cacheRefs = in.readValue();
+      parameterMaps = in.readValue();
+      resultMaps = in.readValue();
+      mappedStatements = in.readValue();
+      keyGenerators = in.readValue();
+      mappers = in.readValue();
+    } catch (Exception e) {
+      log.warn("Could not restore configuration snapshot, mappers will be parsed instead. Cause: " + e);
+      return false;
+    }
+
+    for (String resource : loadedResources) {
+      configuration.addLoadedResource(resource);
+    }
+    int index = 0;
+    for (Cache cache : caches.values()) {
+      configuration.addCache(cache);
+      configuration.addCacheDefinition(cache.getId(), cacheDefinitions.get(index++));
+    }
+    for (Map.Entry<String, String> cacheRef : cacheRefs.entrySet()) {
+      configuration.addCacheRef(cacheRef.getKey(), cacheRef.getValue());
+    }
+    for (ParameterMap parameterMap : parameterMaps) {
+      configuration.addParameterMap(parameterMap);
+    }
+    for (ResultMap resultMap : resultMaps) {
+      configuration.addResultMap(resultMap);
+    }
+    for (MappedStatement mappedStatement : mappedStatements) {
+      configuration.addMappedStatement(mappedStatement);
+    }
+    for (Map.Entry<String, KeyGenerator> keyGenerator : keyGenerators.entrySet()) {
+      configuration.addKeyGenerator(keyGenerator.getKey(), keyGenerator.getValue());
+    }
+    // Mapper 接口已记录在 loadedResources 中， 这里只注册， 不会再解析注解
+    for (Class<?> mapper : mappers) {
+      configuration.addMapper(mapper);
+    }
+    return true;
+  }
+
+  private static void write(Configuration configuration, long configChecksum, Collection<String> packageNames, OutputStream out)
+      throws IOException {
+    // 先获取 MappedStatement， 同时检查是否还有未完成解析的节点
+    List<MappedStatement> mappedStatements = distinct(configuration.getMappedStatements(), MappedStatement.class);
+
+    Map<String, String> variables = new TreeMap<>();
+    Map<String, Long> resourceChecksums = new TreeMap<>();
+    for (String resource : configuration.getLoadedResources()) {
+      // namespace: 只是标记， 对应的映射文件另有记录
+      if (!resource.startsWith(NAMESPACE_PREFIX)) {
+        byte[] content = readResource(resource);
+        resourceChecksums.put(resource, checksum(content));
+        collectVariables(content, configuration.getVariables(), variables);
+      }
+    }
+    // 解析 Mapper 接口时会加载其旁边的映射文件， 当时不存在的也要记录， 之后添加了就不能再使用快照
+    for (Class<?> mapper : configuration.getMapperRegistry().getMappers()) {
+      String xmlResource = mapper.getName().replace('.', '/') + ".xml";
+      if (!configuration.isResourceLoaded(NAMESPACE_PREFIX + mapper.getName()) && !resourceChecksums.containsKey(xmlResource)) {
+        resourceChecksums.put(xmlResource, ABSENT);
+      }
+    }
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    Set<String> referencedClasses;
+    try (SnapshotOutputStream payloadOut = new SnapshotOutputStream(buffer)) {
+      payloadOut.writeObject(new ArrayList<>(configuration.getLoadedResources()));
+      payloadOut.writeObject(cacheDefinitions(configuration));
+      payloadOut.writeObject(new HashMap<>(configuration.getCacheRefs()));
+      payloadOut.writeObject(distinct(configuration.getParameterMaps(), ParameterMap.class));
+      payloadOut.writeObject(distinct(configuration.getResultMaps(), ResultMap.class));
+      payloadOut.writeObject(mappedStatements);
+      payloadOut.writeObject(keyGenerators(configuration));
+      payloadOut.writeObject(new ArrayList<>(configuration.getMapperRegistry().getMappers()));
+      referencedClasses = payloadOut.referencedClasses;
+    }
+    byte[] payload = buffer.toByteArray();
+
+    DataOutputStream dataOut = new DataOutputStream(out);
+    dataOut.writeInt(MAGIC);
+    dataOut.writeInt(VERSION);
+    dataOut.writeLong(configChecksum);
+    writeValues(dataOut, settings(configuration));
+    writeValues(dataOut, variables);
+    dataOut.writeInt(resourceChecksums.size());
+    for (Map.Entry<String, Long> resource : resourceChecksums.entrySet()) {
+      dataOut.writeUTF(resource.getKey());
+      dataOut.writeLong(resource.getValue());
+    }
+    writeValues(dataOut, scanMapperPackages(packageNames));
+    dataOut.writeInt(referencedClasses.size());
+    for (String referencedClass : referencedClasses) {
+      dataOut.writeUTF(referencedClass);
+    }
+    dataOut.writeInt(payload.length);
+    dataOut.writeLong(checksum(payload));
+    dataOut.write(payload);
+    dataOut.flush();
+  }
+
+  /**
+   * 解析映射文件时就已确定、 写入快照中各对象的设置， 如 lazyLoadingEnabled 决定 ResultMapping.lazy，
+   * useGeneratedKeys 决定 insert 语句的 key 生成器。 配置文件相同时这些设置也可能因 environment 或变量而不同
+   */
+  private static Map<String, String> settings(Configuration configuration) {
+    Map<String, String> settings = new TreeMap<>();
+    settings.put("databaseId", configuration.getDatabaseId());
+    settings.put("lazyLoadingEnabled", String.valueOf(configuration.isLazyLoadingEnabled()));
+    settings.put("useGeneratedKeys", String.valueOf(configuration.isUseGeneratedKeys()));
+    settings.put("useActualParamName", String.valueOf(configuration.isUseActualParamName()));
+    settings.put("logPrefix", configuration.getLogPrefix());
+    settings.put("defaultScriptingLanguage", configuration.getDefaultScriptingLanguageInstance().getClass().getName());
+    settings.put("defaultEnumTypeHandler", configuration.getTypeHandlerRegistry().getDefaultEnumTypeHandler().getName());
+    return settings;
+  }
+
+  /**
+   * 配置文件中 mappers 下 package 节点的包名
+   */
+  private static List<String> mapperPackages(byte[] config, Properties variables) {
+    XPathParser parser = new XPathParser(new ByteArrayInputStream(config), true, variables, new XMLMapperEntityResolver());
+    List<String> packageNames = new ArrayList<>();
+    for (XNode node : parser.evalNodes("/configuration/mappers/package")) {
+      packageNames.add(node.getStringAttribute("name"));
+    }
+    return packageNames;
+  }
+
+  /**
+   * 与 MapperRegistry#addMappers 一样扫描各个包， 返回包名 -> 其中的 Mapper 接口
+   */
+  private static Map<String, String> scanMapperPackages(Collection<String> packageNames) {
+    Map<String, String> mapperPackages = new TreeMap<>();
+    for (String packageName : packageNames) {
+      ResolverUtil<Class<?>> resolverUtil = new ResolverUtil<>();
+      resolverUtil.find(new ResolverUtil.IsA(Object.class), packageName);
+      Set<String> mappers = new TreeSet<>();
+      for (Class<?> type : resolverUtil.getClasses()) {
+        if (type.isInterface()) {
+          mappers.add(type.getName());
+        }
+      }
+      mapperPackages.put(packageName, String.join(",", mappers));
+    }
+    return mapperPackages;
+  }
+
+  private static void writeValues(DataOutputStream dataOut, Map<String, String> values) throws IOException {
+    dataOut.writeInt(values.size());
+    for (Map.Entry<String, String> value : values.entrySet()) {
+      dataOut.writeUTF(value.getKey());
+      dataOut.writeBoolean(value.getValue() != null);
+      if (value.getValue() != null) {
+        dataOut.writeUTF(value.getValue());
+      }
+    }
+  }
+
+  private static Map<String, String> readValues(DataInputStream dataIn) throws IOException {
+    int count = dataIn.readInt();
+    Map<String, String> values = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      String name = dataIn.readUTF();
+      values.put(name, dataIn.readBoolean() ? dataIn.readUTF() : null);
+    }
+    return values;
+  }
+
+  /**
+   * MyBatis 自身的类、 JDK_CLASSES 中的类、 原始类型及这些类型的数组
+   */
+  private static boolean isModelClass(String name) {
+    String component = name;
+    while (component.startsWith("[")) {
+      component = component.substring(1);
+    }
+    if (component.length() == 1) {
+      return true;
+    }
+    if (component.startsWith("L") && component.endsWith(";")) {
+      component = component.substring(1, component.length() - 1);
+    }
+    return component.startsWith("org.apache.ibatis.") || JDK_CLASSES.contains(component);
+  }
+
+  private static List<CacheBuilder> cacheDefinitions(Configuration configuration) {
+    List<CacheBuilder> cacheDefinitions = new ArrayList<>();
+    for (Cache cache : distinct(configuration.getCaches(), Cache.class)) {
+      CacheBuilder cacheDefinition = configuration.getCacheDefinition(cache.getId());
+      if (cacheDefinition == null) {
+        throw new BuilderException("Cache '" + cache.getId()
+            + "' was not created from a mapper and cannot be written to a configuration snapshot.");
+      }
+      cacheDefinitions.add(cacheDefinition);
+    }
+    return cacheDefinitions;
+  }
+
+  private static Map<String, KeyGenerator> keyGenerators(Configuration configuration) {
+    Map<String, KeyGenerator> keyGenerators = new HashMap<>();
+    for (String id : configuration.getKeyGeneratorNames()) {
+      // 只取带命名空间的 id， 简称在添加时重新生成
+      if (id.indexOf('.') >= 0) {
+        keyGenerators.put(id, configuration.getKeyGenerator(id));
+      }
+    }
+    return keyGenerators;
+  }
+
+  /**
+   * StrictMap 以完整的 id 及简称各保存一次， 简称冲突时值为 Ambiguity， 这里只取不重复的对象
+   */
+  private static <T> List<T> distinct(Collection<?> values, Class<T> type) {
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<T> result = new ArrayList<>();
+    for (Object value : values) {
+      if (type.isInstance(value) && seen.add(value)) {
+        result.add(type.cast(value));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 记录映射文件中 ${} 引用的变量， 这些变量在解析时就被替换， 取值变化后快照不再有效
+   */
+  private static void collectVariables(byte[] content, Properties current, Map<String, String> variables) {
+    Matcher matcher = VARIABLE_PATTERN.matcher(new String(content, StandardCharsets.ISO_8859_1));
+    while (matcher.find()) {
+      String name = matcher.group(1);
+      variables.put(name, current == null ? null : current.getProperty(name));
+      // 开启默认值时 ${key:default} 中的 key
+      int separator = name.indexOf(':');
+      if (separator > 0) {
+        String key = name.substring(0, separator);
+        variables.put(key, current == null ? null : current.getProperty(key));
+      }
+    }
+  }
+
+  private static byte[] readResource(String resource) throws IOException {
+    InputStream in;
+    if (resource.startsWith(INTERFACE_PREFIX)) {
+      // 注解定义的语句， 以 class 文件判断是否有变化
+      in = Resources.getResourceAsStream(resource.substring(INTERFACE_PREFIX.length()).replace('.', '/') + ".class");
+    } else if (resource.indexOf(':') > 0) {
+      in = Resources.getUrlAsStream(resource);
+    } else {
+      in = Resources.getResourceAsStream(resource);
+    }
+    try {
+      return toByteArray(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static byte[] toByteArray(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  private static long checksum(byte[] content) {
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    return crc.getValue();
+  }
+
+  /**
+   * 运行期的对象只写出引用， 读取时换成当前配置中的对象
+   */
+  private static class SnapshotOutputStream extends ObjectOutputStream {
+
+    private final Set<String> referencedClasses = new TreeSet<>();
+
+    SnapshotOutputStream(OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected void annotateClass(Class<?> cl) {
+      if (!isModelClass(cl.getName())) {
+        referencedClasses.add(cl.getName());
+      }
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) {
+      if (obj instanceof Configuration) {
+        return ConfigurationReference.INSTANCE;
+      } else if (obj instanceof Cache) {
+        return new CacheReference(((Cache) obj).getId());
+      } else if (obj instanceof LanguageDriver) {
+        return new LanguageDriverReference(((LanguageDriver) obj).getClass());
+      }
+      return obj;
+    }
+  }
+
+  private static class SnapshotInputStream extends ObjectInputStream {
+
+    private final Configuration configuration;
+    private final Map<String, Cache> caches;
+    private final Set<String> referencedClasses;
+
+    SnapshotInputStream(InputStream in, Configuration configuration, Map<String, Cache> caches, Set<String> referencedClasses)
+        throws IOException {
+      super(in);
+      this.configuration = configuration;
+      this.caches = caches;
+      this.referencedClasses = referencedClasses;
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      if (!isModelClass(desc.getName()) && !referencedClasses.contains(desc.getName())) {
+        throw new InvalidClassException(desc.getName(), "not allowed in a configuration snapshot");
+      }
+      // 与解析时一样通过 Resources 加载， Mapper 接口可能只在线程上下文类加载器中
+      try {
+        return Resources.classForName(desc.getName());
+      } catch (ClassNotFoundException e) {
+        return super.resolveClass(desc);
+      }
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+      throw new InvalidClassException("Proxy classes are not allowed in a configuration snapshot");
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T readValue() throws IOException, ClassNotFoundException {
+      return (T) readObject();
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) throws IOException {
+      if (obj instanceof ConfigurationReference) {
+        return configuration;
+      } else if (obj instanceof CacheReference) {
+        String id = ((CacheReference) obj).id;
+        Cache cache = caches.get(id);
+        if (cache == null) {
+          throw new InvalidObjectException("Cache '" + id + "' not found in configuration snapshot");
+        }
+        return cache;
+      } else if (obj instanceof LanguageDriverReference) {
+        Class<? extends LanguageDriver> type = ((LanguageDriverReference) obj).type;
+        LanguageDriverRegistry languageRegistry = configuration.getLanguageRegistry();
+        if (languageRegistry.getDriver(type) == null) {
+          languageRegistry.register(type);
+        }
+        return languageRegistry.getDriver(type);
+      }
+      return obj;
+    }
+  }
+
+  private enum ConfigurationReference {
+    INSTANCE
+  }
+
+  private static class CacheReference implements Serializable {
+
+    private static final long serialVersionUID = -2379120526310924387L;
+
+    private final String id;
+
+    CacheReference(String id) {
+      this.id = id;
+    }
+  }
+
+  private static class LanguageDriverReference implements Serializable {
+
+    private static final long serialVersionUID = 5310283342467781056L;
+
+    private final Class<? extends LanguageDriver> type;
+
+    LanguageDriverReference(Class<? extends LanguageDriver> type) {
+      this.type = type;
+    }
+  }
+
+}
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,13 +15,25 @@
  */
 package org.apache.ibatis.builder.xml;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import javax.sql.DataSource;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.snapshot.ConfigurationSnapshot;
+import org.apache.ibatis.cache.CacheInvalidationScope;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -30,12 +42,16 @@ import org.apache.ibatis.io.VFS;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.mapping.DatabaseIdProvider;
 import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.parsing.StaxXPathParser;
 import org.apache.ibatis.parsing.XNode;
 import org.apache.ibatis.parsing.XPathParser;
 import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.PluginMode;
 import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.SystemMetaObject;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.AutoMappingBehavior;
@@ -57,6 +73,8 @@ public class XMLConfigBuilder extends BaseBuilder {
   private final XPathParser parser;
   private String environment;
   private final ReflectorFactory localReflectorFactory = new DefaultReflectorFactory();
+  // 配置快照， 有效时代替 mappers 节点的解析
+  private ConfigurationSnapshot snapshot;
 
   public XMLConfigBuilder(Reader reader) {
     this(reader, null, null);
@@ -67,7 +85,16 @@ public class XMLConfigBuilder extends BaseBuilder {
   }
 
   public XMLConfigBuilder(Reader reader, String environment, Properties props) {
-    this(new XPathParser(reader, true, props, new XMLMapperEntityResolver()), environment, props);
+    this(reader, environment, props, false);
+  }
+
+  /**
+   * @param streaming 为 true 时使用 {@link StaxXPathParser} 流式解析配置文件， 映射文件默认也流式解析
+   */
+  public XMLConfigBuilder(Reader reader, String environment, Properties props, boolean streaming) {
+    this(streaming ? new StaxXPathParser(reader, props) : new XPathParser(reader, true, props, new XMLMapperEntityResolver()),
+        environment, props);
+    this.configuration.setStreamingXmlParsing(streaming);
   }
 
   public XMLConfigBuilder(InputStream inputStream) {
@@ -79,7 +106,34 @@ public class XMLConfigBuilder extends BaseBuilder {
   }
 
   public XMLConfigBuilder(InputStream inputStream, String environment, Properties props) {
-    this(new XPathParser(inputStream, true, props, new XMLMapperEntityResolver()), environment, props);
+    this(inputStream, environment, props, false);
+  }
+
+  /**
+   * @param streaming 为 true 时使用 {@link StaxXPathParser} 流式解析配置文件， 映射文件默认也流式解析
+   */
+  public XMLConfigBuilder(InputStream inputStream, String environment, Properties props, boolean streaming) {
+    this(streaming ? new StaxXPathParser(inputStream, props) : new XPathParser(inputStream, true, props, new XMLMapperEntityResolver()),
+        environment, props);
+    this.configuration.setStreamingXmlParsing(streaming);
+  }
+
+  /**
+   * 使用构建期生成的配置快照， 快照与配置文件及映射文件一致时不再解析映射文件
+   *
+   * @see ConfigurationSnapshot
+   */
+  public XMLConfigBuilder(InputStream inputStream, InputStream snapshot, String environment, Properties props) {
+    this(inputStream, snapshot, environment, props, false);
+  }
+
+  public XMLConfigBuilder(InputStream inputStream, InputStream snapshot, String environment, Properties props, boolean streaming) {
+    this(readConfiguration(inputStream), snapshot, environment, props, streaming);
+  }
+
+  private XMLConfigBuilder(byte[] config, InputStream snapshot, String environment, Properties props, boolean streaming) {
+    this(new ByteArrayInputStream(config), environment, props, streaming);
+    this.snapshot = ConfigurationSnapshot.read(snapshot, config);
   }
 
   private XMLConfigBuilder(XPathParser parser, String environment, Properties props) {
@@ -91,6 +145,20 @@ public class XMLConfigBuilder extends BaseBuilder {
     this.parser = parser;
   }
 
+  private static byte[] readConfiguration(InputStream inputStream) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = inputStream.read(buffer)) != -1) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new BuilderException("Error reading SQL Mapper Configuration. Cause: " + e, e);
+    }
+  }
+
   /**
    * 解析 mybatis-config.xml
    * @return
@@ -130,8 +198,12 @@ public class XMLConfigBuilder extends BaseBuilder {
       databaseIdProviderElement(root.evalNode("databaseIdProvider"));
       // 解析 typeHandlers 节点
       typeHandlerElement(root.evalNode("typeHandlers"));
+      // 解析 cacheInvalidationBus 节点
+      cacheInvalidationBusElement(root.evalNode("cacheInvalidationBus"));
       // 解析 mappers 节点
       mapperElement(root.evalNode("mappers"));
+      // 映射文件解析完成后再开始接收其他节点的缓存失效事件
+      configuration.startCacheInvalidationBus();
     } catch (Exception e) {
       throw new BuilderException("Error parsing SQL Mapper Configuration. Cause: " + e, e);
     }
@@ -278,11 +350,38 @@ public class XMLConfigBuilder extends BaseBuilder {
       String type = context.getStringAttribute("type");
       // 通过反射生成 ReflectorFactory 对象
       ReflectorFactory factory = (ReflectorFactory) resolveClass(type).newInstance();
+      // 通过 setter 设置 <property> 子节点， 如 DefaultReflectorFactory 的 lambdaInvokerEnabled
+      Properties properties = context.getChildrenAsProperties();
+      MetaObject metaFactory = SystemMetaObject.forObject(factory);
+      for (String name : properties.stringPropertyNames()) {
+        if (!metaFactory.hasSetter(name)) {
+          throw new BuilderException("Unknown ReflectorFactory property: " + name);
+        }
+        Class<?> propertyType = metaFactory.getSetterType(name);
+        String value = properties.getProperty(name);
+        metaFactory.setValue(name, propertyType == boolean.class || propertyType == Boolean.class ? Boolean.valueOf(value) : value);
+      }
       // 将 ReflectorFactory 对象设置到 Configuration 对象中
       configuration.setReflectorFactory(factory);
     }
   }
 
+  /**
+   * 解析 <cacheInvalidationBus> 节点
+   * @param context
+   * @throws Exception
+   */
+  private void cacheInvalidationBusElement(XNode context) throws Exception {
+    if (context != null) {
+      String type = context.getStringAttribute("type");
+      Properties properties = context.getChildrenAsProperties();
+      CacheInvalidationBus bus = (CacheInvalidationBus) resolveClass(type).newInstance();
+      bus.setProperties(properties);
+      // 解析完 mappers 节点后才启动
+      configuration.setCacheInvalidationBus(bus);
+    }
+  }
+
   /**
    * 解析 <properties> 节点
    * @param context 对应的节点
@@ -342,6 +441,14 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setCallSettersOnNulls(booleanValueOf(props.getProperty("callSettersOnNulls"), false));
     configuration.setUseActualParamName(booleanValueOf(props.getProperty("useActualParamName"), true));
     configuration.setReturnInstanceForEmptyRow(booleanValueOf(props.getProperty("returnInstanceForEmptyRow"), false));
+    configuration.setDynamicSqlShapeCacheEnabled(booleanValueOf(props.getProperty("dynamicSqlShapeCacheEnabled"), false));
+    configuration.setCacheStatsJmxEnabled(booleanValueOf(props.getProperty("cacheStatsJmxEnabled"), false));
+    configuration.setParallelMapperParsing(booleanValueOf(props.getProperty("parallelMapperParsing"), false));
+    configuration.setStreamingXmlParsing(booleanValueOf(props.getProperty("streamingXmlParsing"), configuration.isStreamingXmlParsing()));
+    configuration.setMultiRowBatchMaxRows(integerValueOf(props.getProperty("multiRowBatchMaxRows"), 500));
+    configuration.setMultiRowBatchMaxParameters(integerValueOf(props.getProperty("multiRowBatchMaxParameters"), 2000));
+    configuration.setPluginMode(PluginMode.valueOf(props.getProperty("pluginMode", "PROXY")));
+    configuration.setCacheInvalidationScope(CacheInvalidationScope.valueOf(props.getProperty("cacheInvalidationScope", "NAMESPACE")));
     configuration.setLogPrefix(props.getProperty("logPrefix"));
     @SuppressWarnings("unchecked")
     Class<? extends Log> logImpl = (Class<? extends Log>)resolveClass(props.getProperty("logImpl"));
@@ -475,7 +582,13 @@ public class XMLConfigBuilder extends BaseBuilder {
    * @throws Exception
    */
   private void mapperElement(XNode parent) throws Exception {
-    if (parent != null) {
+    if (parent != null && snapshot != null && snapshot.restore(configuration, mapperPackages(parent))) {
+      // 已从快照中恢复
+      return;
+    }
+    if (parent != null && configuration.isParallelMapperParsing()) {
+      parallelMapperElement(parent);
+    } else if (parent != null) {
       // 遍历其子节点
       for (XNode child : parent.getChildren()) {
         // 如果配置的是包(packege)
@@ -517,6 +630,85 @@ public class XMLConfigBuilder extends BaseBuilder {
     }
   }
 
+  private static List<String> mapperPackages(XNode parent) {
+    List<String> packageNames = new ArrayList<>();
+    for (XNode child : parent.getChildren()) {
+      if ("package".equals(child.getName())) {
+        packageNames.add(child.getStringAttribute("name"));
+      }
+    }
+    return packageNames;
+  }
+
+  /**
+   * 并行解析 resource 和 url 配置的映射文件， 之后按顺序处理 class 和 package，
+   * 最后统一处理文件之间还未解析的引用
+   */
+  private void parallelMapperElement(XNode parent) throws Exception {
+    final Object registrationLock = new Object();
+    final List<Callable<Void>> tasks = new ArrayList<>();
+    final List<String> taskResources = new ArrayList<>();
+    final List<XNode> mapperClasses = new ArrayList<>();
+    for (XNode child : parent.getChildren()) {
+      if ("package".equals(child.getName())) {
+        mapperClasses.add(child);
+      } else {
+        String resource = child.getStringAttribute("resource");
+        String url = child.getStringAttribute("url");
+        String mapperClass = child.getStringAttribute("class");
+        if (resource != null && url == null && mapperClass == null) {
+          tasks.add(() -> parseMapper(resource, Resources.getResourceAsStream(resource), registrationLock));
+          taskResources.add(resource);
+        } else if (resource == null && url != null && mapperClass == null) {
+          tasks.add(() -> parseMapper(url, Resources.getUrlAsStream(url), registrationLock));
+          taskResources.add(url);
+        } else if (resource == null && url == null && mapperClass != null) {
+          mapperClasses.add(child);
+        } else {
+          throw new BuilderException("A mapper element may only specify a url, resource or class, but not more than one.");
+        }
+      }
+    }
+
+    final ForkJoinPool pool = new ForkJoinPool();
+    try {
+      final List<Future<Void>> futures = pool.invokeAll(tasks);
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException e) {
+          // 按配置的顺序抛出第一个失败的映射文件的异常
+          ErrorContext.instance().resource(taskResources.get(i));
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw new BuilderException("Error parsing Mapper XML. Cause: " + e.getCause(), e.getCause());
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    for (XNode child : mapperClasses) {
+      if ("package".equals(child.getName())) {
+        configuration.addMappers(child.getStringAttribute("name"));
+      } else {
+        configuration.addMapper(Resources.classForName(child.getStringAttribute("class")));
+      }
+    }
+    XMLMapperBuilder.parsePendingElements(configuration);
+  }
+
+  private Void parseMapper(String resource, InputStream inputStream, Object registrationLock) {
+    ErrorContext.instance().resource(resource);
+    try {
+      new XMLMapperBuilder(inputStream, configuration, resource, configuration.getSqlFragments()).parseConcurrently(registrationLock);
+      return null;
+    } finally {
+      ErrorContext.instance().reset();
+    }
+  }
+
   private boolean isSpecifiedEnvironment(String id) {
     if (environment == null) {
       throw new BuilderException("No environment specified.");
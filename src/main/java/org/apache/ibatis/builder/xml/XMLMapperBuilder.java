@@ -26,13 +26,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
 import org.apache.ibatis.builder.CacheRefResolver;
 import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.Discriminator;
@@ -41,11 +47,13 @@ import org.apache.ibatis.mapping.ParameterMode;
 import org.apache.ibatis.mapping.ResultFlag;
 import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.parsing.StaxXPathParser;
 import org.apache.ibatis.parsing.XNode;
 import org.apache.ibatis.parsing.XPathParser;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
+import org.w3c.dom.Document;
 
 /**
  * @author Clinton Begin
@@ -57,6 +65,12 @@ public class XMLMapperBuilder extends BaseBuilder {
   private final MapperBuilderAssistant builderAssistant;
   private final Map<String, XNode> sqlFragments;
   private final String resource;
+  // 注册到 Configuration 的步骤在此锁内执行， 并行解析时为所有文件共用的锁
+  private Object registrationLock = this;
+  // 是否在并行解析
+  private boolean concurrent;
+  // 并行解析时本文件未解析成功的语句， 本文件解析完成后才加入 Configuration
+  private final List<XMLStatementBuilder> incompleteStatements = new ArrayList<>();
 
   @Deprecated
   public XMLMapperBuilder(Reader reader, Configuration configuration, String resource, Map<String, XNode> sqlFragments, String namespace) {
@@ -66,7 +80,9 @@ public class XMLMapperBuilder extends BaseBuilder {
 
   @Deprecated
   public XMLMapperBuilder(Reader reader, Configuration configuration, String resource, Map<String, XNode> sqlFragments) {
-    this(new XPathParser(reader, true, configuration.getVariables(), new XMLMapperEntityResolver()),
+    this(configuration.isStreamingXmlParsing()
+        ? new StaxXPathParser(reader, configuration.getVariables())
+        : new XPathParser(reader, true, configuration.getVariables(), new XMLMapperEntityResolver()),
         configuration, resource, sqlFragments);
   }
 
@@ -76,7 +92,9 @@ public class XMLMapperBuilder extends BaseBuilder {
   }
 
   public XMLMapperBuilder(InputStream inputStream, Configuration configuration, String resource, Map<String, XNode> sqlFragments) {
-    this(new XPathParser(inputStream, true, configuration.getVariables(), new XMLMapperEntityResolver()),
+    this(configuration.isStreamingXmlParsing()
+        ? new StaxXPathParser(inputStream, configuration.getVariables())
+        : new XPathParser(inputStream, true, configuration.getVariables(), new XMLMapperEntityResolver()),
         configuration, resource, sqlFragments);
   }
 
@@ -102,11 +120,63 @@ public class XMLMapperBuilder extends BaseBuilder {
       bindMapperForNamespace();
     }
     // 解析在configurationElement函数中处理resultMap时其extends属性指向的父对象还没被处理的<resultMap>节点
-    parsePendingResultMaps();
+    parsePendingResultMaps(configuration);
     // 解析在configurationElement函数中处理cache-ref时其指向的对象不存在的<cache>节点(如果cache-ref先于其指向的cache节点加载就会出现这种情况)
-    parsePendingCacheRefs();
+    parsePendingCacheRefs(configuration);
     // 如果cache没加载的话处理statement时也会抛出异常
-    parsePendingStatements();
+    parsePendingStatements(configuration);
+  }
+
+  /**
+   * 与其他映射文件并行解析， 见 parallelMapperParsing 配置。
+   * 读取 XML（构造函数中）和生成语句的 SqlSource 在当前线程执行， 注册到 Configuration 的步骤在 registrationLock 内执行。
+   * 引用其他文件中还未解析的元素时同样加入 Configuration 的未完成集合，
+   * 所有文件解析完成后由 {@link #parsePendingElements(Configuration)} 统一处理。
+   *
+   * @param registrationLock 所有并行解析的映射文件共用的锁
+   */
+  public void parseConcurrently(Object registrationLock) {
+    this.registrationLock = registrationLock;
+    this.concurrent = true;
+    synchronized (registrationLock) {
+      if (configuration.isResourceLoaded(resource)) {
+        return;
+      }
+      // 开始时就标记， 同一文件配置多次时只解析一次
+      configuration.addLoadedResource(resource);
+    }
+    configurationElement(parser.evalNode("/mapper"));
+    synchronized (registrationLock) {
+      // 之后其他线程可能重新解析这些语句， 此时本线程已不再访问本文件的 Document
+      for (XMLStatementBuilder statementParser : incompleteStatements) {
+        configuration.addIncompleteStatement(statementParser);
+      }
+      bindMapperForNamespace();
+    }
+  }
+
+  /**
+   * 处理所有未完成的元素， 直到不能再减少为止。
+   * 并行解析时各文件完成的顺序不确定， 一次处理可能不够（如跨文件的多层 extends）
+   */
+  public static void parsePendingElements(Configuration configuration) {
+    int pending = countPendingElements(configuration);
+    while (pending > 0) {
+      parsePendingResultMaps(configuration);
+      parsePendingCacheRefs(configuration);
+      parsePendingStatements(configuration);
+      parsePendingMethods(configuration);
+      final int remaining = countPendingElements(configuration);
+      if (remaining >= pending) {
+        break;
+      }
+      pending = remaining;
+    }
+  }
+
+  private static int countPendingElements(Configuration configuration) {
+    return configuration.getIncompleteResultMaps().size() + configuration.getIncompleteCacheRefs().size()
+        + configuration.getIncompleteStatements().size() + configuration.getIncompleteMethods().size();
   }
 
   public XNode getSqlFragment(String refid) {
@@ -124,17 +194,19 @@ public class XMLMapperBuilder extends BaseBuilder {
       if (namespace == null || namespace.equals("")) {
         throw new BuilderException("Mapper's namespace cannot be empty");
       }
-      builderAssistant.setCurrentNamespace(namespace);
-      // 解析 <cache-ref> 节点
-      cacheRefElement(context.evalNode("cache-ref"));
-      // 解析 <cache> 节点
-      cacheElement(context.evalNode("cache"));
-      // 解析 </mapper/parameterMap> 节点
-      parameterMapElement(context.evalNodes("/mapper/parameterMap"));
-      // 解析 </mapper/resultMap> 节点
-      resultMapElements(context.evalNodes("/mapper/resultMap"));
-      // 解析 </mapper/sql> 节点
-      sqlElement(context.evalNodes("/mapper/sql"));
+      synchronized (registrationLock) {
+        builderAssistant.setCurrentNamespace(namespace);
+        // 解析 <cache-ref> 节点
+        cacheRefElement(context.evalNode("cache-ref"));
+        // 解析 <cache> 节点
+        cacheElement(context.evalNode("cache"));
+        // 解析 </mapper/parameterMap> 节点
+        parameterMapElement(context.evalNodes("/mapper/parameterMap"));
+        // 解析 </mapper/resultMap> 节点
+        resultMapElements(context.evalNodes("/mapper/resultMap"));
+        // 解析 </mapper/sql> 节点
+        sqlElement(context.evalNodes("/mapper/sql"));
+      }
       // 解析 select|insert|update|delet 节点
       buildStatementFromContext(context.evalNodes("select|insert|update|delete"));
     } catch (Exception e) {
@@ -162,13 +234,17 @@ public class XMLMapperBuilder extends BaseBuilder {
     // 遍历 XNode 节点
     for (XNode context : list) {
       // 建造者模式
-      final XMLStatementBuilder statementParser = new XMLStatementBuilder(configuration, builderAssistant, context, requiredDatabaseId);
+      final XMLStatementBuilder statementParser = new XMLStatementBuilder(configuration, builderAssistant, context, requiredDatabaseId, registrationLock);
       try {
         // 解析
         statementParser.parseStatementNode();
       } catch (IncompleteElementException e) {
         // 无法解析的添加到 Configuration 对象
-        configuration.addIncompleteStatement(statementParser);
+        if (concurrent) {
+          incompleteStatements.add(statementParser);
+        } else {
+          configuration.addIncompleteStatement(statementParser);
+        }
       }
     }
   }
@@ -176,7 +252,7 @@ public class XMLMapperBuilder extends BaseBuilder {
   /**
    * 解析未解析成功的 ResultMap
    */
-  private void parsePendingResultMaps() {
+  private static void parsePendingResultMaps(Configuration configuration) {
     // 获取 Configuration.incompleteResultMaps 集合
     Collection<ResultMapResolver> incompleteResultMaps = configuration.getIncompleteResultMaps();
     synchronized (incompleteResultMaps) {
@@ -197,7 +273,7 @@ public class XMLMapperBuilder extends BaseBuilder {
   /**
    * 处理解析未成功的 CacheRef
    */
-  private void parsePendingCacheRefs() {
+  private static void parsePendingCacheRefs(Configuration configuration) {
     // 获取 Configuration.mappedStatements 集合
     Collection<CacheRefResolver> incompleteCacheRefs = configuration.getIncompleteCacheRefs();
     synchronized (incompleteCacheRefs) {
@@ -218,7 +294,7 @@ public class XMLMapperBuilder extends BaseBuilder {
   /**
    * 处理未解析成功的 statements
    */
-  private void parsePendingStatements() {
+  private static void parsePendingStatements(Configuration configuration) {
     // 获取 Configuration.incompleteStatements 集合
     Collection<XMLStatementBuilder> incompleteStatements = configuration.getIncompleteStatements();
     synchronized (incompleteStatements) {//加锁
@@ -235,6 +311,24 @@ public class XMLMapperBuilder extends BaseBuilder {
     }
   }
 
+  /**
+   * 处理注解中未解析成功的方法
+   */
+  private static void parsePendingMethods(Configuration configuration) {
+    Collection<MethodResolver> incompleteMethods = configuration.getIncompleteMethods();
+    synchronized (incompleteMethods) {
+      Iterator<MethodResolver> iter = incompleteMethods.iterator();
+      while (iter.hasNext()) {
+        try {
+          iter.next().resolve();
+          iter.remove();
+        } catch (IncompleteElementException e) {
+          // This method is still missing a resource
+        }
+      }
+    }
+  }
+
   private void cacheRefElement(XNode context) {
     if (context != null) {
       configuration.addCacheRef(builderAssistant.getCurrentNamespace(), context.getStringAttribute("namespace"));
@@ -264,16 +358,30 @@ public class XMLMapperBuilder extends BaseBuilder {
       Class<? extends Cache> evictionClass = typeAliasRegistry.resolveAlias(eviction);
       // flushInterval 对应刷新间隔， 单位毫秒， 默认值不设置， 即没有刷新间隔， 缓存仅仅在刷新语句时刷新。
       Long flushInterval = context.getLongAttribute("flushInterval");
+      // timeToLive 为单个缓存对象的存活时间， timeToLiveJitter 为其随机抖动， refreshAhead 为提前刷新的时间， 单位均为毫秒
+      Long timeToLive = context.getLongAttribute("timeToLive");
+      Long timeToLiveJitter = context.getLongAttribute("timeToLiveJitter");
+      Long refreshAhead = context.getLongAttribute("refreshAhead");
       // size 对应为引用的数量，即最多的缓存对象数据。
       Integer size = context.getIntAttribute("size");
+      // maxWeight 为按权重限制的容量， weigher 为权重的计算方式， 默认按估算的字节数
+      Long maxWeight = context.getLongAttribute("maxWeight");
+      Class<? extends CacheWeigher> weigherClass = typeAliasRegistry.resolveAlias(context.getStringAttribute("weigher"));
       // readOnly 为只读属性， 默认为 false, 即可读写
       boolean readWrite = !context.getBooleanAttribute("readOnly", false);
+      // serializer 为读写缓存的序列化方式， 默认为 JDK 序列化； offHeap 表示序列化后的数据是否放在堆外内存
+      Class<? extends CacheSerializer> serializerClass = typeAliasRegistry.resolveAlias(context.getStringAttribute("serializer"));
+      boolean offHeap = context.getBooleanAttribute("offHeap", false);
       // blocking 为阻塞， 默认值为 false。 当指定为 true 时将采用 BlockingCache 进行封装
       boolean blocking = context.getBooleanAttribute("blocking", false);
+      // singleFlight 为 true 时同一个 key 的并发未命中只查询一次， singleFlightTimeout 为等待的超时时间， 单位毫秒
+      boolean singleFlight = context.getBooleanAttribute("singleFlight", false);
+      Long singleFlightTimeout = context.getLongAttribute("singleFlightTimeout");
       // 获取 <cache> 属性节点下的子节点， 用于初始化二级缓存
       Properties props = context.getChildrenAsProperties();
       // 通过 MapperBuilderAssistant 创建 Cache 对象， 并将其添加到 COnfiguration 中
-      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
+      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, timeToLive, timeToLiveJitter, refreshAhead,
+          size, maxWeight, weigherClass, readWrite, serializerClass, offHeap, blocking, singleFlight, singleFlightTimeout, props);
     }
   }
 
@@ -462,11 +570,21 @@ public class XMLMapperBuilder extends BaseBuilder {
             if (databaseIdMatchesCurrent(id, databaseId, requiredDatabaseId)) {
                 // 记录到 XMLMapperBuider.sqlFragments(Map<String, XNode>)中保存
                 // 其最终是指向了 Configuration.sqlFragments(configuration.getSqlFragments) 集合
-                sqlFragments.put(id, context);
+                sqlFragments.put(id, concurrent ? detach(context) : context);
             }
         }
     }
   
+  /**
+   * 并行解析时其他文件的 include 也会读取 sql 节点， 复制到单独的 Document 中，
+   * 避免与解析本文件的线程同时访问同一个 Document（DOM 不是线程安全的， 读取也会修改内部缓存）
+   */
+  private XNode detach(XNode context) throws ParserConfigurationException {
+    Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    document.appendChild(document.importNode(context.getNode(), true));
+    return context.newXNode(document.getDocumentElement());
+  }
+
   private boolean databaseIdMatchesCurrent(String id, String databaseId, String requiredDatabaseId) {
     if (requiredDatabaseId != null) {
       if (!requiredDatabaseId.equals(databaseId)) {
@@ -516,7 +634,16 @@ public class XMLMapperBuilder extends BaseBuilder {
     String typeHandler = context.getStringAttribute("typeHandler");
     String resultSet = context.getStringAttribute("resultSet");
     String foreignColumn = context.getStringAttribute("foreignColumn");
-    boolean lazy = "lazy".equals(context.getStringAttribute("fetchType", configuration.isLazyLoadingEnabled() ? "lazy" : "eager"));
+    String fetchType = context.getStringAttribute("fetchType", configuration.isLazyLoadingEnabled() ? "lazy" : "eager");
+    boolean lazy = "lazy".equals(fetchType);
+    String batchKeyProperty = context.getStringAttribute("batchKeyProperty");
+    // fetchType 为 batch 时， 攒够 batchSize 个父对象后用一次查询加载；
+    // 延迟加载且设置了 batchKeyProperty 时， 首次访问时一起加载同一结果集中最多 batchSize 个对象
+    int batchSize = "batch".equals(fetchType) || (lazy && batchKeyProperty != null)
+        ? context.getIntAttribute("batchSize", ResultMapping.DEFAULT_BATCH_SIZE) : 0;
+    if (("batch".equals(fetchType) || (lazy && batchKeyProperty != null)) && batchSize < 1) {
+      throw new BuilderException("The batchSize of property '" + property + "' must be greater than 0, but was " + batchSize + ".");
+    }
 
     // 以上获取各个属性节点
     // 解析 javaType， typeHandler， jdbcType
@@ -525,7 +652,7 @@ public class XMLMapperBuilder extends BaseBuilder {
     Class<? extends TypeHandler<?>> typeHandlerClass = (Class<? extends TypeHandler<?>>) resolveClass(typeHandler);
     JdbcType jdbcTypeEnum = resolveJdbcType(jdbcType);
     // 创建resultMapping对象
-    return builderAssistant.buildResultMapping(resultType, property, column, javaTypeClass, jdbcTypeEnum, nestedSelect, nestedResultMap, notNullColumn, columnPrefix, typeHandlerClass, flags, resultSet, foreignColumn, lazy);
+    return builderAssistant.buildResultMapping(resultType, property, column, javaTypeClass, jdbcTypeEnum, nestedSelect, nestedResultMap, notNullColumn, columnPrefix, typeHandlerClass, flags, resultSet, foreignColumn, lazy, batchSize, batchKeyProperty);
   }
 
   /**
@@ -41,16 +41,26 @@ public class XMLStatementBuilder extends BaseBuilder {
   private final MapperBuilderAssistant builderAssistant;
   private final XNode context;
   private final String requiredDatabaseId;
+  // 注册到 Configuration 的步骤在此锁内执行， 生成 SqlSource 在锁外
+  private final Object registrationLock;
 
   public XMLStatementBuilder(Configuration configuration, MapperBuilderAssistant builderAssistant, XNode context) {
     this(configuration, builderAssistant, context, null);
   }
 
   public XMLStatementBuilder(Configuration configuration, MapperBuilderAssistant builderAssistant, XNode context, String databaseId) {
+    this(configuration, builderAssistant, context, databaseId, null);
+  }
+
+  /**
+   * @param registrationLock 并行解析映射文件时共用的锁， 为 null 时不需要同步
+   */
+  public XMLStatementBuilder(Configuration configuration, MapperBuilderAssistant builderAssistant, XNode context, String databaseId, Object registrationLock) {
     super(configuration);
     this.builderAssistant = builderAssistant;
     this.context = context;
     this.requiredDatabaseId = databaseId;
+    this.registrationLock = registrationLock == null ? this : registrationLock;
   }
 
   public void parseStatementNode() {
@@ -59,8 +69,10 @@ public class XMLStatementBuilder extends BaseBuilder {
     // 获取 databaseid
     String databaseId = context.getStringAttribute("databaseId");
     //验证databaseId是否匹配
-    if (!databaseIdMatchesCurrent(id, databaseId, this.requiredDatabaseId)) {
-      return;
+    synchronized (registrationLock) {
+      if (!databaseIdMatchesCurrent(id, databaseId, this.requiredDatabaseId)) {
+        return;
+      }
     }
     // 获取各个属性
     Integer fetchSize = context.getIntAttribute("fetchSize");
@@ -71,7 +83,6 @@ public class XMLStatementBuilder extends BaseBuilder {
     String resultMap = context.getStringAttribute("resultMap");
     String resultType = context.getStringAttribute("resultType");
     String lang = context.getStringAttribute("lang");
-    LanguageDriver langDriver = getLanguageDriver(lang);
 
     Class<?> resultTypeClass = resolveClass(resultType);
     String resultSetType = context.getStringAttribute("resultSetType");
@@ -86,36 +97,46 @@ public class XMLStatementBuilder extends BaseBuilder {
     boolean useCache = context.getBooleanAttribute("useCache", isSelect);
     boolean resultOrdered = context.getBooleanAttribute("resultOrdered", false);
 
-    // Include Fragments before parsing
-    // 引入include 解析出的 sql 节点内容
-    XMLIncludeTransformer includeParser = new XMLIncludeTransformer(configuration, builderAssistant);
-    includeParser.applyIncludes(context.getNode());
+    final LanguageDriver langDriver;
+    synchronized (registrationLock) {
+      langDriver = getLanguageDriver(lang);
+
+      // Include Fragments before parsing
+      // 引入include 解析出的 sql 节点内容
+      XMLIncludeTransformer includeParser = new XMLIncludeTransformer(configuration, builderAssistant);
+      includeParser.applyIncludes(context.getNode());
+
+      // Parse selectKey after includes and remove them.
+      // 处理 selectKey
+      processSelectKeyNodes(id, parameterTypeClass, langDriver);
+    }
 
-    // Parse selectKey after includes and remove them.
-    // 处理 selectKey
-    processSelectKeyNodes(id, parameterTypeClass, langDriver);
-    
     // Parse the SQL (pre: <selectKey> and <include> were parsed and removed)
+    // 只读取本文件的节点， 并行解析时在锁外执行； 期间按需注册的枚举类型处理器由 TypeHandlerRegistry 保证线程安全
     SqlSource sqlSource = langDriver.createSqlSource(configuration, context, parameterTypeClass);
     String resultSets = context.getStringAttribute("resultSets");
+    // 语句依赖的表， 按表失效二级缓存时使用， 不设置时从 SQL 中解析
+    String tables = context.getStringAttribute("tables");
     String keyProperty = context.getStringAttribute("keyProperty");
     String keyColumn = context.getStringAttribute("keyColumn");
-    KeyGenerator keyGenerator;
-    // 设置主键自增的方式
-    String keyStatementId = id + SelectKeyGenerator.SELECT_KEY_SUFFIX;
-    keyStatementId = builderAssistant.applyCurrentNamespace(keyStatementId, true);
-    if (configuration.hasKeyGenerator(keyStatementId)) {
-      keyGenerator = configuration.getKeyGenerator(keyStatementId);
-    } else {
-      keyGenerator = context.getBooleanAttribute("useGeneratedKeys",
-          configuration.isUseGeneratedKeys() && SqlCommandType.INSERT.equals(sqlCommandType))
-          ? Jdbc3KeyGenerator.INSTANCE : NoKeyGenerator.INSTANCE;
-    }
+    synchronized (registrationLock) {
+      KeyGenerator keyGenerator;
+      // 设置主键自增的方式
+      String keyStatementId = id + SelectKeyGenerator.SELECT_KEY_SUFFIX;
+      keyStatementId = builderAssistant.applyCurrentNamespace(keyStatementId, true);
+      if (configuration.hasKeyGenerator(keyStatementId)) {
+        keyGenerator = configuration.getKeyGenerator(keyStatementId);
+      } else {
+        keyGenerator = context.getBooleanAttribute("useGeneratedKeys",
+            configuration.isUseGeneratedKeys() && SqlCommandType.INSERT.equals(sqlCommandType))
+            ? Jdbc3KeyGenerator.INSTANCE : NoKeyGenerator.INSTANCE;
+      }
 
-    builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
-        fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
-        resultSetTypeEnum, flushCache, useCache, resultOrdered, 
-        keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets);
+      builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
+          fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
+          resultSetTypeEnum, flushCache, useCache, resultOrdered,
+          keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets, tables);
+    }
   }
 
   /**
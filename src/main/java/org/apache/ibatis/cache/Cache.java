@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -111,4 +111,25 @@ public interface Cache {
    */
   ReadWriteLock getReadWriteLock();
 
+  /**
+   * 统计计数器， 是一个可选操作。 由 {@link org.apache.ibatis.cache.decorators.LoggingCache} 提供， 包装在其外层的装饰器需要转发该方法
+   *
+   * Optional. The core records the time of the queries run after a cache miss to this counter.
+   *
+   * @return The counter of this cache, or null when it does not keep statistics.
+   */
+  default CacheStatsCounter getStatsCounter() {
+    return null;
+  }
+
+  /**
+   * 获取统计信息的快照
+   *
+   * @return A snapshot of the statistics of this cache, or null when it does not keep statistics.
+   */
+  default CacheStats getStats() {
+    CacheStatsCounter statsCounter = getStatsCounter();
+    return statsCounter == null ? null : statsCounter.snapshot(getId(), getSize());
+  }
+
 }
\ No newline at end of file
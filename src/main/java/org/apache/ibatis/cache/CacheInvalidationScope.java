@@ -0,0 +1,33 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 修改语句失效二级缓存的范围
+ */
+public enum CacheInvalidationScope {
+
+  /**
+   * 清空语句所在命名空间的整个缓存
+   */
+  NAMESPACE,
+
+  /**
+   * 只移除依赖了语句所修改的表的缓存对象， 包括其他命名空间中的缓存。
+   * 无法确定语句修改的表时按 NAMESPACE 处理
+   */
+  TABLE
+}
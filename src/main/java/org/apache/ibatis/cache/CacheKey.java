@@ -16,63 +16,101 @@
 package org.apache.ibatis.cache;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.apache.ibatis.reflection.ArrayUtil;
 
 /**
  * 缓存的主键
+ *
+ * 各组成部分保存在按需扩容的数组中， int/long 以原始类型保存， 不做装箱；
+ * 同时维护 64 位的哈希值， 哈希值不同即可判定不相等， 很少需要逐个比较组成部分
+ *
  * @author Clinton Begin
  */
 public class CacheKey implements Cloneable, Serializable {
 
-  private static final long serialVersionUID = 1146682552656046210L;
+  private static final long serialVersionUID = 1146682552656046211L;
 
   public static final CacheKey NULL_CACHE_KEY = new NullCacheKey();
 
-  private static final int DEFAULT_MULTIPLYER = 37;
-  private static final int DEFAULT_HASHCODE = 17;
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final long HASH_SEED = 0x9E3779B97F4A7C15L;
+  private static final long HASH_MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
 
-  // 参与 hashcode 的计算， 类似于 String hashcode 函数中的 31
-  private final int multiplier;
-  // 哈希值
-  private int hashcode;
-  // 校验和
-  private long checksum;
-  // 集合的数量
+  // 64 位哈希值， 与组成部分的顺序相关
+  private long hash;
+  // 组成部分的数量
   private int count;
   // 8/21/2017 - Sonarlint flags this as needing to be marked transient.  While true if content is not serializable, this is not always true and thus should not be marked transient.
-  private List<Object> updateList;
+  // 组成部分， 原始类型的位置为 Primitive.INT 或 Primitive.LONG
+  private Object[] components;
+  // 原始类型的值， 只在使用过 update(int)/update(long) 时才创建
+  private long[] primitives;
 
   public CacheKey() {
-    this.hashcode = DEFAULT_HASHCODE;
-    this.multiplier = DEFAULT_MULTIPLYER;
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param expectedUpdateCount 预计的组成部分数量， 用于一次分配合适大小的数组
+   */
+  public CacheKey(int expectedUpdateCount) {
+    this.hash = HASH_SEED;
     this.count = 0;
-    this.updateList = new ArrayList<>();
+    this.components = new Object[Math.max(1, expectedUpdateCount)];
   }
 
   public CacheKey(Object[] objects) {
-    this();
+    this(objects.length);
     updateAll(objects);
   }
 
   public int getUpdateCount() {
-    return updateList.size();
+    return count;
   }
 
   // 添加元素
   public void update(Object object) {
+    // Integer 和 Long 与 update(int)/update(long) 一样以原始类型保存， 两种方式添加的 key 相等
+    if (object instanceof Integer) {
+      update(((Integer) object).intValue());
+      return;
+    }
+    if (object instanceof Long) {
+      update(((Long) object).longValue());
+      return;
+    }
     // null 的 hashcode 为 1
     int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
-    // 数量增加
-    count++;
-    checksum += baseHashCode;
-    baseHashCode *= count;
-    // 计算哈希值
-    hashcode = multiplier * hashcode + baseHashCode;
-    // 添加元素
-    updateList.add(object);
+    ensureCapacity();
+    components[count] = object;
+    updateHash(baseHashCode);
+  }
+
+  /**
+   * 添加 int 元素， 不装箱， 与 update(Object) 传入的 Integer 相等
+   */
+  public void update(int value) {
+    updatePrimitive(Primitive.INT, value, Integer.hashCode(value));
+  }
+
+  /**
+   * 添加 long 元素， 不装箱， 与 update(Object) 传入的 Long 相等
+   */
+  public void update(long value) {
+    updatePrimitive(Primitive.LONG, value, Long.hashCode(value));
+  }
+
+  // 哈希值与装箱后的 hashCode 一致
+  private void updatePrimitive(Primitive type, long value, int baseHashCode) {
+    ensureCapacity();
+    if (primitives == null) {
+      primitives = new long[components.length];
+    }
+    components[count] = type;
+    primitives[count] = value;
+    updateHash(baseHashCode);
   }
 
   // 将数组中的元素全部调用 update 方法
@@ -82,6 +120,25 @@ public class CacheKey implements Cloneable, Serializable {
     }
   }
 
+  private void ensureCapacity() {
+    if (count == components.length) {
+      int capacity = components.length << 1;
+      components = Arrays.copyOf(components, capacity);
+      if (primitives != null) {
+        primitives = Arrays.copyOf(primitives, capacity);
+      }
+    } else if (primitives != null && primitives.length < components.length) {
+      primitives = Arrays.copyOf(primitives, components.length);
+    }
+  }
+
+  private void updateHash(long componentHash) {
+    count++;
+    long h = componentHash * HASH_MULTIPLIER;
+    h ^= h >>> 29;
+    hash = Long.rotateLeft(hash ^ h, 31) * HASH_SEED + count;
+  }
+
   // 重新了 equals 方法
   @Override
   public boolean equals(Object object) {
@@ -96,11 +153,8 @@ public class CacheKey implements Cloneable, Serializable {
 
     final CacheKey cacheKey = (CacheKey) object;
 
-    // // hashcode/checksum/count 其中之一不同就返回 false
-    if (hashcode != cacheKey.hashcode) {
-      return false;
-    }
-    if (checksum != cacheKey.checksum) {
+    // 哈希值或数量不同就返回 false
+    if (hash != cacheKey.hash) {
       return false;
     }
     if (count != cacheKey.count) {
@@ -108,10 +162,14 @@ public class CacheKey implements Cloneable, Serializable {
     }
 
     // 如果上面都相同， 比较每一个位置的对象是否相同， 一个不同就为 false
-    for (int i = 0; i < updateList.size(); i++) {
-      Object thisObject = updateList.get(i);
-      Object thatObject = cacheKey.updateList.get(i);
-      if (!ArrayUtil.equals(thisObject, thatObject)) {
+    for (int i = 0; i < count; i++) {
+      Object thisObject = components[i];
+      Object thatObject = cacheKey.components[i];
+      if (thisObject instanceof Primitive) {
+        if (thisObject != thatObject || primitives[i] != cacheKey.primitives[i]) {
+          return false;
+        }
+      } else if (thatObject instanceof Primitive || !ArrayUtil.equals(thisObject, thatObject)) {
         return false;
       }
     }
@@ -119,12 +177,13 @@ public class CacheKey implements Cloneable, Serializable {
   }
 
   /**
-   * hashcode 重写： 返回成员变量 hashcode
+   * hashcode 重写： 由 64 位哈希值折叠而来
    * @return
    */
   @Override
   public int hashCode() {
-    return hashcode;
+    long h = hash ^ (hash >>> 33);
+    return (int) (h ^ (h >>> 32));
   }
 
   /**
@@ -133,9 +192,14 @@ public class CacheKey implements Cloneable, Serializable {
    */
   @Override
   public String toString() {
-    StringBuilder returnValue = new StringBuilder().append(hashcode).append(':').append(checksum);
-    for (Object object : updateList) {
-      returnValue.append(':').append(ArrayUtil.toString(object));
+    StringBuilder returnValue = new StringBuilder().append(hashCode()).append(':').append(Long.toHexString(hash));
+    for (int i = 0; i < count; i++) {
+      returnValue.append(':');
+      if (components[i] instanceof Primitive) {
+        returnValue.append(primitives[i]);
+      } else {
+        returnValue.append(ArrayUtil.toString(components[i]));
+      }
     }
     return returnValue.toString();
   }
@@ -149,9 +213,19 @@ public class CacheKey implements Cloneable, Serializable {
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
     CacheKey clonedCacheKey = (CacheKey) super.clone();
-    // 由于 Object.clone 中对数组类是浅拷贝， 因此需要创建一个新的数组类
-    clonedCacheKey.updateList = new ArrayList<>(updateList);
+    // 由于 Object.clone 中对数组类是浅拷贝， 因此需要创建新的数组， 并预留一个位置（克隆后通常还会再 update）
+    clonedCacheKey.components = Arrays.copyOf(components, count + 1);
+    if (primitives != null) {
+      clonedCacheKey.primitives = Arrays.copyOf(primitives, count + 1);
+    }
     return clonedCacheKey;
   }
 
+  /**
+   * 原始类型组成部分的占位符， 使用枚举以保证反序列化后仍为同一实例
+   */
+  private enum Primitive {
+    INT, LONG
+  }
+
 }
@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 缓存统计信息的快照， 由 {@link Cache#getStats()} 返回， 创建后不再变化。
+ * 时间的单位都是纳秒
+ */
+public final class CacheStats {
+
+  private final String id;
+  private final long hitCount;
+  private final long missCount;
+  private final long putCount;
+  private final long removeCount;
+  private final long clearCount;
+  private final long evictionCount;
+  private final long loadCount;
+  private final long totalGetTime;
+  private final long totalLoadTime;
+  private final int size;
+
+  public CacheStats(String id, long hitCount, long missCount, long putCount, long removeCount, long clearCount,
+      long evictionCount, long loadCount, long totalGetTime, long totalLoadTime, int size) {
+    this.id = id;
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.putCount = putCount;
+    this.removeCount = removeCount;
+    this.clearCount = clearCount;
+    this.evictionCount = evictionCount;
+    this.loadCount = loadCount;
+    this.totalGetTime = totalGetTime;
+    this.totalLoadTime = totalLoadTime;
+    this.size = size;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * 读取次数， 即命中次数与未命中次数之和
+   */
+  public long getRequestCount() {
+    return hitCount + missCount;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * 命中率， 没有读取过时为 1
+   */
+  public double getHitRatio() {
+    long requestCount = getRequestCount();
+    return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  public long getPutCount() {
+    return putCount;
+  }
+
+  public long getRemoveCount() {
+    return removeCount;
+  }
+
+  public long getClearCount() {
+    return clearCount;
+  }
+
+  /**
+   * 淘汰策略移除的对象个数， 淘汰装饰器没有实现 {@link EvictingCache} 时为 0
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * 未命中后查询数据库的次数
+   */
+  public long getLoadCount() {
+    return loadCount;
+  }
+
+  public long getTotalGetTime() {
+    return totalGetTime;
+  }
+
+  public double getAverageGetTime() {
+    long requestCount = getRequestCount();
+    return requestCount == 0 ? 0.0 : (double) totalGetTime / requestCount;
+  }
+
+  public long getTotalLoadTime() {
+    return totalLoadTime;
+  }
+
+  public double getAverageLoadTime() {
+    return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats [id=" + id
+        + ", hitCount=" + hitCount
+        + ", missCount=" + missCount
+        + ", hitRatio=" + getHitRatio()
+        + ", putCount=" + putCount
+        + ", removeCount=" + removeCount
+        + ", clearCount=" + clearCount
+        + ", evictionCount=" + evictionCount
+        + ", loadCount=" + loadCount
+        + ", averageGetTime=" + getAverageGetTime()
+        + ", averageLoadTime=" + getAverageLoadTime()
+        + ", size=" + size + "]";
+  }
+
+}
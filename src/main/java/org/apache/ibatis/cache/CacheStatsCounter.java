@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 线程安全的缓存统计计数器， 使用 {@link LongAdder} 分段计数， 高并发时各线程不会竞争同一个变量
+ */
+public class CacheStatsCounter {
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder putCount = new LongAdder();
+  private final LongAdder removeCount = new LongAdder();
+  private final LongAdder clearCount = new LongAdder();
+  private final LongAdder loadCount = new LongAdder();
+  private final LongAdder totalGetTime = new LongAdder();
+  private final LongAdder totalLoadTime = new LongAdder();
+  private final LongSupplier evictionCount;
+
+  public CacheStatsCounter() {
+    this(() -> 0L);
+  }
+
+  /**
+   * @param evictionCount 读取淘汰次数， 由淘汰装饰器自己计数
+   */
+  public CacheStatsCounter(LongSupplier evictionCount) {
+    this.evictionCount = evictionCount;
+  }
+
+  public void recordHit(long getTime) {
+    hitCount.increment();
+    totalGetTime.add(getTime);
+  }
+
+  public void recordMiss(long getTime) {
+    missCount.increment();
+    totalGetTime.add(getTime);
+  }
+
+  public void recordPut() {
+    putCount.increment();
+  }
+
+  public void recordRemove() {
+    removeCount.increment();
+  }
+
+  public void recordClear() {
+    clearCount.increment();
+  }
+
+  /**
+   * 记录一次未命中后的数据库查询
+   */
+  public void recordLoad(long loadTime) {
+    loadCount.increment();
+    totalLoadTime.add(loadTime);
+  }
+
+  /**
+   * 当前命中率， 没有读取过时为 1
+   */
+  public double getHitRatio() {
+    long hits = hitCount.sum();
+    long requests = hits + missCount.sum();
+    return requests == 0 ? 1.0 : (double) hits / requests;
+  }
+
+  /**
+   * 各计数器分别读取， 并发修改时快照中的数值之间可能略有偏差
+   */
+  public CacheStats snapshot(String id, int size) {
+    return new CacheStats(id, hitCount.sum(), missCount.sum(), putCount.sum(), removeCount.sum(), clearCount.sum(),
+        evictionCount.getAsLong(), loadCount.sum(), totalGetTime.sum(), totalLoadTime.sum(), size);
+  }
+
+}
@@ -0,0 +1,32 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 计算缓存对象的权重， 供按权重限制容量的淘汰装饰器（{@link org.apache.ibatis.cache.decorators.LruCache}、
+ * {@link org.apache.ibatis.cache.decorators.FifoCache}）使用。
+ * 实现类需要提供无参构造方法， 并且可以被多个线程同时使用
+ */
+public interface CacheWeigher {
+
+  /**
+   * @param key 缓存的 key
+   * @param value 缓存的对象， 读写缓存时为序列化后的 byte[]， 使用堆外内存时为 {@link java.nio.ByteBuffer}
+   * @return 权重， 不能为负数
+   */
+  long weigh(Object key, Object value);
+
+}
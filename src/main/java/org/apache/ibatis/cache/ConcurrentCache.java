@@ -0,0 +1,26 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 标记接口： 实现类自身即可安全地被多线程并发访问
+ *
+ * 当 {@link org.apache.ibatis.mapping.CacheBuilder} 所使用的装饰器全部实现了该接口时，
+ * 不再使用 {@link org.apache.ibatis.cache.decorators.SynchronizedCache} 进行全局加锁
+ */
+public interface ConcurrentCache extends Cache {
+
+}
@@ -0,0 +1,107 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.ReflectorFactory;
+
+/**
+ * 默认的权重计算方式， 以字节数估算缓存对象占用的内存：
+ * <ul>
+ *   <li>读写缓存中序列化后的 ByteBuffer 和 byte[] 按实际长度计算</li>
+ *   <li>结果列表按第一个元素估算单行大小， 乘以列表长度， 不逐个遍历</li>
+ *   <li>结果对象按 {@link org.apache.ibatis.reflection.Reflector} 中可读属性的个数估算， 每个属性计为一个引用加一个小对象</li>
+ * </ul>
+ * 估算值只用于相对比较和容量控制， 并不精确
+ */
+public class EstimatedSizeWeigher implements CacheWeigher {
+
+  private static final long OBJECT_HEADER = 16;
+  private static final long REFERENCE = 8;
+  // 包装类型、日期等小对象
+  private static final long SMALL_OBJECT = 24;
+  private static final long COLLECTION_OVERHEAD = 64;
+  private static final long MAP_ENTRY = 32;
+
+  private final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  private final ConcurrentMap<Class<?>, Long> beanWeights = new ConcurrentHashMap<>();
+
+  @Override
+  public long weigh(Object key, Object value) {
+    if (value instanceof ByteBuffer) {
+      return COLLECTION_OVERHEAD + ((ByteBuffer) value).capacity();
+    }
+    if (value instanceof Collection) {
+      final Collection<?> rows = (Collection<?>) value;
+      if (rows.isEmpty()) {
+        return COLLECTION_OVERHEAD;
+      }
+      return COLLECTION_OVERHEAD + rows.size() * (REFERENCE + estimate(rows.iterator().next()));
+    }
+    return estimate(value);
+  }
+
+  private long estimate(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof CharSequence) {
+      return OBJECT_HEADER + 24 + 2L * ((CharSequence) value).length();
+    }
+    if (value instanceof Number || value instanceof Boolean || value instanceof Character
+        || value instanceof Date || value instanceof Enum) {
+      return SMALL_OBJECT;
+    }
+    if (value instanceof byte[]) {
+      return OBJECT_HEADER + ((byte[]) value).length;
+    }
+    if (value.getClass().isArray()) {
+      return OBJECT_HEADER + (long) Array.getLength(value) * REFERENCE;
+    }
+    if (value instanceof Map) {
+      // resultType="map" 时每列一个 Entry， 值按小对象计算
+      return COLLECTION_OVERHEAD + ((Map<?, ?>) value).size() * (MAP_ENTRY + SMALL_OBJECT);
+    }
+    if (value instanceof Collection) {
+      return COLLECTION_OVERHEAD + ((Collection<?>) value).size() * (REFERENCE + SMALL_OBJECT);
+    }
+    return estimateBean(value.getClass());
+  }
+
+  private long estimateBean(Class<?> type) {
+    Long weight = beanWeights.get(type);
+    if (weight == null) {
+      long properties;
+      try {
+        properties = reflectorFactory.findForClass(type).getGetablePropertyNames().length;
+      } catch (RuntimeException e) {
+        properties = 1;
+      }
+      weight = OBJECT_HEADER + properties * (REFERENCE + SMALL_OBJECT);
+      beanWeights.putIfAbsent(type, weight);
+    }
+    return weight;
+  }
+
+}
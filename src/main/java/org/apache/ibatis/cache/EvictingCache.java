@@ -0,0 +1,28 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 会按淘汰策略移除对象的缓存， 统计被淘汰的对象个数， 供 {@link CacheStats} 使用
+ */
+public interface EvictingCache extends Cache {
+
+  /**
+   * @return 创建以来淘汰的对象个数， 不包括 removeObject 和 clear 移除的
+   */
+  long getEvictionCount();
+
+}
@@ -0,0 +1,163 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+
+/**
+ * 记录二级缓存中每个 key 依赖的表， 修改某些表时只移除依赖这些表的缓存对象。
+ * 同一个 Configuration 中的所有缓存共用一个实例， 因此修改会同时失效其他命名空间中依赖相同表的缓存对象
+ */
+public class TableDependencyTracker {
+
+  /**
+   * 依赖无法确定时使用， 修改任何表都会移除
+   */
+  public static final String ANY_TABLE = "*";
+
+  // 每个缓存最多记录的 key 个数， 被淘汰策略移除的 key 要到依赖的表被修改时才会清理， 超过后清空整个缓存
+  private static final int MAX_TRACKED_KEYS = 65536;
+
+  private final Map<Cache, Dependencies> dependencies = new ConcurrentHashMap<>();
+
+  /**
+   * 记录 key 依赖的表
+   *
+   * @param tables 为 null 时表示无法确定
+   */
+  public void register(Cache cache, Object key, Set<String> tables) {
+    Dependencies cacheDependencies = dependencies.computeIfAbsent(cache, k -> new Dependencies());
+    if (!cacheDependencies.add(key, tables)) {
+      cacheDependencies.clear();
+      cache.clear();
+    }
+  }
+
+  /**
+   * 移除所有缓存中依赖这些表的对象
+   */
+  public void invalidate(Collection<String> tables) {
+    for (Map.Entry<Cache, Dependencies> entry : dependencies.entrySet()) {
+      Cache cache = entry.getKey();
+      List<Object> keys = entry.getValue().remove(tables);
+      if (keys.isEmpty()) {
+        continue;
+      }
+      // BlockingCache 的 removeObject 只释放锁， 只能清空
+      if (cache instanceof BlockingCache) {
+        entry.getValue().clear();
+        cache.clear();
+        continue;
+      }
+      for (Object key : keys) {
+        cache.removeObject(key);
+      }
+    }
+  }
+
+  /**
+   * 缓存被整体清空时调用
+   */
+  public void clear(Cache cache) {
+    Dependencies cacheDependencies = dependencies.get(cache);
+    if (cacheDependencies != null) {
+      cacheDependencies.clear();
+    }
+  }
+
+  /**
+   * 记录的 key 个数
+   */
+  public int getTrackedKeys(Cache cache) {
+    Dependencies cacheDependencies = dependencies.get(cache);
+    return cacheDependencies == null ? 0 : cacheDependencies.size();
+  }
+
+  private static class Dependencies {
+    private final Map<String, Set<Object>> keysByTable = new HashMap<>();
+    private final Map<Object, Set<String>> tablesByKey = new HashMap<>();
+
+    /**
+     * 超过记录上限时返回 false
+     */
+    synchronized boolean add(Object key, Set<String> tables) {
+      Set<String> keyTables = tables == null ? Collections.singleton(ANY_TABLE) : tables;
+      Set<String> previous = tablesByKey.put(key, keyTables);
+      if (previous != null) {
+        unlink(key, previous);
+      }
+      for (String table : keyTables) {
+        keysByTable.computeIfAbsent(table, k -> new HashSet<>()).add(key);
+      }
+      return tablesByKey.size() <= MAX_TRACKED_KEYS;
+    }
+
+    synchronized List<Object> remove(Collection<String> tables) {
+      List<Object> removed = new ArrayList<>();
+      removeKeys(ANY_TABLE, removed);
+      for (String table : tables) {
+        removeKeys(table, removed);
+      }
+      return removed;
+    }
+
+    synchronized void clear() {
+      keysByTable.clear();
+      tablesByKey.clear();
+    }
+
+    synchronized int size() {
+      return tablesByKey.size();
+    }
+
+    private void removeKeys(String table, List<Object> removed) {
+      Set<Object> keys = keysByTable.remove(table);
+      if (keys == null) {
+        return;
+      }
+      for (Object key : keys) {
+        Set<String> keyTables = tablesByKey.remove(key);
+        if (keyTables != null) {
+          unlink(key, keyTables);
+          removed.add(key);
+        }
+      }
+    }
+
+    private void unlink(Object key, Set<String> tables) {
+      for (String table : tables) {
+        Set<Object> keys = keysByTable.get(table);
+        if (keys != null) {
+          keys.remove(key);
+          if (keys.isEmpty()) {
+            keysByTable.remove(table);
+          }
+        }
+      }
+    }
+  }
+
+}
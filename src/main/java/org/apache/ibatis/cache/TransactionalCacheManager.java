@@ -16,9 +16,13 @@
 package org.apache.ibatis.cache;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationEvent;
 
 /**
  * @author Clinton Begin
@@ -26,9 +30,61 @@ import org.apache.ibatis.cache.decorators.TransactionalCache;
 public class TransactionalCacheManager {
 
   private final Map<Cache, TransactionalCache> transactionalCaches = new HashMap<>();
+  private final CacheInvalidationBus cacheInvalidationBus;
+  // 按表失效时使用， 为 null 时只能清空整个缓存
+  private final TableDependencyTracker tableDependencyTracker;
+  // 提交时需要失效的表
+  private final Set<String> tablesToInvalidateOnCommit = new HashSet<>();
+  // 提交时需要记录的 key 及其依赖的表
+  private final Map<Cache, Map<Object, Set<String>>> dependenciesToAddOnCommit = new HashMap<>();
+
+  public TransactionalCacheManager() {
+    this(null);
+  }
+
+  public TransactionalCacheManager(CacheInvalidationBus cacheInvalidationBus) {
+    this(cacheInvalidationBus, null);
+  }
+
+  public TransactionalCacheManager(CacheInvalidationBus cacheInvalidationBus, TableDependencyTracker tableDependencyTracker) {
+    this.cacheInvalidationBus = cacheInvalidationBus;
+    this.tableDependencyTracker = tableDependencyTracker;
+  }
 
   public void clear(Cache cache) {
     getTransactionalCache(cache).clear();
+    dependenciesToAddOnCommit.remove(cache);
+  }
+
+  /**
+   * 提交时移除所有缓存中依赖这些表的对象； 没有设置 TableDependencyTracker 时不会调用
+   */
+  public void invalidateTables(Set<String> tables) {
+    tablesToInvalidateOnCommit.addAll(tables);
+  }
+
+  /**
+   * 当前事务是否修改了这些表， 修改过的表在提交前不应从缓存中读取
+   *
+   * @param tables 为 null 时表示无法确定， 只要修改过任何表即返回 true
+   */
+  public boolean isInvalidated(Set<String> tables) {
+    if (tablesToInvalidateOnCommit.isEmpty()) {
+      return false;
+    }
+    if (tables == null) {
+      return true;
+    }
+    for (String table : tables) {
+      if (tablesToInvalidateOnCommit.contains(table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public TableDependencyTracker getTableDependencyTracker() {
+    return tableDependencyTracker;
   }
 
   public Object getObject(Cache cache, CacheKey key) {
@@ -39,16 +95,64 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  /**
+   * 写入缓存， 并在提交时记录其依赖的表
+   *
+   * @param tables 为 null 时表示无法确定
+   */
+  public void putObject(Cache cache, CacheKey key, Object value, Set<String> tables) {
+    putObject(cache, key, value);
+    if (tableDependencyTracker != null) {
+      dependenciesToAddOnCommit.computeIfAbsent(cache, k -> new HashMap<>()).put(key, tables);
+    }
+  }
+
+  /**
+   * 当前事务是否已清空该缓存， 提交时才会真正清空
+   */
+  public boolean isCleared(Cache cache) {
+    TransactionalCache txCache = transactionalCaches.get(cache);
+    return txCache != null && txCache.isClearOnCommit();
+  }
+
   public void commit() {
-    for (TransactionalCache txCache : transactionalCaches.values()) {
+    // 先按表失效， 再写入本事务查询的结果
+    if (!tablesToInvalidateOnCommit.isEmpty()) {
+      tableDependencyTracker.invalidate(tablesToInvalidateOnCommit);
+      if (cacheInvalidationBus != null) {
+        cacheInvalidationBus.publish(CacheInvalidationEvent.invalidateTables(tablesToInvalidateOnCommit));
+      }
+    }
+    for (Map.Entry<Cache, TransactionalCache> entry : transactionalCaches.entrySet()) {
+      TransactionalCache txCache = entry.getValue();
+      boolean cleared = txCache.isClearOnCommit();
       txCache.commit();
+      if (cleared && tableDependencyTracker != null) {
+        tableDependencyTracker.clear(entry.getKey());
+      }
+      // 本地清空之后再通知其他节点
+      if (cleared && cacheInvalidationBus != null) {
+        cacheInvalidationBus.publish(CacheInvalidationEvent.flush(entry.getKey().getId()));
+      }
     }
+    for (Map.Entry<Cache, Map<Object, Set<String>>> entry : dependenciesToAddOnCommit.entrySet()) {
+      for (Map.Entry<Object, Set<String>> dependency : entry.getValue().entrySet()) {
+        tableDependencyTracker.register(entry.getKey(), dependency.getKey(), dependency.getValue());
+      }
+    }
+    resetDependencies();
   }
 
   public void rollback() {
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.rollback();
     }
+    resetDependencies();
+  }
+
+  private void resetDependencies() {
+    tablesToInvalidateOnCommit.clear();
+    dependenciesToAddOnCommit.clear();
   }
 
   private TransactionalCache getTransactionalCache(Cache cache) {
@@ -23,6 +23,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStatsCounter;
 
 /**
  * Simple blocking decorator 
@@ -96,6 +97,11 @@ public class BlockingCache implements Cache {
     delegate.clear();
   }
 
+  @Override
+  public CacheStatsCounter getStatsCounter() {
+    return delegate.getStatsCounter();
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
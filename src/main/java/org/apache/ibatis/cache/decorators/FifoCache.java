@@ -16,19 +16,26 @@
 package org.apache.ibatis.cache.decorators;
 
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.EstimatedSizeWeigher;
+import org.apache.ibatis.cache.EvictingCache;
 
 /**
  * FIFO (first in, first out) cache decorator
  *
- * 先入先出的缓存装饰器
+ * 先入先出的缓存装饰器。
+ * 除 size 限制对象个数外， 设置 maxWeight 后还按 {@link CacheWeigher} 计算的总权重限制容量
  *
  * @author Clinton Begin
  */
-public class FifoCache implements Cache {
+public class FifoCache implements EvictingCache {
 
   // 被装饰的 Cache
   private final Cache delegate;
@@ -36,6 +43,14 @@ public class FifoCache implements Cache {
   private final Deque<Object> keyList;
   // 大小， 超过该大小就会进行清理， 清除最先插入的
   private int size;
+  // 权重计算方式及上限， maxWeight 不大于 0 时不按权重限制
+  private CacheWeigher weigher;
+  private long maxWeight;
+  private long totalWeight;
+  // 按权重限制时记录每个 key 的权重
+  private final Map<Object, Long> weights = new HashMap<>();
+  // 淘汰的对象个数
+  private final LongAdder evictionCount = new LongAdder();
 
   public FifoCache(Cache delegate) {
     this.delegate = delegate;
@@ -57,11 +72,43 @@ public class FifoCache implements Cache {
     this.size = size;
   }
 
+  /**
+   * 设置总权重上限， 未设置 weigher 时使用 {@link EstimatedSizeWeigher}
+   */
+  public void setMaxWeight(long maxWeight) {
+    this.maxWeight = maxWeight;
+    if (weigher == null) {
+      weigher = new EstimatedSizeWeigher();
+    }
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public void setWeigher(CacheWeigher weigher) {
+    this.weigher = weigher;
+  }
+
+  public CacheWeigher getWeigher() {
+    return weigher;
+  }
+
+  /**
+   * 当前缓存对象的总权重
+   */
+  public long getTotalWeight() {
+    return totalWeight;
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     // 检查并清理缓存
     cycleKeyList(key);
     delegate.putObject(key, value);
+    if (isWeighted()) {
+      addWeight(key, weigher.weigh(key, value));
+    }
   }
 
   @Override
@@ -71,6 +118,7 @@ public class FifoCache implements Cache {
 
   @Override
   public Object removeObject(Object key) {
+    removeWeight(key);
     return delegate.removeObject(key);
   }
 
@@ -78,6 +126,13 @@ public class FifoCache implements Cache {
   public void clear() {
     delegate.clear();
     keyList.clear();
+    weights.clear();
+    totalWeight = 0;
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.sum();
   }
 
   @Override
@@ -93,8 +148,38 @@ public class FifoCache implements Cache {
     keyList.addLast(key);// 添加当前 key
     if (keyList.size() > size) { // 达到清理的大小
       Object oldestKey = keyList.removeFirst();
+      removeWeight(oldestKey);
       delegate.removeObject(oldestKey);
+      evictionCount.increment();
     }
   }
 
+  /**
+   * 记录权重， 超过总权重时从最先插入的一端开始移除， 单个对象超过上限时自身也会被移除
+   */
+  private void addWeight(Object key, long weight) {
+    Long previous = weights.put(key, weight);
+    totalWeight += previous == null ? weight : weight - previous;
+    while (totalWeight > maxWeight && !keyList.isEmpty()) {
+      Object oldestKey = keyList.removeFirst();
+      if (removeWeight(oldestKey)) {
+        delegate.removeObject(oldestKey);
+        evictionCount.increment();
+      }
+    }
+  }
+
+  private boolean removeWeight(Object key) {
+    Long weight = weights.remove(key);
+    if (weight == null) {
+      return false;
+    }
+    totalWeight -= weight;
+    return true;
+  }
+
+  private boolean isWeighted() {
+    return weigher != null && maxWeight > 0;
+  }
+
 }
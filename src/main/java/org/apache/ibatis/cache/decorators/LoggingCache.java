@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,25 +15,51 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatsCounter;
+import org.apache.ibatis.cache.EvictingCache;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
+ * 日志和统计装饰器， 输出命中率并记录命中、未命中、读取耗时等信息， 可以通过 {@link Cache#getStats()} 获取。
+ * 统计使用分段计数器， 可以被多个线程同时更新， 可以不加 {@link SynchronizedCache} 使用
+ *
  * @author Clinton Begin
  */
 public class LoggingCache implements Cache {
 
+  private static final AtomicIntegerFieldUpdater<LoggingCache> REQUESTS = AtomicIntegerFieldUpdater.newUpdater(LoggingCache.class, "requests");
+  private static final AtomicIntegerFieldUpdater<LoggingCache> HITS = AtomicIntegerFieldUpdater.newUpdater(LoggingCache.class, "hits");
+
   private final Log log;
   private final Cache delegate;
-  protected int requests = 0;
-  protected int hits = 0;
+  private final CacheStatsCounter statsCounter;
+  /**
+   * @deprecated 请使用 {@link #getStats()}
+   */
+  @Deprecated
+  protected volatile int requests = 0;
+  /**
+   * @deprecated 请使用 {@link #getStats()}
+   */
+  @Deprecated
+  protected volatile int hits = 0;
 
   public LoggingCache(Cache delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * @param evictingCache 提供淘汰次数的装饰器， 可以为 null
+   */
+  public LoggingCache(Cache delegate, EvictingCache evictingCache) {
     this.delegate = delegate;
     this.log = LogFactory.getLog(getId());
+    this.statsCounter = evictingCache == null ? new CacheStatsCounter() : new CacheStatsCounter(evictingCache::getEvictionCount);
   }
 
   @Override
@@ -49,14 +75,20 @@ public class LoggingCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     delegate.putObject(key, object);
+    statsCounter.recordPut();
   }
 
   @Override
   public Object getObject(Object key) {
-    requests++;
+    REQUESTS.incrementAndGet(this);
+    final long start = System.nanoTime();
     final Object value = delegate.getObject(key);
+    final long getTime = System.nanoTime() - start;
     if (value != null) {
-      hits++;
+      HITS.incrementAndGet(this);
+      statsCounter.recordHit(getTime);
+    } else {
+      statsCounter.recordMiss(getTime);
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
@@ -66,14 +98,21 @@ public class LoggingCache implements Cache {
 
   @Override
   public Object removeObject(Object key) {
+    statsCounter.recordRemove();
     return delegate.removeObject(key);
   }
 
   @Override
   public void clear() {
+    statsCounter.recordClear();
     delegate.clear();
   }
 
+  @Override
+  public CacheStatsCounter getStatsCounter() {
+    return statsCounter;
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
@@ -90,7 +129,7 @@ public class LoggingCache implements Cache {
   }
 
   private double getHitRatio() {
-    return (double) hits / (double) requests;
+    return statsCounter.getHitRatio();
   }
 
 }
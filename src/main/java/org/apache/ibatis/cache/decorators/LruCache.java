@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,27 +15,39 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.EstimatedSizeWeigher;
+import org.apache.ibatis.cache.EvictingCache;
 
 /**
  * Lru (least recently used) cache decorator
  *
- * 最近最少使用的缓存装饰类
+ * 最近最少使用的缓存装饰类。
+ * 除 size 限制对象个数外， 设置 maxWeight 后还按 {@link CacheWeigher} 计算的总权重限制容量
  *
  * @author Clinton Begin
  */
-public class LruCache implements Cache {
+public class LruCache implements EvictingCache {
 
   // 被装饰的 Cache
   private final Cache delegate;
-  // LinkedHashMap 来记录换成对象
-  private Map<Object, Object> keyMap;
+  // LinkedHashMap 来记录换成对象， value 为对象的权重
+  private Map<Object, Long> keyMap;
   // 最近最少使用的 key
   private Object eldestKey;
+  // 权重计算方式及上限， maxWeight 不大于 0 时不按权重限制
+  private CacheWeigher weigher;
+  private long maxWeight;
+  private long totalWeight;
+  // 淘汰的对象个数
+  private final LongAdder evictionCount = new LongAdder();
 
   /**
    * 默认大小为 1024
@@ -63,24 +75,55 @@ public class LruCache implements Cache {
    */
   public void setSize(final int size) {
     // 第三个参数 accessOrder 为 true, 访问的时候会改变其顺序
-    keyMap = new LinkedHashMap<Object, Object>(size, .75F, true) {
+    keyMap = new LinkedHashMap<Object, Long>(size, .75F, true) {
       private static final long serialVersionUID = 4267176411845948333L;
       // 重写 removeEldestEntry
       @Override
-      protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+      protected boolean removeEldestEntry(Map.Entry<Object, Long> eldest) {
         boolean tooBig = size() > size;
         if (tooBig) {
           eldestKey = eldest.getKey();
+          totalWeight -= eldest.getValue();
         }
         return tooBig;
       }
     };
+    totalWeight = 0;
+  }
+
+  /**
+   * 设置总权重上限， 未设置 weigher 时使用 {@link EstimatedSizeWeigher}
+   */
+  public void setMaxWeight(long maxWeight) {
+    this.maxWeight = maxWeight;
+    if (weigher == null) {
+      weigher = new EstimatedSizeWeigher();
+    }
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public void setWeigher(CacheWeigher weigher) {
+    this.weigher = weigher;
+  }
+
+  public CacheWeigher getWeigher() {
+    return weigher;
+  }
+
+  /**
+   * 当前缓存对象的总权重
+   */
+  public long getTotalWeight() {
+    return totalWeight;
   }
 
   @Override
   public void putObject(Object key, Object value) {
     delegate.putObject(key, value);
-    cycleKeyList(key);// 检查并清理缓存
+    cycleKeyList(key, value);// 检查并清理缓存
   }
 
   @Override
@@ -91,6 +134,10 @@ public class LruCache implements Cache {
 
   @Override
   public Object removeObject(Object key) {
+    Long weight = keyMap.remove(key);
+    if (weight != null) {
+      totalWeight -= weight;
+    }
     return delegate.removeObject(key);
   }
 
@@ -98,6 +145,12 @@ public class LruCache implements Cache {
   public void clear() {
     delegate.clear();
     keyMap.clear();
+    totalWeight = 0;
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.sum();
   }
 
   @Override
@@ -105,12 +158,30 @@ public class LruCache implements Cache {
     return null;
   }
 
-  private void cycleKeyList(Object key) {
-    keyMap.put(key, key);
+  private void cycleKeyList(Object key, Object value) {
+    long weight = isWeighted() ? weigher.weigh(key, value) : 0L;
+    Long previous = keyMap.put(key, weight);
+    totalWeight += previous == null ? weight : weight - previous;
     if (eldestKey != null) {// eldestKey 非空则进行移除
       delegate.removeObject(eldestKey);
+      evictionCount.increment();
       eldestKey = null;
     }
+    // 超过总权重时从最近最少使用的一端开始移除， 单个对象超过上限时自身也会被移除
+    if (isWeighted()) {
+      Iterator<Map.Entry<Object, Long>> iterator = keyMap.entrySet().iterator();
+      while (totalWeight > maxWeight && iterator.hasNext()) {
+        Map.Entry<Object, Long> eldest = iterator.next();
+        iterator.remove();
+        totalWeight -= eldest.getValue();
+        delegate.removeObject(eldest.getKey());
+        evictionCount.increment();
+      }
+    }
+  }
+
+  private boolean isWeighted() {
+    return weigher != null && maxWeight > 0;
   }
 
 }
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,18 +15,42 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
 
 /**
+ * 定时清理的缓存装饰器
+ *
+ * clearInterval 到期后清空整个缓存； 设置 timeToLive 后每个缓存对象单独过期，
+ * 过期时间减去 [0, timeToLiveJitter] 内的随机值， 避免同一时刻写入的对象同时失效。
+ * 设置 refreshAhead 后， 对象在过期前 refreshAhead 毫秒内被访问时， 只让其中一次访问未命中去重新加载，
+ * 其余访问在重新写入或过期前仍然命中旧值。
+ * 可以被多个线程同时访问， 到期时只有一个线程负责清空或清理
+ *
  * @author Clinton Begin
  */
 public class ScheduledCache implements Cache {
 
+  private static final AtomicLongFieldUpdater<ScheduledCache> LAST_CLEAR = AtomicLongFieldUpdater.newUpdater(ScheduledCache.class, "lastClear");
+  private static final AtomicLongFieldUpdater<ScheduledCache> NEXT_PURGE = AtomicLongFieldUpdater.newUpdater(ScheduledCache.class, "nextPurge");
+
   private final Cache delegate;
   protected long clearInterval;
-  protected long lastClear;
+  protected volatile long lastClear;
+  // 单个对象的存活时间、 随机抖动和提前刷新的时间， 单位毫秒， 不大于 0 时不启用
+  protected long timeToLive;
+  protected long timeToLiveJitter;
+  protected long refreshAhead;
+  // 每个 key 的过期信息
+  private final Map<Object, Expiry> expiries = new ConcurrentHashMap<>();
+  // 下次清理过期信息的时间， 被淘汰策略移除的 key 的过期信息也在此时清理
+  private volatile long nextPurge;
 
   public ScheduledCache(Cache delegate) {
     this.delegate = delegate;
@@ -34,10 +58,26 @@ public class ScheduledCache implements Cache {
     this.lastClear = System.currentTimeMillis();
   }
 
+  /**
+   * 清空整个缓存的间隔， 不大于 0 时不整体清空
+   */
   public void setClearInterval(long clearInterval) {
     this.clearInterval = clearInterval;
   }
 
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+    this.nextPurge = System.currentTimeMillis() + timeToLive;
+  }
+
+  public void setTimeToLiveJitter(long timeToLiveJitter) {
+    this.timeToLiveJitter = timeToLiveJitter;
+  }
+
+  public void setRefreshAhead(long refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
   @Override
   public String getId() {
     return delegate.getId();
@@ -46,29 +86,55 @@ public class ScheduledCache implements Cache {
   @Override
   public int getSize() {
     clearWhenStale();
+    purgeExpired();
     return delegate.getSize();
   }
 
   @Override
   public void putObject(Object key, Object object) {
     clearWhenStale();
+    if (timeToLive > 0) {
+      purgeExpired();
+      expiries.put(key, newExpiry());
+    }
     delegate.putObject(key, object);
   }
 
   @Override
   public Object getObject(Object key) {
-    return clearWhenStale() ? null : delegate.getObject(key);
+    if (clearWhenStale()) {
+      return null;
+    }
+    if (timeToLive > 0) {
+      Expiry expiry = expiries.get(key);
+      if (expiry != null) {
+        long now = System.currentTimeMillis();
+        if (now >= expiry.expireAt) {
+          if (expiries.remove(key, expiry)) {
+            delegate.removeObject(key);
+          }
+          return null;
+        }
+        // 进入提前刷新窗口， 仅第一个访问者未命中
+        if (now >= expiry.refreshAt && expiry.refreshing.compareAndSet(false, true)) {
+          return null;
+        }
+      }
+    }
+    return delegate.getObject(key);
   }
 
   @Override
   public Object removeObject(Object key) {
     clearWhenStale();
+    expiries.remove(key);
     return delegate.removeObject(key);
   }
 
   @Override
   public void clear() {
     lastClear = System.currentTimeMillis();
+    expiries.clear();
     delegate.clear();
   }
 
@@ -88,11 +154,58 @@ public class ScheduledCache implements Cache {
   }
 
   private boolean clearWhenStale() {
-    if (System.currentTimeMillis() - lastClear > clearInterval) {
-      clear();
+    long last = lastClear;
+    long now = System.currentTimeMillis();
+    if (clearInterval > 0 && now - last > clearInterval) {
+      // 多个线程同时发现到期时只清空一次
+      if (LAST_CLEAR.compareAndSet(this, last, now)) {
+        expiries.clear();
+        delegate.clear();
+      }
       return true;
     }
     return false;
   }
 
+  private Expiry newExpiry() {
+    long ttl = timeToLive;
+    if (timeToLiveJitter > 0) {
+      ttl -= ThreadLocalRandom.current().nextLong(Math.min(timeToLiveJitter, timeToLive - 1) + 1);
+    }
+    long expireAt = System.currentTimeMillis() + ttl;
+    long refreshAt = refreshAhead > 0 ? expireAt - refreshAhead : Long.MAX_VALUE;
+    return new Expiry(expireAt, refreshAt);
+  }
+
+  /**
+   * 每隔 timeToLive 清理一次已过期的对象
+   */
+  private void purgeExpired() {
+    if (timeToLive <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long next = nextPurge;
+    if (now < next || !NEXT_PURGE.compareAndSet(this, next, now + timeToLive)) {
+      return;
+    }
+    for (Map.Entry<Object, Expiry> entry : expiries.entrySet()) {
+      if (now >= entry.getValue().expireAt && expiries.remove(entry.getKey(), entry.getValue())) {
+        delegate.removeObject(entry.getKey());
+      }
+    }
+  }
+
+  private static class Expiry {
+    private final long expireAt;
+    private final long refreshAt;
+    // 是否已有访问者负责重新加载
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Expiry(long expireAt, long refreshAt) {
+      this.expireAt = expireAt;
+      this.refreshAt = refreshAt;
+    }
+  }
+
 }
@@ -15,29 +15,40 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
 import org.apache.ibatis.io.Resources;
 
 /**
+ * 读写缓存： 存入序列化后的副本， 每次读取都反序列化出新的对象。
+ * 序列化后的数据以 byte[] 保存， 被装饰的缓存可以再次序列化或分发； offHeap 为 true 时以堆外的 ByteBuffer 保存
+ *
  * @author Clinton Begin
  */
 public class SerializedCache implements Cache {
 
   private final Cache delegate;
+  private final CacheSerializer serializer;
+  private final boolean offHeap;
 
   public SerializedCache(Cache delegate) {
+    this(delegate, new JdkCacheSerializer(), false);
+  }
+
+  public SerializedCache(Cache delegate, CacheSerializer serializer, boolean offHeap) {
     this.delegate = delegate;
+    this.serializer = serializer;
+    this.offHeap = offHeap;
   }
 
   @Override
@@ -53,7 +64,7 @@ public class SerializedCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     if (object == null || object instanceof Serializable) {
-      delegate.putObject(key, serialize((Serializable) object));
+      delegate.putObject(key, serialize(object));
     } else {
       throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
     }
@@ -62,7 +73,14 @@ public class SerializedCache implements Cache {
   @Override
   public Object getObject(Object key) {
     Object object = delegate.getObject(key);
-    return object == null ? null : deserialize((byte[]) object);
+    if (object == null) {
+      return null;
+    }
+    if (object instanceof byte[]) {
+      return serializer.deserialize(ByteBuffer.wrap((byte[]) object));
+    }
+    // duplicate 得到独立的 position， 多个线程可以同时读取同一份数据
+    return serializer.deserialize(((ByteBuffer) object).duplicate());
   }
 
   @Override
@@ -90,26 +108,26 @@ public class SerializedCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) {
-    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-         ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-      oos.writeObject(value);
-      oos.flush();
-      return bos.toByteArray();
-    } catch (Exception e) {
-      throw new CacheException("Error serializing object.  Cause: " + e, e);
-    }
+  public CacheSerializer getSerializer() {
+    return serializer;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
   }
 
-  private Serializable deserialize(byte[] value) {
-    Serializable result;
-    try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
-         ObjectInputStream ois = new CustomObjectInputStream(bis)) {
-      result = (Serializable) ois.readObject();
-    } catch (Exception e) {
-      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+  private Object serialize(Object value) {
+    final ByteBuffer serialized = serializer.serialize(value);
+    // 序列化器返回的可能是线程复用的缓冲区， 按实际长度复制一份保存
+    if (!offHeap) {
+      final byte[] stored = new byte[serialized.remaining()];
+      serialized.get(stored);
+      return stored;
     }
-    return result;
+    final ByteBuffer stored = ByteBuffer.allocateDirect(serialized.remaining());
+    stored.put(serialized);
+    stored.flip();
+    return stored;
   }
 
   public static class CustomObjectInputStream extends ObjectInputStream {
@@ -0,0 +1,203 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStatsCounter;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+
+/**
+ * 合并并发未命中的缓存装饰器（single-flight）
+ *
+ * 同一个 key 同时未命中时， 只有第一个调用者（leader）执行查询， 其余调用者等待并直接拿到它的结果，
+ * 而不是像 {@link BlockingCache} 那样等到 leader 提交后再读取缓存。
+ * 读写缓存下结果序列化一次， 每个等待者反序列化出自己的副本。
+ * leader 查询失败或等待超过 timeout 时， 等待者各自执行查询。
+ * 执行过修改语句但尚未提交或回滚的会话不参与合并， 避免未提交的修改被其他会话读到。
+ * 参与合并的会话拿到的是 leader 所在事务读到的结果， 在可重复读等隔离级别下可能与自己事务中的快照不同
+ * 该装饰器本身不拦截读写， 由 {@link org.apache.ibatis.executor.CachingExecutor} 调用 {@link #load(Object, Loader)}
+ */
+public class SingleFlightCache implements Cache {
+
+  // leader 未能给出结果
+  private static final Object NO_RESULT = new Object();
+
+  private final Cache delegate;
+  // 为 null 时等待者共享同一个结果对象
+  private final CacheSerializer serializer;
+  // 等待 leader 的超时时间， 不大于 0 时一直等到 leader 结束
+  private long timeout;
+  // 正在执行的查询
+  private final ConcurrentHashMap<Object, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+  public SingleFlightCache(Cache delegate) {
+    this(delegate, null);
+  }
+
+  public SingleFlightCache(Cache delegate, CacheSerializer serializer) {
+    this.delegate = delegate;
+    this.serializer = serializer;
+  }
+
+  /**
+   * 执行或加入 key 对应的查询
+   */
+  public Object load(Object key, Loader loader) throws SQLException {
+    CompletableFuture<Object> flight = new CompletableFuture<>();
+    CompletableFuture<Object> leading = flights.putIfAbsent(key, flight);
+    if (leading == null) {
+      return lead(key, flight, loader);
+    }
+    Object shared = await(key, leading);
+    if (shared == NO_RESULT) {
+      return loader.load();
+    }
+    return serializer == null ? shared : serializer.deserialize(((ByteBuffer) shared).duplicate());
+  }
+
+  /**
+   * 正在等待 key 对应查询的查询个数， 没有进行中的查询时为 -1
+   */
+  public int getNumberOfDependents(Object key) {
+    CompletableFuture<Object> flight = flights.get(key);
+    return flight == null ? -1 : flight.getNumberOfDependents();
+  }
+
+  private Object lead(Object key, CompletableFuture<Object> flight, Loader loader) throws SQLException {
+    Object shared = NO_RESULT;
+    try {
+      Object result = loader.load();
+      if (result != null) {
+        shared = share(result);
+      }
+      return result;
+    } finally {
+      // 先移除再通知， 之后到来的调用者开始新的查询
+      flights.remove(key, flight);
+      flight.complete(shared);
+    }
+  }
+
+  private Object share(Object result) {
+    if (serializer == null) {
+      return result;
+    }
+    try {
+      ByteBuffer serialized = serializer.serialize(result);
+      ByteBuffer copy = ByteBuffer.allocate(serialized.remaining());
+      copy.put(serialized);
+      copy.flip();
+      return copy;
+    } catch (CacheException e) {
+      // 无法复制时等待者各自查询， 结果本身不受影响
+      return NO_RESULT;
+    }
+  }
+
+  private Object await(Object key, CompletableFuture<Object> flight) {
+    try {
+      return timeout > 0 ? flight.get(timeout, TimeUnit.MILLISECONDS) : flight.get();
+    } catch (TimeoutException e) {
+      return NO_RESULT;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheException("Got interrupted while waiting for the query of key " + key + " at the cache " + delegate.getId(), e);
+    } catch (ExecutionException e) {
+      return NO_RESULT;
+    }
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  public CacheSerializer getSerializer() {
+    return serializer;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public CacheStatsCounter getStatsCounter() {
+    return delegate.getStatsCounter();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * 执行查询
+   */
+  @FunctionalInterface
+  public interface Loader {
+    Object load() throws SQLException;
+  }
+
+}
@@ -19,9 +19,11 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictingCache;
 
 /**
  * Soft Reference cache decorator
@@ -29,11 +31,13 @@ import org.apache.ibatis.cache.Cache;
  *
  * @author Clinton Begin
  */
-public class SoftCache implements Cache {
+public class SoftCache implements EvictingCache {
   private final Deque<Object> hardLinksToAvoidGarbageCollection;
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries;
   private final Cache delegate;
   private int numberOfHardLinks;
+  // 被垃圾回收的对象个数
+  private final LongAdder evictionCount = new LongAdder();
 
   public SoftCache(Cache delegate) {
     this.delegate = delegate;
@@ -101,6 +105,11 @@ public class SoftCache implements Cache {
     delegate.clear();
   }
 
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
@@ -110,6 +119,7 @@ public class SoftCache implements Cache {
     SoftEntry sv;
     while ((sv = (SoftEntry) queueOfGarbageCollectedEntries.poll()) != null) {
       delegate.removeObject(sv.key);
+      evictionCount.increment();
     }
   }
 
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheStatsCounter;
 
 /**
  * @author Clinton Begin
@@ -70,6 +71,11 @@ public class SynchronizedCache implements Cache {
     return delegate.equals(obj);
   }
 
+  @Override
+  public CacheStatsCounter getStatsCounter() {
+    return delegate.getStatsCounter();
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
@@ -0,0 +1,437 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.EvictingCache;
+
+/**
+ * W-TinyLFU cache decorator
+ *
+ * 可并发访问的淘汰策略装饰类， 无需 {@link SynchronizedCache}：
+ * <ul>
+ *   <li>缓存对象保存在本类的 ConcurrentHashMap 中， 读操作不加锁， 被装饰的 Cache 只提供 id 和 clear</li>
+ *   <li>读操作只把访问记录写入按线程分段的有损环形缓冲区， 缓冲区满时由抢到锁的线程批量回放</li>
+ *   <li>新对象先进入窗口 LRU（约 1%）， 被挤出后与主区（分段 LRU： probation 20% + protected 80%）
+ *   的淘汰候选比较 {@link FrequencySketch} 估计的访问频率， 频率高者留下</li>
+ * </ul>
+ */
+public class TinyLfuCache implements ConcurrentCache, EvictingCache {
+
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+  private static final int DEAD = 3;
+
+  private static final int READ_BUFFER_SIZE = 16;
+  private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+  private static final int READ_BUFFER_STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+  // 被装饰的 Cache
+  private final Cache delegate;
+  private final ConcurrentMap<Object, Node> data = new ConcurrentHashMap<>();
+  // 保护淘汰策略相关的数据结构（队列、频率统计）
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+
+  private final AccessQueue window = new AccessQueue();
+  private final AccessQueue probation = new AccessQueue();
+  private final AccessQueue protectedQueue = new AccessQueue();
+  private FrequencySketch sketch;
+
+  private int maximumSize;
+  private int windowMaximum;
+  private int protectedMaximum;
+  private int windowSize;
+  private int protectedSize;
+  // 淘汰的对象个数
+  private final LongAdder evictionCount = new LongAdder();
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    for (int i = 0; i < readBuffers.length; i++) {
+      readBuffers[i] = new ReadBuffer();
+    }
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return data.size();
+  }
+
+  public void setSize(final int size) {
+    evictionLock.lock();
+    try {
+      this.maximumSize = Math.max(1, size);
+      this.windowMaximum = Math.max(1, maximumSize / 100);
+      this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+      if (sketch == null) {
+        sketch = new FrequencySketch(maximumSize);
+      } else {
+        sketch.ensureCapacity(maximumSize);
+      }
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      Node node = data.get(key);
+      if (node != null) {
+        node.value = value;
+        onAccess(node);
+      } else {
+        node = new Node(key, value);
+        data.put(key, node);
+        sketch.increment(key);
+        window.addLast(node);
+        node.queue = WINDOW;
+        windowSize++;
+        evict();
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Node node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    recordRead(node);
+    return node.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      Node node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      unlink(node);
+      return node.value;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      for (ReadBuffer buffer : readBuffers) {
+        buffer.drainTo(null);
+      }
+      for (Node node : data.values()) {
+        node.queue = DEAD;
+      }
+      data.clear();
+      window.clear();
+      probation.clear();
+      protectedQueue.clear();
+      windowSize = 0;
+      protectedSize = 0;
+      delegate.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  // 记录一次读取， 缓冲区满时尝试获取锁并回放； 获取不到锁则丢弃本次记录
+  private void recordRead(Node node) {
+    ReadBuffer buffer = readBuffers[stripe()];
+    if (!buffer.offer(node) && evictionLock.tryLock()) {
+      try {
+        drainReadBuffers();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void drainReadBuffers() {
+    for (ReadBuffer buffer : readBuffers) {
+      buffer.drainTo(this);
+    }
+  }
+
+  // 回放一次访问： 更新频率并调整所在队列中的位置
+  private void onAccess(Node node) {
+    if (node.queue == DEAD) {
+      return;
+    }
+    sketch.increment(node.key);
+    if (node.queue == WINDOW) {
+      window.moveToLast(node);
+    } else if (node.queue == PROBATION) {
+      probation.remove(node);
+      protectedQueue.addLast(node);
+      node.queue = PROTECTED;
+      protectedSize++;
+      demoteFromProtected();
+    } else {
+      protectedQueue.moveToLast(node);
+    }
+  }
+
+  // protected 超出容量时， 最久未访问的对象降级到 probation
+  private void demoteFromProtected() {
+    while (protectedSize > protectedMaximum) {
+      Node demoted = protectedQueue.first();
+      protectedQueue.remove(demoted);
+      probation.addLast(demoted);
+      demoted.queue = PROBATION;
+      protectedSize--;
+    }
+  }
+
+  private void evict() {
+    Node candidate = evictFromWindow();
+    evictFromMain(candidate);
+  }
+
+  // 窗口超出容量的对象移入 probation 队尾， 返回其中最早移入的一个（即第一个候选）
+  private Node evictFromWindow() {
+    Node first = null;
+    while (windowSize > windowMaximum) {
+      Node node = window.first();
+      window.remove(node);
+      windowSize--;
+      probation.addLast(node);
+      node.queue = PROBATION;
+      if (first == null) {
+        first = node;
+      }
+    }
+    return first;
+  }
+
+  // 总量超出时， 候选（刚离开窗口的对象）与 probation 队头比较频率， 淘汰频率低者
+  private void evictFromMain(Node candidate) {
+    while (data.size() > maximumSize) {
+      Node victim = probation.first();
+      if (victim == null) {
+        victim = protectedQueue.first();
+      }
+      if (victim == null) {
+        victim = window.first();
+      }
+      if (victim == null) {
+        break;
+      }
+      if (candidate == null || candidate.queue != PROBATION || victim == candidate) {
+        if (victim == candidate) {
+          candidate = nextCandidate(candidate);
+        }
+        evictEntry(victim);
+      } else if (admit(candidate.key, victim.key)) {
+        evictEntry(victim);
+        candidate = nextCandidate(candidate);
+      } else {
+        Node evicted = candidate;
+        candidate = nextCandidate(candidate);
+        evictEntry(evicted);
+      }
+    }
+  }
+
+  private Node nextCandidate(Node candidate) {
+    return candidate.queue == PROBATION ? candidate.next : null;
+  }
+
+  private boolean admit(Object candidateKey, Object victimKey) {
+    int candidateFrequency = sketch.frequency(candidateKey);
+    int victimFrequency = sketch.frequency(victimKey);
+    if (candidateFrequency > victimFrequency) {
+      return true;
+    } else if (candidateFrequency <= 5) {
+      return false;
+    }
+    // 防止攻击者制造高频的淘汰候选而使热点数据无法进入
+    return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+  }
+
+  private void evictEntry(Node node) {
+    data.remove(node.key, node);
+    unlink(node);
+    evictionCount.increment();
+  }
+
+  private void unlink(Node node) {
+    if (node.queue == WINDOW) {
+      window.remove(node);
+      windowSize--;
+    } else if (node.queue == PROBATION) {
+      probation.remove(node);
+    } else if (node.queue == PROTECTED) {
+      protectedQueue.remove(node);
+      protectedSize--;
+    }
+    node.queue = DEAD;
+  }
+
+  private static int stripe() {
+    int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+    return (hash >>> 16) & (READ_BUFFER_STRIPES - 1);
+  }
+
+  private static int ceilingPowerOfTwo(int x) {
+    return x <= 1 ? 1 : 1 << -Integer.numberOfLeadingZeros(x - 1);
+  }
+
+  private static final class Node {
+    final Object key;
+    volatile Object value;
+    // 以下字段只在持有 evictionLock 时访问
+    int queue;
+    Node prev;
+    Node next;
+
+    Node(Object key, Object value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * 双向链表实现的访问队列， 队头为最久未访问
+   */
+  private static final class AccessQueue {
+    private Node head;
+    private Node tail;
+
+    Node first() {
+      return head;
+    }
+
+    void addLast(Node node) {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+    }
+
+    void remove(Node node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+    }
+
+    void moveToLast(Node node) {
+      if (node != tail) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+    void clear() {
+      head = null;
+      tail = null;
+    }
+  }
+
+  /**
+   * 有损的环形缓冲区： 多个线程写入， 持有 evictionLock 的线程读取
+   */
+  private static final class ReadBuffer {
+    private final AtomicReferenceArray<Node> buffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong writeCounter = new AtomicLong();
+    private volatile long readCounter;
+
+    /**
+     * @return 缓冲区未满时为 true
+     */
+    boolean offer(Node node) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      if (tail - head >= READ_BUFFER_SIZE) {
+        return false;
+      }
+      if (writeCounter.compareAndSet(tail, tail + 1)) {
+        buffer.lazySet((int) (tail & READ_BUFFER_MASK), node);
+      }
+      return true;
+    }
+
+    void drainTo(TinyLfuCache cache) {
+      long head = readCounter;
+      long tail = writeCounter.get();
+      while (head < tail) {
+        int index = (int) (head & READ_BUFFER_MASK);
+        Node node = buffer.get(index);
+        if (node == null) {
+          // 写入方已占位但尚未写入
+          break;
+        }
+        buffer.lazySet(index, null);
+        if (cache != null) {
+          cache.onAccess(node);
+        }
+        head++;
+      }
+      readCounter = head;
+    }
+  }
+
+}
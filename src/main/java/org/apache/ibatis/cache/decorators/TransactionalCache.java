@@ -98,6 +98,10 @@ public class TransactionalCache implements Cache {
     entriesToAddOnCommit.clear();
   }
 
+  public boolean isClearOnCommit() {
+    return clearOnCommit;
+  }
+
   public void commit() {
     if (clearOnCommit) {
       delegate.clear();
@@ -19,9 +19,11 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.EvictingCache;
 
 /**
  * Weak Reference cache decorator.
@@ -29,11 +31,13 @@ import org.apache.ibatis.cache.Cache;
  * 
  * @author Clinton Begin
  */
-public class WeakCache implements Cache {
+public class WeakCache implements EvictingCache {
   private final Deque<Object> hardLinksToAvoidGarbageCollection;
   private final ReferenceQueue<Object> queueOfGarbageCollectedEntries;
   private final Cache delegate;
   private int numberOfHardLinks;
+  // 被垃圾回收的对象个数
+  private final LongAdder evictionCount = new LongAdder();
 
   public WeakCache(Cache delegate) {
     this.delegate = delegate;
@@ -95,6 +99,11 @@ public class WeakCache implements Cache {
     delegate.clear();
   }
 
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
   @Override
   public ReadWriteLock getReadWriteLock() {
     return null;
@@ -104,6 +113,7 @@ public class WeakCache implements Cache {
     WeakEntry sv;
     while ((sv = (WeakEntry) queueOfGarbageCollectedEntries.poll()) != null) {
       delegate.removeObject(sv.key);
+      evictionCount.increment();
     }
   }
 
@@ -0,0 +1,393 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.builder.InitializingObject;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.EvictingCache;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
+
+/**
+ * 堆外缓存： 缓存对象序列化后存放在堆外内存（direct ByteBuffer）或内存映射文件中， 堆上只保留 key 和块索引。
+ * <p>
+ * 存储区在首次写入时按 maxBytes 一次性分配， 划分为大小为 blockSize 的块， 每个缓存对象占用若干个（不必连续的）块；
+ * 空间不足时按 eviction（LRU 或 FIFO）淘汰旧对象。 每次读取都反序列化出新的对象， 因此也是读写缓存。
+ * <p>
+ * 通过 &lt;cache type="OFFHEAP"&gt; 或 @CacheNamespace(implementation = OffHeapCache.class) 使用，
+ * 以下属性可以通过 &lt;property&gt; 设置：
+ * <ul>
+ *   <li>maxBytes： 存储区总字节数， 默认 64MB</li>
+ *   <li>blockSize： 块大小， 默认 1024 字节</li>
+ *   <li>eviction： LRU（默认）或 FIFO</li>
+ *   <li>serializer： JDK（默认）、COMPACT 或 {@link CacheSerializer} 实现类的全限定名</li>
+ *   <li>file： 不为空时使用该文件做内存映射， 文件原有内容会被覆盖</li>
+ * </ul>
+ * 可被多线程并发访问。 序列化和反序列化在锁外进行， 锁内只做块分配和内存复制
+ */
+public class OffHeapCache implements ConcurrentCache, EvictingCache, InitializingObject {
+
+  /**
+   * 单个 ByteBuffer 能寻址的上限， 存储区按此拆分成多个分段
+   */
+  private static final int MAX_SEGMENT_BYTES = 1 << 30;
+  private static final int MAX_RETAINED_READ_BUFFER = 1 << 20;
+
+  private static final ThreadLocal<byte[]> READ_BUFFERS = new ThreadLocal<>();
+
+  private final String id;
+  private final ReentrantLock lock = new ReentrantLock();
+  // 淘汰的对象个数
+  private final LongAdder evictionCount = new LongAdder();
+  private Map<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long maxBytes = 64L * 1024 * 1024;
+  private int blockSize = 1024;
+  private String eviction = "LRU";
+  private String file;
+  private CacheSerializer serializer = new JdkCacheSerializer();
+
+  private ByteBuffer[] segments;
+  private int blocksPerSegment;
+  private int totalBlocks;
+  // 从未使用过的块从 nextBlock 开始顺序分配， 释放的块放入 freeBlocks 栈中
+  private int nextBlock;
+  private int[] freeBlocks = new int[0];
+  private int freeCount;
+  private long usedBytes;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    final ByteBuffer serialized = serializer.serialize(value);
+    final int length = serialized.remaining();
+    lock.lock();
+    try {
+      ensureInitialized();
+      release(entries.remove(key));
+      final int blockCount = blockCount(length);
+      if (blockCount > totalBlocks) {
+        // 超过整个存储区的对象不缓存
+        return;
+      }
+      while (availableBlocks() < blockCount) {
+        final Iterator<Entry> eldest = entries.values().iterator();
+        release(eldest.next());
+        eldest.remove();
+        evictionCount.increment();
+      }
+      final Entry entry = new Entry(new int[blockCount], length);
+      for (int i = 0; i < blockCount; i++) {
+        final int block = allocateBlock();
+        entry.blocks[i] = block;
+        final ByteBuffer target = block(block);
+        final int chunk = Math.min(blockSize, serialized.remaining());
+        final int limit = serialized.limit();
+        serialized.limit(serialized.position() + chunk);
+        target.put(serialized);
+        serialized.limit(limit);
+      }
+      entries.put(key, entry);
+      usedBytes += length;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] bytes;
+    int length;
+    lock.lock();
+    try {
+      final Entry entry = entries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      length = entry.length;
+      bytes = readBuffer(length);
+      int offset = 0;
+      for (int block : entry.blocks) {
+        final int chunk = Math.min(blockSize, length - offset);
+        block(block).get(bytes, offset, chunk);
+        offset += chunk;
+      }
+    } finally {
+      lock.unlock();
+    }
+    return serializer.deserialize(ByteBuffer.wrap(bytes, 0, length));
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      release(entries.remove(key));
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      entries.clear();
+      nextBlock = 0;
+      freeCount = 0;
+      usedBytes = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.sum();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public void initialize() {
+    lock.lock();
+    try {
+      ensureInitialized();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 已缓存对象序列化后的总字节数
+   */
+  public long getUsedBytes() {
+    lock.lock();
+    try {
+      return usedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    checkNotInitialized();
+    if (maxBytes <= 0) {
+      throw new CacheException("maxBytes of cache '" + id + "' must be positive.");
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public void setBlockSize(int blockSize) {
+    checkNotInitialized();
+    if (blockSize <= 0) {
+      throw new CacheException("blockSize of cache '" + id + "' must be positive.");
+    }
+    this.blockSize = blockSize;
+  }
+
+  public String getEviction() {
+    return eviction;
+  }
+
+  public void setEviction(String eviction) {
+    checkNotInitialized();
+    if ("LRU".equalsIgnoreCase(eviction)) {
+      this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    } else if ("FIFO".equalsIgnoreCase(eviction)) {
+      this.entries = new LinkedHashMap<>(16, 0.75f, false);
+    } else {
+      throw new CacheException("Unsupported eviction '" + eviction + "' for cache '" + id + "'. Use LRU or FIFO.");
+    }
+    this.eviction = eviction.toUpperCase(Locale.ENGLISH);
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  public void setFile(String file) {
+    checkNotInitialized();
+    this.file = file;
+  }
+
+  /**
+   * 通过 cache 的 property 配置时， 值按类型别名解析， 如 JDK、 COMPACT
+   */
+  public void setSerializer(Class<? extends CacheSerializer> serializerClass) {
+    try {
+      this.serializer = serializerClass.getConstructor().newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate cache serializer (" + serializerClass + ").  Cause: " + e, e);
+    }
+  }
+
+  private void checkNotInitialized() {
+    if (segments != null) {
+      throw new CacheException("Cache '" + id + "' has already allocated its storage.");
+    }
+  }
+
+  private void ensureInitialized() {
+    if (segments != null) {
+      return;
+    }
+    final long blocks = maxBytes / blockSize;
+    if (blocks < 1 || blocks > Integer.MAX_VALUE) {
+      throw new CacheException("Invalid maxBytes " + maxBytes + " for blockSize " + blockSize + " in cache '" + id + "'.");
+    }
+    totalBlocks = (int) blocks;
+    blocksPerSegment = Math.max(1, MAX_SEGMENT_BYTES / blockSize);
+    final int segmentCount = (totalBlocks + blocksPerSegment - 1) / blocksPerSegment;
+    final ByteBuffer[] allocated = new ByteBuffer[segmentCount];
+    try (FileChannel channel = file == null ? null : new RandomAccessFile(file, "rw").getChannel()) {
+      for (int i = 0; i < segmentCount; i++) {
+        final long bytes = (long) Math.min(blocksPerSegment, totalBlocks - i * blocksPerSegment) * blockSize;
+        allocated[i] = channel == null ? ByteBuffer.allocateDirect((int) bytes)
+            : channel.map(FileChannel.MapMode.READ_WRITE, (long) i * blocksPerSegment * blockSize, bytes);
+      }
+    } catch (IOException | OutOfMemoryError e) {
+      throw new CacheException("Could not allocate " + maxBytes + " bytes for cache '" + id + "'.  Cause: " + e, e);
+    }
+    segments = allocated;
+  }
+
+  private int blockCount(int length) {
+    // 序列化结果为空时也占用一个块， 便于统一处理
+    return Math.max(1, (length + blockSize - 1) / blockSize);
+  }
+
+  private int availableBlocks() {
+    return totalBlocks - nextBlock + freeCount;
+  }
+
+  private int allocateBlock() {
+    return freeCount > 0 ? freeBlocks[--freeCount] : nextBlock++;
+  }
+
+  private void release(Entry entry) {
+    if (entry == null) {
+      return;
+    }
+    if (freeBlocks.length < freeCount + entry.blocks.length) {
+      freeBlocks = Arrays.copyOf(freeBlocks, Math.max(freeBlocks.length << 1, freeCount + entry.blocks.length));
+    }
+    for (int block : entry.blocks) {
+      freeBlocks[freeCount++] = block;
+    }
+    usedBytes -= entry.length;
+  }
+
+  /**
+   * 返回指向该块的缓冲区视图， position 为块起始位置
+   */
+  private ByteBuffer block(int block) {
+    final ByteBuffer segment = segments[block / blocksPerSegment].duplicate();
+    segment.position((block % blocksPerSegment) * blockSize);
+    return segment;
+  }
+
+  private static byte[] readBuffer(int length) {
+    byte[] buffer = READ_BUFFERS.get();
+    if (buffer == null || buffer.length < length) {
+      buffer = new byte[Math.max(length, 1024)];
+      if (buffer.length <= MAX_RETAINED_READ_BUFFER) {
+        READ_BUFFERS.set(buffer);
+      }
+    }
+    return buffer;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private static final class Entry {
+    private final int[] blocks;
+    private final int length;
+
+    Entry(int[] blocks, int length) {
+      this.blocks = blocks;
+      this.length = length;
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.Properties;
+
+/**
+ * 二级缓存失效事件总线
+ *
+ * 事务提交时清空了的缓存会通过总线通知其他节点， 其他节点收到后清空自己 {@link org.apache.ibatis.session.Configuration} 中的同名缓存。
+ * 实现类需要提供无参构造方法， 并且可以被多个线程同时使用； 发布失败不应影响事务的提交
+ */
+public interface CacheInvalidationBus {
+
+  /**
+   * 设置 &lt;cacheInvalidationBus&gt; 节点下的属性， 在 start 之前调用
+   */
+  void setProperties(Properties properties);
+
+  /**
+   * 开始接收其他节点发布的事件， 不应收到自己发布的事件
+   */
+  void start(CacheInvalidationListener listener);
+
+  /**
+   * 向其他节点发布事件
+   */
+  void publish(CacheInvalidationEvent event);
+
+  /**
+   * 停止接收并释放资源
+   */
+  void close();
+
+}
@@ -0,0 +1,121 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 缓存失效事件： 清空 cacheId 对应的整个缓存， 只移除其中的一个 key，
+ * 或者按表失效时移除所有缓存中依赖某些表的对象
+ */
+public final class CacheInvalidationEvent implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  // 按表失效时为 null
+  private final String cacheId;
+  // 为 null 时清空整个缓存
+  private final Object key;
+  // 按表失效时修改的表
+  private final Set<String> tables;
+
+  private CacheInvalidationEvent(String cacheId, Object key, Set<String> tables) {
+    this.cacheId = cacheId;
+    this.key = key;
+    this.tables = tables;
+  }
+
+  public static CacheInvalidationEvent flush(String cacheId) {
+    return new CacheInvalidationEvent(requireCacheId(cacheId), null, null);
+  }
+
+  public static CacheInvalidationEvent evict(String cacheId, Object key) {
+    if (key == null) {
+      throw new IllegalArgumentException("Key must not be null.");
+    }
+    return new CacheInvalidationEvent(requireCacheId(cacheId), key, null);
+  }
+
+  public static CacheInvalidationEvent invalidateTables(Collection<String> tables) {
+    if (tables == null || tables.isEmpty()) {
+      throw new IllegalArgumentException("Tables must not be empty.");
+    }
+    return new CacheInvalidationEvent(null, null, Collections.unmodifiableSet(new LinkedHashSet<>(tables)));
+  }
+
+  private static String requireCacheId(String cacheId) {
+    if (cacheId == null) {
+      throw new IllegalArgumentException("Cache id must not be null.");
+    }
+    return cacheId;
+  }
+
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  public Object getKey() {
+    return key;
+  }
+
+  public Set<String> getTables() {
+    return tables;
+  }
+
+  public boolean isFlush() {
+    return cacheId != null && key == null;
+  }
+
+  public boolean isTableInvalidation() {
+    return tables != null;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CacheInvalidationEvent)) {
+      return false;
+    }
+    CacheInvalidationEvent other = (CacheInvalidationEvent) o;
+    return equal(cacheId, other.cacheId) && equal(key, other.key) && equal(tables, other.tables);
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = cacheId == null ? 0 : cacheId.hashCode();
+    result = 31 * result + (key == null ? 0 : key.hashCode());
+    return 31 * result + (tables == null ? 0 : tables.hashCode());
+  }
+
+  @Override
+  public String toString() {
+    if (isTableInvalidation()) {
+      return "invalidate tables " + tables;
+    }
+    return isFlush() ? "flush " + cacheId : "evict " + cacheId + " " + key;
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 进程内的事件总线： 同一个 JVM 中 channel 相同的总线之间同步传递事件，
+ * 用于同一个进程中的多个 SqlSessionFactory， 以及测试
+ */
+public class LoopbackInvalidationBus implements CacheInvalidationBus {
+
+  private static final Log log = LogFactory.getLog(LoopbackInvalidationBus.class);
+
+  private static final Map<String, List<LoopbackInvalidationBus>> CHANNELS = new ConcurrentHashMap<>();
+
+  private String channel = "default";
+  private volatile CacheInvalidationListener listener;
+
+  @Override
+  public void setProperties(Properties properties) {
+    channel = properties.getProperty("channel", channel);
+  }
+
+  @Override
+  public void start(CacheInvalidationListener listener) {
+    this.listener = listener;
+    CHANNELS.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(this);
+  }
+
+  @Override
+  public void publish(CacheInvalidationEvent event) {
+    List<LoopbackInvalidationBus> buses = CHANNELS.get(channel);
+    if (buses == null) {
+      return;
+    }
+    for (LoopbackInvalidationBus bus : buses) {
+      if (bus != this) {
+        bus.receive(event);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    List<LoopbackInvalidationBus> buses = CHANNELS.get(channel);
+    if (buses != null) {
+      buses.remove(this);
+    }
+    listener = null;
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  private void receive(CacheInvalidationEvent event) {
+    CacheInvalidationListener current = listener;
+    if (current == null) {
+      return;
+    }
+    try {
+      current.onInvalidation(event);
+    } catch (RuntimeException e) {
+      log.warn("Failed to apply cache invalidation event " + event + ".  Cause: " + e);
+    }
+  }
+
+}
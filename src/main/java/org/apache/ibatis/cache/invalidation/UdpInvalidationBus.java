@@ -0,0 +1,396 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.NullCacheKey;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 基于 UDP 的事件总线： 每个事件以一个数据报发送给 peers 中的所有节点
+ *
+ * 属性：
+ * <ul>
+ *   <li>host、 port： 本节点接收事件绑定的地址和端口， 默认 127.0.0.1 和随机端口， 多个节点之间通信时需要绑定到外部地址</li>
+ *   <li>peers： 其他节点的地址， 格式为 host:port， 多个以逗号分隔， 可以包含本节点。 只接收来自这些地址的数据报</li>
+ *   <li>secret： 各节点共用的密钥， 设置后每个数据报附带 HMAC-SHA256 签名， 签名不符的数据报被丢弃</li>
+ * </ul>
+ * UDP 不保证送达， 只适合与 flushInterval 或 timeToLive 一起使用以限制过期数据的存活时间。
+ * key 通过 Java 序列化传输， 接收时只还原 CacheKey 及其中常见的参数类型（字符串、 数字、 日期、 枚举及其数组），
+ * 无法序列化、 无法还原或数据报过大时改为清空整个缓存
+ */
+public class UdpInvalidationBus implements CacheInvalidationBus {
+
+  private static final Log log = LogFactory.getLog(UdpInvalidationBus.class);
+
+  private static final int MAGIC = 0x4D424349;
+  private static final int MAX_PACKET_SIZE = 65507;
+  private static final byte KIND_FLUSH = 0;
+  private static final byte KIND_EVICT = 1;
+  private static final byte KIND_TABLES = 2;
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  private static final int MAC_LENGTH = 32;
+  // 接收失败时的最长等待时间， 单位毫秒
+  private static final long MAX_RECEIVE_BACKOFF = 5000;
+  // 还原 key 时允许的类， 此外还允许枚举、 原始类型以及这些类型的数组
+  private static final Set<String> KEY_CLASSES = new HashSet<>(Arrays.asList(
+      CacheKey.class.getName(), NullCacheKey.class.getName(),
+      Object.class.getName(), String.class.getName(), Boolean.class.getName(), Character.class.getName(),
+      Number.class.getName(), Byte.class.getName(), Short.class.getName(), Integer.class.getName(),
+      Long.class.getName(), Float.class.getName(), Double.class.getName(), Enum.class.getName(),
+      java.math.BigInteger.class.getName(), java.math.BigDecimal.class.getName(),
+      java.util.Date.class.getName(), java.sql.Date.class.getName(), java.sql.Time.class.getName(),
+      java.sql.Timestamp.class.getName(), "java.time.Ser"));
+
+  // 用于忽略自己发布的事件
+  private final String nodeId = UUID.randomUUID().toString();
+  private final JdkCacheSerializer keySerializer = new JdkCacheSerializer();
+  // 启动后仍可以添加节点， 接收线程同时读取
+  private final List<InetSocketAddress> peers = new CopyOnWriteArrayList<>();
+  private String host = "127.0.0.1";
+  private int port;
+  private SecretKeySpec secret;
+  private DatagramSocket socket;
+  private Thread receiver;
+  private volatile boolean closed;
+
+  @Override
+  public void setProperties(Properties properties) {
+    host = properties.getProperty("host", host);
+    port = Integer.parseInt(properties.getProperty("port", String.valueOf(port)));
+    String secretValue = properties.getProperty("secret");
+    if (secretValue != null && !secretValue.isEmpty()) {
+      secret = new SecretKeySpec(secretValue.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+    }
+    String peerList = properties.getProperty("peers");
+    if (peerList != null) {
+      for (String peer : peerList.split(",")) {
+        addPeer(peer.trim());
+      }
+    }
+  }
+
+  /**
+   * 添加一个节点， 格式为 host:port
+   */
+  public void addPeer(String peer) {
+    if (peer.isEmpty()) {
+      return;
+    }
+    int colon = peer.lastIndexOf(':');
+    if (colon <= 0) {
+      throw new CacheException("Invalid cache invalidation peer '" + peer + "', expected host:port.");
+    }
+    peers.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+  }
+
+  @Override
+  public synchronized void start(CacheInvalidationListener listener) {
+    if (socket != null) {
+      throw new CacheException("UdpInvalidationBus is already started.");
+    }
+    try {
+      socket = new DatagramSocket(new InetSocketAddress(host, port));
+    } catch (SocketException e) {
+      throw new CacheException("Could not bind cache invalidation socket to " + host + ":" + port + ".  Cause: " + e, e);
+    }
+    if (secret == null && !socket.getLocalAddress().isLoopbackAddress()) {
+      log.warn("Cache invalidation bus is listening on " + host + ":" + socket.getLocalPort()
+          + " without a secret; any host that can spoof a peer address can flush its caches.");
+    }
+    receiver = new Thread(() -> receive(listener), "mybatis-cache-invalidation-" + socket.getLocalPort());
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+
+  @Override
+  public void publish(CacheInvalidationEvent event) {
+    DatagramSocket current = socket;
+    if (current == null || closed) {
+      return;
+    }
+    byte[] data = encode(event);
+    for (InetSocketAddress peer : peers) {
+      try {
+        current.send(new DatagramPacket(data, data.length, peer));
+      } catch (IOException e) {
+        log.warn("Failed to send cache invalidation event " + event + " to " + peer + ".  Cause: " + e);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (socket != null) {
+      socket.close();
+    }
+  }
+
+  /**
+   * 实际绑定的端口， start 之前为 -1
+   */
+  public int getLocalPort() {
+    return socket == null ? -1 : socket.getLocalPort();
+  }
+
+  private void receive(CacheInvalidationListener listener) {
+    byte[] buffer = new byte[MAX_PACKET_SIZE];
+    long backoff = 0;
+    while (!closed) {
+      DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+      try {
+        socket.receive(packet);
+        backoff = 0;
+      } catch (IOException e) {
+        if (closed || socket.isClosed()) {
+          return;
+        }
+        // 持续失败时逐步延长等待， 避免空转
+        backoff = backoff == 0 ? 100 : Math.min(backoff * 2, MAX_RECEIVE_BACKOFF);
+        log.warn("Failed to receive cache invalidation event, retrying in " + backoff + " ms.  Cause: " + e);
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        continue;
+      }
+      if (!isPeer(packet.getAddress())) {
+        if (log.isDebugEnabled()) {
+          log.debug("Ignored cache invalidation packet from unknown host " + packet.getSocketAddress());
+        }
+        continue;
+      }
+      CacheInvalidationEvent event;
+      try {
+        event = decode(packet.getData(), packet.getOffset(), packet.getLength());
+      } catch (IOException | RuntimeException e) {
+        log.warn("Ignored malformed cache invalidation packet from " + packet.getSocketAddress() + ".  Cause: " + e);
+        continue;
+      }
+      if (event == null) {
+        continue;
+      }
+      try {
+        listener.onInvalidation(event);
+      } catch (RuntimeException e) {
+        log.warn("Failed to apply cache invalidation event " + event + ".  Cause: " + e);
+      }
+    }
+  }
+
+  private boolean isPeer(InetAddress address) {
+    for (InetSocketAddress peer : peers) {
+      if (address.equals(peer.getAddress())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private byte[] encode(CacheInvalidationEvent event) {
+    if (event.isTableInvalidation()) {
+      return encode(KIND_TABLES, null, null, event.getTables());
+    }
+    byte[] key = null;
+    if (!event.isFlush()) {
+      key = serializeKey(event.getKey());
+    }
+    if (key != null) {
+      byte[] data = encode(KIND_EVICT, event.getCacheId(), key, null);
+      if (data.length <= MAX_PACKET_SIZE) {
+        return data;
+      }
+    }
+    return encode(KIND_FLUSH, event.getCacheId(), null, null);
+  }
+
+  private byte[] encode(byte kind, String cacheId, byte[] key, Set<String> tables) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bos)) {
+      out.writeInt(MAGIC);
+      out.writeUTF(nodeId);
+      out.writeByte(kind);
+      if (kind == KIND_TABLES) {
+        out.writeInt(tables.size());
+        for (String table : tables) {
+          out.writeUTF(table);
+        }
+      } else {
+        out.writeUTF(cacheId);
+      }
+      if (kind == KIND_EVICT) {
+        out.writeInt(key.length);
+        out.write(key);
+      }
+      if (secret != null) {
+        out.write(sign(bos.toByteArray(), bos.size()));
+      }
+    } catch (IOException e) {
+      throw new CacheException("Error encoding cache invalidation event.  Cause: " + e, e);
+    }
+    return bos.toByteArray();
+  }
+
+  private byte[] sign(byte[] data, int length) {
+    try {
+      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(secret);
+      mac.update(data, 0, length);
+      return mac.doFinal();
+    } catch (GeneralSecurityException e) {
+      throw new CacheException("Error signing cache invalidation event.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * 返回 null 时表示 key 无法序列化， 改为清空整个缓存
+   */
+  private byte[] serializeKey(Object key) {
+    try {
+      ByteBuffer serialized = keySerializer.serialize(key);
+      byte[] bytes = new byte[serialized.remaining()];
+      serialized.get(bytes);
+      return bytes;
+    } catch (CacheException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 自己发布的事件返回 null
+   */
+  private CacheInvalidationEvent decode(byte[] data, int offset, int length) throws IOException {
+    if (secret != null) {
+      // 先校验签名， 未通过的数据报不做任何解析
+      length -= MAC_LENGTH;
+      if (length <= 0) {
+        throw new IOException("Missing signature");
+      }
+      byte[] expected = sign(Arrays.copyOfRange(data, offset, offset + length), length);
+      if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(data, offset + length, offset + length + MAC_LENGTH))) {
+        throw new IOException("Invalid signature");
+      }
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Unknown packet format");
+    }
+    if (nodeId.equals(in.readUTF())) {
+      return null;
+    }
+    byte kind = in.readByte();
+    if (kind == KIND_TABLES) {
+      int count = in.readInt();
+      List<String> tables = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        tables.add(in.readUTF());
+      }
+      return CacheInvalidationEvent.invalidateTables(tables);
+    }
+    String cacheId = in.readUTF();
+    if (kind == KIND_FLUSH) {
+      return CacheInvalidationEvent.flush(cacheId);
+    }
+    if (kind != KIND_EVICT) {
+      throw new IOException("Unknown event kind " + kind);
+    }
+    byte[] key = new byte[in.readInt()];
+    in.readFully(key);
+    try (ObjectInputStream keyIn = new KeyInputStream(new ByteArrayInputStream(key))) {
+      return CacheInvalidationEvent.evict(cacheId, keyIn.readObject());
+    } catch (IOException | ClassNotFoundException e) {
+      // 本节点无法还原 key 或 key 中含有不允许的类时清空整个缓存
+      return CacheInvalidationEvent.flush(cacheId);
+    }
+  }
+
+  /**
+   * 只还原 {@link #KEY_CLASSES} 中的类、 枚举和原始类型， 避免反序列化任意类
+   */
+  private static class KeyInputStream extends ObjectInputStream {
+
+    KeyInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      String name = desc.getName();
+      String component = name;
+      while (component.startsWith("[")) {
+        component = component.substring(1);
+      }
+      if (component.length() == 1) {
+        // 原始类型的数组
+        return super.resolveClass(desc);
+      }
+      if (component.startsWith("L") && component.endsWith(";")) {
+        component = component.substring(1, component.length() - 1);
+      }
+      if (KEY_CLASSES.contains(component)) {
+        return super.resolveClass(desc);
+      }
+      // 加载但不初始化， 只接受枚举
+      Class<?> type = super.resolveClass(desc);
+      Class<?> componentType = type;
+      while (componentType.isArray()) {
+        componentType = componentType.getComponentType();
+      }
+      if (componentType.isEnum() || (componentType.getSuperclass() != null && componentType.getSuperclass().isEnum())) {
+        return type;
+      }
+      throw new InvalidClassException(name, "not allowed in a cache invalidation key");
+    }
+
+  }
+
+}
@@ -0,0 +1,54 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.jmx;
+
+/**
+ * 二级缓存统计信息的 JMX 视图， 时间的单位都是纳秒
+ */
+public interface CacheStatsMXBean {
+
+  String getId();
+
+  long getRequestCount();
+
+  long getHitCount();
+
+  long getMissCount();
+
+  double getHitRatio();
+
+  long getPutCount();
+
+  long getRemoveCount();
+
+  long getClearCount();
+
+  long getEvictionCount();
+
+  long getLoadCount();
+
+  double getAverageGetTime();
+
+  double getAverageLoadTime();
+
+  int getSize();
+
+  /**
+   * 清空缓存
+   */
+  void clear();
+
+}
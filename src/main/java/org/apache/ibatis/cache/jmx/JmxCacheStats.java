@@ -0,0 +1,169 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.jmx;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheStats;
+
+/**
+ * 将 {@link Cache#getStats()} 注册到平台 MBeanServer， 名称为
+ * org.apache.ibatis:type=Cache,environment=环境 id,id=缓存 id。
+ * 每次读取属性都获取新的快照
+ */
+public class JmxCacheStats implements CacheStatsMXBean {
+
+  public static final String DOMAIN = "org.apache.ibatis";
+
+  private final Cache cache;
+
+  public JmxCacheStats(Cache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * 注册缓存的统计信息， 不保存统计信息的缓存不注册。
+   * 同名的 MBean 已存在时（如重新部署应用）替换为当前缓存
+   *
+   * @return 注册的名称， 未注册时为 null
+   */
+  public static ObjectName register(String environmentId, Cache cache) {
+    if (cache.getStatsCounter() == null) {
+      return null;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = objectName(environmentId, cache.getId());
+      JmxCacheStats mbean = new JmxCacheStats(cache);
+      try {
+        server.registerMBean(mbean, name);
+      } catch (InstanceAlreadyExistsException e) {
+        unregister(server, name);
+        server.registerMBean(mbean, name);
+      }
+      return name;
+    } catch (JMException e) {
+      throw new CacheException("Error registering statistics MBean of cache '" + cache.getId() + "'.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * 移除缓存的统计信息
+   */
+  public static void unregister(String environmentId, String cacheId) {
+    try {
+      unregister(ManagementFactory.getPlatformMBeanServer(), objectName(environmentId, cacheId));
+    } catch (JMException e) {
+      throw new CacheException("Error unregistering statistics MBean of cache '" + cacheId + "'.  Cause: " + e, e);
+    }
+  }
+
+  public static ObjectName objectName(String environmentId, String cacheId) throws JMException {
+    return new ObjectName(DOMAIN + ":type=Cache,environment=" + ObjectName.quote(environmentId == null ? "default" : environmentId)
+        + ",id=" + ObjectName.quote(cacheId));
+  }
+
+  private static void unregister(MBeanServer server, ObjectName name) throws JMException {
+    try {
+      server.unregisterMBean(name);
+    } catch (InstanceNotFoundException e) {
+      // 已被移除
+    }
+  }
+
+  private CacheStats stats() {
+    return cache.getStats();
+  }
+
+  @Override
+  public String getId() {
+    return cache.getId();
+  }
+
+  @Override
+  public long getRequestCount() {
+    return stats().getRequestCount();
+  }
+
+  @Override
+  public long getHitCount() {
+    return stats().getHitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    return stats().getMissCount();
+  }
+
+  @Override
+  public double getHitRatio() {
+    return stats().getHitRatio();
+  }
+
+  @Override
+  public long getPutCount() {
+    return stats().getPutCount();
+  }
+
+  @Override
+  public long getRemoveCount() {
+    return stats().getRemoveCount();
+  }
+
+  @Override
+  public long getClearCount() {
+    return stats().getClearCount();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return stats().getEvictionCount();
+  }
+
+  @Override
+  public long getLoadCount() {
+    return stats().getLoadCount();
+  }
+
+  @Override
+  public double getAverageGetTime() {
+    return stats().getAverageGetTime();
+  }
+
+  @Override
+  public double getAverageLoadTime() {
+    return stats().getAverageLoadTime();
+  }
+
+  @Override
+  public int getSize() {
+    return cache.getSize();
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+  }
+
+}
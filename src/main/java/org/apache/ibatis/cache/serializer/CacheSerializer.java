@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 读写缓存（{@link org.apache.ibatis.cache.decorators.SerializedCache}）使用的序列化方式。
+ * 实现类需要提供无参构造方法， 并且可以被多个线程同时使用
+ */
+public interface CacheSerializer {
+
+  /**
+   * 序列化对象。
+   * 返回的缓冲区 position 为 0， limit 为数据长度； 它可能是当前线程复用的缓冲区，
+   * 只保证在该线程下一次调用 serialize 之前有效， 调用方需要自行复制
+   *
+   * @param value 待序列化的对象， 可能为 null
+   */
+  ByteBuffer serialize(Object value);
+
+  /**
+   * 从 buffer 的 position 读到 limit， 还原出对象。 实现可以移动传入缓冲区的 position
+   */
+  Object deserialize(ByteBuffer buffer);
+
+}
@@ -0,0 +1,676 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * 紧凑的二进制序列化实现。
+ * 常见的值类型、集合以及结果对象直接写入线程复用的 ByteBuffer： 结果对象按 {@link Reflector} 的 getter/setter 逐个属性读写，
+ * 不写属性名和类描述信息。 同一个对象多次出现（包括循环引用）时只写一次， 之后写引用编号。
+ * <p>
+ * 结果对象需要满足： 实现 Serializable、有无参构造方法、没有自定义的 writeObject/readObject/writeReplace/readResolve，
+ * 并且每个非 transient 的实例字段都有同名可读写的属性； transient 字段不写入， 保留无参构造方法设置的值。
+ * 对象图中有不满足条件的对象（包括延迟加载的代理对象）或其它不支持的类型时， 整个值改用 JDK 序列化写入， 保证对象间的引用关系不变。
+ * <p>
+ * 序列化结果只在当前 JVM 内有效， 不能持久化或跨进程传输
+ */
+public class CompactCacheSerializer implements CacheSerializer {
+
+  private static final byte NULL = 0;
+  private static final byte REFERENCE = 1;
+  private static final byte TRUE = 2;
+  private static final byte FALSE = 3;
+  private static final byte BYTE = 4;
+  private static final byte SHORT = 5;
+  private static final byte INT = 6;
+  private static final byte LONG = 7;
+  private static final byte FLOAT = 8;
+  private static final byte DOUBLE = 9;
+  private static final byte CHAR = 10;
+  private static final byte LATIN1_STRING = 11;
+  private static final byte UTF16_STRING = 12;
+  private static final byte BIG_DECIMAL = 13;
+  private static final byte BIG_INTEGER = 14;
+  private static final byte ENUM = 15;
+  private static final byte LOCAL_DATE = 16;
+  private static final byte LOCAL_TIME = 17;
+  private static final byte LOCAL_DATE_TIME = 18;
+  private static final byte INSTANT = 19;
+  private static final byte DATE = 20;
+  private static final byte SQL_DATE = 21;
+  private static final byte SQL_TIME = 22;
+  private static final byte SQL_TIMESTAMP = 23;
+  private static final byte BYTE_ARRAY = 24;
+  private static final byte ARRAY_LIST = 25;
+  private static final byte LINKED_LIST = 26;
+  private static final byte HASH_SET = 27;
+  private static final byte LINKED_HASH_SET = 28;
+  private static final byte HASH_MAP = 29;
+  private static final byte LINKED_HASH_MAP = 30;
+  private static final byte BEAN = 31;
+  private static final byte JAVA = 32;
+
+  private static final int NEW_CLASS = -1;
+
+  /**
+   * 写入过程中遇到不支持的对象时抛出， 整个值改用 JDK 序列化
+   */
+  private static final RuntimeException UNSUPPORTED_VALUE = new RuntimeException("unsupported value", null, false, false) {
+    private static final long serialVersionUID = 1L;
+  };
+
+  private final ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  private final ConcurrentMap<Class<?>, BeanCodec> beanCodecs = new ConcurrentHashMap<>();
+  // 各实例共用， Output 不持有序列化器， 线程池中的线程不会让序列化器及其 BeanCodec 无法回收
+  private static final ThreadLocal<Output> OUTPUTS = new ThreadLocal<>();
+
+  @Override
+  public ByteBuffer serialize(Object value) {
+    Output output = OUTPUTS.get();
+    if (output == null) {
+      output = new Output();
+    } else {
+      // 先取出， 序列化过程中重入时各自使用独立的缓冲区
+      OUTPUTS.remove();
+    }
+    output.serializer = this;
+    try {
+      try {
+        output.writeValue(value);
+      } catch (RuntimeException e) {
+        if (e != UNSUPPORTED_VALUE) {
+          throw e;
+        }
+        output.reset();
+        output.writeJava(value);
+      }
+      return output.toByteBuffer();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    } finally {
+      output.reset();
+      output.serializer = null;
+      if (output.isRetainable()) {
+        OUTPUTS.set(output);
+      }
+    }
+  }
+
+  @Override
+  public Object deserialize(ByteBuffer buffer) {
+    try {
+      return new Input(buffer).readValue();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  private BeanCodec getBeanCodec(Class<?> type) {
+    BeanCodec codec = beanCodecs.get(type);
+    if (codec == null) {
+      codec = compileBeanCodec(type);
+      beanCodecs.putIfAbsent(type, codec);
+    }
+    return codec;
+  }
+
+  private BeanCodec compileBeanCodec(Class<?> type) {
+    if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+        || type.isArray() || Proxy.isProxyClass(type)
+        || type.getName().startsWith("java.") || type.getName().startsWith("javax.")) {
+      return BeanCodec.UNSUPPORTED;
+    }
+    try {
+      final List<String> properties = new ArrayList<>();
+      final Set<String> names = new HashSet<>();
+      for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+        // 父类不可序列化时 JDK 序列化不会写它的字段， 这里不做模拟
+        if (!Serializable.class.isAssignableFrom(current) || hasSerializationMethods(current)) {
+          return BeanCodec.UNSUPPORTED;
+        }
+        for (Field field : current.getDeclaredFields()) {
+          final int modifiers = field.getModifiers();
+          if (Modifier.isStatic(modifiers)) {
+            continue;
+          }
+          if (Modifier.isTransient(modifiers)) {
+            continue;
+          }
+          if (field.isSynthetic() || !names.add(field.getName())) {
+            return BeanCodec.UNSUPPORTED;
+          }
+          properties.add(field.getName());
+        }
+      }
+      final Reflector reflector = reflectorFactory.findForClass(type);
+      if (!reflector.hasDefaultConstructor()) {
+        return BeanCodec.UNSUPPORTED;
+      }
+      final Invoker[] getters = new Invoker[properties.size()];
+      final Invoker[] setters = new Invoker[properties.size()];
+      for (int i = 0; i < getters.length; i++) {
+        final String property = properties.get(i);
+        if (!reflector.hasGetter(property) || !reflector.hasSetter(property)) {
+          return BeanCodec.UNSUPPORTED;
+        }
+        getters[i] = reflector.getGetInvoker(property);
+        setters[i] = reflector.getSetInvoker(property);
+      }
+      return new BeanCodec(reflector.getDefaultConstructor(), getters, setters);
+    } catch (RuntimeException e) {
+      return BeanCodec.UNSUPPORTED;
+    }
+  }
+
+  private static boolean hasSerializationMethods(Class<?> type) {
+    for (Method method : type.getDeclaredMethods()) {
+      switch (method.getName()) {
+        case "writeObject":
+        case "readObject":
+        case "readObjectNoData":
+        case "writeReplace":
+        case "readResolve":
+          return true;
+        default:
+          break;
+      }
+    }
+    return false;
+  }
+
+  private static final class BeanCodec {
+
+    static final BeanCodec UNSUPPORTED = new BeanCodec(null, null, null);
+
+    private final Constructor<?> constructor;
+    private final Invoker[] getters;
+    private final Invoker[] setters;
+
+    BeanCodec(Constructor<?> constructor, Invoker[] getters, Invoker[] setters) {
+      this.constructor = constructor;
+      this.getters = getters;
+      this.setters = setters;
+    }
+
+    boolean isSupported() {
+      return constructor != null;
+    }
+  }
+
+  /**
+   * 写入端。 缓冲区在同一线程内复用， 引用表和类表每次序列化后清空
+   */
+  private static final class Output {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // 当前调用的序列化器， 调用结束时清除
+    private CompactCacheSerializer serializer;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private final Map<Object, Integer> references = new IdentityHashMap<>();
+    private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+    ByteBuffer toByteBuffer() {
+      final ByteBuffer result = buffer.duplicate();
+      result.flip();
+      return result;
+    }
+
+    void reset() {
+      buffer.clear();
+      references.clear();
+      classes.clear();
+    }
+
+    boolean isRetainable() {
+      return buffer.capacity() <= ReusableByteArrayOutputStream.MAX_RETAINED_CAPACITY;
+    }
+
+    private void ensureCapacity(int length) {
+      if (buffer.remaining() < length) {
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() << 1, buffer.position() + length));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+      }
+    }
+
+    void writeValue(Object value) throws Exception {
+      if (value == null) {
+        writeTag(NULL);
+        return;
+      }
+      final Class<?> type = value.getClass();
+      if (type == String.class) {
+        writeString((String) value);
+      } else if (type == Integer.class) {
+        ensureCapacity(5);
+        buffer.put(INT).putInt((Integer) value);
+      } else if (type == Long.class) {
+        ensureCapacity(9);
+        buffer.put(LONG).putLong((Long) value);
+      } else if (type == Boolean.class) {
+        writeTag((Boolean) value ? TRUE : FALSE);
+      } else if (type == Double.class) {
+        ensureCapacity(9);
+        buffer.put(DOUBLE).putDouble((Double) value);
+      } else if (type == Float.class) {
+        ensureCapacity(5);
+        buffer.put(FLOAT).putFloat((Float) value);
+      } else if (type == Short.class) {
+        ensureCapacity(3);
+        buffer.put(SHORT).putShort((Short) value);
+      } else if (type == Byte.class) {
+        ensureCapacity(2);
+        buffer.put(BYTE).put((Byte) value);
+      } else if (type == Character.class) {
+        ensureCapacity(3);
+        buffer.put(CHAR).putChar((Character) value);
+      } else if (type == BigDecimal.class) {
+        final BigDecimal decimal = (BigDecimal) value;
+        writeTag(BIG_DECIMAL);
+        writeInt(decimal.scale());
+        writeBytes(decimal.unscaledValue().toByteArray());
+      } else if (type == BigInteger.class) {
+        writeTag(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (value instanceof Enum) {
+        final Enum<?> constant = (Enum<?>) value;
+        writeTag(ENUM);
+        writeClass(constant.getDeclaringClass());
+        writeInt(constant.ordinal());
+      } else if (type == LocalDate.class) {
+        ensureCapacity(9);
+        buffer.put(LOCAL_DATE).putLong(((LocalDate) value).toEpochDay());
+      } else if (type == LocalTime.class) {
+        ensureCapacity(9);
+        buffer.put(LOCAL_TIME).putLong(((LocalTime) value).toNanoOfDay());
+      } else if (type == LocalDateTime.class) {
+        final LocalDateTime dateTime = (LocalDateTime) value;
+        ensureCapacity(17);
+        buffer.put(LOCAL_DATE_TIME).putLong(dateTime.toLocalDate().toEpochDay()).putLong(dateTime.toLocalTime().toNanoOfDay());
+      } else if (type == Instant.class) {
+        final Instant instant = (Instant) value;
+        ensureCapacity(13);
+        buffer.put(INSTANT).putLong(instant.getEpochSecond()).putInt(instant.getNano());
+      } else {
+        final Integer reference = references.get(value);
+        if (reference != null) {
+          ensureCapacity(5);
+          buffer.put(REFERENCE).putInt(reference);
+        } else {
+          // 可变对象按出现顺序编号， 读取端以相同顺序登记
+          references.put(value, references.size());
+          writeObject(type, value);
+        }
+      }
+    }
+
+    private void writeObject(Class<?> type, Object value) throws Exception {
+      if (type == java.util.Date.class) {
+        ensureCapacity(9);
+        buffer.put(DATE).putLong(((java.util.Date) value).getTime());
+      } else if (type == java.sql.Timestamp.class) {
+        final java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+        ensureCapacity(13);
+        buffer.put(SQL_TIMESTAMP).putLong(timestamp.getTime()).putInt(timestamp.getNanos());
+      } else if (type == java.sql.Date.class) {
+        ensureCapacity(9);
+        buffer.put(SQL_DATE).putLong(((java.sql.Date) value).getTime());
+      } else if (type == java.sql.Time.class) {
+        ensureCapacity(9);
+        buffer.put(SQL_TIME).putLong(((java.sql.Time) value).getTime());
+      } else if (type == byte[].class) {
+        writeTag(BYTE_ARRAY);
+        writeBytes((byte[]) value);
+      } else if (type == ArrayList.class) {
+        writeCollection(ARRAY_LIST, (Collection<?>) value);
+      } else if (type == HashMap.class) {
+        writeMap(HASH_MAP, (Map<?, ?>) value);
+      } else if (type == LinkedHashMap.class) {
+        writeMap(LINKED_HASH_MAP, (Map<?, ?>) value);
+      } else if (type == HashSet.class) {
+        writeCollection(HASH_SET, (Collection<?>) value);
+      } else if (type == LinkedHashSet.class) {
+        writeCollection(LINKED_HASH_SET, (Collection<?>) value);
+      } else if (type == LinkedList.class) {
+        writeCollection(LINKED_LIST, (Collection<?>) value);
+      } else {
+        final BeanCodec codec = serializer.getBeanCodec(type);
+        if (codec.isSupported()) {
+          writeTag(BEAN);
+          writeClass(type);
+          for (Invoker getter : codec.getters) {
+            writeValue(getter.invoke(value, null));
+          }
+        } else {
+          throw UNSUPPORTED_VALUE;
+        }
+      }
+    }
+
+    void writeJava(Object value) throws Exception {
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+        oos.writeObject(value);
+      }
+      writeTag(JAVA);
+      writeBytes(bos.toByteArray());
+    }
+
+    private void writeCollection(byte tag, Collection<?> collection) throws Exception {
+      writeTag(tag);
+      writeInt(collection.size());
+      for (Object element : collection) {
+        writeValue(element);
+      }
+    }
+
+    private void writeMap(byte tag, Map<?, ?> map) throws Exception {
+      writeTag(tag);
+      writeInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(entry.getKey());
+        writeValue(entry.getValue());
+      }
+    }
+
+    private void writeClass(Class<?> type) {
+      final Integer id = classes.get(type);
+      if (id != null) {
+        writeInt(id);
+      } else {
+        writeInt(NEW_CLASS);
+        writeString(type.getName());
+        classes.put(type, classes.size());
+      }
+    }
+
+    private void writeString(String value) {
+      final int length = value.length();
+      boolean latin1 = true;
+      for (int i = 0; i < length && latin1; i++) {
+        latin1 = value.charAt(i) <= 0xFF;
+      }
+      if (latin1) {
+        ensureCapacity(5 + length);
+        buffer.put(LATIN1_STRING).putInt(length);
+        for (int i = 0; i < length; i++) {
+          buffer.put((byte) value.charAt(i));
+        }
+      } else {
+        ensureCapacity(5 + (length << 1));
+        buffer.put(UTF16_STRING).putInt(length);
+        for (int i = 0; i < length; i++) {
+          buffer.putChar(value.charAt(i));
+        }
+      }
+    }
+
+    private void writeTag(byte tag) {
+      ensureCapacity(1);
+      buffer.put(tag);
+    }
+
+    private void writeInt(int value) {
+      ensureCapacity(4);
+      buffer.putInt(value);
+    }
+
+    private void writeBytes(byte[] bytes) {
+      ensureCapacity(4 + bytes.length);
+      buffer.putInt(bytes.length).put(bytes);
+    }
+  }
+
+  /**
+   * 读取端。 直接在传入的缓冲区上读取， 不复制底层数据
+   */
+  private final class Input {
+
+    private final ByteBuffer buffer;
+    private final List<Object> references = new ArrayList<>();
+    private final List<Class<?>> classes = new ArrayList<>();
+
+    Input(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    Object readValue() throws Exception {
+      final byte tag = buffer.get();
+      switch (tag) {
+        case NULL:
+          return null;
+        case REFERENCE:
+          return references.get(buffer.getInt());
+        case TRUE:
+          return Boolean.TRUE;
+        case FALSE:
+          return Boolean.FALSE;
+        case BYTE:
+          return buffer.get();
+        case SHORT:
+          return buffer.getShort();
+        case INT:
+          return buffer.getInt();
+        case LONG:
+          return buffer.getLong();
+        case FLOAT:
+          return buffer.getFloat();
+        case DOUBLE:
+          return buffer.getDouble();
+        case CHAR:
+          return buffer.getChar();
+        case LATIN1_STRING:
+          return readLatin1String();
+        case UTF16_STRING:
+          return readUtf16String();
+        case BIG_DECIMAL: {
+          final int scale = buffer.getInt();
+          return new BigDecimal(new BigInteger(readBytes()), scale);
+        }
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case ENUM:
+          return readClass().getEnumConstants()[buffer.getInt()];
+        case LOCAL_DATE:
+          return LocalDate.ofEpochDay(buffer.getLong());
+        case LOCAL_TIME:
+          return LocalTime.ofNanoOfDay(buffer.getLong());
+        case LOCAL_DATE_TIME: {
+          final LocalDate date = LocalDate.ofEpochDay(buffer.getLong());
+          return LocalDateTime.of(date, LocalTime.ofNanoOfDay(buffer.getLong()));
+        }
+        case INSTANT: {
+          final long seconds = buffer.getLong();
+          return Instant.ofEpochSecond(seconds, buffer.getInt());
+        }
+        case DATE:
+          return register(new java.util.Date(buffer.getLong()));
+        case SQL_DATE:
+          return register(new java.sql.Date(buffer.getLong()));
+        case SQL_TIME:
+          return register(new java.sql.Time(buffer.getLong()));
+        case SQL_TIMESTAMP: {
+          final java.sql.Timestamp timestamp = new java.sql.Timestamp(buffer.getLong());
+          timestamp.setNanos(buffer.getInt());
+          return register(timestamp);
+        }
+        case BYTE_ARRAY:
+          return register(readBytes());
+        case ARRAY_LIST: {
+          final int size = buffer.getInt();
+          return readElements(new ArrayList<>(size), size);
+        }
+        case LINKED_LIST:
+          return readElements(new LinkedList<>(), buffer.getInt());
+        case HASH_SET: {
+          final int size = buffer.getInt();
+          return readElements(new HashSet<>(capacity(size)), size);
+        }
+        case LINKED_HASH_SET: {
+          final int size = buffer.getInt();
+          return readElements(new LinkedHashSet<>(capacity(size)), size);
+        }
+        case HASH_MAP: {
+          final int size = buffer.getInt();
+          return readEntries(new HashMap<>(capacity(size)), size);
+        }
+        case LINKED_HASH_MAP: {
+          final int size = buffer.getInt();
+          return readEntries(new LinkedHashMap<>(capacity(size)), size);
+        }
+        case BEAN:
+          return readBean();
+        case JAVA:
+          return deserializeWithJdk();
+        default:
+          throw new CacheException("Unknown tag " + tag + " at position " + (buffer.position() - 1) + ".");
+      }
+    }
+
+    private Object readBean() throws Exception {
+      final Class<?> type = readClass();
+      final BeanCodec codec = getBeanCodec(type);
+      if (!codec.isSupported()) {
+        throw new CacheException("Class " + type.getName() + " cannot be read as a bean.");
+      }
+      final Object bean = register(codec.constructor.newInstance());
+      for (Invoker setter : codec.setters) {
+        setter.invoke(bean, new Object[] {readValue()});
+      }
+      return bean;
+    }
+
+    private <C extends Collection<Object>> C readElements(C collection, int size) throws Exception {
+      register(collection);
+      for (int i = 0; i < size; i++) {
+        collection.add(readValue());
+      }
+      return collection;
+    }
+
+    private <M extends Map<Object, Object>> M readEntries(M map, int size) throws Exception {
+      register(map);
+      for (int i = 0; i < size; i++) {
+        final Object key = readValue();
+        map.put(key, readValue());
+      }
+      return map;
+    }
+
+    private <T> T register(T value) {
+      references.add(value);
+      return value;
+    }
+
+    private Class<?> readClass() throws Exception {
+      final int id = buffer.getInt();
+      if (id != NEW_CLASS) {
+        return classes.get(id);
+      }
+      final Class<?> type = Resources.classForName((String) readValue());
+      classes.add(type);
+      return type;
+    }
+
+    private String readLatin1String() {
+      final int length = buffer.getInt();
+      final String value;
+      if (buffer.hasArray()) {
+        value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.ISO_8859_1);
+        buffer.position(buffer.position() + length);
+      } else {
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        value = new String(bytes, StandardCharsets.ISO_8859_1);
+      }
+      return value;
+    }
+
+    private String readUtf16String() {
+      final char[] chars = new char[buffer.getInt()];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = buffer.getChar();
+      }
+      return new String(chars);
+    }
+
+    private byte[] readBytes() {
+      final byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      return bytes;
+    }
+
+    private Object deserializeWithJdk() throws Exception {
+      final int length = buffer.getInt();
+      final ByteBuffer slice = buffer.slice();
+      slice.limit(length);
+      buffer.position(buffer.position() + length);
+      try (ObjectInputStream ois = new SerializedCache.CustomObjectInputStream(new ByteBufferInputStream(slice))) {
+        return ois.readObject();
+      }
+    }
+
+    private int capacity(int size) {
+      return Math.max((int) (size / .75f) + 1, 16);
+    }
+  }
+
+}
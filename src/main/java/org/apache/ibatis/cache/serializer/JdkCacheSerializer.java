@@ -0,0 +1,63 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+
+/**
+ * 基于 JDK 序列化（ObjectOutputStream）的实现， 也是读写缓存的默认序列化方式
+ */
+public class JdkCacheSerializer implements CacheSerializer {
+
+  private static final ThreadLocal<ReusableByteArrayOutputStream> BUFFERS = new ThreadLocal<>();
+
+  @Override
+  public ByteBuffer serialize(Object value) {
+    ReusableByteArrayOutputStream bos = BUFFERS.get();
+    if (bos == null) {
+      bos = new ReusableByteArrayOutputStream();
+    } else {
+      // 先取出， 序列化过程中重入时各自使用独立的缓冲区
+      BUFFERS.remove();
+    }
+    bos.reset();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(value);
+      oos.flush();
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+    if (bos.isRetainable()) {
+      BUFFERS.set(bos);
+    }
+    return bos.toByteBuffer();
+  }
+
+  @Override
+  public Object deserialize(ByteBuffer buffer) {
+    try (ObjectInputStream ois = new SerializedCache.CustomObjectInputStream(new ByteBufferInputStream(buffer))) {
+      return ois.readObject();
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 可复用的字节输出流， 以 ByteBuffer 的形式暴露已写入的数据， 避免 toByteArray 的复制
+ */
+class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+  /**
+   * 超过该容量的缓冲区用完后不再保留， 避免偶发的大对象长期占用线程内存
+   */
+  static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+  ReusableByteArrayOutputStream() {
+    super(1024);
+  }
+
+  ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count);
+  }
+
+  boolean isRetainable() {
+    return buf.length <= MAX_RETAINED_CAPACITY;
+  }
+
+}
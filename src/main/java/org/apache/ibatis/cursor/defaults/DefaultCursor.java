@@ -26,7 +26,9 @@ import org.apache.ibatis.session.RowBounds;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -49,6 +51,8 @@ public class DefaultCursor<T> implements Cursor<T> {
 
   private CursorStatus status = CursorStatus.CREATED;
   private int indexWithRowBound = -1;
+  // 每次从 ResultSet 中映射的对象个数， 第一次读取时根据 JDBC fetchSize 确定
+  private int fetchBatchSize;
 
   private enum CursorStatus {
 
@@ -120,6 +124,7 @@ public class DefaultCursor<T> implements Cursor<T> {
           statement.close();
         }
       }
+      objectWrapperResultHandler.clear();
       status = CursorStatus.CLOSED;
     } catch (SQLException e) {
       // ignore
@@ -135,6 +140,10 @@ public class DefaultCursor<T> implements Cursor<T> {
   }
 
   protected T fetchNextObjectFromDatabase() {
+    // 优先返回上一批已经映射好的对象
+    if (objectWrapperResultHandler.hasNext()) {
+      return nextFetchedObject();
+    }
     if (isClosed()) {
       return null;
     }
@@ -142,13 +151,21 @@ public class DefaultCursor<T> implements Cursor<T> {
     try {
       status = CursorStatus.OPEN;
       if (!rsw.getResultSet().isClosed()) {
+        // 一次 handleRowValues 调用映射一批对象， 且不超过 RowBounds 的剩余数量
+        objectWrapperResultHandler.reset(getFetchBatchSize());
         resultSetHandler.handleRowValues(rsw, resultMap, objectWrapperResultHandler, RowBounds.DEFAULT, null);
+        // 没有读满一批说明 ResultSet 已经读完， 不必再调用一次 next()
+        objectWrapperResultHandler.markEndIfNotStopped();
       }
     } catch (SQLException e) {
       throw new RuntimeException(e);
     }
 
-    T next = objectWrapperResultHandler.result;
+    return nextFetchedObject();
+  }
+
+  private T nextFetchedObject() {
+    T next = objectWrapperResultHandler.next();
     if (next != null) {
       indexWithRowBound++;
     }
@@ -157,11 +174,20 @@ public class DefaultCursor<T> implements Cursor<T> {
       close();
       status = CursorStatus.CONSUMED;
     }
-    objectWrapperResultHandler.result = null;
-
     return next;
   }
 
+  /**
+   * 批量大小取 JDBC fetchSize (未设置时为 1)， 且不超过 RowBounds 中剩余的行数
+   */
+  private int getFetchBatchSize() throws SQLException {
+    if (fetchBatchSize == 0) {
+      fetchBatchSize = Math.max(1, rsw.getResultSet().getFetchSize());
+    }
+    long remaining = (long) rowBounds.getOffset() + rowBounds.getLimit() - getReadItemsCount();
+    return (int) Math.max(1, Math.min(fetchBatchSize, remaining));
+  }
+
   private boolean isClosed() {
     return status == CursorStatus.CLOSED || status == CursorStatus.CONSUMED;
   }
@@ -172,12 +198,46 @@ public class DefaultCursor<T> implements Cursor<T> {
 
   private static class ObjectWrapperResultHandler<T> implements ResultHandler<T> {
 
-    private T result;
+    // 当前这一批对象， 以及下一个要返回的位置
+    private final List<T> results = new ArrayList<>();
+    private int position;
+    private int maxResults = 1;
+    private boolean stopped;
 
     @Override
     public void handleResult(ResultContext<? extends T> context) {
-      this.result = context.getResultObject();
-      context.stop();
+      T result = context.getResultObject();
+      results.add(result);
+      // null 表示读取结束， 之后的行不再读取
+      if (result == null || results.size() >= maxResults) {
+        stopped = true;
+        context.stop();
+      }
+    }
+
+    private void markEndIfNotStopped() {
+      if (!stopped) {
+        results.add(null);
+      }
+    }
+
+    private void reset(int maxResults) {
+      clear();
+      this.maxResults = maxResults;
+    }
+
+    private boolean hasNext() {
+      return position < results.size();
+    }
+
+    private T next() {
+      return hasNext() ? results.get(position++) : null;
+    }
+
+    private void clear() {
+      results.clear();
+      position = 0;
+      stopped = false;
     }
   }
 
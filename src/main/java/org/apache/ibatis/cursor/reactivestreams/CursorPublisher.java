@@ -0,0 +1,209 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cursor.reactivestreams;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * 将 Cursor 适配为 Reactive Streams 的 Publisher。
+ * 只有在订阅者请求 (request) 时才从数据库读取， 每次最多推送请求的数量， 读取的批量由 JDBC fetchSize 决定，
+ * 因此内存占用有上限， 也不需要一个线程阻塞等待下游。
+ *
+ * <p>Cursor 只能被遍历一次， 因此该 Publisher 只接受一个订阅者。 结束、 出错或取消时会关闭 Cursor。
+ * JDK 9 及以上可以通过 {@code org.reactivestreams.FlowAdapters} 转换为 {@code java.util.concurrent.Flow.Publisher}。
+ */
+public class CursorPublisher<T> implements Publisher<T> {
+
+  private final Cursor<T> cursor;
+  private final Executor executor;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * 在调用 request 的线程上读取并推送数据
+   */
+  public CursorPublisher(Cursor<T> cursor) {
+    this(cursor, Runnable::run);
+  }
+
+  /**
+   * @param executor 读取并推送数据的线程池。 同一时刻只有一个任务在访问 Cursor
+   */
+  public CursorPublisher(Cursor<T> cursor, Executor executor) {
+    this.cursor = cursor;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber must not be null");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(EmptySubscription.INSTANCE);
+      subscriber.onError(new IllegalStateException("A Cursor can only be subscribed once"));
+      return;
+    }
+    subscriber.onSubscribe(new CursorSubscription<>(cursor, subscriber, executor));
+  }
+
+  private enum EmptySubscription implements Subscription {
+    INSTANCE;
+
+    @Override
+    public void request(long n) {
+      // nothing to emit
+    }
+
+    @Override
+    public void cancel() {
+      // nothing to cancel
+    }
+  }
+
+  /**
+   * 通过 wip 计数保证同一时刻只有一个线程在遍历 Cursor 并通知订阅者，
+   * onNext 中同步调用 request 也只会增加计数， 不会递归
+   */
+  private static class CursorSubscription<T> implements Subscription, Runnable {
+
+    private final Cursor<T> cursor;
+    private final Subscriber<? super T> subscriber;
+    private final Executor executor;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+
+    // 以下字段只在 drain 中访问
+    private Iterator<T> iterator;
+    private boolean done;
+
+    CursorSubscription(Cursor<T> cursor, Subscriber<? super T> subscriber, Executor executor) {
+      this.cursor = cursor;
+      this.subscriber = subscriber;
+      this.executor = executor;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("Rule 3.9: non-positive request signals are illegal, but got " + n);
+      } else {
+        requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (wip.getAndIncrement() == 0) {
+        try {
+          executor.execute(this);
+        } catch (RejectedExecutionException e) {
+          // 没有其他线程在访问 Cursor， 可以直接结束
+          if (!done) {
+            finish();
+            subscriber.onError(e);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        drain();
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      if (done) {
+        return;
+      }
+      if (cancelled) {
+        finish();
+        return;
+      }
+      Throwable error = invalidRequest;
+      if (error != null) {
+        finish();
+        subscriber.onError(error);
+        return;
+      }
+      try {
+        if (iterator == null) {
+          iterator = cursor.iterator();
+        }
+        long demand = requested.get();
+        long emitted = 0;
+        while (emitted != demand) {
+          if (cancelled) {
+            finish();
+            return;
+          }
+          if (!iterator.hasNext()) {
+            finish();
+            subscriber.onComplete();
+            return;
+          }
+          subscriber.onNext(iterator.next());
+          emitted++;
+        }
+        // 已读取到 RowBounds 的上限时无需等待下一次请求
+        if (cursor.isConsumed()) {
+          finish();
+          subscriber.onComplete();
+          return;
+        }
+        if (demand != Long.MAX_VALUE) {
+          requested.addAndGet(-emitted);
+        }
+      } catch (Throwable t) {
+        finish();
+        subscriber.onError(t);
+      }
+    }
+
+    private void finish() {
+      done = true;
+      try {
+        cursor.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+}
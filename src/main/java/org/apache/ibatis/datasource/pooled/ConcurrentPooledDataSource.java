@@ -0,0 +1,477 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * A pooled datasource whose checkout and return paths never share a monitor unless a thread has to wait.
+ * <p>
+ * Idle connections are kept in a lock-free bag. A thread first tries to reclaim the connection it returned last.
+ * Every physical connection held by the pool, active or idle, occupies one of the
+ * {@code poolMaximumActiveConnections} slots, so a new connection is only opened while a slot is free.
+ * Threads that have to wait are signalled when a connection is returned or a slot is released.
+ *
+ * @see PooledDataSourceFactory
+ */
+public class ConcurrentPooledDataSource extends PooledDataSource {
+
+  private static final Log log = LogFactory.getLog(ConcurrentPooledDataSource.class);
+
+  private final PoolState state = new ConcurrentPoolState(this);
+
+  // 共享的空闲连接袋，可以 O(1) 移除被取走的连接
+  private final Set<IdleConnection> idleConnections = ConcurrentHashMap.newKeySet();
+  // 以真实连接为 key 的活跃连接，用于超时回收
+  private final ConcurrentMap<Connection, PooledConnection> activeConnections = new ConcurrentHashMap<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private final AtomicInteger activeCount = new AtomicInteger();
+  // 池中的真实连接数（活动连接与空闲连接），不超过 poolMaximumActiveConnections
+  private final AtomicInteger connectionCount = new AtomicInteger();
+  // 线程亲和的快速槽位：当前线程最后归还的连接
+  private final ThreadLocal<IdleConnection> lastReturnedConnection = new ThreadLocal<>();
+  // 只有需要等待的线程才使用锁
+  private final ReentrantLock waitLock = new ReentrantLock();
+  private final Condition connectionAvailable = waitLock.newCondition();
+  private final AtomicInteger waitingCount = new AtomicInteger();
+
+  public ConcurrentPooledDataSource() {
+    super();
+  }
+
+  public ConcurrentPooledDataSource(UnpooledDataSource dataSource) {
+    super(dataSource);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, String username, String password) {
+    super(driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, Properties driverProperties) {
+    super(driver, url, driverProperties);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url, String username, String password) {
+    super(driverClassLoader, driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url, Properties driverProperties) {
+    super(driverClassLoader, driver, url, driverProperties);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return popConnection(dataSource.getUsername(), dataSource.getPassword()).getProxyConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return popConnection(username, password).getProxyConnection();
+  }
+
+  @Override
+  public PoolState getPoolState() {
+    return state;
+  }
+
+  /*
+   * Closes all active and idle connections in the pool
+   */
+  @Override
+  public void forceCloseAll() {
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+    for (PooledConnection conn : activeConnections.values()) {
+      if (removeActiveConnection(conn)) {
+        activeCount.decrementAndGet();
+        closeQuietly(conn);
+        releaseConnectionSlot();
+      }
+    }
+    for (IdleConnection idle : idleConnections) {
+      if (idle.claim()) {
+        closeQuietly(idle.connection);
+        releaseConnectionSlot();
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("ConcurrentPooledDataSource forcefully closed/removed all connections.");
+    }
+  }
+
+  @Override
+  protected void pushConnection(PooledConnection conn) throws SQLException {
+    if (!removeActiveConnection(conn)) {
+      // 已经被其他线程作为超时连接回收，或已被强制关闭
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCount.increment();
+      return;
+    }
+    activeCount.decrementAndGet();
+    // 连接放回空闲连接袋时继续占用名额，否则关闭并释放
+    boolean kept = false;
+    try {
+      if (conn.isValid()) {
+        state.accumulatedCheckoutTime.add(conn.getCheckoutTime());
+        if (!conn.getRealConnection().getAutoCommit()) {
+          try {
+            conn.getRealConnection().rollback();
+          } catch (SQLException e) {
+            closeQuietly(conn);
+            throw e;
+          }
+        }
+        if (conn.getConnectionTypeCode() == expectedConnectionTypeCode && offerIdleConnection(conn)) {
+          kept = true;
+          conn.invalidate();
+          if (log.isDebugEnabled()) {
+            log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+          }
+        } else {
+          conn.getRealConnection().close();
+          if (log.isDebugEnabled()) {
+            log.debug("Closed connection " + conn.getRealHashCode() + ".");
+          }
+          conn.invalidate();
+        }
+      } else {
+        if (log.isDebugEnabled()) {
+          log.debug("A bad connection (" + conn.getRealHashCode() + ") attempted to return to the pool, discarding connection.");
+        }
+        state.badConnectionCount.increment();
+      }
+    } finally {
+      if (!kept) {
+        releaseConnectionSlot();
+      }
+    }
+  }
+
+  private PooledConnection popConnection(String username, String password) throws SQLException {
+    boolean countedWait = false;
+    PooledConnection conn = null;
+    long t = System.currentTimeMillis();
+    int localBadConnectionCount = 0;
+
+    while (conn == null) {
+      conn = pollIdleConnection();
+      if (conn != null) {
+        // Pool has available connection
+        activeCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+        }
+      } else if (reserveConnectionSlot()) {
+        // Can create new connection
+        try {
+          conn = new PooledConnection(dataSource.getConnection(), this);
+        } catch (SQLException e) {
+          releaseConnectionSlot();
+          throw e;
+        }
+        activeCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+          log.debug("Created connection " + conn.getRealHashCode() + ".");
+        }
+      } else {
+        // Cannot create new connection
+        conn = claimOverdueConnection();
+        if (conn == null) {
+          // Must wait
+          try {
+            if (!countedWait) {
+              state.hadToWaitCount.increment();
+              countedWait = true;
+            }
+            if (log.isDebugEnabled()) {
+              log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+            }
+            long wt = System.currentTimeMillis();
+            awaitConnection();
+            state.accumulatedWaitTime.add(System.currentTimeMillis() - wt);
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+      }
+      if (conn != null) {
+        // ping to server and check the connection is valid or not
+        if (conn.isValid()) {
+          try {
+            if (!conn.getRealConnection().getAutoCommit()) {
+              conn.getRealConnection().rollback();
+            }
+          } catch (SQLException e) {
+            closeQuietly(conn);
+            activeCount.decrementAndGet();
+            releaseConnectionSlot();
+            throw e;
+          }
+          conn.setConnectionTypeCode(assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+          conn.setCheckoutTimestamp(System.currentTimeMillis());
+          conn.setLastUsedTimestamp(System.currentTimeMillis());
+          activeConnections.put(conn.getRealConnection(), conn);
+          state.requestCount.increment();
+          state.accumulatedRequestTime.add(System.currentTimeMillis() - t);
+        } else {
+          if (log.isDebugEnabled()) {
+            log.debug("A bad connection (" + conn.getRealHashCode() + ") was returned from the pool, getting another connection.");
+          }
+          activeCount.decrementAndGet();
+          releaseConnectionSlot();
+          state.badConnectionCount.increment();
+          localBadConnectionCount++;
+          conn = null;
+          if (localBadConnectionCount > (poolMaximumIdleConnections + poolMaximumLocalBadConnectionTolerance)) {
+            if (log.isDebugEnabled()) {
+              log.debug("ConcurrentPooledDataSource: Could not get a good connection to the database.");
+            }
+            throw new SQLException("ConcurrentPooledDataSource: Could not get a good connection to the database.");
+          }
+        }
+      }
+    }
+
+    if (conn == null) {
+      if (log.isDebugEnabled()) {
+        log.debug("ConcurrentPooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+      }
+      throw new SQLException("ConcurrentPooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+    }
+
+    return conn;
+  }
+
+  /**
+   * 优先取回当前线程最后归还的连接，否则从共享的空闲连接袋中获取
+   */
+  private PooledConnection pollIdleConnection() {
+    IdleConnection idle = lastReturnedConnection.get();
+    if (idle != null) {
+      lastReturnedConnection.remove();
+      if (idle.claim()) {
+        return idle.connection;
+      }
+    }
+    for (IdleConnection candidate : idleConnections) {
+      if (candidate.claim()) {
+        return candidate.connection;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 将归还的连接放入空闲连接袋并唤醒一个等待的线程；空闲连接已满时返回 false
+   */
+  private boolean offerIdleConnection(PooledConnection conn) {
+    if (idleCount.incrementAndGet() <= poolMaximumIdleConnections) {
+      IdleConnection idle = new IdleConnection(newIdleConnection(conn));
+      idleConnections.add(idle);
+      lastReturnedConnection.set(idle);
+      signalWaitingThread();
+      return true;
+    }
+    idleCount.decrementAndGet();
+    return false;
+  }
+
+  private PooledConnection newIdleConnection(PooledConnection conn) {
+    PooledConnection newConn = new PooledConnection(conn.getRealConnection(), this);
+    newConn.setCreatedTimestamp(conn.getCreatedTimestamp());
+    newConn.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+    return newConn;
+  }
+
+  /**
+   * 为新建的真实连接占用一个名额
+   */
+  private boolean reserveConnectionSlot() {
+    for (;;) {
+      int current = connectionCount.get();
+      if (current >= poolMaximumActiveConnections) {
+        return false;
+      }
+      if (connectionCount.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * 真实连接关闭或丢弃后释放其名额并唤醒一个等待的线程
+   */
+  private void releaseConnectionSlot() {
+    connectionCount.decrementAndGet();
+    signalWaitingThread();
+  }
+
+  /**
+   * 最多等待 poolTimeToWait 毫秒，直到有连接归还或名额释放
+   */
+  private void awaitConnection() throws InterruptedException {
+    waitLock.lock();
+    try {
+      waitingCount.incrementAndGet();
+      try {
+        // 登记等待之后再检查一次，避免错过此前归还的连接
+        if (!idleConnections.isEmpty() || connectionCount.get() < poolMaximumActiveConnections) {
+          return;
+        }
+        connectionAvailable.await(poolTimeToWait, TimeUnit.MILLISECONDS);
+      } finally {
+        waitingCount.decrementAndGet();
+      }
+    } finally {
+      waitLock.unlock();
+    }
+  }
+
+  private void signalWaitingThread() {
+    if (waitingCount.get() > 0) {
+      waitLock.lock();
+      try {
+        connectionAvailable.signal();
+      } finally {
+        waitLock.unlock();
+      }
+    }
+  }
+
+  private PooledConnection claimOverdueConnection() {
+    PooledConnection oldestActiveConnection = null;
+    for (PooledConnection candidate : activeConnections.values()) {
+      if (oldestActiveConnection == null || candidate.getCheckoutTimestamp() < oldestActiveConnection.getCheckoutTimestamp()) {
+        oldestActiveConnection = candidate;
+      }
+    }
+    if (oldestActiveConnection == null) {
+      return null;
+    }
+    long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+    if (longestCheckoutTime <= poolMaximumCheckoutTime || !removeActiveConnection(oldestActiveConnection)) {
+      return null;
+    }
+    // Can claim overdue connection
+    state.claimedOverdueConnectionCount.increment();
+    state.accumulatedCheckoutTimeOfOverdueConnections.add(longestCheckoutTime);
+    state.accumulatedCheckoutTime.add(longestCheckoutTime);
+    try {
+      if (!oldestActiveConnection.getRealConnection().getAutoCommit()) {
+        oldestActiveConnection.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      // the connection is handed out anyway and will be rejected by the validity check if it is broken
+      log.debug("Bad connection. Could not roll back");
+    }
+    PooledConnection conn = new PooledConnection(oldestActiveConnection.getRealConnection(), this);
+    conn.setCreatedTimestamp(oldestActiveConnection.getCreatedTimestamp());
+    conn.setLastUsedTimestamp(oldestActiveConnection.getLastUsedTimestamp());
+    oldestActiveConnection.invalidate();
+    if (log.isDebugEnabled()) {
+      log.debug("Claimed overdue connection " + conn.getRealHashCode() + ".");
+    }
+    return conn;
+  }
+
+  /**
+   * 仅当 conn 仍是该真实连接的持有者时才移除，保证归还与超时回收之间只有一方成功
+   */
+  private boolean removeActiveConnection(PooledConnection conn) {
+    boolean[] removed = new boolean[1];
+    activeConnections.computeIfPresent(conn.getRealConnection(), (realConnection, current) -> {
+      if (current != conn) {
+        return current;
+      }
+      removed[0] = true;
+      return null;
+    });
+    return removed[0];
+  }
+
+  private void closeQuietly(PooledConnection conn) {
+    conn.invalidate();
+    Connection realConn = conn.getRealConnection();
+    try {
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+    } catch (Exception e) {
+      // ignore
+    }
+    // 回滚失败时也要关闭真实连接
+    try {
+      realConn.close();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
+  private final class IdleConnection {
+
+    private final PooledConnection connection;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    IdleConnection(PooledConnection connection) {
+      this.connection = connection;
+    }
+
+    /**
+     * 空闲连接只能被一个线程取走，取走后移出空闲连接袋
+     */
+    boolean claim() {
+      if (claimed.compareAndSet(false, true)) {
+        idleConnections.remove(this);
+        idleCount.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private final class ConcurrentPoolState extends PoolState {
+
+    ConcurrentPoolState(PooledDataSource dataSource) {
+      super(dataSource);
+    }
+
+    @Override
+    public int getIdleConnectionCount() {
+      return idleCount.get();
+    }
+
+    @Override
+    public int getActiveConnectionCount() {
+      return activeCount.get();
+    }
+  }
+
+}
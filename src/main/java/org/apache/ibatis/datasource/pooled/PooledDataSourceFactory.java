@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.datasource.pooled;
 
+import java.util.Properties;
+
+import org.apache.ibatis.datasource.DataSourceException;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 
 /**
@@ -23,9 +26,35 @@ import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
  */
 public class PooledDataSourceFactory extends UnpooledDataSourceFactory {
 
+  // 连接池模式：SYNCHRONIZED（默认）或 CONCURRENT
+  private static final String POOL_MODE_PROPERTY = "poolMode";
+
   // 相比于 UnpooledDataSourceFactory， 其 dataSource 不一样而已
   public PooledDataSourceFactory() {
     this.dataSource = new PooledDataSource();
   }
 
+  @Override
+  public void setProperties(Properties properties) {
+    String poolMode = properties.getProperty(POOL_MODE_PROPERTY);
+    if (poolMode != null) {
+      // 根据 poolMode 替换 dataSource， 剩余属性照常设置
+      this.dataSource = createDataSource(poolMode);
+      Properties dataSourceProperties = new Properties();
+      dataSourceProperties.putAll(properties);
+      dataSourceProperties.remove(POOL_MODE_PROPERTY);
+      properties = dataSourceProperties;
+    }
+    super.setProperties(properties);
+  }
+
+  private PooledDataSource createDataSource(String poolMode) {
+    if ("SYNCHRONIZED".equalsIgnoreCase(poolMode)) {
+      return new PooledDataSource();
+    } else if ("CONCURRENT".equalsIgnoreCase(poolMode)) {
+      return new ConcurrentPooledDataSource();
+    }
+    throw new DataSourceException("Unknown pool mode: " + poolMode + ". Supported modes are SYNCHRONIZED and CONCURRENT.");
+  }
+
 }
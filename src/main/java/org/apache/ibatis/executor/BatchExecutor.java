@@ -55,6 +55,14 @@ public class BatchExecutor extends BaseExecutor {
   public int doUpdate(MappedStatement ms, Object parameterObject) throws SQLException {
     final Configuration configuration = ms.getConfiguration();
     final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
+    return doUpdate(ms, parameterObject, handler);
+  }
+
+  /**
+   * 使用已创建的 StatementHandler 加入批处理。 创建 StatementHandler 时会执行 KeyGenerator#processBefore，
+   * 因此同一次更新只能创建一个
+   */
+  protected int doUpdate(MappedStatement ms, Object parameterObject, StatementHandler handler) throws SQLException {
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
     final Statement stmt;
@@ -79,6 +87,31 @@ public class BatchExecutor extends BaseExecutor {
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
+  /**
+   * 判断 sql 是否与最后加入批处理的语句相同， 相同时可继续 addBatch
+   */
+  protected boolean isCurrentStatement(String sql, MappedStatement ms) {
+    return sql.equals(currentSql) && ms.equals(currentStatement);
+  }
+
+  protected Statement getCurrentStatement() {
+    return statementList.get(statementList.size() - 1);
+  }
+
+  protected BatchResult getCurrentBatchResult() {
+    return batchResultList.get(batchResultList.size() - 1);
+  }
+
+  /**
+   * 加入由子类自行准备的批处理语句
+   */
+  protected void addStatement(String sql, MappedStatement ms, Statement stmt, BatchResult batchResult) {
+    currentSql = sql;
+    currentStatement = ms;
+    statementList.add(stmt);
+    batchResultList.add(batchResult);
+  }
+
   @Override
   public <E> List<E> doQuery(MappedStatement ms, Object parameterObject, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql)
       throws SQLException {
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,11 +16,17 @@
 package org.apache.ibatis.executor;
 
 import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.CacheStatsCounter;
+import org.apache.ibatis.cache.TableDependencyTracker;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
@@ -39,10 +45,27 @@ import org.apache.ibatis.transaction.Transaction;
 public class CachingExecutor implements Executor {
 
   private final Executor delegate;
-  private final TransactionalCacheManager tcm = new TransactionalCacheManager();
+  private final TransactionalCacheManager tcm;
+  // 当前事务执行过修改语句， 提交或回滚前查询结果可能包含未提交的修改
+  private boolean dirty;
 
   public CachingExecutor(Executor delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * @param cacheInvalidationBus 提交时将清空的缓存通知其他节点， 可以为 null
+   */
+  public CachingExecutor(Executor delegate, CacheInvalidationBus cacheInvalidationBus) {
+    this(delegate, cacheInvalidationBus, null);
+  }
+
+  /**
+   * @param tableDependencyTracker 不为 null 时修改语句按表失效缓存
+   */
+  public CachingExecutor(Executor delegate, CacheInvalidationBus cacheInvalidationBus, TableDependencyTracker tableDependencyTracker) {
     this.delegate = delegate;
+    this.tcm = new TransactionalCacheManager(cacheInvalidationBus, tableDependencyTracker);
     delegate.setExecutorWrapper(this);
   }
 
@@ -72,7 +95,12 @@ public class CachingExecutor implements Executor {
 
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
-    flushCacheIfRequired(ms);
+    dirty = true;
+    if (isTableInvalidation() && ms.isFlushCacheRequired()) {
+      invalidateTables(ms, parameterObject);
+    } else {
+      flushCacheIfRequired(ms);
+    }
     return delegate.update(ms, parameterObject);
   }
 
@@ -97,11 +125,29 @@ public class CachingExecutor implements Executor {
       flushCacheIfRequired(ms);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
+        Set<String> tables = isTableInvalidation() ? getTableDependencies(ms, boundSql) : null;
+        // 当前事务修改过依赖的表时， 缓存中的结果已过期
+        boolean invalidated = isTableInvalidation() && tcm.isInvalidated(tables);
         @SuppressWarnings("unchecked")
         List<E> list = (List<E>) tcm.getObject(cache, key);
-        if (list == null) {
-          list = delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
-          tcm.putObject(cache, key, list); // issue #578 and #116
+        if (list == null || invalidated) {
+          final long start = System.nanoTime();
+          if (cache instanceof SingleFlightCache && !dirty && !tcm.isCleared(cache) && !invalidated) {
+            // 同一个 key 的并发未命中合并为一次查询； 当前事务有未提交的修改时， 结果不能共享给其他会话， 也不能使用其他会话的结果
+            list = loadSingleFlight((SingleFlightCache) cache, ms, parameterObject, rowBounds, key, boundSql);
+          } else {
+            list = delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          }
+          // 记录未命中后的查询耗时
+          CacheStatsCounter statsCounter = cache.getStatsCounter();
+          if (statsCounter != null) {
+            statsCounter.recordLoad(System.nanoTime() - start);
+          }
+          if (isTableInvalidation()) {
+            tcm.putObject(cache, key, list, tables);
+          } else {
+            tcm.putObject(cache, key, list); // issue #578 and #116
+          }
         }
         return list;
       }
@@ -109,6 +155,12 @@ public class CachingExecutor implements Executor {
     return delegate.<E> query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
   }
 
+  @SuppressWarnings("unchecked")
+  private <E> List<E> loadSingleFlight(SingleFlightCache cache, MappedStatement ms, Object parameterObject, RowBounds rowBounds,
+      CacheKey key, BoundSql boundSql) throws SQLException {
+    return (List<E>) cache.load(key, () -> delegate.<E> query(ms, parameterObject, rowBounds, null, key, boundSql));
+  }
+
   @Override
   public List<BatchResult> flushStatements() throws SQLException {
     return delegate.flushStatements();
@@ -118,6 +170,7 @@ public class CachingExecutor implements Executor {
   public void commit(boolean required) throws SQLException {
     delegate.commit(required);
     tcm.commit();
+    dirty = false;
   }
 
   @Override
@@ -127,6 +180,7 @@ public class CachingExecutor implements Executor {
     } finally {
       if (required) {
         tcm.rollback();
+        dirty = false;
       }
     }
   }
@@ -161,6 +215,39 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
+  private boolean isTableInvalidation() {
+    return tcm.getTableDependencyTracker() != null;
+  }
+
+  /**
+   * 缓存的结果依赖的表， 包括嵌套查询的表； 无法确定时返回 null
+   */
+  private Set<String> getTableDependencies(MappedStatement ms, BoundSql boundSql) {
+    Set<String> tables = ms.getTableDependencies(boundSql);
+    Set<String> nestedQueryTables = ms.getNestedQueryTableDependencies();
+    if (tables == null || nestedQueryTables == null) {
+      return null;
+    }
+    if (nestedQueryTables.isEmpty() || tables.containsAll(nestedQueryTables)) {
+      return tables;
+    }
+    Set<String> all = new HashSet<>(tables);
+    all.addAll(nestedQueryTables);
+    return all;
+  }
+
+  /**
+   * 按表失效缓存， 包括没有配置缓存的命名空间中的修改语句； 无法确定修改的表时清空所在命名空间的缓存
+   */
+  private void invalidateTables(MappedStatement ms, Object parameterObject) {
+    Set<String> tables = ms.getTableDependencies(ms.getTables() == null ? ms.getBoundSql(parameterObject) : null);
+    if (tables != null) {
+      tcm.invalidateTables(tables);
+    } else {
+      flushCacheIfRequired(ms);
+    }
+  }
+
   private void flushCacheIfRequired(MappedStatement ms) {
     Cache cache = ms.getCache();
     if (cache != null && ms.isFlushCacheRequired()) {      
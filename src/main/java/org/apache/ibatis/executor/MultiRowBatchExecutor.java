@@ -0,0 +1,331 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * 将同一个 MappedStatement 连续的单行 INSERT 合并为一条
+ * INSERT ... VALUES (...), (...), ... 语句执行， 每条语句的行数和参数个数不超过
+ * {@link Configuration#getMultiRowBatchMaxRows()} 和 {@link Configuration#getMultiRowBatchMaxParameters()}
+ *
+ * 不能合并的语句（UPDATE/DELETE、非 PREPARED、INSERT ... SELECT、使用 selectKey 等）按 {@link BatchExecutor} 的方式处理。
+ * 生成的主键仍由 {@link Jdbc3KeyGenerator} 按参数顺序回填。
+ * 合并后的每一行由 {@link DefaultParameterHandler} 绑定参数， 不经过 ParameterHandler 插件
+ */
+public class MultiRowBatchExecutor extends BatchExecutor {
+
+  // 尚未生成语句的行
+  private MappedStatement pendingStatement;
+  private String pendingSql;
+  private InsertTemplate pendingTemplate;
+  private final List<Object> pendingParameterObjects = new ArrayList<>();
+  private final List<BoundSql> pendingBoundSqls = new ArrayList<>();
+  private int pendingParameterCount;
+  // 多行语句对应的 BatchResult 及其每次 addBatch 的行数
+  private final Map<BatchResult, List<Integer>> multiRowChunks = new IdentityHashMap<>();
+
+  public MultiRowBatchExecutor(Configuration configuration, Transaction transaction) {
+    super(configuration, transaction);
+  }
+
+  @Override
+  public int doUpdate(MappedStatement ms, Object parameterObject) throws SQLException {
+    final Configuration configuration = ms.getConfiguration();
+    // 与 BatchExecutor 一样先创建 StatementHandler， 以执行 KeyGenerator#processBefore
+    final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
+    final BoundSql boundSql = handler.getBoundSql();
+    final String sql = boundSql.getSql();
+    final int parameterCount = boundSql.getParameterMappings().size();
+    if (ms == pendingStatement && sql.equals(pendingSql)) {
+      if (pendingParameterObjects.size() >= configuration.getMultiRowBatchMaxRows()
+          || pendingParameterCount + parameterCount > configuration.getMultiRowBatchMaxParameters()) {
+        // flushPendingRows 会清空当前模板， 需先保留
+        InsertTemplate template = pendingTemplate;
+        flushPendingRows();
+        startPendingRows(ms, sql, template);
+      }
+      addPendingRow(parameterObject, boundSql);
+      return BATCH_UPDATE_RETURN_VALUE;
+    }
+    flushPendingRows();
+    InsertTemplate template = isMultiRowCandidate(ms) ? InsertTemplate.parse(sql) : null;
+    if (template == null) {
+      // 复用已创建的 StatementHandler， 避免 selectKey 等 processBefore 再执行一次
+      return doUpdate(ms, parameterObject, handler);
+    }
+    startPendingRows(ms, sql, template);
+    addPendingRow(parameterObject, boundSql);
+    return BATCH_UPDATE_RETURN_VALUE;
+  }
+
+  @Override
+  public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+    try {
+      if (isRollback) {
+        clearPendingRows();
+      } else {
+        flushPendingRows();
+      }
+      List<BatchResult> results = super.doFlushStatements(isRollback);
+      for (BatchResult result : results) {
+        List<Integer> chunks = multiRowChunks.get(result);
+        if (chunks != null) {
+          result.setUpdateCounts(toRowUpdateCounts(result.getUpdateCounts(), chunks));
+        }
+      }
+      return results;
+    } finally {
+      multiRowChunks.clear();
+    }
+  }
+
+  private boolean isMultiRowCandidate(MappedStatement ms) {
+    if (ms.getSqlCommandType() != SqlCommandType.INSERT || ms.getStatementType() != StatementType.PREPARED) {
+      return false;
+    }
+    // selectKey 等需要逐行执行的 KeyGenerator 不能合并
+    KeyGenerator keyGenerator = ms.getKeyGenerator();
+    return keyGenerator instanceof NoKeyGenerator || Jdbc3KeyGenerator.class.equals(keyGenerator.getClass());
+  }
+
+  private void startPendingRows(MappedStatement ms, String sql, InsertTemplate template) {
+    pendingStatement = ms;
+    pendingSql = sql;
+    pendingTemplate = template;
+  }
+
+  private void addPendingRow(Object parameterObject, BoundSql boundSql) {
+    pendingParameterObjects.add(parameterObject);
+    pendingBoundSqls.add(boundSql);
+    pendingParameterCount += boundSql.getParameterMappings().size();
+  }
+
+  private void clearPendingRows() {
+    pendingStatement = null;
+    pendingSql = null;
+    pendingTemplate = null;
+    pendingParameterObjects.clear();
+    pendingBoundSqls.clear();
+    pendingParameterCount = 0;
+  }
+
+  /**
+   * 将尚未处理的行生成一条多行 INSERT 并加入批处理； 行数相同时复用上一条 PreparedStatement
+   */
+  private void flushPendingRows() throws SQLException {
+    if (pendingStatement == null || pendingParameterObjects.isEmpty()) {
+      clearPendingRows();
+      return;
+    }
+    final MappedStatement ms = pendingStatement;
+    final int rows = pendingParameterObjects.size();
+    final String sql = pendingTemplate.toSql(rows);
+    final PreparedStatement stmt;
+    final BatchResult batchResult;
+    if (isCurrentStatement(sql, ms) && multiRowChunks.containsKey(getCurrentBatchResult())) {
+      stmt = (PreparedStatement) getCurrentStatement();
+      applyTransactionTimeout(stmt);
+      batchResult = getCurrentBatchResult();
+    } else {
+      List<ParameterMapping> parameterMappings = new ArrayList<>(pendingParameterCount);
+      for (BoundSql boundSql : pendingBoundSqls) {
+        parameterMappings.addAll(boundSql.getParameterMappings());
+      }
+      BoundSql multiRowBoundSql = new BoundSql(ms.getConfiguration(), sql, parameterMappings, pendingParameterObjects.get(0));
+      StatementHandler handler = ms.getConfiguration().newStatementHandler(this, ms, pendingParameterObjects.get(0), RowBounds.DEFAULT, null, multiRowBoundSql);
+      Connection connection = getConnection(ms.getStatementLog());
+      stmt = (PreparedStatement) handler.prepare(connection, transaction.getTimeout());
+      batchResult = new BatchResult(ms, sql);
+      addStatement(sql, ms, stmt, batchResult);
+      multiRowChunks.put(batchResult, new ArrayList<>());
+    }
+    int parameterOffset = 0;
+    for (int i = 0; i < rows; i++) {
+      Object parameterObject = pendingParameterObjects.get(i);
+      BoundSql boundSql = pendingBoundSqls.get(i);
+      new DefaultParameterHandler(ms, parameterObject, boundSql).setParameters(stmt, parameterOffset);
+      parameterOffset += boundSql.getParameterMappings().size();
+      batchResult.addParameterObject(parameterObject);
+    }
+    stmt.addBatch();
+    multiRowChunks.get(batchResult).add(rows);
+    clearPendingRows();
+  }
+
+  /**
+   * 每条多行语句返回一个更新数， 展开为每行一个： 与行数一致时每行为 1， 否则为 SUCCESS_NO_INFO
+   */
+  private static int[] toRowUpdateCounts(int[] statementUpdateCounts, List<Integer> chunks) {
+    int total = 0;
+    for (Integer rows : chunks) {
+      total += rows;
+    }
+    int[] rowUpdateCounts = new int[total];
+    int index = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      int rows = chunks.get(i);
+      int count = i < statementUpdateCounts.length ? statementUpdateCounts[i] : Statement.SUCCESS_NO_INFO;
+      Arrays.fill(rowUpdateCounts, index, index + rows, count == rows ? 1 : Statement.SUCCESS_NO_INFO);
+      index += rows;
+    }
+    return rowUpdateCounts;
+  }
+
+  /**
+   * 单行 INSERT 语句的模板： VALUES 之前的部分、一行的值列表 (...)、之后的部分
+   */
+  static final class InsertTemplate {
+
+    private final String prefix;
+    private final String tuple;
+    private final String suffix;
+
+    private InsertTemplate(String prefix, String tuple, String suffix) {
+      this.prefix = prefix;
+      this.tuple = tuple;
+      this.suffix = suffix;
+    }
+
+    String toSql(int rows) {
+      StringBuilder sql = new StringBuilder(prefix.length() + suffix.length() + rows * (tuple.length() + 2));
+      sql.append(prefix).append(tuple);
+      for (int i = 1; i < rows; i++) {
+        sql.append(", ").append(tuple);
+      }
+      return sql.append(suffix).toString();
+    }
+
+    /**
+     * @return 不是只有一个值列表的 INSERT ... VALUES (...) 语句， 或值列表外还有占位符时返回 null
+     */
+    static InsertTemplate parse(String sql) {
+      int values = indexOfValuesKeyword(sql);
+      if (values < 0) {
+        return null;
+      }
+      int open = values + "VALUES".length();
+      while (open < sql.length() && Character.isWhitespace(sql.charAt(open))) {
+        open++;
+      }
+      if (open >= sql.length() || sql.charAt(open) != '(') {
+        return null;
+      }
+      int close = indexOfClosingParenthesis(sql, open);
+      if (close < 0) {
+        return null;
+      }
+      String prefix = sql.substring(0, open);
+      String suffix = sql.substring(close + 1);
+      if (suffix.trim().startsWith(",") || countPlaceholders(prefix) > 0 || countPlaceholders(suffix) > 0) {
+        return null;
+      }
+      return new InsertTemplate(prefix, sql.substring(open, close + 1), suffix);
+    }
+
+    // 查找引号和括号之外的第一个 VALUES 关键字
+    private static int indexOfValuesKeyword(String sql) {
+      String upper = sql.toUpperCase(Locale.ENGLISH);
+      int depth = 0;
+      char quote = 0;
+      for (int i = 0; i < upper.length(); i++) {
+        char c = upper.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '\'' || c == '"' || c == '`') {
+          quote = c;
+        } else if (c == '(') {
+          depth++;
+        } else if (c == ')') {
+          depth--;
+        } else if (depth == 0 && upper.startsWith("VALUES", i)
+            && (i == 0 || !isIdentifierPart(upper.charAt(i - 1)))
+            && (i + 6 == upper.length() || !isIdentifierPart(upper.charAt(i + 6)))) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static int indexOfClosingParenthesis(String sql, int open) {
+      int depth = 0;
+      char quote = 0;
+      for (int i = open; i < sql.length(); i++) {
+        char c = sql.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '\'' || c == '"' || c == '`') {
+          quote = c;
+        } else if (c == '(') {
+          depth++;
+        } else if (c == ')' && --depth == 0) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    private static int countPlaceholders(String sql) {
+      int count = 0;
+      char quote = 0;
+      for (int i = 0; i < sql.length(); i++) {
+        char c = sql.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '\'' || c == '"' || c == '`') {
+          quote = c;
+        } else if (c == '?') {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+      return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+  }
+
+}
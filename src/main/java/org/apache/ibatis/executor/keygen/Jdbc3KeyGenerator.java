@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.executor.keygen;
 
+import java.io.Serializable;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -42,7 +43,9 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
  * 有自增主键的数据库的键生成器
  *
  */
-public class Jdbc3KeyGenerator implements KeyGenerator {
+public class Jdbc3KeyGenerator implements KeyGenerator, Serializable {
+
+  private static final long serialVersionUID = -2620738826659106122L;
 
   /**
    * A shared instance.
@@ -53,6 +56,13 @@ public class Jdbc3KeyGenerator implements KeyGenerator {
    */
   public static final Jdbc3KeyGenerator INSTANCE = new Jdbc3KeyGenerator();
 
+  /**
+   * 反序列化时返回共享的实例
+   */
+  private Object readResolve() {
+    return INSTANCE;
+  }
+
   @Override
   public void processBefore(Executor executor, MappedStatement ms, Statement stmt, Object parameter) {
     // do nothing
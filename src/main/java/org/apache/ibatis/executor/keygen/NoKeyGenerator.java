@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.executor.keygen;
 
+import java.io.Serializable;
 import java.sql.Statement;
 
 import org.apache.ibatis.executor.Executor;
@@ -25,7 +26,9 @@ import org.apache.ibatis.mapping.MappedStatement;
  * @author Kazuki Shimizu
  * 默认实现， 空实现
  */
-public class NoKeyGenerator implements KeyGenerator {
+public class NoKeyGenerator implements KeyGenerator, Serializable {
+
+  private static final long serialVersionUID = -6850983055879847373L;
 
   /**
    * A shared instance.
@@ -33,6 +36,13 @@ public class NoKeyGenerator implements KeyGenerator {
    */
   public static final NoKeyGenerator INSTANCE = new NoKeyGenerator();
 
+  /**
+   * 反序列化（如从配置快照中恢复）时仍使用共享的实例
+   */
+  private Object readResolve() {
+    return INSTANCE;
+  }
+
   @Override
   public void processBefore(Executor executor, MappedStatement ms, Statement stmt, Object parameter) {
     // Do Nothing
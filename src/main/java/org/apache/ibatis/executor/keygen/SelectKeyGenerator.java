@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.executor.keygen;
 
+import java.io.Serializable;
 import java.sql.Statement;
 import java.util.List;
 
@@ -30,7 +31,10 @@ import org.apache.ibatis.session.RowBounds;
  * @author Clinton Begin
  * @author Jeff Butler
  */
-public class SelectKeyGenerator implements KeyGenerator {
+public class SelectKeyGenerator implements KeyGenerator, Serializable {
+
+  private static final long serialVersionUID = 8505607366135612102L;
+
   
   public static final String SELECT_KEY_SUFFIX = "!selectKey";
   private final boolean executeBefore;
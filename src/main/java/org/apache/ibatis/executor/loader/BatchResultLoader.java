@@ -0,0 +1,229 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ResultExtractor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.defaults.DefaultSqlSession.StrictMap;
+
+/**
+ * 批量加载嵌套查询： 收集多个父对象的 column 值， 以 List 参数（名称为 list 和 collection）执行一次嵌套查询，
+ * 再按 batchKeyProperties 对应的属性值将结果分配给各个父对象。
+ * 嵌套查询需要自己处理 List 参数， 如 &lt;foreach collection="list"&gt; 生成 IN 条件；
+ * 复合列时 List 中的元素是以 column 中的属性名为 key 的 Map。
+ *
+ * 非线程安全
+ */
+public class BatchResultLoader {
+
+  private final Configuration configuration;
+  private final MappedStatement mappedStatement;
+  private final ResultMapping resultMapping;
+  private final ResultExtractor resultExtractor;
+  // 等待加载的父对象及其 key
+  private final List<Parent> parents = new ArrayList<>();
+  // 去重后的参数， 保持加入的顺序
+  private final Map<Object, Object> parameters = new LinkedHashMap<>();
+
+  public BatchResultLoader(Configuration configuration, MappedStatement mappedStatement, ResultMapping resultMapping) {
+    this.configuration = configuration;
+    this.mappedStatement = mappedStatement;
+    this.resultMapping = resultMapping;
+    this.resultExtractor = new ResultExtractor(configuration, configuration.getObjectFactory());
+  }
+
+  /**
+   * 添加一个父对象， 加载后设置其 resultMapping 对应的属性
+   *
+   * @param parameterObject column 的值， 复合列时为以属性名为 key 的 Map
+   */
+  public void addParent(MetaObject metaObject, Object parameterObject) {
+    Object key = parameterKey(parameterObject);
+    parents.add(new Parent(metaObject, key));
+    parameters.putIfAbsent(key, parameterObject);
+  }
+
+  /**
+   * 不同参数的个数达到 batchSize
+   */
+  public boolean isFull() {
+    return parameters.size() >= resultMapping.getBatchSize();
+  }
+
+  public boolean isEmpty() {
+    return parents.isEmpty();
+  }
+
+  public ResultMapping getResultMapping() {
+    return resultMapping;
+  }
+
+  /**
+   * 执行嵌套查询并设置所有父对象的属性， 之后可以继续添加父对象
+   */
+  public void load(Executor executor) throws SQLException {
+    if (parents.isEmpty()) {
+      return;
+    }
+    final List<Parent> loading = new ArrayList<>(parents);
+    final List<Object> values = new ArrayList<>(parameters.values());
+    parents.clear();
+    parameters.clear();
+
+    final Object parameterObject = wrapParameters(values);
+    final CacheKey key = executor.createCacheKey(mappedStatement, parameterObject, RowBounds.DEFAULT, mappedStatement.getBoundSql(parameterObject));
+    if (executor.isCached(mappedStatement, key)) {
+      // 与逐行的嵌套查询一样交给 deferLoad： 循环的批量映射中相同参数的查询可能仍在执行， 本地缓存中只有占位符，
+      // 此时等最外层查询完成后再分配结果， 已完成时则立即分配
+      executor.deferLoad(mappedStatement, configuration.newMetaObject(new DeferredBatch(loading)), "results", key, List.class);
+      return;
+    }
+    assign(loading, group(executor.query(mappedStatement, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER)));
+  }
+
+  private void assign(List<Parent> loading, Map<Object, List<Object>> resultsByKey) {
+    final String property = resultMapping.getProperty();
+    for (Parent parent : loading) {
+      final Object value = extractValue(resultsByKey, parent.key);
+      if (value != null) {
+        parent.metaObject.setValue(property, value);
+      }
+    }
+  }
+
+  /**
+   * 以 values 为 List 参数执行一次嵌套查询， 返回按 batchKeyProperties 的值分组的结果
+   */
+  Map<Object, List<Object>> query(Executor executor, List<Object> values) throws SQLException {
+    return group(executor.query(mappedStatement, wrapParameters(values), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+  }
+
+  private Map<Object, List<Object>> group(List<Object> results) {
+    final Map<Object, List<Object>> resultsByKey = new HashMap<>();
+    for (Object result : results) {
+      if (result != null) {
+        resultsByKey.computeIfAbsent(resultKey(result), k -> new ArrayList<>()).add(result);
+      }
+    }
+    return resultsByKey;
+  }
+
+  /**
+   * 父对象的属性值， 每个父对象使用自己的集合
+   */
+  Object extractValue(Map<Object, List<Object>> resultsByKey, Object key) {
+    final List<Object> parentResults = resultsByKey.get(key);
+    return resultExtractor.extractObjectFromList(
+        parentResults == null ? new ArrayList<>() : new ArrayList<>(parentResults), resultMapping.getJavaType());
+  }
+
+  /**
+   * 批量查询的参数对象， values 可以通过 list 或 collection 访问
+   */
+  public static Object wrapParameters(List<Object> values) {
+    final StrictMap<Object> parameterObject = new StrictMap<>();
+    parameterObject.put("collection", values);
+    parameterObject.put("list", values);
+    return parameterObject;
+  }
+
+  Object parameterKey(Object parameterObject) {
+    final List<ResultMapping> composites = resultMapping.getComposites();
+    if (composites.isEmpty()) {
+      return normalize(parameterObject);
+    }
+    final MetaObject metaParameter = configuration.newMetaObject(parameterObject);
+    final List<Object> key = new ArrayList<>(composites.size());
+    for (ResultMapping composite : composites) {
+      key.add(normalize(metaParameter.getValue(composite.getProperty())));
+    }
+    return key;
+  }
+
+  private Object resultKey(Object result) {
+    final MetaObject metaResult = configuration.newMetaObject(result);
+    final List<String> keyProperties = resultMapping.getBatchKeyProperties();
+    if (resultMapping.getComposites().isEmpty()) {
+      return normalize(metaResult.getValue(keyProperties.get(0)));
+    }
+    final List<Object> key = new ArrayList<>(keyProperties.size());
+    for (String keyProperty : keyProperties) {
+      key.add(normalize(metaResult.getValue(keyProperty)));
+    }
+    return key;
+  }
+
+  /**
+   * 列值与结果属性的类型可能不同（如 BigDecimal 与 Long）， 整数统一为 Long 后再比较
+   */
+  static Object normalize(Object value) {
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+      return ((BigInteger) value).longValue();
+    }
+    if (value instanceof BigDecimal) {
+      BigDecimal decimal = ((BigDecimal) value).stripTrailingZeros();
+      if (decimal.scale() <= 0 && decimal.precision() - decimal.scale() < 19) {
+        return decimal.longValueExact();
+      }
+      return decimal;
+    }
+    return value;
+  }
+
+  /**
+   * 延迟加载的一批父对象， 由 deferLoad 设置查询结果后再分配
+   */
+  private class DeferredBatch {
+    private final List<Parent> loading;
+
+    DeferredBatch(List<Parent> loading) {
+      this.loading = loading;
+    }
+
+    public void setResults(List<Object> results) {
+      assign(loading, group(results));
+    }
+  }
+
+  private static class Parent {
+    private final MetaObject metaObject;
+    private final Object key;
+
+    Parent(MetaObject metaObject, Object key) {
+      this.metaObject = metaObject;
+      this.key = key;
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.loader.ResultLoaderMap.LoadPair;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * 延迟加载分组： 同一个结果集中同一个延迟加载属性的 LoadPair 注册在同一组中。
+ * 任意一个对象首次访问该属性时， 用一次嵌套查询加载最多 batchSize 个同组对象的该属性，
+ * 结果保存在各自的 LoadPair 中， 其他对象访问时不再查询数据库。
+ * 嵌套查询的参数与 fetchType 为 batch 时相同， 见 {@link BatchResultLoader}。
+ *
+ * 不会修改其他代理对象， 只在自己的锁内加载， 避免不同代理对象之间互相等待。
+ */
+public class LazyLoadGroup {
+
+  private final Configuration configuration;
+  private final Executor executor;
+  private final BatchResultLoader batchResultLoader;
+  private final int batchSize;
+  private final long creatorThreadId;
+  // 还没有加载的 LoadPair 及其参数， 保持加入的顺序
+  private final Map<LoadPair, Object> pending = new LinkedHashMap<>();
+
+  public LazyLoadGroup(Configuration configuration, Executor executor, MappedStatement mappedStatement, ResultMapping resultMapping) {
+    this.configuration = configuration;
+    this.executor = executor;
+    this.batchResultLoader = new BatchResultLoader(configuration, mappedStatement, resultMapping);
+    this.batchSize = resultMapping.getBatchSize();
+    this.creatorThreadId = Thread.currentThread().getId();
+  }
+
+  /**
+   * @param parameterObject 该对象在批量查询参数 List 中的元素
+   */
+  synchronized void add(LoadPair loadPair, Object parameterObject) {
+    pending.put(loadPair, parameterObject);
+  }
+
+  /**
+   * 还没有加载的对象个数
+   */
+  public synchronized int size() {
+    return pending.size();
+  }
+
+  /**
+   * 加载 requested 及其之后最多 batchSize 个不同参数的同组对象， 已被同组加载过时直接返回
+   */
+  synchronized void load(LoadPair requested) throws SQLException {
+    if (!pending.containsKey(requested)) {
+      return;
+    }
+    final Map<LoadPair, Object> keys = new LinkedHashMap<>();
+    final Set<Object> distinctKeys = new LinkedHashSet<>();
+    final List<Object> values = new ArrayList<>();
+    addToBatch(requested, pending.get(requested), keys, distinctKeys, values);
+    for (Map.Entry<LoadPair, Object> entry : pending.entrySet()) {
+      if (distinctKeys.size() >= batchSize) {
+        break;
+      }
+      if (entry.getKey() != requested) {
+        addToBatch(entry.getKey(), entry.getValue(), keys, distinctKeys, values);
+      }
+    }
+
+    final Map<Object, List<Object>> resultsByKey = query(values);
+    // 查询成功后才移出， 失败时下次访问可以重试
+    for (Map.Entry<LoadPair, Object> entry : keys.entrySet()) {
+      pending.remove(entry.getKey());
+      entry.getKey().preload(batchResultLoader.extractValue(resultsByKey, entry.getValue()));
+    }
+  }
+
+  private void addToBatch(LoadPair loadPair, Object parameterObject, Map<LoadPair, Object> keys, Set<Object> distinctKeys, List<Object> values) {
+    final Object key = batchResultLoader.parameterKey(parameterObject);
+    keys.put(loadPair, key);
+    if (distinctKeys.add(key)) {
+      values.add(parameterObject);
+    }
+  }
+
+  private Map<Object, List<Object>> query(List<Object> values) throws SQLException {
+    Executor localExecutor = executor;
+    if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
+      localExecutor = ResultLoader.newExecutor(configuration);
+    }
+    try {
+      return batchResultLoader.query(localExecutor, values);
+    } finally {
+      if (localExecutor != executor) {
+        localExecutor.close(false);
+      }
+    }
+  }
+
+}
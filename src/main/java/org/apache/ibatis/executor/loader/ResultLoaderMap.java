@@ -50,13 +50,28 @@ public class ResultLoaderMap {
   private final Map<String, LoadPair> loaderMap = new HashMap<>();
 
   public void addLoader(String property, MetaObject metaResultObject, ResultLoader resultLoader) {
+    addLoader(property, metaResultObject, resultLoader, null, null);
+  }
+
+  /**
+   * 注册到延迟加载分组， 首次访问时与同组的其他对象一起加载
+   *
+   * @param group 为 null 时单独加载
+   * @param parameterObject 该对象在批量查询参数 List 中的元素
+   */
+  public void addLoader(String property, MetaObject metaResultObject, ResultLoader resultLoader, LazyLoadGroup group, Object parameterObject) {
     String upperFirst = getUppercaseFirstProperty(property);
     if (!upperFirst.equalsIgnoreCase(property) && loaderMap.containsKey(upperFirst)) {
       throw new ExecutorException("Nested lazy loaded result property '" + property +
               "' for query id '" + resultLoader.mappedStatement.getId() +
               " already exists in the result map. The leftmost property of all lazy loaded properties must be unique within a result map.");
     }
-    loaderMap.put(upperFirst, new LoadPair(property, metaResultObject, resultLoader));
+    final LoadPair loadPair = new LoadPair(property, metaResultObject, resultLoader);
+    if (group != null) {
+      loadPair.group = group;
+      group.add(loadPair, parameterObject);
+    }
+    loaderMap.put(upperFirst, loadPair);
   }
 
   public final Map<String, LoadPair> getProperties() {
@@ -123,6 +138,18 @@ public class ResultLoaderMap {
      * Result loader which loads unread properties.
      */
     private transient ResultLoader resultLoader;
+    /**
+     * 延迟加载分组， 反序列化后为 null， 此时单独加载
+     */
+    private transient LazyLoadGroup group;
+    /**
+     * 是否已经被同组的批量查询加载
+     */
+    private transient boolean preloaded;
+    /**
+     * 同组批量查询加载的属性值
+     */
+    private transient Object preloadedValue;
     /**
      * Wow, logger.
      */
@@ -216,7 +243,17 @@ public class ResultLoaderMap {
                 old.parameterObject, old.targetType, old.cacheKey, old.boundSql);
       }
 
-      this.metaResultObject.setValue(property, this.resultLoader.loadResult());
+      if (this.group != null) {
+        // 同时加载同组其他对象的该属性， 已经加载过时不再查询
+        this.group.load(this);
+      }
+      final Object value = this.preloaded ? this.preloadedValue : this.resultLoader.loadResult();
+      this.metaResultObject.setValue(property, value);
+    }
+
+    void preload(Object value) {
+      this.preloadedValue = value;
+      this.preloaded = true;
     }
 
     private Configuration getConfiguration() {
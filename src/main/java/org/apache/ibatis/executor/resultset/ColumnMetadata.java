@@ -0,0 +1,75 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 结果集的列信息及由其推导出的 TypeHandler、列名映射等， 以 (列名, JdbcType, Java 类名) 作为签名判等，
+ * 同一语句的相同列布局在多次执行之间共用一个实例
+ */
+final class ColumnMetadata {
+
+  final List<String> columnNames;
+  final List<String> classNames;
+  final List<JdbcType> jdbcTypes;
+  // 列名 -> 属性类型 -> TypeHandler
+  final ConcurrentMap<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new ConcurrentHashMap<>();
+  // 替换 UnknownTypeHandler 的实际 TypeHandler， 分别按列名和列索引解析
+  final ConcurrentMap<String, TypeHandler<?>> unknownTypeHandlersByName = new ConcurrentHashMap<>();
+  final ConcurrentMap<Integer, TypeHandler<?>> unknownTypeHandlersByIndex = new ConcurrentHashMap<>();
+  // "resultMapId:columnPrefix" -> 列名列表
+  final ConcurrentMap<String, List<String>> mappedColumnNamesMap = new ConcurrentHashMap<>();
+  final ConcurrentMap<String, List<String>> unMappedColumnNamesMap = new ConcurrentHashMap<>();
+  private final int hashCode;
+
+  ColumnMetadata(List<String> columnNames, List<String> classNames, List<JdbcType> jdbcTypes) {
+    this.columnNames = columnNames;
+    this.classNames = classNames;
+    this.jdbcTypes = jdbcTypes;
+    int hash = columnNames.hashCode();
+    hash = 31 * hash + classNames.hashCode();
+    hash = 31 * hash + jdbcTypes.hashCode();
+    this.hashCode = hash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ColumnMetadata)) {
+      return false;
+    }
+    final ColumnMetadata that = (ColumnMetadata) o;
+    return hashCode == that.hashCode
+        && columnNames.equals(that.columnNames)
+        && jdbcTypes.equals(that.jdbcTypes)
+        && classNames.equals(that.classNames);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+}
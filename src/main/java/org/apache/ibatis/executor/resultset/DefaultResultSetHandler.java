@@ -23,6 +23,8 @@ import org.apache.ibatis.cursor.defaults.DefaultCursor;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.loader.BatchResultLoader;
+import org.apache.ibatis.executor.loader.LazyLoadGroup;
 import org.apache.ibatis.executor.loader.ResultLoader;
 import org.apache.ibatis.executor.loader.ResultLoaderMap;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
@@ -38,8 +40,10 @@ import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.mapping.ResultMapping;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.Reflector;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.wrapper.BeanWrapper;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultContext;
@@ -48,6 +52,7 @@ import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
+import org.apache.ibatis.type.UnknownTypeHandler;
 
 import java.lang.reflect.Constructor;
 import java.sql.CallableStatement;
@@ -55,8 +60,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -98,6 +105,13 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   // temporary marking flag that indicate using constructor mapping (use field to reduce memory usage)
   private boolean useConstructorMappings;
 
+  // fetchType 为 batch 的嵌套查询， 攒够 batchSize 个父对象或读完结果集时加载
+  private final Map<ResultMapping, BatchResultLoader> batchResultLoaders = new IdentityHashMap<>();
+  // 设置了 batchKeyProperty 的延迟加载嵌套查询， 同一结果集中的对象共用一个分组
+  private final Map<ResultMapping, LazyLoadGroup> lazyLoadGroups = new IdentityHashMap<>();
+  // 只有 handleResultSets 在结果集读完时加载剩余的父对象； 游标和自定义 ResultHandler 会在加载前交出结果， 每个父对象单独加载
+  private boolean batchFetchEnabled;
+
   private static class PendingRelation {
     public MetaObject metaObject;
     public ResultMapping propertyMapping;
@@ -160,7 +174,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     try {
       final String resultMapId = parameterMapping.getResultMapId();
       final ResultMap resultMap = configuration.getResultMap(resultMapId);
-      final ResultSetWrapper rsw = new ResultSetWrapper(rs, configuration);
+      final ResultSetWrapper rsw = new ResultSetWrapper(rs, configuration, mappedStatement);
       if (this.resultHandler == null) {
         final DefaultResultHandler resultHandler = new DefaultResultHandler(objectFactory);
         handleRowValues(rsw, resultMap, resultHandler, new RowBounds(), null);
@@ -182,6 +196,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     ErrorContext.instance().activity("handling results").object(mappedStatement.getId());
 
     final List<Object> multipleResults = new ArrayList<>();
+    batchFetchEnabled = resultHandler == null;
 
     int resultSetCount = 0;
     ResultSetWrapper rsw = getFirstResultSet(stmt);
@@ -247,7 +262,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
-    return rs != null ? new ResultSetWrapper(rs, configuration) : null;
+    return rs != null ? new ResultSetWrapper(rs, configuration, mappedStatement) : null;
   }
 
   private ResultSetWrapper getNextResultSet(Statement stmt) {
@@ -260,7 +275,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
           if (rs == null) {
             return getNextResultSet(stmt);
           } else {
-            return new ResultSetWrapper(rs, configuration);
+            return new ResultSetWrapper(rs, configuration, mappedStatement);
           }
         }
       }
@@ -308,6 +323,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       // issue #228 (close resultsets)
       closeResultSet(rsw.getResultSet());
     }
+    // 加载未满一批的嵌套查询
+    loadBatches();
+    // 之后的结果集使用新的延迟加载分组
+    lazyLoadGroups.clear();
   }
 
   @SuppressWarnings("unchecked")
@@ -396,6 +415,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     final ResultLoaderMap lazyLoader = new ResultLoaderMap();
     Object rowValue = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
     if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
+      final RowMappingPlan plan = this.useConstructorMappings ? null : getRowMappingPlan(rsw, resultMap, rowValue, columnPrefix);
+      if (plan != null) {
+        // 简单 JavaBean： 直接执行预编译的映射计划
+        boolean foundValues = plan.apply(rsw.getResultSet(), rowValue, configuration.isCallSettersOnNulls());
+        return foundValues || configuration.isReturnInstanceForEmptyRow() ? rowValue : null;
+      }
       final MetaObject metaObject = configuration.newMetaObject(rowValue);
       boolean foundValues = this.useConstructorMappings;
       if (shouldApplyAutomaticMappings(resultMap, false)) {
@@ -408,6 +433,84 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rowValue;
   }
 
+  //
+  // ROW MAPPING PLAN
+  //
+
+  /**
+   * 获取（首次时编译）行映射计划， 不适用时返回 null， 由调用方走原有的映射流程
+   */
+  private RowMappingPlan getRowMappingPlan(ResultSetWrapper rsw, ResultMap resultMap, Object rowValue, String columnPrefix) throws SQLException {
+    RowMappingPlan plan = rsw.getRowMappingPlan(resultMap, columnPrefix);
+    if (plan == null) {
+      plan = compileRowMappingPlan(rsw, resultMap, rowValue, columnPrefix);
+      rsw.putRowMappingPlan(resultMap, columnPrefix, plan);
+    }
+    return plan.supports(rowValue) ? plan : null;
+  }
+
+  private RowMappingPlan compileRowMappingPlan(ResultSetWrapper rsw, ResultMap resultMap, Object rowValue, String columnPrefix) throws SQLException {
+    // 嵌套结果、嵌套查询（含延迟加载）和构造方法映射仍走原有流程
+    if (resultMap.hasNestedResultMaps() || resultMap.hasNestedQueries() || !resultMap.getConstructorResultMappings().isEmpty()) {
+      return RowMappingPlan.UNSUPPORTED;
+    }
+    final MetaObject metaObject = configuration.newMetaObject(rowValue);
+    // Map、集合及自定义 ObjectWrapper 需要 MetaObject 处理
+    if (metaObject.getObjectWrapper().getClass() != BeanWrapper.class) {
+      return RowMappingPlan.UNSUPPORTED;
+    }
+    final Reflector reflector = reflectorFactory.findForClass(rowValue.getClass());
+    final List<String> columnNames = rsw.getColumnNames();
+    final RowMappingPlan.Builder builder = new RowMappingPlan.Builder(rowValue.getClass());
+    if (shouldApplyAutomaticMappings(resultMap, false)) {
+      for (UnMappedColumnAutoMapping mapping : createAutomaticMappings(rsw, resultMap, metaObject, columnPrefix)) {
+        final int columnIndex = columnNames.indexOf(mapping.column);
+        if (columnIndex < 0 || !isSimpleProperty(reflector, mapping.property)) {
+          return RowMappingPlan.UNSUPPORTED;
+        }
+        builder.add(columnIndex + 1, mapping.typeHandler, mapping.property, reflector.getSetInvoker(mapping.property), mapping.primitive);
+      }
+    }
+    final List<String> mappedColumnNames = rsw.getMappedColumnNames(resultMap, columnPrefix);
+    for (ResultMapping propertyMapping : resultMap.getPropertyResultMappings()) {
+      if (propertyMapping.isCompositeResult() || propertyMapping.getResultSet() != null) {
+        return RowMappingPlan.UNSUPPORTED;
+      }
+      final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
+      final String property = propertyMapping.getProperty();
+      // issue #541 make property optional
+      if (column == null || property == null || !mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH))) {
+        continue;
+      }
+      final int columnIndex = indexOfColumn(columnNames, column);
+      if (columnIndex < 0 || !isSimpleProperty(reflector, property)) {
+        return RowMappingPlan.UNSUPPORTED;
+      }
+      TypeHandler<?> typeHandler = propertyMapping.getTypeHandler();
+      if (typeHandler instanceof UnknownTypeHandler) {
+        typeHandler = rsw.resolveUnknownTypeHandler(columnIndex + 1);
+      }
+      builder.add(columnIndex + 1, typeHandler, property, reflector.getSetInvoker(property),
+          reflector.getSetterType(property).isPrimitive());
+    }
+    return builder.build();
+  }
+
+  // 只处理当前对象上直接可写的属性， "a.b"、"a[0]" 之类的路径需要 MetaObject 逐级创建对象
+  private boolean isSimpleProperty(Reflector reflector, String property) {
+    return property.indexOf('.') < 0 && property.indexOf('[') < 0 && reflector.hasSetter(property);
+  }
+
+  // 与按列名读取时一致， 取第一个名称匹配的列
+  private int indexOfColumn(List<String> columnNames, String column) {
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (columnNames.get(i).equalsIgnoreCase(column)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   private boolean shouldApplyAutomaticMappings(ResultMap resultMap, boolean isNested) {
     if (resultMap.getAutoMapping() != null) {
       return resultMap.getAutoMapping();
@@ -438,7 +541,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       if (propertyMapping.isCompositeResult()
           || (column != null && mappedColumnNames.contains(column.toUpperCase(Locale.ENGLISH)))
           || propertyMapping.getResultSet() != null) {
-        Object value = getPropertyMappingValue(rsw.getResultSet(), metaObject, propertyMapping, lazyLoader, columnPrefix);
+        Object value = getPropertyMappingValue(rsw, metaObject, propertyMapping, lazyLoader, columnPrefix);
         // issue #541 make property optional
         final String property = propertyMapping.getProperty();
         if (property == null) {
@@ -459,16 +562,21 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return foundValues;
   }
 
-  private Object getPropertyMappingValue(ResultSet rs, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
+  private Object getPropertyMappingValue(ResultSetWrapper rsw, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, String columnPrefix)
       throws SQLException {
+    final ResultSet rs = rsw.getResultSet();
     if (propertyMapping.getNestedQueryId() != null) {
       return getNestedQueryMappingValue(rs, metaResultObject, propertyMapping, lazyLoader, columnPrefix);
     } else if (propertyMapping.getResultSet() != null) {
       addPendingChildRelation(rs, metaResultObject, propertyMapping);   // TODO is that OK?
       return DEFERED;
     } else {
-      final TypeHandler<?> typeHandler = propertyMapping.getTypeHandler();
+      TypeHandler<?> typeHandler = propertyMapping.getTypeHandler();
       final String column = prependPrefix(propertyMapping.getColumn(), columnPrefix);
+      if (typeHandler instanceof UnknownTypeHandler) {
+        // 使用按列布局缓存的解析结果， UnknownTypeHandler 自身会逐行读取 ResultSetMetaData
+        typeHandler = rsw.resolveUnknownTypeHandler(column);
+      }
       return typeHandler.getResult(rs, column);
     }
   }
@@ -738,10 +846,17 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     final String nestedQueryId = propertyMapping.getNestedQueryId();
     final String property = propertyMapping.getProperty();
     final MappedStatement nestedQuery = configuration.getMappedStatement(nestedQueryId);
-    final Class<?> nestedQueryParameterType = nestedQuery.getParameterMap().getType();
+    // 批量加载时嵌套查询的参数是 List， 每个元素按列值（复合列为 Map）准备
+    final Class<?> nestedQueryParameterType = propertyMapping.isBatchFetch() ? null : nestedQuery.getParameterMap().getType();
     final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rs, propertyMapping, nestedQueryParameterType, columnPrefix);
     Object value = null;
-    if (nestedQueryParameterObject != null) {
+    if (nestedQueryParameterObject != null && propertyMapping.isBatchFetch() && propertyMapping.isLazy()) {
+      addLazyLoader(nestedQuery, metaResultObject, propertyMapping, lazyLoader, nestedQueryParameterObject);
+      value = DEFERED;
+    } else if (nestedQueryParameterObject != null && propertyMapping.isBatchFetch()) {
+      addToBatch(nestedQuery, metaResultObject, propertyMapping, nestedQueryParameterObject);
+      value = DEFERED;
+    } else if (nestedQueryParameterObject != null) {
       final BoundSql nestedBoundSql = nestedQuery.getBoundSql(nestedQueryParameterObject);
       final CacheKey key = executor.createCacheKey(nestedQuery, nestedQueryParameterObject, RowBounds.DEFAULT, nestedBoundSql);
       final Class<?> targetType = propertyMapping.getJavaType();
@@ -761,6 +876,44 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return value;
   }
 
+  private void addToBatch(MappedStatement nestedQuery, MetaObject metaResultObject, ResultMapping propertyMapping, Object nestedQueryParameterObject)
+      throws SQLException {
+    BatchResultLoader batchResultLoader = batchResultLoaders.get(propertyMapping);
+    if (batchResultLoader == null) {
+      batchResultLoader = new BatchResultLoader(configuration, nestedQuery, propertyMapping);
+      batchResultLoaders.put(propertyMapping, batchResultLoader);
+    }
+    batchResultLoader.addParent(metaResultObject, nestedQueryParameterObject);
+    if (!batchFetchEnabled || batchResultLoader.isFull()) {
+      batchResultLoader.load(executor);
+    }
+  }
+
+  private void addLazyLoader(MappedStatement nestedQuery, MetaObject metaResultObject, ResultMapping propertyMapping, ResultLoaderMap lazyLoader, Object nestedQueryParameterObject) {
+    final String property = propertyMapping.getProperty();
+    final Class<?> targetType = propertyMapping.getJavaType();
+    // 单独加载（或反序列化后加载）时只有一个元素的 List 参数
+    final Object parameterObject = BatchResultLoader.wrapParameters(Collections.singletonList(nestedQueryParameterObject));
+    if (batchFetchEnabled) {
+      final LazyLoadGroup group = lazyLoadGroups.computeIfAbsent(propertyMapping,
+          k -> new LazyLoadGroup(configuration, executor, nestedQuery, propertyMapping));
+      // 分组时由 group 查询， resultLoader 只用于反序列化后加载
+      final ResultLoader resultLoader = new ResultLoader(configuration, executor, nestedQuery, parameterObject, targetType, null, null);
+      lazyLoader.addLoader(property, metaResultObject, resultLoader, group, nestedQueryParameterObject);
+    } else {
+      final BoundSql nestedBoundSql = nestedQuery.getBoundSql(parameterObject);
+      final CacheKey key = executor.createCacheKey(nestedQuery, parameterObject, RowBounds.DEFAULT, nestedBoundSql);
+      final ResultLoader resultLoader = new ResultLoader(configuration, executor, nestedQuery, parameterObject, targetType, key, nestedBoundSql);
+      lazyLoader.addLoader(property, metaResultObject, resultLoader);
+    }
+  }
+
+  private void loadBatches() throws SQLException {
+    for (BatchResultLoader batchResultLoader : batchResultLoaders.values()) {
+      batchResultLoader.load(executor);
+    }
+  }
+
   private Object prepareParameterForNestedQuery(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     if (resultMapping.isCompositeResult()) {
       return prepareCompositeKeyParameter(rs, resultMapping, parameterType, columnPrefix);
@@ -1003,9 +1156,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   //
 
   private CacheKey createRowKey(ResultMap resultMap, ResultSetWrapper rsw, String columnPrefix) throws SQLException {
-    final CacheKey cacheKey = new CacheKey();
-    cacheKey.update(resultMap.getId());
     List<ResultMapping> resultMappings = getResultMappingsForRowKey(resultMap);
+    // resultMap id 加上每列的列名和值
+    final CacheKey cacheKey = new CacheKey(1 + 2 * Math.max(resultMappings.size(), 1));
+    cacheKey.update(resultMap.getId());
     if (resultMappings.isEmpty()) {
       if (Map.class.isAssignableFrom(resultMap.getType())) {
         createRowKeyForMap(rsw, cacheKey);
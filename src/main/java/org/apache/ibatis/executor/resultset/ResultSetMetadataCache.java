@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 语句级别的结果集列信息缓存， 由 {@link org.apache.ibatis.mapping.MappedStatement} 持有。
+ * 列布局相同的结果集复用已解析的 TypeHandler 和列名映射， 不必在每次执行时重新推导
+ */
+public final class ResultSetMetadataCache {
+
+  /**
+   * 每个语句最多缓存的列布局数量， 动态 SQL 产生更多形态时不再缓存
+   */
+  private static final int MAX_LAYOUTS = 32;
+
+  private final ConcurrentMap<ColumnMetadata, ColumnMetadata> layouts = new ConcurrentHashMap<>();
+
+  /**
+   * 返回与 metadata 列布局相同的共享实例， 没有时登记 metadata 本身
+   */
+  ColumnMetadata intern(ColumnMetadata metadata) {
+    ColumnMetadata cached = layouts.get(metadata);
+    if (cached != null) {
+      return cached;
+    }
+    if (layouts.size() >= MAX_LAYOUTS) {
+      return metadata;
+    }
+    cached = layouts.putIfAbsent(metadata, metadata);
+    return cached == null ? metadata : cached;
+  }
+
+  public int size() {
+    return layouts.size();
+  }
+
+  public void clear() {
+    layouts.clear();
+  }
+
+}
@@ -22,11 +22,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.type.JdbcType;
@@ -42,24 +45,41 @@ public class ResultSetWrapper {
 
   private final ResultSet resultSet;
   private final TypeHandlerRegistry typeHandlerRegistry;
-  private final List<String> columnNames = new ArrayList<>();
-  private final List<String> classNames = new ArrayList<>();
-  private final List<JdbcType> jdbcTypes = new ArrayList<>();
-  private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new HashMap<>();
-  private final Map<String, List<String>> mappedColumnNamesMap = new HashMap<>();
-  private final Map<String, List<String>> unMappedColumnNamesMap = new HashMap<>();
+  private final List<String> columnNames;
+  private final List<String> classNames;
+  private final List<JdbcType> jdbcTypes;
+  // 列信息及由其推导出的 TypeHandler、列名映射， 可能与同一语句的其它结果集共用
+  private final ColumnMetadata metadata;
+  // 按 ResultMap 实例与 columnPrefix 缓存行映射计划， 逐行查找时无需拼接字符串
+  private final Map<ResultMap, Map<String, RowMappingPlan>> rowMappingPlans = new IdentityHashMap<>();
 
   public ResultSetWrapper(ResultSet rs, Configuration configuration) throws SQLException {
+    this(rs, configuration, null);
+  }
+
+  /**
+   * @param mappedStatement 不为 null 时， 列布局相同的结果集共用该语句缓存的列信息
+   */
+  public ResultSetWrapper(ResultSet rs, Configuration configuration, MappedStatement mappedStatement) throws SQLException {
     super();
     this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
     this.resultSet = rs;
     final ResultSetMetaData metaData = rs.getMetaData();
     final int columnCount = metaData.getColumnCount();
+    final List<String> columnNames = new ArrayList<>(columnCount);
+    final List<String> classNames = new ArrayList<>(columnCount);
+    final List<JdbcType> jdbcTypes = new ArrayList<>(columnCount);
     for (int i = 1; i <= columnCount; i++) {
       columnNames.add(configuration.isUseColumnLabel() ? metaData.getColumnLabel(i) : metaData.getColumnName(i));
       jdbcTypes.add(JdbcType.forCode(metaData.getColumnType(i)));
       classNames.add(metaData.getColumnClassName(i));
     }
+    final ColumnMetadata metadata = new ColumnMetadata(Collections.unmodifiableList(columnNames),
+        Collections.unmodifiableList(classNames), Collections.unmodifiableList(jdbcTypes));
+    this.metadata = mappedStatement == null ? metadata : mappedStatement.getResultSetMetadataCache().intern(metadata);
+    this.columnNames = this.metadata.columnNames;
+    this.classNames = this.metadata.classNames;
+    this.jdbcTypes = this.metadata.jdbcTypes;
   }
 
   public ResultSet getResultSet() {
@@ -71,7 +91,7 @@ public class ResultSetWrapper {
   }
 
   public List<String> getClassNames() {
-    return Collections.unmodifiableList(classNames);
+    return classNames;
   }
 
   public List<JdbcType> getJdbcTypes() {
@@ -98,10 +118,14 @@ public class ResultSetWrapper {
    */
   public TypeHandler<?> getTypeHandler(Class<?> propertyType, String columnName) {
     TypeHandler<?> handler = null;
-    Map<Class<?>, TypeHandler<?>> columnHandlers = typeHandlerMap.get(columnName);
+    Map<Class<?>, TypeHandler<?>> columnHandlers = metadata.typeHandlerMap.get(columnName);
     if (columnHandlers == null) {
-      columnHandlers = new HashMap<>();
-      typeHandlerMap.put(columnName, columnHandlers);
+      columnHandlers = new ConcurrentHashMap<>();
+      final Map<Class<?>, TypeHandler<?>> existing = metadata.typeHandlerMap.putIfAbsent(columnName, columnHandlers);
+      if (existing != null) {
+        columnHandlers = existing;
+        handler = columnHandlers.get(propertyType);
+      }
     } else {
       handler = columnHandlers.get(propertyType);
     }
@@ -129,6 +153,52 @@ public class ResultSetWrapper {
     return handler;
   }
 
+  /**
+   * 按列名解析 {@link UnknownTypeHandler} 实际会使用的 TypeHandler， 结果随列信息缓存，
+   * 避免 UnknownTypeHandler 逐行读取 ResultSetMetaData
+   */
+  public TypeHandler<?> resolveUnknownTypeHandler(String columnName) throws SQLException {
+    TypeHandler<?> handler = metadata.unknownTypeHandlersByName.get(columnName);
+    if (handler == null) {
+      // Replicate logic of UnknownTypeHandler#resolveTypeHandler(ResultSet, String):
+      // the column is looked up by its name, the last match wins
+      final ResultSetMetaData metaData = resultSet.getMetaData();
+      int columnIndex = -1;
+      for (int i = 1, n = metaData.getColumnCount(); i <= n; i++) {
+        if (columnName.equals(metaData.getColumnName(i))) {
+          columnIndex = i;
+        }
+      }
+      handler = columnIndex < 0 ? new ObjectTypeHandler() : resolveUnknownTypeHandler(columnIndex);
+      metadata.unknownTypeHandlersByName.putIfAbsent(columnName, handler);
+    }
+    return handler;
+  }
+
+  /**
+   * 按列索引（从 1 开始）解析 {@link UnknownTypeHandler} 实际会使用的 TypeHandler
+   */
+  public TypeHandler<?> resolveUnknownTypeHandler(int columnIndex) {
+    TypeHandler<?> handler = metadata.unknownTypeHandlersByIndex.get(columnIndex);
+    if (handler == null) {
+      // Replicate logic of UnknownTypeHandler#resolveTypeHandler(ResultSetMetaData, Integer)
+      final JdbcType jdbcType = jdbcTypes.get(columnIndex - 1);
+      final Class<?> javaType = resolveClass(classNames.get(columnIndex - 1));
+      if (javaType != null && jdbcType != null) {
+        handler = typeHandlerRegistry.getTypeHandler(javaType, jdbcType);
+      } else if (javaType != null) {
+        handler = typeHandlerRegistry.getTypeHandler(javaType);
+      } else if (jdbcType != null) {
+        handler = typeHandlerRegistry.getTypeHandler(jdbcType);
+      }
+      if (handler == null || handler instanceof UnknownTypeHandler) {
+        handler = new ObjectTypeHandler();
+      }
+      metadata.unknownTypeHandlersByIndex.putIfAbsent(columnIndex, handler);
+    }
+    return handler;
+  }
+
   private Class<?> resolveClass(String className) {
     try {
       // #699 className could be null
@@ -154,28 +224,37 @@ public class ResultSetWrapper {
         unmappedColumnNames.add(columnName);
       }
     }
-    mappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), mappedColumnNames);
-    unMappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), unmappedColumnNames);
+    metadata.mappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), mappedColumnNames);
+    metadata.unMappedColumnNamesMap.put(getMapKey(resultMap, columnPrefix), unmappedColumnNames);
   }
 
   public List<String> getMappedColumnNames(ResultMap resultMap, String columnPrefix) throws SQLException {
-    List<String> mappedColumnNames = mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+    List<String> mappedColumnNames = metadata.mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
     if (mappedColumnNames == null) {
       loadMappedAndUnmappedColumnNames(resultMap, columnPrefix);
-      mappedColumnNames = mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+      mappedColumnNames = metadata.mappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
     }
     return mappedColumnNames;
   }
 
   public List<String> getUnmappedColumnNames(ResultMap resultMap, String columnPrefix) throws SQLException {
-    List<String> unMappedColumnNames = unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+    List<String> unMappedColumnNames = metadata.unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
     if (unMappedColumnNames == null) {
       loadMappedAndUnmappedColumnNames(resultMap, columnPrefix);
-      unMappedColumnNames = unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
+      unMappedColumnNames = metadata.unMappedColumnNamesMap.get(getMapKey(resultMap, columnPrefix));
     }
     return unMappedColumnNames;
   }
 
+  RowMappingPlan getRowMappingPlan(ResultMap resultMap, String columnPrefix) {
+    Map<String, RowMappingPlan> plans = rowMappingPlans.get(resultMap);
+    return plans == null ? null : plans.get(columnPrefix);
+  }
+
+  void putRowMappingPlan(ResultMap resultMap, String columnPrefix, RowMappingPlan plan) {
+    rowMappingPlans.computeIfAbsent(resultMap, k -> new HashMap<>()).put(columnPrefix, plan);
+  }
+
   private String getMapKey(ResultMap resultMap, String columnPrefix) {
     return resultMap.getId() + ":" + columnPrefix;
   }
@@ -0,0 +1,133 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.reflection.ReflectionException;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * 简单 JavaBean 的行映射计划： 对同一个 (ResultMap, 列布局, columnPrefix) 只编译一次，
+ * 每行按 (列索引, TypeHandler, setter) 的扁平数组依次取值并赋值， 不再拼接列名、查找 Map 或创建 MetaObject
+ */
+final class RowMappingPlan {
+
+  /**
+   * 无法编译计划时的占位， 表示该 ResultMap 走原有的 MetaObject 映射流程
+   */
+  static final RowMappingPlan UNSUPPORTED = new RowMappingPlan(null, new Builder(null));
+
+  private final Class<?> type;
+  private final int[] columnIndexes;
+  private final TypeHandler<?>[] typeHandlers;
+  private final Invoker[] setters;
+  private final String[] properties;
+  private final boolean[] primitives;
+
+  private RowMappingPlan(Class<?> type, Builder builder) {
+    this.type = type;
+    int size = builder.columnIndexes.size();
+    this.columnIndexes = new int[size];
+    this.typeHandlers = new TypeHandler<?>[size];
+    this.setters = new Invoker[size];
+    this.properties = new String[size];
+    this.primitives = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      columnIndexes[i] = builder.columnIndexes.get(i);
+      typeHandlers[i] = builder.typeHandlers.get(i);
+      setters[i] = builder.setters.get(i);
+      properties[i] = builder.properties.get(i);
+      primitives[i] = builder.primitives.get(i);
+    }
+  }
+
+  /**
+   * 计划只对编译时的结果类型有效
+   */
+  boolean supports(Object rowValue) {
+    return type != null && rowValue.getClass() == type;
+  }
+
+  /**
+   * 对当前行执行映射
+   *
+   * @return 是否有非 null 的值
+   */
+  boolean apply(ResultSet rs, Object rowValue, boolean callSettersOnNulls) throws SQLException {
+    boolean foundValues = false;
+    for (int i = 0; i < columnIndexes.length; i++) {
+      final Object value = typeHandlers[i].getResult(rs, columnIndexes[i]);
+      if (value != null) {
+        foundValues = true;
+      }
+      if (value != null || (callSettersOnNulls && !primitives[i])) {
+        // gcode issue #377, call setter on nulls (value is not 'found')
+        setValue(i, rowValue, value);
+      }
+    }
+    return foundValues;
+  }
+
+  // 与 BeanWrapper#setBeanProperty 的异常保持一致
+  private void setValue(int i, Object rowValue, Object value) {
+    try {
+      try {
+        setters[i].invoke(rowValue, new Object[] {value});
+      } catch (Throwable t) {
+        throw ExceptionUtil.unwrapThrowable(t);
+      }
+    } catch (Throwable t) {
+      throw new ReflectionException("Could not set property '" + properties[i] + "' of '" + rowValue.getClass() + "' with value '" + value + "' Cause: " + t.toString(), t);
+    }
+  }
+
+  static class Builder {
+
+    private final Class<?> type;
+    private final List<Integer> columnIndexes = new ArrayList<>();
+    private final List<TypeHandler<?>> typeHandlers = new ArrayList<>();
+    private final List<Invoker> setters = new ArrayList<>();
+    private final List<String> properties = new ArrayList<>();
+    private final List<Boolean> primitives = new ArrayList<>();
+
+    Builder(Class<?> type) {
+      this.type = type;
+    }
+
+    /**
+     * @param columnIndex 从 1 开始的列索引
+     */
+    Builder add(int columnIndex, TypeHandler<?> typeHandler, String property, Invoker setter, boolean primitive) {
+      columnIndexes.add(columnIndex);
+      typeHandlers.add(typeHandler);
+      properties.add(property);
+      setters.add(setter);
+      primitives.add(primitive);
+      return this;
+    }
+
+    RowMappingPlan build() {
+      return new RowMappingPlan(type, this);
+    }
+  }
+
+}
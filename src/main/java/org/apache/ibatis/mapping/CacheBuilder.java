@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.List;
@@ -23,29 +24,50 @@ import java.util.Properties;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.ConcurrentCache;
+import org.apache.ibatis.cache.EvictingCache;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.decorators.BlockingCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
+import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.type.TypeAliasRegistry;
 
 /**
  * @author Clinton Begin
  */
-public class CacheBuilder {
+public class CacheBuilder implements Serializable {
+
+  private static final long serialVersionUID = 8242841971067412046L;
+
   private final String id;
   private Class<? extends Cache> implementation;
   private final List<Class<? extends Cache>> decorators;
   private Integer size;
+  private Long maxWeight;
+  private Class<? extends CacheWeigher> weigher;
   private Long clearInterval;
+  private Long timeToLive;
+  private Long timeToLiveJitter;
+  private Long refreshAhead;
   private boolean readWrite;
+  private Class<? extends CacheSerializer> serializer;
+  private boolean offHeap;
   private Properties properties;
   private boolean blocking;
+  private boolean singleFlight;
+  private Long singleFlightTimeout;
+  private transient TypeAliasRegistry typeAliasRegistry;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -69,21 +91,101 @@ public class CacheBuilder {
     return this;
   }
 
+  /**
+   * 按权重限制缓存容量， 由淘汰策略装饰器（LRU、FIFO）执行
+   */
+  public CacheBuilder maxWeight(Long maxWeight) {
+    this.maxWeight = maxWeight;
+    return this;
+  }
+
+  /**
+   * 权重的计算方式， 默认为 {@link org.apache.ibatis.cache.EstimatedSizeWeigher}
+   */
+  public CacheBuilder weigher(Class<? extends CacheWeigher> weigher) {
+    this.weigher = weigher;
+    return this;
+  }
+
   public CacheBuilder clearInterval(Long clearInterval) {
     this.clearInterval = clearInterval;
     return this;
   }
 
+  /**
+   * 单个缓存对象的存活时间， 单位毫秒
+   */
+  public CacheBuilder timeToLive(Long timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
+  /**
+   * 存活时间的最大随机抖动， 单位毫秒
+   */
+  public CacheBuilder timeToLiveJitter(Long timeToLiveJitter) {
+    this.timeToLiveJitter = timeToLiveJitter;
+    return this;
+  }
+
+  /**
+   * 过期前多少毫秒内的访问触发提前刷新
+   */
+  public CacheBuilder refreshAhead(Long refreshAhead) {
+    this.refreshAhead = refreshAhead;
+    return this;
+  }
+
   public CacheBuilder readWrite(boolean readWrite) {
     this.readWrite = readWrite;
     return this;
   }
 
+  /**
+   * 读写缓存使用的序列化方式， 默认为 JDK 序列化
+   */
+  public CacheBuilder serializer(Class<? extends CacheSerializer> serializer) {
+    this.serializer = serializer;
+    return this;
+  }
+
+  /**
+   * 读写缓存是否将序列化后的数据放在堆外内存中
+   */
+  public CacheBuilder offHeap(boolean offHeap) {
+    this.offHeap = offHeap;
+    return this;
+  }
+
+  /**
+   * 解析 Class 类型的缓存属性时使用的类型别名注册器
+   */
+  public CacheBuilder typeAliasRegistry(TypeAliasRegistry typeAliasRegistry) {
+    this.typeAliasRegistry = typeAliasRegistry;
+    return this;
+  }
+
   public CacheBuilder blocking(boolean blocking) {
     this.blocking = blocking;
     return this;
   }
   
+  /**
+   * 同一个 key 的并发未命中只执行一次查询， 与 blocking 不能同时使用
+   */
+  public CacheBuilder singleFlight(boolean singleFlight) {
+    this.singleFlight = singleFlight;
+    return this;
+  }
+
+  /**
+   * 等待进行中查询的超时时间， 单位毫秒， 超时后自行查询
+   */
+  public CacheBuilder singleFlightTimeout(Long singleFlightTimeout) {
+    this.singleFlightTimeout = singleFlightTimeout;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -94,6 +196,9 @@ public class CacheBuilder {
    * @return
    */
   public Cache build() {
+    if (singleFlight && blocking) {
+      throw new CacheException("Cache '" + id + "' cannot be both blocking and singleFlight.");
+    }
     // 设置默认的实现， type 和 lru 对应的类不为空
     setDefaultImplementations();
     // 通过反射创建对象
@@ -103,15 +208,30 @@ public class CacheBuilder {
     // issue #352, do not apply decorators to custom caches
     // 如果是PerpetualCache类型， 使用 decorators 中的装饰器来包装cache, 并设置属性
     if (PerpetualCache.class.equals(cache.getClass())) {
+      // 统计淘汰次数所用的淘汰装饰器
+      EvictingCache evictingCache = null;
       for (Class<? extends Cache> decorator : decorators) {
         cache = newCacheDecoratorInstance(decorator, cache);
         setCacheProperties(cache);
+        if (evictingCache == null && cache instanceof EvictingCache) {
+          evictingCache = (EvictingCache) cache;
+        }
       }
       // mybatis 自己提供的标准装饰器
-      cache = setStandardDecorators(cache);
+      cache = setStandardDecorators(cache, evictingCache);
     } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
       // 如果不是 LoggingCache 子类， 则添加 LoggingCache 装饰器
-      cache = new LoggingCache(cache);
+      cache = new LoggingCache(cache, cache instanceof EvictingCache ? (EvictingCache) cache : null);
+    }
+    // 自定义缓存也可以合并未命中， 但无法得知其是否复制对象， 等待者共享同一个结果
+    if (singleFlight) {
+      boolean copyResults = readWrite && PerpetualCache.class.equals(implementation);
+      SingleFlightCache singleFlightCache = new SingleFlightCache(cache,
+          copyResults ? newSerializerInstance(serializer == null ? JdkCacheSerializer.class : serializer) : null);
+      if (singleFlightTimeout != null) {
+        singleFlightCache.setTimeout(singleFlightTimeout);
+      }
+      cache = singleFlightCache;
     }
     return cache;
   }
@@ -125,21 +245,32 @@ public class CacheBuilder {
     }
   }
 
-  private Cache setStandardDecorators(Cache cache) {
+  private Cache setStandardDecorators(Cache cache, EvictingCache evictingCache) {
     try {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
       }
-      if (clearInterval != null) {
-        cache = new ScheduledCache(cache);
-        ((ScheduledCache) cache).setClearInterval(clearInterval);
+      if (maxWeight != null) {
+        if (!metaCache.hasSetter("maxWeight")) {
+          throw new CacheException("Cache eviction '" + cache.getClass().getName() + "' of '" + id + "' does not support maxWeight.");
+        }
+        if (weigher != null) {
+          metaCache.setValue("weigher", newWeigherInstance(weigher));
+        }
+        metaCache.setValue("maxWeight", maxWeight);
+      }
+      if (clearInterval != null || timeToLive != null) {
+        cache = newScheduledCache(cache);
       }
       if (readWrite) {
-        cache = new SerializedCache(cache);
+        cache = new SerializedCache(cache, newSerializerInstance(serializer == null ? JdkCacheSerializer.class : serializer), offHeap);
+      }
+      cache = new LoggingCache(cache, evictingCache);
+      // 装饰器自身支持并发访问时， 不再加全局锁； ScheduledCache、 SerializedCache 和 LoggingCache 均可并发访问
+      if (!isConcurrent()) {
+        cache = new SynchronizedCache(cache);
       }
-      cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
       if (blocking) {
         cache = new BlockingCache(cache);
       }
@@ -149,6 +280,40 @@ public class CacheBuilder {
     }
   }
 
+  private Cache newScheduledCache(Cache cache) {
+    if (timeToLive == null && (timeToLiveJitter != null || refreshAhead != null)) {
+      throw new CacheException("Cache '" + id + "' sets timeToLiveJitter or refreshAhead without timeToLive.");
+    }
+    if (timeToLive != null && (isNotShorter(timeToLiveJitter, timeToLive) || isNotShorter(refreshAhead, timeToLive))) {
+      throw new CacheException("The timeToLiveJitter and refreshAhead of cache '" + id + "' must be shorter than its timeToLive.");
+    }
+    ScheduledCache scheduledCache = new ScheduledCache(cache);
+    // 只设置了 timeToLive 时不整体清空
+    scheduledCache.setClearInterval(clearInterval == null ? 0 : clearInterval);
+    if (timeToLive != null) {
+      scheduledCache.setTimeToLive(timeToLive);
+      scheduledCache.setTimeToLiveJitter(timeToLiveJitter == null ? 0 : timeToLiveJitter);
+      scheduledCache.setRefreshAhead(refreshAhead == null ? 0 : refreshAhead);
+    }
+    return scheduledCache;
+  }
+
+  private static boolean isNotShorter(Long value, long timeToLive) {
+    return value != null && value >= timeToLive;
+  }
+
+  private boolean isConcurrent() {
+    if (decorators.isEmpty()) {
+      return false;
+    }
+    for (Class<? extends Cache> decorator : decorators) {
+      if (!ConcurrentCache.class.isAssignableFrom(decorator)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void setCacheProperties(Cache cache) {
     if (properties != null) {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
@@ -180,6 +345,9 @@ public class CacheBuilder {
           } else if (double.class == type
               || Double.class == type) {
             metaCache.setValue(name, Double.valueOf(value));
+          } else if (Class.class == type) {
+            // 与 type、 eviction 等属性一样按类型别名解析
+            metaCache.setValue(name, resolveClass(name, value));
           } else {
             throw new CacheException("Unsupported property type for cache: '" + name + "' of type " + type);
           }
@@ -196,6 +364,14 @@ public class CacheBuilder {
     }
   }
 
+  private Class<?> resolveClass(String name, String value) {
+    try {
+      return typeAliasRegistry != null ? typeAliasRegistry.resolveAlias(value) : Resources.classForName(value);
+    } catch (Exception e) {
+      throw new CacheException("Could not resolve class '" + value + "' for cache property '" + name + "'.  Cause: " + e, e);
+    }
+  }
+
   private Cache newBaseCacheInstance(Class<? extends Cache> cacheClass, String id) {
     Constructor<? extends Cache> cacheConstructor = getBaseCacheConstructor(cacheClass);
     try {
@@ -214,6 +390,24 @@ public class CacheBuilder {
     }
   }
 
+  private CacheSerializer newSerializerInstance(Class<? extends CacheSerializer> serializerClass) {
+    try {
+      return serializerClass.getConstructor().newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate cache serializer (" + serializerClass + ").  " +
+          "Cache serializers must have a public no-arg constructor.  Cause: " + e, e);
+    }
+  }
+
+  private CacheWeigher newWeigherInstance(Class<? extends CacheWeigher> weigherClass) {
+    try {
+      return weigherClass.getConstructor().newInstance();
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate cache weigher (" + weigherClass + ").  " +
+          "Cache weighers must have a public no-arg constructor.  Cause: " + e, e);
+    }
+  }
+
   private Cache newCacheDecoratorInstance(Class<? extends Cache> cacheClass, Cache base) {
     Constructor<? extends Cache> cacheConstructor = getCacheDecoratorConstructor(cacheClass);
     try {
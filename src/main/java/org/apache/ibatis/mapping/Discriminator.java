@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.Map;
 
@@ -23,7 +24,9 @@ import org.apache.ibatis.session.Configuration;
 /**
  * @author Clinton Begin
  */
-public class Discriminator {
+public class Discriminator implements Serializable {
+
+  private static final long serialVersionUID = 1562196863290981845L;
 
   private ResultMapping resultMapping;
   private Map<String, String> discriminatorMap;
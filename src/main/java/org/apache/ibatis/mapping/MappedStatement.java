@@ -15,23 +15,35 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.ibatis.builder.StaticSqlSource;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
+import org.apache.ibatis.executor.resultset.ResultSetMetadataCache;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 import org.apache.ibatis.scripting.LanguageDriver;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
 import org.apache.ibatis.session.Configuration;
 
 /**
  * 表示一个 SQL 节点（SELECT \ UPDATE \ DELETE \ INSERT）
  */
-public final class MappedStatement {
+public final class MappedStatement implements Serializable {
+
+  private static final long serialVersionUID = 893791066523643272L;
 
   private String resource;
   private Configuration configuration;
@@ -66,14 +78,68 @@ public final class MappedStatement {
   // 是否有嵌套的结果集
   private boolean hasNestedResultMaps;
   private String databaseId;
-  private Log statementLog;
+  private transient Log statementLog;
   private LanguageDriver lang;
   private String[] resultSets;
+  // 缓存 key 中使用的 SQL， 相同的 SQL 共用一个实例， 比较缓存 key 时按引用即可判等
+  private final transient ConcurrentMap<String, String> cacheKeySql = new ConcurrentHashMap<>();
+  // cacheKeySql 中 SQL 的总长度
+  private final transient AtomicInteger cacheKeySqlLength = new AtomicInteger();
+
+  private static final int MAX_CACHE_KEY_SQL = 256;
+  // 每个语句缓存的 SQL 的总长度上限， 避免 ${} 或 foreach 生成的大量长 SQL 一直占用内存
+  private static final int MAX_CACHED_SQL_LENGTH = 64 * 1024;
+  // 按列布局缓存结果集的列信息及解析出的 TypeHandler， 多次执行之间共用
+  private final transient ResultSetMetadataCache resultSetMetadataCache = new ResultSetMetadataCache();
+  // 声明的依赖表， 为 null 时从 SQL 中解析
+  private Set<String> tables;
+  // 按 SQL 缓存解析出的依赖表
+  private final transient ConcurrentMap<String, Set<String>> parsedTables = new ConcurrentHashMap<>();
+  // parsedTables 中 SQL 的总长度
+  private final transient AtomicInteger parsedTablesSqlLength = new AtomicInteger();
+
+  private static final int MAX_PARSED_TABLES = 256;
+  // 嵌套查询语句依赖的表， 首次使用时计算， 此时所有语句都已解析完成
+  private transient volatile Set<String> nestedQueryTables;
+  private transient volatile boolean nestedQueryTablesResolved;
 
   MappedStatement() {
     // constructor disabled
   }
 
+  /**
+   * 从配置快照中反序列化后重新创建， 运行期的缓存及日志对象不参与序列化
+   */
+  private Object readResolve() {
+    MappedStatement mappedStatement = new MappedStatement();
+    mappedStatement.resource = resource;
+    mappedStatement.configuration = configuration;
+    mappedStatement.id = id;
+    mappedStatement.fetchSize = fetchSize;
+    mappedStatement.timeout = timeout;
+    mappedStatement.statementType = statementType;
+    mappedStatement.resultSetType = resultSetType;
+    mappedStatement.sqlSource = sqlSource;
+    mappedStatement.cache = cache;
+    mappedStatement.parameterMap = parameterMap;
+    mappedStatement.resultMaps = resultMaps;
+    mappedStatement.flushCacheRequired = flushCacheRequired;
+    mappedStatement.useCache = useCache;
+    mappedStatement.resultOrdered = resultOrdered;
+    mappedStatement.sqlCommandType = sqlCommandType;
+    mappedStatement.keyGenerator = keyGenerator;
+    mappedStatement.keyProperties = keyProperties;
+    mappedStatement.keyColumns = keyColumns;
+    mappedStatement.hasNestedResultMaps = hasNestedResultMaps;
+    mappedStatement.databaseId = databaseId;
+    mappedStatement.lang = lang;
+    mappedStatement.resultSets = resultSets;
+    mappedStatement.tables = tables;
+    String logId = configuration.getLogPrefix() == null ? id : configuration.getLogPrefix() + id;
+    mappedStatement.statementLog = LogFactory.getLog(logId);
+    return mappedStatement;
+  }
+
   /**
    * 静态内部类， 又是建造者模式
    */
@@ -190,6 +256,21 @@ public final class MappedStatement {
       return this;
     }
 
+    /**
+     * 声明语句依赖的表， 多个以逗号分隔
+     */
+    public Builder tables(String tables) {
+      String[] names = delimitedStringToArray(tables);
+      if (names != null) {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String name : names) {
+          normalized.add(SqlTableParser.normalize(name));
+        }
+        mappedStatement.tables = Collections.unmodifiableSet(normalized);
+      }
+      return this;
+    }
+
     /** @deprecated Use {@link #resultSets} */
     @Deprecated
     public Builder resulSets(String resultSet) {
@@ -330,6 +411,151 @@ public final class MappedStatement {
     return boundSql;
   }
 
+  /**
+   * 返回与 sql 相等的共享实例， 供 {@link org.apache.ibatis.cache.CacheKey} 使用。
+   * 动态 SQL 的不同形态数量或总长度超过上限后不再缓存， 直接返回参数本身
+   */
+  public String internCacheKeySql(String sql) {
+    String interned = cacheKeySql.get(sql);
+    if (interned != null) {
+      return interned;
+    }
+    if (cacheKeySql.size() >= MAX_CACHE_KEY_SQL || !reserveSqlLength(cacheKeySqlLength, sql)) {
+      return sql;
+    }
+    interned = cacheKeySql.putIfAbsent(sql, sql);
+    if (interned != null) {
+      cacheKeySqlLength.addAndGet(-sql.length());
+      return interned;
+    }
+    return sql;
+  }
+
+  /**
+   * 声明的依赖表， 没有声明时为 null
+   */
+  public Set<String> getTables() {
+    return tables;
+  }
+
+  /**
+   * 语句依赖的表， 用于按表失效二级缓存。
+   * 优先使用声明的表， 否则从 boundSql 的 SQL 中解析； 存储过程， 或者没有解析出表时返回 null， 表示无法确定
+   *
+   * @param boundSql 声明了依赖表时可以为 null
+   */
+  public Set<String> getTableDependencies(BoundSql boundSql) {
+    if (tables != null) {
+      return tables;
+    }
+    if (statementType == StatementType.CALLABLE || boundSql == null) {
+      return null;
+    }
+    String sql = boundSql.getSql();
+    Set<String> parsed = parsedTables.get(sql);
+    if (parsed == null) {
+      parsed = Collections.unmodifiableSet(SqlTableParser.parse(sql));
+      if (parsedTables.size() < MAX_PARSED_TABLES && reserveSqlLength(parsedTablesSqlLength, sql)) {
+        if (parsedTables.putIfAbsent(sql, parsed) != null) {
+          parsedTablesSqlLength.addAndGet(-sql.length());
+        }
+      }
+    }
+    // 没有解析出表时可能调用了函数或存储过程， 无法确定依赖
+    return parsed.isEmpty() ? null : parsed;
+  }
+
+  /**
+   * 结果映射中嵌套查询（ 包括嵌套结果映射及鉴别器中的嵌套查询） 依赖的表， 嵌套查询的结果会缓存在本语句的结果中。
+   * 没有嵌套查询时返回空集合； 任一嵌套查询的依赖无法确定时返回 null
+   */
+  public Set<String> getNestedQueryTableDependencies() {
+    if (!nestedQueryTablesResolved) {
+      nestedQueryTables = resolveNestedQueryTables(this, new HashSet<>(), new HashSet<>(), new HashSet<>());
+      nestedQueryTablesResolved = true;
+    }
+    return nestedQueryTables;
+  }
+
+  private static Set<String> resolveNestedQueryTables(MappedStatement ms, Set<String> tables,
+      Set<String> visitedStatements, Set<String> visitedResultMaps) {
+    if (ms.resultMaps == null) {
+      return tables;
+    }
+    for (ResultMap resultMap : ms.resultMaps) {
+      if (!collectNestedQueryTables(ms.configuration, resultMap, tables, visitedStatements, visitedResultMaps)) {
+        return null;
+      }
+    }
+    return tables;
+  }
+
+  private static boolean collectNestedQueryTables(Configuration configuration, ResultMap resultMap, Set<String> tables,
+      Set<String> visitedStatements, Set<String> visitedResultMaps) {
+    if (!visitedResultMaps.add(resultMap.getId())) {
+      return true;
+    }
+    List<String> nestedResultMapIds = new ArrayList<>();
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      String nestedQueryId = resultMapping.getNestedQueryId();
+      if (nestedQueryId != null && visitedStatements.add(nestedQueryId)) {
+        if (!configuration.hasStatement(nestedQueryId, false)) {
+          return false;
+        }
+        MappedStatement nested = configuration.getMappedStatement(nestedQueryId, false);
+        Set<String> nestedTables = nested.getTableDependencies(nested.getStaticBoundSql());
+        if (nestedTables == null || resolveNestedQueryTables(nested, tables, visitedStatements, visitedResultMaps) == null) {
+          return false;
+        }
+        tables.addAll(nestedTables);
+      }
+      if (resultMapping.getNestedResultMapId() != null) {
+        nestedResultMapIds.add(resultMapping.getNestedResultMapId());
+      }
+    }
+    if (resultMap.getDiscriminator() != null) {
+      nestedResultMapIds.addAll(resultMap.getDiscriminator().getDiscriminatorMap().values());
+    }
+    for (String nestedResultMapId : nestedResultMapIds) {
+      if (!configuration.hasResultMap(nestedResultMapId)) {
+        return false;
+      }
+      if (!collectNestedQueryTables(configuration, configuration.getResultMap(nestedResultMapId), tables, visitedStatements, visitedResultMaps)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 不含动态元素的语句的 SQL 与参数无关， 可以在执行前得到； 动态 SQL 返回 null
+   */
+  private BoundSql getStaticBoundSql() {
+    if (tables != null || !(sqlSource instanceof RawSqlSource || sqlSource instanceof StaticSqlSource)) {
+      return null;
+    }
+    return sqlSource.getBoundSql(null);
+  }
+
+  public ResultSetMetadataCache getResultSetMetadataCache() {
+    return resultSetMetadataCache;
+  }
+
+  /**
+   * 总长度不超过上限时计入 sql 的长度
+   */
+  private static boolean reserveSqlLength(AtomicInteger totalLength, String sql) {
+    for (;;) {
+      int current = totalLength.get();
+      if (current + sql.length() > MAX_CACHED_SQL_LENGTH) {
+        return false;
+      }
+      if (totalLength.compareAndSet(current, current + sql.length())) {
+        return true;
+      }
+    }
+  }
+
   private static String[] delimitedStringToArray(String in) {
     if (in == null || in.trim().length() == 0) {
       return null;
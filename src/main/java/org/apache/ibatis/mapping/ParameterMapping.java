@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2016 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,10 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.sql.ResultSet;
 
 import org.apache.ibatis.session.Configuration;
@@ -26,7 +30,9 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
  * @author Clinton Begin
  * 参数映射
  */
-public class ParameterMapping {
+public class ParameterMapping implements Serializable {
+
+  private static final long serialVersionUID = 8252887807996205474L;
 
   private Configuration configuration;
 
@@ -41,7 +47,7 @@ public class ParameterMapping {
   // 浮点参数的精度
   private Integer numericScale;
   // 参数对应的 typeHandler
-  private TypeHandler<?> typeHandler;
+  private transient TypeHandler<?> typeHandler;
   // 参数对应的 ResultMap 的Id
   private String resultMapId;
   // 参数的 jdbcTypeName 属性
@@ -211,6 +217,22 @@ public class ParameterMapping {
     return expression;
   }
 
+  /**
+   * typeHandler 只记录类型， 从快照中恢复时在当前配置的 TypeHandlerRegistry 中找回实例
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeObject(typeHandler == null ? null : typeHandler.getClass());
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    Class<?> handlerType = (Class<?>) in.readObject();
+    if (handlerType != null) {
+      typeHandler = configuration.getTypeHandlerRegistry().resolveTypeHandler(javaType, jdbcType, handlerType);
+    }
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ParameterMapping{");
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
@@ -34,7 +35,10 @@ import org.apache.ibatis.session.Configuration;
 /**
  * @author Clinton Begin
  */
-public class ResultMap {
+public class ResultMap implements Serializable {
+
+  private static final long serialVersionUID = 3531266313615580200L;
+
   // 这个是mybatis存储所有信息的对象
   private Configuration configuration;
 
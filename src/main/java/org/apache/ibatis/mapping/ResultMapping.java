@@ -15,6 +15,10 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -28,7 +32,14 @@ import org.apache.ibatis.type.TypeHandlerRegistry;
 /**
  * @author Clinton Begin
  */
-public class ResultMapping {
+public class ResultMapping implements Serializable {
+
+  private static final long serialVersionUID = -1971300571616162420L;
+
+  /**
+   * 批量加载（fetchType 为 batch 或延迟加载时设置了 batchKeyProperty）且未设置 batchSize 时， 每次查询的父对象个数
+   */
+  public static final int DEFAULT_BATCH_SIZE = 100;
 
   // Configuration 对象， 看过前面源码的应该知道这个对象的含义
   private Configuration configuration;
@@ -41,7 +52,7 @@ public class ResultMapping {
   // 对应节点的 jdbcType 属性， 表示映射列的JDBC属性
   private JdbcType jdbcType;
   // 类型处理器
-  private TypeHandler<?> typeHandler;
+  private transient TypeHandler<?> typeHandler;
   // 对应另一个 resultMap 的 id， 负责将结果集中的一部分映射成其他对象。
   private String nestedResultMapId;
   //
@@ -60,6 +71,10 @@ public class ResultMapping {
   private String foreignColumn;
   // 是否延迟加载， 对应节点的 fetchType 属性
   private boolean lazy;
+  // 批量加载时每次查询的父对象个数， 0 表示不批量加载
+  private int batchSize;
+  // 批量加载时， 嵌套查询结果中与 column 对应的属性， 用于将结果分配给父对象
+  private List<String> batchKeyProperties;
 
   ResultMapping() {
   }
@@ -150,11 +165,34 @@ public class ResultMapping {
       return this;
     }
 
+    public Builder batchSize(int batchSize) {
+      resultMapping.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * @param batchKeyProperty 逗号分隔， 复合列时顺序与 column 中的列相同
+     */
+    public Builder batchKeyProperty(String batchKeyProperty) {
+      List<String> properties = new ArrayList<>();
+      if (batchKeyProperty != null) {
+        for (String property : batchKeyProperty.split(",")) {
+          if (!property.trim().isEmpty()) {
+            properties.add(property.trim());
+          }
+        }
+      }
+      resultMapping.batchKeyProperties = properties;
+      return this;
+    }
+
     public ResultMapping build() {
       // 返回不可更改的 List
       resultMapping.flags = Collections.unmodifiableList(resultMapping.flags);
       // 返回不可更改的 List
       resultMapping.composites = Collections.unmodifiableList(resultMapping.composites);
+      resultMapping.batchKeyProperties = resultMapping.batchKeyProperties == null
+          ? Collections.<String>emptyList() : Collections.unmodifiableList(resultMapping.batchKeyProperties);
       resolveTypeHandler();
       // 校验
       validate();
@@ -188,6 +226,15 @@ public class ResultMapping {
           throw new IllegalStateException("There should be the same number of columns and foreignColumns in property " + resultMapping.property);
         }
       }
+      if (resultMapping.batchSize > 0) {
+        if (resultMapping.nestedQueryId == null) {
+          throw new IllegalStateException("Batch fetching requires a nested select in property " + resultMapping.property);
+        }
+        int numColumns = resultMapping.composites.isEmpty() ? 1 : resultMapping.composites.size();
+        if (resultMapping.batchKeyProperties.size() != numColumns) {
+          throw new IllegalStateException("There should be the same number of columns and batchKeyProperties in property " + resultMapping.property);
+        }
+      }
     }
     
     private void resolveTypeHandler() {
@@ -271,6 +318,21 @@ public class ResultMapping {
   public void setLazy(boolean lazy) {
     this.lazy = lazy;
   }
+
+  /**
+   * 嵌套查询是否批量加载： fetchType 为 batch， 或延迟加载时同一结果集中的对象一起加载
+   */
+  public boolean isBatchFetch() {
+    return batchSize > 0;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public List<String> getBatchKeyProperties() {
+    return batchKeyProperties;
+  }
   
   @Override
   public boolean equals(Object o) {
@@ -301,6 +363,22 @@ public class ResultMapping {
     }
   }
 
+  /**
+   * 序列化时 typeHandler 只写出其类型
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeObject(typeHandler == null ? null : typeHandler.getClass());
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    Class<?> handlerType = (Class<?>) in.readObject();
+    if (handlerType != null) {
+      typeHandler = configuration.getTypeHandlerRegistry().resolveTypeHandler(javaType, jdbcType, handlerType);
+    }
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ResultMapping{");
@@ -319,6 +397,7 @@ public class ResultMapping {
     sb.append(", resultSet='").append(resultSet).append('\'');
     sb.append(", foreignColumn='").append(foreignColumn).append('\'');
     sb.append(", lazy=").append(lazy);
+    sb.append(", batchSize=").append(batchSize);
     sb.append('}');
     return sb.toString();
   }
@@ -0,0 +1,214 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 从 SQL 中粗略地找出涉及的表名， 用于按表失效二级缓存
+ *
+ * 只识别 FROM、 JOIN、 INTO、 UPDATE、 USING、 TABLE 之后的名称， FROM 之后的逗号列表和子查询也会识别。
+ * 表名统一为小写， 去掉引号和 schema 前缀。 结果可能多出别名或 CTE 的名称， 多出的名称只会导致多失效一些缓存
+ */
+final class SqlTableParser {
+
+  // 这些关键字之后是表名
+  private static final Set<String> TABLE_KEYWORDS = new HashSet<>(Arrays.asList(
+      "FROM", "JOIN", "INTO", "UPDATE", "USING", "TABLE"));
+  // 出现在表名之前， 但本身不是表名
+  private static final Set<String> TABLE_MODIFIERS = new HashSet<>(Arrays.asList(
+      "ONLY", "LATERAL", "IGNORE", "LOW_PRIORITY", "QUICK", "IF", "NOT", "EXISTS"));
+  // 结束 FROM 之后表列表的关键字
+  private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>(Arrays.asList(
+      "WHERE", "GROUP", "ORDER", "HAVING", "LIMIT", "OFFSET", "FETCH", "UNION", "INTERSECT", "EXCEPT", "MINUS",
+      "FOR", "WINDOW", "START", "CONNECT", "SET", "VALUES", "SELECT", "RETURNING", "WITH", "OUTPUT"));
+
+  private SqlTableParser() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * @return 涉及的表名， 没有找到时为空集合
+   */
+  static Set<String> parse(String sql) {
+    List<String> tokens = tokenize(sql);
+    Set<String> tables = new LinkedHashSet<>();
+    // FROM 之后的表列表所在的括号深度， 子查询中的 FROM 会压入更深的一层
+    Deque<Integer> fromDepths = new ArrayDeque<>();
+    int depth = 0;
+    boolean expectTable = false;
+    for (String token : tokens) {
+      if ("(".equals(token)) {
+        depth++;
+        expectTable = false;
+        continue;
+      }
+      if (")".equals(token)) {
+        depth--;
+        while (!fromDepths.isEmpty() && fromDepths.peek() > depth) {
+          fromDepths.pop();
+        }
+        expectTable = false;
+        continue;
+      }
+      boolean inFromList = !fromDepths.isEmpty() && fromDepths.peek() == depth;
+      if (",".equals(token)) {
+        expectTable = inFromList;
+        continue;
+      }
+      if (";".equals(token)) {
+        fromDepths.clear();
+        depth = 0;
+        expectTable = false;
+        continue;
+      }
+      String upper = token.toUpperCase(Locale.ENGLISH);
+      if (TABLE_KEYWORDS.contains(upper)) {
+        if ("FROM".equals(upper) && !inFromList) {
+          fromDepths.push(depth);
+        }
+        expectTable = true;
+        continue;
+      }
+      if (inFromList && CLAUSE_KEYWORDS.contains(upper)) {
+        fromDepths.pop();
+        expectTable = false;
+        continue;
+      }
+      if (expectTable) {
+        if (TABLE_MODIFIERS.contains(upper)) {
+          continue;
+        }
+        String table = normalize(token);
+        if (!table.isEmpty()) {
+          tables.add(table);
+        }
+        expectTable = false;
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * 去掉引号和 schema 前缀并转为小写
+   */
+  static String normalize(String name) {
+    String table = name.trim();
+    int dot = lastDotOutsideQuotes(table);
+    if (dot >= 0) {
+      table = table.substring(dot + 1);
+    }
+    if (table.length() >= 2 && isQuote(table.charAt(0))) {
+      table = table.substring(1, table.length() - 1);
+    }
+    return table.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static int lastDotOutsideQuotes(String name) {
+    char quote = 0;
+    int dot = -1;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (quote != 0) {
+        if (c == closingQuote(quote)) {
+          quote = 0;
+        }
+      } else if (isQuote(c)) {
+        quote = c;
+      } else if (c == '.') {
+        dot = i;
+      }
+    }
+    return dot;
+  }
+
+  private static List<String> tokenize(String sql) {
+    List<String> tokens = new ArrayList<>();
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        while (i < length && sql.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else if (c == '\'') {
+        // 字符串常量， '' 为转义的单引号
+        i++;
+        while (i < length) {
+          if (sql.charAt(i) == '\'') {
+            if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+              i += 2;
+              continue;
+            }
+            break;
+          }
+          i++;
+        }
+        i++;
+      } else if (c == '(' || c == ')' || c == ',' || c == ';') {
+        tokens.add(String.valueOf(c));
+        i++;
+      } else if (isNameChar(c) || isQuote(c)) {
+        // 名称， 可以由 . 连接多段， 每段可以带引号
+        int start = i;
+        while (i < length) {
+          char n = sql.charAt(i);
+          if (isQuote(n)) {
+            int end = sql.indexOf(closingQuote(n), i + 1);
+            i = end < 0 ? length : end + 1;
+          } else if (isNameChar(n) || n == '.') {
+            i++;
+          } else {
+            break;
+          }
+        }
+        tokens.add(sql.substring(start, i));
+      } else {
+        // 运算符等其他符号
+        tokens.add(String.valueOf(c));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean isNameChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '@';
+  }
+
+  private static boolean isQuote(char c) {
+    return c == '"' || c == '`' || c == '[';
+  }
+
+  private static char closingQuote(char quote) {
+    return quote == '[' ? ']' : quote;
+  }
+
+}
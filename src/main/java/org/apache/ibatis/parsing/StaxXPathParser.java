@@ -0,0 +1,243 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.parsing;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * 基于 StAX 流式解析的 {@link XPathParser}.
+ *
+ * 与 {@link XPathParser} 不同, 这里不加载 DTD, 也不做校验, 而是在一次流式读取中直接构建节点树,
+ * 省去了 DocumentBuilder 的创建以及 DTD 的解析. 节点树仍然是 DOM, 因为 include 的替换、
+ * 动态 SQL 的解析以及 selectKey 的移除都是直接操作 DOM 节点的.
+ *
+ * evalNode/evalNodes 对 XMLConfigBuilder/XMLMapperBuilder 中用到的路径(子元素名称组成的路径,
+ * 以及 select|insert|update|delete 这样的子元素并集)直接遍历子节点, 不经过 XPath;
+ * 其余的表达式仍然交给 XPath 处理.
+ */
+public class StaxXPathParser extends XPathParser {
+
+  private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.\\-]*");
+
+  private static final String REPORT_CDATA_EVENT = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+  private static final DOMImplementation DOM_IMPLEMENTATION = createDomImplementation();
+
+  public StaxXPathParser(String xml, Properties variables) {
+    this(new StringReader(xml), variables);
+  }
+
+  public StaxXPathParser(Reader reader, Properties variables) {
+    super(createDocument(reader), false, variables);
+  }
+
+  public StaxXPathParser(InputStream inputStream, Properties variables) {
+    super(createDocument(inputStream), false, variables);
+  }
+
+  @Override
+  public List<XNode> evalNodes(Object root, String expression) {
+    List<Node> nodes = select(root, expression);
+    if (nodes == null) {
+      return super.evalNodes(root, expression);
+    }
+    List<XNode> xnodes = new ArrayList<>(nodes.size());
+    for (Node node : nodes) {
+      xnodes.add(new XNode(this, node, getVariables()));
+    }
+    return xnodes;
+  }
+
+  @Override
+  public XNode evalNode(Object root, String expression) {
+    List<Node> nodes = select(root, expression);
+    if (nodes == null) {
+      return super.evalNode(root, expression);
+    }
+    if (nodes.isEmpty()) {
+      return null;
+    }
+    return new XNode(this, nodes.get(0), getVariables());
+  }
+
+  /**
+   * 按文档顺序查找匹配的元素, 表达式不在支持的范围内时返回 null
+   */
+  private static List<Node> select(Object root, String expression) {
+    if (!(root instanceof Node)) {
+      return null;
+    }
+    Node context = (Node) root;
+    // 子元素的并集, 如 select|insert|update|delete
+    if (expression.indexOf('|') >= 0) {
+      Set<String> names = new HashSet<>(Arrays.asList(expression.split("\\|", -1)));
+      for (String name : names) {
+        if (!NAME.matcher(name).matches()) {
+          return null;
+        }
+      }
+      return children(context, names);
+    }
+    boolean absolute = expression.startsWith("/");
+    String[] steps = (absolute ? expression.substring(1) : expression).split("/", -1);
+    for (String step : steps) {
+      if (!NAME.matcher(step).matches()) {
+        return null;
+      }
+    }
+    if (absolute && context.getNodeType() != Node.DOCUMENT_NODE) {
+      context = context.getOwnerDocument();
+    }
+    List<Node> nodes = Collections.singletonList(context);
+    for (String step : steps) {
+      Set<String> names = Collections.singleton(step);
+      List<Node> next = new ArrayList<>();
+      for (Node node : nodes) {
+        next.addAll(children(node, names));
+      }
+      nodes = next;
+    }
+    return nodes;
+  }
+
+  private static List<Node> children(Node parent, Collection<String> names) {
+    List<Node> children = new ArrayList<>();
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.ELEMENT_NODE && names.contains(child.getNodeName())) {
+        children.add(child);
+      }
+    }
+    return children;
+  }
+
+  private static Document createDocument(Reader reader) {
+    try {
+      return createDocument(INPUT_FACTORY.createXMLStreamReader(reader));
+    } catch (Exception e) {
+      throw new BuilderException("Error creating document instance.  Cause: " + e, e);
+    }
+  }
+
+  private static Document createDocument(InputStream inputStream) {
+    try {
+      return createDocument(INPUT_FACTORY.createXMLStreamReader(inputStream));
+    } catch (Exception e) {
+      throw new BuilderException("Error creating document instance.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * 由 StAX 事件构建节点树, 与 {@link XPathParser} 一致: 忽略注释, 保留空白, 不合并 CDATA
+   */
+  private static Document createDocument(XMLStreamReader reader) throws XMLStreamException {
+    try {
+      Document document = DOM_IMPLEMENTATION.createDocument(null, null, null);
+      Node current = document;
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            Element element = document.createElement(reader.getLocalName());
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+              element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+            current.appendChild(element);
+            current = element;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            current = current.getParentNode();
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.SPACE:
+            appendText(document, current, reader.getText(), false);
+            break;
+          case XMLStreamConstants.CDATA:
+            appendText(document, current, reader.getText(), true);
+            break;
+          default:
+            break;
+        }
+      }
+      return document;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static void appendText(Document document, Node parent, String text, boolean cdata) {
+    if (parent == document) {
+      // 根元素之外的空白
+      return;
+    }
+    // 同一段文本可能被拆成多个事件, 合并为一个节点
+    Node last = parent.getLastChild();
+    short type = cdata ? Node.CDATA_SECTION_NODE : Node.TEXT_NODE;
+    if (last != null && last.getNodeType() == type) {
+      ((CharacterData) last).appendData(text);
+    } else {
+      parent.appendChild(cdata ? document.createCDATASection(text) : document.createTextNode(text));
+    }
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    // JDK 自带的实现默认把 CDATA 当作普通文本上报
+    if (factory.isPropertySupported(REPORT_CDATA_EVENT)) {
+      factory.setProperty(REPORT_CDATA_EVENT, true);
+    }
+    return factory;
+  }
+
+  private static DOMImplementation createDomImplementation() {
+    try {
+      return DocumentBuilderFactory.newInstance().newDocumentBuilder().getDOMImplementation();
+    } catch (Exception e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+}
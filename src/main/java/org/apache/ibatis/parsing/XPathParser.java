@@ -134,6 +134,10 @@ public class XPathParser {
     this.variables = variables;
   }
 
+  public Properties getVariables() {
+    return variables;
+  }
+
   public String evalString(String expression) {
     return evalString(document, expression);
   }
@@ -224,6 +228,10 @@ public class XPathParser {
 
   private Object evaluate(String expression, Object root, QName returnType) {
     try {
+      if (xpath == null) {
+        // 大部分表达式在 StaxXPathParser 中不需要 XPath, 按需创建
+        xpath = XPathFactory.newInstance().newXPath();
+      }
       return xpath.evaluate(expression, root, returnType);
     } catch (Exception e) {
       throw new BuilderException("Error evaluating XPath.  Cause: " + e, e);
@@ -269,8 +277,6 @@ public class XPathParser {
     this.validation = validation;
     this.entityResolver = entityResolver;
     this.variables = variables;
-    XPathFactory factory = XPathFactory.newInstance();
-    this.xpath = factory.newXPath();
   }
 
 }
@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+
+/**
+ * 某个目标类型在一组拦截器下的分发计划： 每个方法对应一个槽位， 记录拦截该方法的拦截器下标 (升序)
+ */
+final class DispatchPlan {
+
+  /**
+   * 没有拦截器拦截该类型， 直接返回目标对象
+   */
+  static final DispatchPlan NONE = new DispatchPlan(null, null, null, null);
+
+  /**
+   * 无法组合， 退回到逐层代理
+   */
+  static final DispatchPlan UNSUPPORTED = new DispatchPlan(null, null, null, null);
+
+  final Interceptor[] interceptors;
+  final Method[] methods;
+  final int[][] chains;
+  private final BiFunction<Object, DispatchPlan, Object> dispatcherFactory;
+
+  private DispatchPlan(Interceptor[] interceptors, Method[] methods, int[][] chains,
+      BiFunction<Object, DispatchPlan, Object> dispatcherFactory) {
+    this.interceptors = interceptors;
+    this.methods = methods;
+    this.chains = chains;
+    this.dispatcherFactory = dispatcherFactory;
+  }
+
+  boolean isSupported() {
+    return this != UNSUPPORTED;
+  }
+
+  Object dispatch(Object target) {
+    return this == NONE ? target : dispatcherFactory.apply(target, this);
+  }
+
+  static DispatchPlan create(Class<?> type, List<Interceptor> interceptors) {
+    List<Map<Class<?>, Set<Method>>> signatureMaps = new ArrayList<>(interceptors.size());
+    Set<Class<?>> interfaces = new HashSet<>();
+    for (Interceptor interceptor : interceptors) {
+      // 没有 @Intercepts 的拦截器自行实现了 plugin 方法， 只能逐层代理
+      if (interceptor.getClass().getAnnotation(Intercepts.class) == null) {
+        return UNSUPPORTED;
+      }
+      Map<Class<?>, Set<Method>> signatureMap = Plugin.getSignatureMap(interceptor);
+      signatureMaps.add(signatureMap);
+      interfaces.addAll(Arrays.asList(Plugin.getAllInterfaces(type, signatureMap)));
+    }
+    if (interfaces.isEmpty()) {
+      return NONE;
+    }
+    if (interfaces.size() > 1) {
+      return UNSUPPORTED;
+    }
+
+    Class<?> intercepted = interfaces.iterator().next();
+    final Method[] methods;
+    final BiFunction<Object, DispatchPlan, Object> dispatcherFactory;
+    if (intercepted == Executor.class) {
+      methods = ExecutorDispatcher.METHODS;
+      dispatcherFactory = (target, plan) -> new ExecutorDispatcher((Executor) target, plan);
+    } else if (intercepted == StatementHandler.class) {
+      methods = StatementHandlerDispatcher.METHODS;
+      dispatcherFactory = (target, plan) -> new StatementHandlerDispatcher((StatementHandler) target, plan);
+    } else if (intercepted == ParameterHandler.class) {
+      methods = ParameterHandlerDispatcher.METHODS;
+      dispatcherFactory = (target, plan) -> new ParameterHandlerDispatcher((ParameterHandler) target, plan);
+    } else if (intercepted == ResultSetHandler.class) {
+      methods = ResultSetHandlerDispatcher.METHODS;
+      dispatcherFactory = (target, plan) -> new ResultSetHandlerDispatcher((ResultSetHandler) target, plan);
+    } else {
+      return UNSUPPORTED;
+    }
+
+    int[][] chains = new int[methods.length][];
+    for (int slot = 0; slot < methods.length; slot++) {
+      List<Integer> chain = new ArrayList<>();
+      for (int i = 0; i < signatureMaps.size(); i++) {
+        if (signatureMaps.get(i).getOrDefault(intercepted, Collections.emptySet()).contains(methods[slot])) {
+          chain.add(i);
+        }
+      }
+      chains[slot] = chain.stream().mapToInt(Integer::intValue).toArray();
+    }
+    return new DispatchPlan(interceptors.toArray(new Interceptor[0]), methods, chains, dispatcherFactory);
+  }
+
+}
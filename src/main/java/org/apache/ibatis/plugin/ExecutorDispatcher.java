@@ -0,0 +1,259 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * Executor 的组合分发器
+ */
+final class ExecutorDispatcher extends PluginDispatcher<Executor> implements Executor {
+
+  private static final int UPDATE = 0;
+  private static final int QUERY_WITH_CACHE_KEY = 1;
+  private static final int QUERY = 2;
+  private static final int QUERY_CURSOR = 3;
+  private static final int FLUSH_STATEMENTS = 4;
+  private static final int COMMIT = 5;
+  private static final int ROLLBACK = 6;
+  private static final int CREATE_CACHE_KEY = 7;
+  private static final int IS_CACHED = 8;
+  private static final int CLEAR_LOCAL_CACHE = 9;
+  private static final int DEFER_LOAD = 10;
+  private static final int GET_TRANSACTION = 11;
+  private static final int CLOSE = 12;
+  private static final int IS_CLOSED = 13;
+  private static final int SET_EXECUTOR_WRAPPER = 14;
+
+  static final Method[] METHODS = {
+      method(Executor.class, "update", MappedStatement.class, Object.class),
+      method(Executor.class, "query", MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class),
+      method(Executor.class, "query", MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class),
+      method(Executor.class, "queryCursor", MappedStatement.class, Object.class, RowBounds.class),
+      method(Executor.class, "flushStatements"),
+      method(Executor.class, "commit", boolean.class),
+      method(Executor.class, "rollback", boolean.class),
+      method(Executor.class, "createCacheKey", MappedStatement.class, Object.class, RowBounds.class, BoundSql.class),
+      method(Executor.class, "isCached", MappedStatement.class, CacheKey.class),
+      method(Executor.class, "clearLocalCache"),
+      method(Executor.class, "deferLoad", MappedStatement.class, MetaObject.class, String.class, CacheKey.class, Class.class),
+      method(Executor.class, "getTransaction"),
+      method(Executor.class, "close", boolean.class),
+      method(Executor.class, "isClosed"),
+      method(Executor.class, "setExecutorWrapper", Executor.class)
+  };
+
+  ExecutorDispatcher(Executor target, DispatchPlan plan) {
+    super(target, plan);
+  }
+
+  private ExecutorDispatcher(Executor target, DispatchPlan plan, int depth, PluginDispatcher<Executor> root) {
+    super(target, plan, depth, root);
+  }
+
+  @Override
+  protected PluginDispatcher<Executor> newView(int depth, PluginDispatcher<Executor> root) {
+    return new ExecutorDispatcher(target, plan, depth, root);
+  }
+
+  @Override
+  protected Object invokeTarget(int slot, Object[] args) throws Throwable {
+    switch (slot) {
+      case UPDATE:
+        return target.update((MappedStatement) args[0], args[1]);
+      case QUERY_WITH_CACHE_KEY:
+        return target.query((MappedStatement) args[0], args[1], (RowBounds) args[2], (ResultHandler) args[3], (CacheKey) args[4], (BoundSql) args[5]);
+      case QUERY:
+        return target.query((MappedStatement) args[0], args[1], (RowBounds) args[2], (ResultHandler) args[3]);
+      case QUERY_CURSOR:
+        return target.queryCursor((MappedStatement) args[0], args[1], (RowBounds) args[2]);
+      case FLUSH_STATEMENTS:
+        return target.flushStatements();
+      case COMMIT:
+        target.commit((Boolean) args[0]);
+        return null;
+      case ROLLBACK:
+        target.rollback((Boolean) args[0]);
+        return null;
+      case CREATE_CACHE_KEY:
+        return target.createCacheKey((MappedStatement) args[0], args[1], (RowBounds) args[2], (BoundSql) args[3]);
+      case IS_CACHED:
+        return target.isCached((MappedStatement) args[0], (CacheKey) args[1]);
+      case CLEAR_LOCAL_CACHE:
+        target.clearLocalCache();
+        return null;
+      case DEFER_LOAD:
+        target.deferLoad((MappedStatement) args[0], (MetaObject) args[1], (String) args[2], (CacheKey) args[3], (Class<?>) args[4]);
+        return null;
+      case GET_TRANSACTION:
+        return target.getTransaction();
+      case CLOSE:
+        target.close((Boolean) args[0]);
+        return null;
+      case IS_CLOSED:
+        return target.isClosed();
+      case SET_EXECUTOR_WRAPPER:
+        target.setExecutorWrapper((Executor) args[0]);
+        return null;
+      default:
+        throw new IllegalArgumentException("Unknown slot " + slot);
+    }
+  }
+
+  @Override
+  public int update(MappedStatement ms, Object parameter) throws SQLException {
+    if (!isIntercepted(UPDATE)) {
+      return target.update(ms, parameter);
+    }
+    return (Integer) invoke(UPDATE, ms, parameter);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, CacheKey cacheKey, BoundSql boundSql) throws SQLException {
+    if (!isIntercepted(QUERY_WITH_CACHE_KEY)) {
+      return target.query(ms, parameter, rowBounds, resultHandler, cacheKey, boundSql);
+    }
+    return (List<E>) invoke(QUERY_WITH_CACHE_KEY, ms, parameter, rowBounds, resultHandler, cacheKey, boundSql);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> List<E> query(MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler) throws SQLException {
+    if (!isIntercepted(QUERY)) {
+      return target.query(ms, parameter, rowBounds, resultHandler);
+    }
+    return (List<E>) invoke(QUERY, ms, parameter, rowBounds, resultHandler);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
+    if (!isIntercepted(QUERY_CURSOR)) {
+      return target.queryCursor(ms, parameter, rowBounds);
+    }
+    return (Cursor<E>) invoke(QUERY_CURSOR, ms, parameter, rowBounds);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<BatchResult> flushStatements() throws SQLException {
+    if (!isIntercepted(FLUSH_STATEMENTS)) {
+      return target.flushStatements();
+    }
+    return (List<BatchResult>) invoke(FLUSH_STATEMENTS);
+  }
+
+  @Override
+  public void commit(boolean required) throws SQLException {
+    if (!isIntercepted(COMMIT)) {
+      target.commit(required);
+    } else {
+      invoke(COMMIT, required);
+    }
+  }
+
+  @Override
+  public void rollback(boolean required) throws SQLException {
+    if (!isIntercepted(ROLLBACK)) {
+      target.rollback(required);
+    } else {
+      invoke(ROLLBACK, required);
+    }
+  }
+
+  @Override
+  public CacheKey createCacheKey(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql) {
+    if (!isIntercepted(CREATE_CACHE_KEY)) {
+      return target.createCacheKey(ms, parameterObject, rowBounds, boundSql);
+    }
+    return (CacheKey) invokeUnchecked(CREATE_CACHE_KEY, ms, parameterObject, rowBounds, boundSql);
+  }
+
+  @Override
+  public boolean isCached(MappedStatement ms, CacheKey key) {
+    if (!isIntercepted(IS_CACHED)) {
+      return target.isCached(ms, key);
+    }
+    return (Boolean) invokeUnchecked(IS_CACHED, ms, key);
+  }
+
+  @Override
+  public void clearLocalCache() {
+    if (!isIntercepted(CLEAR_LOCAL_CACHE)) {
+      target.clearLocalCache();
+    } else {
+      invokeUnchecked(CLEAR_LOCAL_CACHE);
+    }
+  }
+
+  @Override
+  public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
+    if (!isIntercepted(DEFER_LOAD)) {
+      target.deferLoad(ms, resultObject, property, key, targetType);
+    } else {
+      invokeUnchecked(DEFER_LOAD, ms, resultObject, property, key, targetType);
+    }
+  }
+
+  @Override
+  public Transaction getTransaction() {
+    if (!isIntercepted(GET_TRANSACTION)) {
+      return target.getTransaction();
+    }
+    return (Transaction) invokeUnchecked(GET_TRANSACTION);
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
+    if (!isIntercepted(CLOSE)) {
+      target.close(forceRollback);
+    } else {
+      invokeUnchecked(CLOSE, forceRollback);
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    if (!isIntercepted(IS_CLOSED)) {
+      return target.isClosed();
+    }
+    return (Boolean) invokeUnchecked(IS_CLOSED);
+  }
+
+  @Override
+  public void setExecutorWrapper(Executor executor) {
+    if (!isIntercepted(SET_EXECUTOR_WRAPPER)) {
+      target.setExecutorWrapper(executor);
+    } else {
+      invokeUnchecked(SET_EXECUTOR_WRAPPER, executor);
+    }
+  }
+
+}
@@ -18,6 +18,8 @@ package org.apache.ibatis.plugin;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Clinton Begin
@@ -29,7 +31,20 @@ public class InterceptorChain {
    */
   private final List<Interceptor> interceptors = new ArrayList<>();
 
+  private PluginMode pluginMode = PluginMode.PROXY;
+
+  /**
+   * COMPOSED 模式下按目标类型缓存的分发计划， 添加拦截器时清空
+   */
+  private final Map<Class<?>, DispatchPlan> dispatchPlans = new ConcurrentHashMap<>();
+
   public Object pluginAll(Object target) {
+    if (pluginMode == PluginMode.COMPOSED && !interceptors.isEmpty()) {
+      DispatchPlan plan = dispatchPlans.computeIfAbsent(target.getClass(), type -> DispatchPlan.create(type, interceptors));
+      if (plan.isSupported()) {
+        return plan.dispatch(target);
+      }
+    }
     for (Interceptor interceptor : interceptors) {
       target = interceptor.plugin(target);
     }
@@ -43,6 +58,7 @@ public class InterceptorChain {
    */
   public void addInterceptor(Interceptor interceptor) {
     interceptors.add(interceptor);
+    dispatchPlans.clear();
   }
 
   /**
@@ -54,4 +70,12 @@ public class InterceptorChain {
     return Collections.unmodifiableList(interceptors);
   }
 
+  public PluginMode getPluginMode() {
+    return pluginMode;
+  }
+
+  public void setPluginMode(PluginMode pluginMode) {
+    this.pluginMode = pluginMode;
+  }
+
 }
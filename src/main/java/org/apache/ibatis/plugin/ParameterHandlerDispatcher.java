@@ -0,0 +1,80 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+
+/**
+ * ParameterHandler 的组合分发器
+ */
+final class ParameterHandlerDispatcher extends PluginDispatcher<ParameterHandler> implements ParameterHandler {
+
+  private static final int GET_PARAMETER_OBJECT = 0;
+  private static final int SET_PARAMETERS = 1;
+
+  static final Method[] METHODS = {
+      method(ParameterHandler.class, "getParameterObject"),
+      method(ParameterHandler.class, "setParameters", PreparedStatement.class)
+  };
+
+  ParameterHandlerDispatcher(ParameterHandler target, DispatchPlan plan) {
+    super(target, plan);
+  }
+
+  private ParameterHandlerDispatcher(ParameterHandler target, DispatchPlan plan, int depth, PluginDispatcher<ParameterHandler> root) {
+    super(target, plan, depth, root);
+  }
+
+  @Override
+  protected PluginDispatcher<ParameterHandler> newView(int depth, PluginDispatcher<ParameterHandler> root) {
+    return new ParameterHandlerDispatcher(target, plan, depth, root);
+  }
+
+  @Override
+  protected Object invokeTarget(int slot, Object[] args) throws Throwable {
+    switch (slot) {
+      case GET_PARAMETER_OBJECT:
+        return target.getParameterObject();
+      case SET_PARAMETERS:
+        target.setParameters((PreparedStatement) args[0]);
+        return null;
+      default:
+        throw new IllegalArgumentException("Unknown slot " + slot);
+    }
+  }
+
+  @Override
+  public Object getParameterObject() {
+    if (!isIntercepted(GET_PARAMETER_OBJECT)) {
+      return target.getParameterObject();
+    }
+    return invokeUnchecked(GET_PARAMETER_OBJECT);
+  }
+
+  @Override
+  public void setParameters(PreparedStatement ps) throws SQLException {
+    if (!isIntercepted(SET_PARAMETERS)) {
+      target.setParameters(ps);
+    } else {
+      invoke(SET_PARAMETERS, ps);
+    }
+  }
+
+}
@@ -0,0 +1,207 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.sql.SQLException;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * 组合分发器的基类。 一个目标对象只包装一层， 与逐层代理的行为保持一致：
+ * <ul>
+ *   <li>拦截器按添加顺序由内向外， 后添加的先执行</li>
+ *   <li>下标为 i 的拦截器通过 {@link Invocation#getTarget()} 看到的是只织入了前 i 个拦截器的对象</li>
+ *   <li>{@link Invocation#proceed()} 抛出的异常包装为 InvocationTargetException， 对外抛出时再解包</li>
+ * </ul>
+ *
+ * @param <T> 目标接口
+ */
+abstract class PluginDispatcher<T> {
+
+  protected final T target;
+  protected final DispatchPlan plan;
+  // 只织入了前 depth 个拦截器
+  private final int depth;
+  // 每个槽位在当前 depth 下第一个要调用的拦截器在链中的位置 + 1， 为 0 表示未被拦截
+  private final int[] starts;
+  private final PluginDispatcher<T> root;
+  // 各个 depth 的视图， 只在 root 上使用
+  private Object[] views;
+
+  protected PluginDispatcher(T target, DispatchPlan plan) {
+    this(target, plan, plan.interceptors.length, null);
+  }
+
+  protected PluginDispatcher(T target, DispatchPlan plan, int depth, PluginDispatcher<T> root) {
+    this.target = target;
+    this.plan = plan;
+    this.depth = depth;
+    this.root = root == null ? this : root;
+    this.starts = new int[plan.chains.length];
+    for (int slot = 0; slot < starts.length; slot++) {
+      int start = 0;
+      for (int index : plan.chains[slot]) {
+        if (index < depth) {
+          start++;
+        }
+      }
+      starts[slot] = start;
+    }
+  }
+
+  /**
+   * 创建同一目标对象在指定 depth 下的视图
+   */
+  protected abstract PluginDispatcher<T> newView(int depth, PluginDispatcher<T> root);
+
+  /**
+   * 直接调用目标对象的方法
+   */
+  protected abstract Object invokeTarget(int slot, Object[] args) throws Throwable;
+
+  protected final boolean isIntercepted(int slot) {
+    return starts[slot] > 0;
+  }
+
+  protected final Object invoke(int slot, Object... args) throws SQLException {
+    Throwable cause;
+    try {
+      return callInterceptor(slot, starts[slot] - 1, args);
+    } catch (Throwable t) {
+      cause = thrownBy(slot, t);
+    }
+    if (cause instanceof SQLException) {
+      throw (SQLException) cause;
+    } else if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw (RuntimeException) cause;
+  }
+
+  /**
+   * 用于没有声明 SQLException 的方法， thrownBy 已经将其包装为 UndeclaredThrowableException
+   */
+  protected final Object invokeUnchecked(int slot, Object... args) {
+    try {
+      return invoke(slot, args);
+    } catch (SQLException e) {
+      throw new UndeclaredThrowableException(e);
+    }
+  }
+
+  /**
+   * 调用链中位于 position 的拦截器之下的部分： 下一个拦截器或者目标对象
+   */
+  final Object proceed(int slot, int position, Object[] args) throws InvocationTargetException {
+    try {
+      if (position == 0) {
+        return invokeTarget(slot, args);
+      }
+      return callInterceptor(slot, position - 1, args);
+    } catch (Throwable t) {
+      throw new InvocationTargetException(position == 0 ? t : thrownBy(slot, t));
+    }
+  }
+
+  private Object callInterceptor(int slot, int position, Object[] args) throws Throwable {
+    int index = plan.chains[slot][position];
+    Invocation invocation = new ComposedInvocation(view(index), plan.methods[slot], args, this, slot, position);
+    return plan.interceptors[index].intercept(invocation);
+  }
+
+  private Object view(int viewDepth) {
+    if (viewDepth == 0) {
+      return target;
+    }
+    if (root != this) {
+      return root.view(viewDepth);
+    }
+    if (viewDepth == depth) {
+      return this;
+    }
+    if (views == null) {
+      views = new Object[depth];
+    }
+    Object view = views[viewDepth];
+    if (view == null) {
+      view = newView(viewDepth, this);
+      views[viewDepth] = view;
+    }
+    return view;
+  }
+
+  /**
+   * 与 JDK 动态代理对外抛出的异常一致
+   */
+  private Throwable thrownBy(int slot, Throwable t) {
+    Throwable cause = ExceptionUtil.unwrapThrowable(t);
+    if (cause instanceof RuntimeException || cause instanceof Error) {
+      return cause;
+    }
+    for (Class<?> exceptionType : plan.methods[slot].getExceptionTypes()) {
+      if (exceptionType.isInstance(cause)) {
+        return cause;
+      }
+    }
+    return new UndeclaredThrowableException(cause);
+  }
+
+  static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+    try {
+      return type.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException e) {
+      throw new PluginException("Could not find method on " + type + " named " + name + ". Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return target.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return target.equals(obj);
+  }
+
+  @Override
+  public String toString() {
+    return target.toString();
+  }
+
+  private static final class ComposedInvocation extends Invocation {
+
+    private final PluginDispatcher<?> dispatcher;
+    private final int slot;
+    private final int position;
+
+    ComposedInvocation(Object target, Method method, Object[] args, PluginDispatcher<?> dispatcher, int slot, int position) {
+      super(target, method, args);
+      this.dispatcher = dispatcher;
+      this.slot = slot;
+      this.position = position;
+    }
+
+    @Override
+    public Object proceed() throws InvocationTargetException {
+      return dispatcher.proceed(slot, position, getArgs());
+    }
+  }
+
+}
@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+/**
+ * 插件的织入方式
+ */
+public enum PluginMode {
+
+  /**
+   * 每个拦截器调用一次 {@link Interceptor#plugin(Object)}， 默认使用 {@link Plugin#wrap(Object, Interceptor)} 生成一层 JDK 动态代理
+   */
+  PROXY,
+
+  /**
+   * 每个目标对象只包装一层组合分发器： 未被拦截的方法直接调用， 被拦截的方法按预先计算好的拦截器链调用， 不再使用反射。
+   * 该模式根据 @Intercepts 注解确定拦截的方法， 不会调用 {@link Interceptor#plugin(Object)}
+   */
+  COMPOSED
+
+}
@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+import java.lang.reflect.Method;
+import java.sql.CallableStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+
+/**
+ * ResultSetHandler 的组合分发器
+ */
+final class ResultSetHandlerDispatcher extends PluginDispatcher<ResultSetHandler> implements ResultSetHandler {
+
+  private static final int HANDLE_RESULT_SETS = 0;
+  private static final int HANDLE_CURSOR_RESULT_SETS = 1;
+  private static final int HANDLE_OUTPUT_PARAMETERS = 2;
+
+  static final Method[] METHODS = {
+      method(ResultSetHandler.class, "handleResultSets", Statement.class),
+      method(ResultSetHandler.class, "handleCursorResultSets", Statement.class),
+      method(ResultSetHandler.class, "handleOutputParameters", CallableStatement.class)
+  };
+
+  ResultSetHandlerDispatcher(ResultSetHandler target, DispatchPlan plan) {
+    super(target, plan);
+  }
+
+  private ResultSetHandlerDispatcher(ResultSetHandler target, DispatchPlan plan, int depth, PluginDispatcher<ResultSetHandler> root) {
+    super(target, plan, depth, root);
+  }
+
+  @Override
+  protected PluginDispatcher<ResultSetHandler> newView(int depth, PluginDispatcher<ResultSetHandler> root) {
+    return new ResultSetHandlerDispatcher(target, plan, depth, root);
+  }
+
+  @Override
+  protected Object invokeTarget(int slot, Object[] args) throws Throwable {
+    switch (slot) {
+      case HANDLE_RESULT_SETS:
+        return target.handleResultSets((Statement) args[0]);
+      case HANDLE_CURSOR_RESULT_SETS:
+        return target.handleCursorResultSets((Statement) args[0]);
+      case HANDLE_OUTPUT_PARAMETERS:
+        target.handleOutputParameters((CallableStatement) args[0]);
+        return null;
+      default:
+        throw new IllegalArgumentException("Unknown slot " + slot);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> List<E> handleResultSets(Statement stmt) throws SQLException {
+    if (!isIntercepted(HANDLE_RESULT_SETS)) {
+      return target.handleResultSets(stmt);
+    }
+    return (List<E>) invoke(HANDLE_RESULT_SETS, stmt);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> Cursor<E> handleCursorResultSets(Statement stmt) throws SQLException {
+    if (!isIntercepted(HANDLE_CURSOR_RESULT_SETS)) {
+      return target.handleCursorResultSets(stmt);
+    }
+    return (Cursor<E>) invoke(HANDLE_CURSOR_RESULT_SETS, stmt);
+  }
+
+  @Override
+  public void handleOutputParameters(CallableStatement cs) throws SQLException {
+    if (!isIntercepted(HANDLE_OUTPUT_PARAMETERS)) {
+      target.handleOutputParameters(cs);
+    } else {
+      invoke(HANDLE_OUTPUT_PARAMETERS, cs);
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * StatementHandler 的组合分发器
+ */
+final class StatementHandlerDispatcher extends PluginDispatcher<StatementHandler> implements StatementHandler {
+
+  private static final int PREPARE = 0;
+  private static final int PARAMETERIZE = 1;
+  private static final int BATCH = 2;
+  private static final int UPDATE = 3;
+  private static final int QUERY = 4;
+  private static final int QUERY_CURSOR = 5;
+  private static final int GET_BOUND_SQL = 6;
+  private static final int GET_PARAMETER_HANDLER = 7;
+
+  static final Method[] METHODS = {
+      method(StatementHandler.class, "prepare", Connection.class, Integer.class),
+      method(StatementHandler.class, "parameterize", Statement.class),
+      method(StatementHandler.class, "batch", Statement.class),
+      method(StatementHandler.class, "update", Statement.class),
+      method(StatementHandler.class, "query", Statement.class, ResultHandler.class),
+      method(StatementHandler.class, "queryCursor", Statement.class),
+      method(StatementHandler.class, "getBoundSql"),
+      method(StatementHandler.class, "getParameterHandler")
+  };
+
+  StatementHandlerDispatcher(StatementHandler target, DispatchPlan plan) {
+    super(target, plan);
+  }
+
+  private StatementHandlerDispatcher(StatementHandler target, DispatchPlan plan, int depth, PluginDispatcher<StatementHandler> root) {
+    super(target, plan, depth, root);
+  }
+
+  @Override
+  protected PluginDispatcher<StatementHandler> newView(int depth, PluginDispatcher<StatementHandler> root) {
+    return new StatementHandlerDispatcher(target, plan, depth, root);
+  }
+
+  @Override
+  protected Object invokeTarget(int slot, Object[] args) throws Throwable {
+    switch (slot) {
+      case PREPARE:
+        return target.prepare((Connection) args[0], (Integer) args[1]);
+      case PARAMETERIZE:
+        target.parameterize((Statement) args[0]);
+        return null;
+      case BATCH:
+        target.batch((Statement) args[0]);
+        return null;
+      case UPDATE:
+        return target.update((Statement) args[0]);
+      case QUERY:
+        return target.query((Statement) args[0], (ResultHandler) args[1]);
+      case QUERY_CURSOR:
+        return target.queryCursor((Statement) args[0]);
+      case GET_BOUND_SQL:
+        return target.getBoundSql();
+      case GET_PARAMETER_HANDLER:
+        return target.getParameterHandler();
+      default:
+        throw new IllegalArgumentException("Unknown slot " + slot);
+    }
+  }
+
+  @Override
+  public Statement prepare(Connection connection, Integer transactionTimeout) throws SQLException {
+    if (!isIntercepted(PREPARE)) {
+      return target.prepare(connection, transactionTimeout);
+    }
+    return (Statement) invoke(PREPARE, connection, transactionTimeout);
+  }
+
+  @Override
+  public void parameterize(Statement statement) throws SQLException {
+    if (!isIntercepted(PARAMETERIZE)) {
+      target.parameterize(statement);
+    } else {
+      invoke(PARAMETERIZE, statement);
+    }
+  }
+
+  @Override
+  public void batch(Statement statement) throws SQLException {
+    if (!isIntercepted(BATCH)) {
+      target.batch(statement);
+    } else {
+      invoke(BATCH, statement);
+    }
+  }
+
+  @Override
+  public int update(Statement statement) throws SQLException {
+    if (!isIntercepted(UPDATE)) {
+      return target.update(statement);
+    }
+    return (Integer) invoke(UPDATE, statement);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> List<E> query(Statement statement, ResultHandler resultHandler) throws SQLException {
+    if (!isIntercepted(QUERY)) {
+      return target.query(statement, resultHandler);
+    }
+    return (List<E>) invoke(QUERY, statement, resultHandler);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> Cursor<E> queryCursor(Statement statement) throws SQLException {
+    if (!isIntercepted(QUERY_CURSOR)) {
+      return target.queryCursor(statement);
+    }
+    return (Cursor<E>) invoke(QUERY_CURSOR, statement);
+  }
+
+  @Override
+  public BoundSql getBoundSql() {
+    if (!isIntercepted(GET_BOUND_SQL)) {
+      return target.getBoundSql();
+    }
+    return (BoundSql) invokeUnchecked(GET_BOUND_SQL);
+  }
+
+  @Override
+  public ParameterHandler getParameterHandler() {
+    if (!isIntercepted(GET_PARAMETER_HANDLER)) {
+      return target.getParameterHandler();
+    }
+    return (ParameterHandler) invokeUnchecked(GET_PARAMETER_HANDLER);
+  }
+
+}
@@ -24,6 +24,8 @@ import java.util.concurrent.ConcurrentMap;
 public class DefaultReflectorFactory implements ReflectorFactory {
   // 是否缓存
   private boolean classCacheEnabled = true;
+  // 是否使用 LambdaMetafactory 生成 getter/setter 的 Invoker
+  private boolean lambdaInvokerEnabled;
   // 使用 ConcurrentMap 缓存 Reflector 对象
   private final ConcurrentMap<Class<?>, Reflector> reflectorMap = new ConcurrentHashMap<>();
 
@@ -40,6 +42,18 @@ public class DefaultReflectorFactory implements ReflectorFactory {
     this.classCacheEnabled = classCacheEnabled;
   }
 
+  public boolean isLambdaInvokerEnabled() {
+    return lambdaInvokerEnabled;
+  }
+
+  /**
+   * 开启后， 新创建的 Reflector 使用 {@link org.apache.ibatis.reflection.invoker.LambdaMethodInvoker} 调用 getter/setter，
+   * 已缓存的 Reflector 不受影响
+   */
+  public void setLambdaInvokerEnabled(boolean lambdaInvokerEnabled) {
+    this.lambdaInvokerEnabled = lambdaInvokerEnabled;
+  }
+
   /**
    *  如果开启缓存， 则从缓存中取出 Reflector 对象
    *  否则创建一个新的
@@ -50,9 +64,9 @@ public class DefaultReflectorFactory implements ReflectorFactory {
   public Reflector findForClass(Class<?> type) {
     if (classCacheEnabled) {
       // synchronized (type) removed see issue #461
-      return reflectorMap.computeIfAbsent(type, Reflector::new);
+      return reflectorMap.computeIfAbsent(type, clazz -> new Reflector(clazz, lambdaInvokerEnabled));
     } else {
-      return new Reflector(type);
+      return new Reflector(type, lambdaInvokerEnabled);
     }
   }
 
@@ -34,6 +34,7 @@ import java.util.Map.Entry;
 
 import org.apache.ibatis.reflection.invoker.GetFieldInvoker;
 import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.LambdaMethodInvoker;
 import org.apache.ibatis.reflection.invoker.MethodInvoker;
 import org.apache.ibatis.reflection.invoker.SetFieldInvoker;
 import org.apache.ibatis.reflection.property.PropertyNamer;
@@ -65,6 +66,8 @@ public class Reflector {
   private Constructor<?> defaultConstructor;
   // 记录所有属性名称的集合
   private Map<String, String> caseInsensitivePropertyMap = new HashMap<>();
+  // getter/setter 是否使用 LambdaMetafactory 生成的 Invoker
+  private final boolean lambdaInvokerEnabled;
 
   /**
    * 构造方法
@@ -72,8 +75,20 @@ public class Reflector {
    * @param clazz 需要缓存的对象
    */
   public Reflector(Class<?> clazz) {
+    this(clazz, false);
+  }
+
+  /**
+   * 构造方法
+   *
+   * @param clazz 需要缓存的对象
+   * @param lambdaInvokerEnabled getter/setter 是否使用 {@link LambdaMethodInvoker}
+   * @since 3.5.0
+   */
+  public Reflector(Class<?> clazz, boolean lambdaInvokerEnabled) {
     // 初始化 type 字段
     type = clazz;
+    this.lambdaInvokerEnabled = lambdaInvokerEnabled;
     // 查找默认构造方法， 并赋值给 defaultConstructor
     addDefaultConstructor(clazz);
     // 处理 clazz 中的 getter 方法
@@ -208,7 +223,7 @@ public class Reflector {
         // 检查属性名是否合法
         if (isValidPropertyName(name)) {
             // 将属性名和对应的 Invoker添加到集合当中
-            getMethods.put(name, new MethodInvoker(method));
+            getMethods.put(name, createMethodInvoker(method));
             // 获取返回值的类型
             Type returnType = TypeParameterResolver.resolveReturnType(method, type);
             // 将属性名及其getter 添加到 getTypes 集合中
@@ -308,9 +323,13 @@ public class Reflector {
         + paramType2.getName() + "'.");
   }
 
+  private Invoker createMethodInvoker(Method method) {
+    return lambdaInvokerEnabled ? LambdaMethodInvoker.forMethod(method) : new MethodInvoker(method);
+  }
+
   private void addSetMethod(String name, Method method) {
     if (isValidPropertyName(name)) {
-      setMethods.put(name, new MethodInvoker(method));
+      setMethods.put(name, createMethodInvoker(method));
       Type[] paramTypes = TypeParameterResolver.resolveParamTypes(method, type);
       setTypes.put(name, typeToClass(paramTypes[0]));
     }
@@ -0,0 +1,161 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * getter/setter 的 Invoker：通过 LambdaMetafactory 生成直接调用的类， 可被 JIT 内联， 避免 Method.invoke 的反射开销
+ * 无法生成时（如安全管理器、模块限制）退回到 {@link MethodInvoker}
+ */
+public abstract class LambdaMethodInvoker implements Invoker {
+
+  private static final int ALLOWED_MODES = MethodHandles.Lookup.PRIVATE | MethodHandles.Lookup.PROTECTED
+      | MethodHandles.Lookup.PACKAGE | MethodHandles.Lookup.PUBLIC;
+
+  // Java 9+ 的 MethodHandles.privateLookupIn
+  private static final Method privateLookupInMethod;
+
+  static {
+    Method method;
+    try {
+      method = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+    } catch (NoSuchMethodException e) {
+      method = null;
+    }
+    privateLookupInMethod = method;
+  }
+
+  private final Class<?> type;
+
+  private LambdaMethodInvoker(Class<?> type) {
+    this.type = type;
+  }
+
+  /**
+   * 有且仅有一个参数时生成 setter， 否则生成 getter
+   *
+   * @param method getter 或 setter 方法
+   * @return 生成的 Invoker， 失败时为 MethodInvoker
+   */
+  public static Invoker forMethod(Method method) {
+    if (Modifier.isStatic(method.getModifiers()) || method.getParameterTypes().length > 1) {
+      return new MethodInvoker(method);
+    }
+    try {
+      MethodHandles.Lookup lookup = privateLookupIn(method.getDeclaringClass());
+      MethodHandle handle = lookup.unreflect(method);
+      if (method.getParameterTypes().length == 1) {
+        return new Setter(method.getParameterTypes()[0], createSetter(lookup, handle, method));
+      }
+      return new Getter(method.getReturnType(), createGetter(lookup, handle, method));
+    } catch (Throwable e) {
+      return new MethodInvoker(method);
+    }
+  }
+
+  @Override
+  public Class<?> getType() {
+    return type;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Function<Object, Object> createGetter(MethodHandles.Lookup lookup, MethodHandle handle, Method method) throws Throwable {
+    CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+        MethodType.methodType(Function.class),
+        MethodType.methodType(Object.class, Object.class),
+        handle,
+        MethodType.methodType(box(method.getReturnType()), method.getDeclaringClass()));
+    return (Function<Object, Object>) site.getTarget().invoke();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BiConsumer<Object, Object> createSetter(MethodHandles.Lookup lookup, MethodHandle handle, Method method) throws Throwable {
+    CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+        MethodType.methodType(BiConsumer.class),
+        MethodType.methodType(void.class, Object.class, Object.class),
+        handle,
+        MethodType.methodType(void.class, method.getDeclaringClass(), box(method.getParameterTypes()[0])));
+    return (BiConsumer<Object, Object>) site.getTarget().invoke();
+  }
+
+  private static Class<?> box(Class<?> type) {
+    return MethodType.methodType(type).wrap().returnType();
+  }
+
+  private static MethodHandles.Lookup privateLookupIn(Class<?> targetClass) throws ReflectiveOperationException {
+    if (privateLookupInMethod != null) {
+      return (MethodHandles.Lookup) privateLookupInMethod.invoke(null, targetClass, MethodHandles.lookup());
+    }
+    // same approach as MapperProxy#invokeDefaultMethod on Java 8
+    Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+    if (!constructor.isAccessible()) {
+      constructor.setAccessible(true);
+    }
+    return constructor.newInstance(targetClass, ALLOWED_MODES);
+  }
+
+  private static final class Getter extends LambdaMethodInvoker {
+
+    private final Function<Object, Object> getter;
+
+    Getter(Class<?> type, Function<Object, Object> getter) {
+      super(type);
+      this.getter = getter;
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+      try {
+        return getter.apply(target);
+      } catch (Throwable t) {
+        // 与 Method.invoke 保持一致， 将 getter 抛出的异常包装为 InvocationTargetException
+        throw new InvocationTargetException(t);
+      }
+    }
+  }
+
+  private static final class Setter extends LambdaMethodInvoker {
+
+    private final BiConsumer<Object, Object> setter;
+
+    Setter(Class<?> type, BiConsumer<Object, Object> setter) {
+      super(type);
+      this.setter = setter;
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+      try {
+        setter.accept(target, args[0]);
+        return null;
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+  }
+
+}
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -70,6 +70,13 @@ public class DefaultParameterHandler implements ParameterHandler {
    */
   @Override
   public void setParameters(PreparedStatement ps) {
+    setParameters(ps, 0);
+  }
+
+  /**
+   * 从第 parameterOffset + 1 个占位符开始绑定参数， 用于多行 INSERT 中某一行的参数
+   */
+  public void setParameters(PreparedStatement ps, int parameterOffset) {
     ErrorContext.instance().activity("setting parameters").object(mappedStatement.getParameterMap().getId());
     // 从 boundSql 中过去出参数映射列表
     List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
@@ -103,7 +110,7 @@ public class DefaultParameterHandler implements ParameterHandler {
           }
           try {
             // 为参数绑定实参
-            typeHandler.setParameter(ps, i + 1, value, jdbcType);
+            typeHandler.setParameter(ps, parameterOffset + i + 1, value, jdbcType);
           } catch (TypeException e) {
             throw new TypeException("Could not set parameters for mapping: " + parameterMapping + ". Cause: " + e, e);
           } catch (SQLException e) {
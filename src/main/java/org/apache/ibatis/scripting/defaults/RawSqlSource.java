@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.scripting.defaults;
 
+import java.io.Serializable;
 import java.util.HashMap;
 
 import org.apache.ibatis.builder.SqlSourceBuilder;
@@ -34,7 +35,9 @@ import org.apache.ibatis.session.Configuration;
  * @since 3.2.0
  * @author Eduardo Macarron
  */
-public class RawSqlSource implements SqlSource {
+public class RawSqlSource implements SqlSource, Serializable {
+
+  private static final long serialVersionUID = -6516909024492857626L;
 
   private final SqlSource sqlSource;
 
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,12 +15,16 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
  * @author Clinton Begin
  */
-public class ChooseSqlNode implements SqlNode {
+public class ChooseSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = 4314327344018760164L;
+
   private final SqlNode defaultSqlNode;
   private final List<SqlNode> ifSqlNodes;
 
@@ -31,15 +35,20 @@ public class ChooseSqlNode implements SqlNode {
 
   @Override
   public boolean apply(DynamicContext context) {
+    int branch = 0;
     for (SqlNode sqlNode : ifSqlNodes) {
       if (sqlNode.apply(context)) {
+        context.recordShape(branch);
         return true;
       }
+      branch++;
     }
     if (defaultSqlNode != null) {
       defaultSqlNode.apply(context);
+      context.recordShape(branch);
       return true;
     }
+    context.recordShape(-1);
     return false;
   }
 }
@@ -23,6 +23,7 @@ import ognl.OgnlException;
 import ognl.OgnlRuntime;
 import ognl.PropertyAccessor;
 
+import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 
@@ -44,6 +45,10 @@ public class DynamicContext {
   // 在 SqlNode 解析动态 SQL 时， 会将解析后的 SQL 语句片段添加到该属性中保存， 最终拼出完整的 SQL 语句
   private final StringBuilder sqlBuilder = new StringBuilder();
   private int uniqueNumber = 0;
+  // 记录动态 SQL 的形状（分支选择、循环次数、${} 的值）
+  private final CacheKey shape;
+  // 只记录形状， 不拼接 SQL
+  private final boolean shapeOnly;
 
   /**
    * 构造函数
@@ -51,6 +56,29 @@ public class DynamicContext {
    * @param parameterObject SQL 对应的实参
    */
   public DynamicContext(Configuration configuration, Object parameterObject) {
+    this(configuration, parameterObject, null);
+  }
+
+  /**
+   * 构造函数
+   * @param configuration 核心的Configuration对象
+   * @param parameterObject SQL 对应的实参
+   * @param shape 记录形状的 CacheKey， 为 null 时正常拼接 SQL
+   */
+  public DynamicContext(Configuration configuration, Object parameterObject, CacheKey shape) {
+    this(configuration, parameterObject, shape, shape != null);
+  }
+
+  /**
+   * 构造函数
+   * @param configuration 核心的Configuration对象
+   * @param parameterObject SQL 对应的实参
+   * @param shape 记录形状的 CacheKey， 为 null 时不记录
+   * @param shapeOnly 是否只记录形状而不拼接 SQL
+   */
+  public DynamicContext(Configuration configuration, Object parameterObject, CacheKey shape, boolean shapeOnly) {
+    this.shape = shape;
+    this.shapeOnly = shapeOnly;
     if (parameterObject != null && !(parameterObject instanceof Map)) {
       // 不是 Map 对象， 则创对应的 MetaObject 对象
       MetaObject metaObject = configuration.newMetaObject(parameterObject);
@@ -87,6 +115,9 @@ public class DynamicContext {
    * @param sql
    */
   public void appendSql(String sql) {
+    if (shapeOnly) {
+      return;
+    }
     sqlBuilder.append(sql);
     sqlBuilder.append(" ");
   }
@@ -103,6 +134,24 @@ public class DynamicContext {
     return uniqueNumber++;
   }
 
+  /**
+   * 是否只记录形状， 此时 SqlNode 无需生成 SQL 片段
+   * @return
+   */
+  public boolean isShapeOnly() {
+    return shapeOnly;
+  }
+
+  /**
+   * 记录影响生成的 SQL 的一个决定， 各 SqlNode 在处理完子节点后调用
+   * @param decision 分支结果、循环次数或 ${} 的值
+   */
+  public void recordShape(Object decision) {
+    if (shape != null) {
+      shape.update(decision);
+    }
+  }
+
   /**
    * 内部类， 集成 HashMap， 并重写了 get 方法
    */
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,33 +15,64 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ibatis.builder.SqlSourceBuilder;
+import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
 import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 
 /**
  * @author Clinton Begin
  * 负责动态SQL的解析
  */
-public class DynamicSqlSource implements SqlSource {
+public class DynamicSqlSource implements SqlSource, Serializable {
+
+  private static final long serialVersionUID = 5501434371196189401L;
+
+  // 每个语句最多缓存的形状数量， ${} 的取值过多时避免无限增长
+  private static final int MAX_SHAPES = 256;
 
   private final Configuration configuration;
   private final SqlNode rootSqlNode;
+  // 形状 -> 已解析的 SQL 及参数映射
+  private final transient Map<CacheKey, ShapedSql> shapeCache = new ConcurrentHashMap<>();
 
   public DynamicSqlSource(Configuration configuration, SqlNode rootSqlNode) {
     this.configuration = configuration;
     this.rootSqlNode = rootSqlNode;
   }
 
+  /**
+   * 从配置快照中反序列化后重新创建， 形状缓存从空开始
+   */
+  private Object readResolve() {
+    return new DynamicSqlSource(configuration, rootSqlNode);
+  }
+
   @Override
   public BoundSql getBoundSql(Object parameterObject) {
+    if (configuration.isDynamicSqlShapeCacheEnabled()) {
+      return getShapedBoundSql(parameterObject);
+    }
     // 获取 DynamicContext 对象, parameterObject为用户传入的参数
     DynamicContext context = new DynamicContext(configuration, parameterObject);
     // 解析 context
     rootSqlNode.apply(context);
+    return parse(context, parameterObject);
+  }
+
+  /**
+   * 解析已拼接好 SQL 的 context
+   */
+  private BoundSql parse(DynamicContext context, Object parameterObject) {
     // 创建 SqlSourceBuilder 对象
     SqlSourceBuilder sqlSourceParser = new SqlSourceBuilder(configuration);
     // 获取参数的类型
@@ -57,4 +88,70 @@ public class DynamicSqlSource implements SqlSource {
     return boundSql;
   }
 
+  /**
+   * 先只记录形状（不拼接 SQL）， 形状已缓存时直接复用解析好的 SQL 及参数映射， 只绑定新的参数值。
+   * 形状缓存已满时新的形状不会再缓存， 记录形状的同时拼接 SQL， 未命中时直接解析， 不再处理第二遍
+   */
+  private BoundSql getShapedBoundSql(Object parameterObject) {
+    Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
+    CacheKey shape = new CacheKey();
+    shape.update(parameterType);
+    boolean full = shapeCache.size() >= MAX_SHAPES;
+    DynamicContext context = new DynamicContext(configuration, parameterObject, shape, !full);
+    rootSqlNode.apply(context);
+    ShapedSql shapedSql = shapeCache.get(shape);
+    if (shapedSql == null || !shapedSql.matches(additionalParameterTypes(shapedSql.parameterMappings, context.getBindings()))) {
+      if (full) {
+        return parse(context, parameterObject);
+      }
+      // 未命中， 按原流程拼接并解析 SQL
+      context = new DynamicContext(configuration, parameterObject);
+      rootSqlNode.apply(context);
+      SqlSourceBuilder sqlSourceParser = new SqlSourceBuilder(configuration);
+      BoundSql parsed = sqlSourceParser.parse(context.getSql(), parameterType, context.getBindings()).getBoundSql(parameterObject);
+      List<ParameterMapping> parameterMappings = parsed.getParameterMappings();
+      shapedSql = new ShapedSql(parsed.getSql(), parameterMappings, additionalParameterTypes(parameterMappings, context.getBindings()));
+      if (shapeCache.size() < MAX_SHAPES || shapeCache.containsKey(shape)) {
+        shapeCache.put(shape, shapedSql);
+      }
+    }
+    BoundSql boundSql = new BoundSql(configuration, shapedSql.sql, shapedSql.parameterMappings, parameterObject);
+    for (Map.Entry<String, Object> entry : context.getBindings().entrySet()) {
+      boundSql.setAdditionalParameter(entry.getKey(), entry.getValue());
+    }
+    return boundSql;
+  }
+
+  /**
+   * 参数映射的类型可能来自 bindings 中的实际值（issue #448）， 这些类型也必须一致才能复用
+   */
+  private Class<?>[] additionalParameterTypes(List<ParameterMapping> parameterMappings, Map<String, Object> bindings) {
+    MetaObject metaParameters = configuration.newMetaObject(bindings);
+    Class<?>[] types = new Class<?>[parameterMappings.size()];
+    for (int i = 0; i < types.length; i++) {
+      String property = parameterMappings.get(i).getProperty();
+      if (property != null && metaParameters.hasGetter(property)) {
+        types[i] = metaParameters.getGetterType(property);
+      }
+    }
+    return types;
+  }
+
+  private static class ShapedSql {
+
+    private final String sql;
+    private final List<ParameterMapping> parameterMappings;
+    private final Class<?>[] additionalParameterTypes;
+
+    ShapedSql(String sql, List<ParameterMapping> parameterMappings, Class<?>[] additionalParameterTypes) {
+      this.sql = sql;
+      this.parameterMappings = parameterMappings;
+      this.additionalParameterTypes = additionalParameterTypes;
+    }
+
+    boolean matches(Class<?>[] types) {
+      return Arrays.equals(additionalParameterTypes, types);
+    }
+  }
+
 }
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -26,7 +27,9 @@ import org.apache.ibatis.builder.BuilderException;
 /**
  * @author Clinton Begin
  */
-public class ExpressionEvaluator {
+public class ExpressionEvaluator implements Serializable {
+
+  private static final long serialVersionUID = -4999862195137424993L;
 
     /**
      * @param expression      传入的表达式
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
 import java.util.Map;
 
 import org.apache.ibatis.parsing.GenericTokenParser;
@@ -30,7 +31,10 @@ import org.apache.ibatis.session.Configuration;
  *     close: 循环结束的字符串
  *     separator: 每次循环的分隔符
  */
-public class ForEachSqlNode implements SqlNode {
+public class ForEachSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = 4767510056272276458L;
+
   public static final String ITEM_PREFIX = "__frch_";
 
   // 用于判断循环的终止条件
@@ -70,6 +74,7 @@ public class ForEachSqlNode implements SqlNode {
 
     final Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, bindings);
     if (!iterable.iterator().hasNext()) {
+      context.recordShape(0);
       return true;
     }
     boolean first = true;
@@ -107,6 +112,8 @@ public class ForEachSqlNode implements SqlNode {
     }
     // 添加结束字符
     applyClose(context);
+    // 记录迭代次数
+    context.recordShape(i);
     // 已经遍历完成， 移除 item index
     context.getBindings().remove(item);
     context.getBindings().remove(index);
@@ -197,6 +204,9 @@ public class ForEachSqlNode implements SqlNode {
 
     @Override
     public void appendSql(String sql) {
+      if (delegate.isShapeOnly()) {
+        return;
+      }
       // 处理的是 #{xxx} 的内容， TokenHandler 是匿名内部类
       GenericTokenParser parser = new GenericTokenParser("#{", "}", content -> {
         // 对传入的content进行处理， 正则表达式
@@ -215,6 +225,16 @@ public class ForEachSqlNode implements SqlNode {
       return delegate.getUniqueNumber();
     }
 
+    @Override
+    public boolean isShapeOnly() {
+      return delegate.isShapeOnly();
+    }
+
+    @Override
+    public void recordShape(Object decision) {
+      delegate.recordShape(decision);
+    }
+
   }
 
 
@@ -276,6 +296,16 @@ public class ForEachSqlNode implements SqlNode {
     public int getUniqueNumber() {
       return delegate.getUniqueNumber();
     }
+
+    @Override
+    public boolean isShapeOnly() {
+      return delegate.isShapeOnly();
+    }
+
+    @Override
+    public void recordShape(Object decision) {
+      delegate.recordShape(decision);
+    }
   }
 
 }
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,10 +15,15 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
+
 /**
  * @author Clinton Begin
  */
-public class IfSqlNode implements SqlNode {
+public class IfSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = -4531535262715086678L;
+
   // ExpressionEvaluator 解析 <if> 节点的 test表达式
   private final ExpressionEvaluator evaluator;
   // test 表达式
@@ -41,12 +46,13 @@ public class IfSqlNode implements SqlNode {
   @Override
   public boolean apply(DynamicContext context) {
     // 检测表达式是否为 true
-    if (evaluator.evaluateBoolean(test, context.getBindings())) {
+    boolean matched = evaluator.evaluateBoolean(test, context.getBindings());
+    if (matched) {
       // 调用子节点的 apply 方法
       contents.apply(context);
-      return true;
     }
-    return false;
+    context.recordShape(matched);
+    return matched;
   }
 
 }
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,13 +15,17 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
  * @author Clinton Begin
  * 含有多种 SqlNode。 其是树枝节点， 因此有多个叶子节点
  */
-public class MixedSqlNode implements SqlNode {
+public class MixedSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = -2809448139714323497L;
+
   // 含有的叶子节点
   private final List<SqlNode> contents;
 
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,11 +15,16 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
+
 /**
  * @author Clinton Begin
  * 记录了静态SQL语句
  */
-public class StaticTextSqlNode implements SqlNode {
+public class StaticTextSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = 9178447155478256289L;
+
   private final String text;
 
   public StaticTextSqlNode(String text) {
@@ -31,7 +36,9 @@ public class StaticTextSqlNode implements SqlNode {
    */
   @Override
   public boolean apply(DynamicContext context) {
-    context.appendSql(text);
+    if (!context.isShapeOnly()) {
+      context.appendSql(text);
+    }
     return true;
   }
 
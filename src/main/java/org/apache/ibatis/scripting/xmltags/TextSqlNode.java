@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2017 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
 import java.util.regex.Pattern;
 
 import org.apache.ibatis.parsing.GenericTokenParser;
@@ -25,7 +26,10 @@ import org.apache.ibatis.type.SimpleTypeRegistry;
 /**
  * 文本节点
  */
-public class TextSqlNode implements SqlNode {
+public class TextSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = -7014890445929860835L;
+
   private final String text;
   private final Pattern injectionFilter;
 
@@ -64,7 +68,10 @@ public class TextSqlNode implements SqlNode {
     // GenericTokenParser 解析器是通用标记解析器， 具体可以参考我的博客
     GenericTokenParser parser = createParser(new BindingTokenParser(context, injectionFilter));
     // 解析 text， 并添加到 DynamicContext 对象中
-    context.appendSql(parser.parse(text));
+    String sql = parser.parse(text);
+    if (!context.isShapeOnly()) {
+      context.appendSql(sql);
+    }
     return true;
   }
 
@@ -111,6 +118,8 @@ public class TextSqlNode implements SqlNode {
       String srtValue = (value == null ? "" : String.valueOf(value)); // issue #274 return "" instead of "null"
       // 检查合法性
       checkInjection(srtValue);
+      // ${} 的值直接拼入 SQL， 因此也是形状的一部分
+      context.recordShape(srtValue);
       return srtValue;
     }
 
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -28,7 +29,9 @@ import org.apache.ibatis.session.Configuration;
 /**
  * <trim> 节点
  */
-public class TrimSqlNode implements SqlNode {
+public class TrimSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = 5638889367136078643L;
 
   // <trim> 节点对应的子节点
   private final SqlNode contents;
@@ -140,6 +143,16 @@ public class TrimSqlNode implements SqlNode {
       return delegate.getUniqueNumber();
     }
 
+    @Override
+    public boolean isShapeOnly() {
+      return delegate.isShapeOnly();
+    }
+
+    @Override
+    public void recordShape(Object decision) {
+      delegate.recordShape(decision);
+    }
+
     @Override
     public void appendSql(String sql) {
       sqlBuffer.append(sql);
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,13 +15,17 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.io.Serializable;
+
 /**
  * @author Frank D. Martinez [mnesarco]
  *
  * 动态 SQL 的 bind 节点
  *
  */
-public class VarDeclSqlNode implements SqlNode {
+public class VarDeclSqlNode implements SqlNode, Serializable {
+
+  private static final long serialVersionUID = -3014849315645644127L;
 
   // 变量
   private final String name;
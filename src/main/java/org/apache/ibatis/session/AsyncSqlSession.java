@@ -0,0 +1,79 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.apache.ibatis.executor.BatchResult;
+
+/**
+ * 异步 SqlSession， 所有操作都在该会话独占的串行通道上执行， 调用线程不会阻塞在 JDBC 上。
+ * 同一个会话上提交的操作严格按提交顺序执行， 因此事务与一级缓存的语义与同步会话一致。
+ *
+ * <p>继承自 {@link SqlSession} 的同步方法同样经过该通道， 会等待之前提交的异步操作完成后再执行。
+ * 通过 {@link #getMapper(Class)} 获取的 Mapper 中， 返回 {@link CompletableFuture} 的方法会异步执行。
+ *
+ * <p>返回的 Cursor 与 ResultHandler 回调仍然使用会话的连接， 在后续操作提交前应当处理完毕。
+ */
+public interface AsyncSqlSession extends SqlSession {
+
+  /**
+   * 在会话的串行通道上执行任意操作
+   *
+   * @param action 操作， 参数为底层的同步会话
+   * @return 操作结果
+   */
+  <T> CompletableFuture<T> executeAsync(Function<SqlSession, T> action);
+
+  <T> CompletableFuture<T> selectOneAsync(String statement);
+
+  <T> CompletableFuture<T> selectOneAsync(String statement, Object parameter);
+
+  <E> CompletableFuture<List<E>> selectListAsync(String statement);
+
+  <E> CompletableFuture<List<E>> selectListAsync(String statement, Object parameter);
+
+  <E> CompletableFuture<List<E>> selectListAsync(String statement, Object parameter, RowBounds rowBounds);
+
+  <K, V> CompletableFuture<Map<K, V>> selectMapAsync(String statement, Object parameter, String mapKey);
+
+  CompletableFuture<Integer> insertAsync(String statement);
+
+  CompletableFuture<Integer> insertAsync(String statement, Object parameter);
+
+  CompletableFuture<Integer> updateAsync(String statement);
+
+  CompletableFuture<Integer> updateAsync(String statement, Object parameter);
+
+  CompletableFuture<Integer> deleteAsync(String statement);
+
+  CompletableFuture<Integer> deleteAsync(String statement, Object parameter);
+
+  CompletableFuture<List<BatchResult>> flushStatementsAsync();
+
+  CompletableFuture<Void> commitAsync();
+
+  CompletableFuture<Void> rollbackAsync();
+
+  /**
+   * 在之前提交的操作全部完成后关闭会话
+   */
+  CompletableFuture<Void> closeAsync();
+
+}
@@ -17,6 +17,7 @@ package org.apache.ibatis.session;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -24,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -31,17 +33,31 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheInvalidationScope;
+import org.apache.ibatis.cache.CacheStats;
+import org.apache.ibatis.cache.EstimatedSizeWeigher;
+import org.apache.ibatis.cache.TableDependencyTracker;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationBus;
+import org.apache.ibatis.cache.invalidation.CacheInvalidationEvent;
+import org.apache.ibatis.cache.invalidation.LoopbackInvalidationBus;
+import org.apache.ibatis.cache.invalidation.UdpInvalidationBus;
+import org.apache.ibatis.cache.jmx.JmxCacheStats;
+import org.apache.ibatis.cache.serializer.CompactCacheSerializer;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.MultiRowBatchExecutor;
 import org.apache.ibatis.executor.ReuseExecutor;
 import org.apache.ibatis.executor.SimpleExecutor;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
@@ -64,6 +80,7 @@ import org.apache.ibatis.logging.nologging.NoLoggingImpl;
 import org.apache.ibatis.logging.slf4j.Slf4jImpl;
 import org.apache.ibatis.logging.stdout.StdOutImpl;
 import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.CacheBuilder;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMap;
@@ -72,6 +89,7 @@ import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
 import org.apache.ibatis.parsing.XNode;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.InterceptorChain;
+import org.apache.ibatis.plugin.PluginMode;
 import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
@@ -109,6 +127,10 @@ public class Configuration {
   protected boolean callSettersOnNulls;
   protected boolean useActualParamName = true;
   protected boolean returnInstanceForEmptyRow;
+  protected boolean dynamicSqlShapeCacheEnabled;
+  protected boolean cacheStatsJmxEnabled;
+  protected boolean parallelMapperParsing;
+  protected boolean streamingXmlParsing;
 
   protected String logPrefix;
   protected Class <? extends Log> logImpl;
@@ -119,6 +141,11 @@ public class Configuration {
   protected Integer defaultStatementTimeout;
   protected Integer defaultFetchSize;
   protected ExecutorType defaultExecutorType = ExecutorType.SIMPLE;
+  // MULTI_ROW_BATCH 执行器中一条 INSERT 语句最多合并的行数和参数个数
+  protected int multiRowBatchMaxRows = 500;
+  protected int multiRowBatchMaxParameters = 2000;
+  // AsyncSqlSession 执行任务的线程池， 为 null 时使用默认线程池
+  protected java.util.concurrent.Executor asyncExecutor;
   protected AutoMappingBehavior autoMappingBehavior = AutoMappingBehavior.PARTIAL;
   protected AutoMappingUnknownColumnBehavior autoMappingUnknownColumnBehavior = AutoMappingUnknownColumnBehavior.NONE;
 
@@ -126,6 +153,12 @@ public class Configuration {
   protected ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
   protected ObjectFactory objectFactory = new DefaultObjectFactory();
   protected ObjectWrapperFactory objectWrapperFactory = new DefaultObjectWrapperFactory();
+  // 在多个节点之间广播二级缓存失效事件， 为 null 时只清空本地缓存
+  protected CacheInvalidationBus cacheInvalidationBus;
+  protected boolean cacheInvalidationBusStarted;
+  // 修改语句失效二级缓存的范围， TABLE 时由 tableDependencyTracker 记录缓存对象依赖的表
+  protected CacheInvalidationScope cacheInvalidationScope = CacheInvalidationScope.NAMESPACE;
+  protected final TableDependencyTracker tableDependencyTracker = new TableDependencyTracker();
 
   protected boolean lazyLoadingEnabled = false;
   protected ProxyFactory proxyFactory = new JavassistProxyFactory(); // #224 Using internal Javassist instead of OGNL
@@ -166,6 +199,9 @@ public class Configuration {
    */
   protected final Map<String, String> cacheRefMap = new HashMap<>();
 
+  // 缓存 id -> 创建该缓存的 CacheBuilder， 生成配置快照时据此重建缓存
+  protected final Map<String, CacheBuilder> cacheDefinitions = new HashMap<>();
+
   public Configuration(Environment environment) {
     this();
     this.environment = environment;
@@ -184,6 +220,15 @@ public class Configuration {
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("OFFHEAP", OffHeapCache.class);
+
+    typeAliasRegistry.registerAlias("JDK", JdkCacheSerializer.class);
+    typeAliasRegistry.registerAlias("COMPACT", CompactCacheSerializer.class);
+
+    typeAliasRegistry.registerAlias("LOOPBACK", LoopbackInvalidationBus.class);
+    typeAliasRegistry.registerAlias("UDP", UdpInvalidationBus.class);
+    typeAliasRegistry.registerAlias("ESTIMATED", EstimatedSizeWeigher.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -259,6 +304,71 @@ public class Configuration {
     this.returnInstanceForEmptyRow = returnEmptyInstance;
   }
 
+  public boolean isDynamicSqlShapeCacheEnabled() {
+    return dynamicSqlShapeCacheEnabled;
+  }
+
+  public void setDynamicSqlShapeCacheEnabled(boolean dynamicSqlShapeCacheEnabled) {
+    this.dynamicSqlShapeCacheEnabled = dynamicSqlShapeCacheEnabled;
+  }
+
+  public boolean isCacheStatsJmxEnabled() {
+    return cacheStatsJmxEnabled;
+  }
+
+  /**
+   * 之后添加的二级缓存将统计信息注册为 JMX MBean
+   */
+  public void setCacheStatsJmxEnabled(boolean cacheStatsJmxEnabled) {
+    this.cacheStatsJmxEnabled = cacheStatsJmxEnabled;
+  }
+
+  public boolean isParallelMapperParsing() {
+    return parallelMapperParsing;
+  }
+
+  /**
+   * 启动时并行解析 &lt;mappers&gt; 中以 resource 或 url 配置的映射文件
+   */
+  public void setParallelMapperParsing(boolean parallelMapperParsing) {
+    this.parallelMapperParsing = parallelMapperParsing;
+  }
+
+  public boolean isStreamingXmlParsing() {
+    return streamingXmlParsing;
+  }
+
+  /**
+   * 使用 {@link org.apache.ibatis.parsing.StaxXPathParser} 流式解析映射文件， 不加载 DTD， 也不做校验
+   */
+  public void setStreamingXmlParsing(boolean streamingXmlParsing) {
+    this.streamingXmlParsing = streamingXmlParsing;
+  }
+
+  public int getMultiRowBatchMaxRows() {
+    return multiRowBatchMaxRows;
+  }
+
+  public void setMultiRowBatchMaxRows(int multiRowBatchMaxRows) {
+    this.multiRowBatchMaxRows = multiRowBatchMaxRows;
+  }
+
+  public int getMultiRowBatchMaxParameters() {
+    return multiRowBatchMaxParameters;
+  }
+
+  public void setMultiRowBatchMaxParameters(int multiRowBatchMaxParameters) {
+    this.multiRowBatchMaxParameters = multiRowBatchMaxParameters;
+  }
+
+  public java.util.concurrent.Executor getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  public void setAsyncExecutor(java.util.concurrent.Executor asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -307,6 +417,10 @@ public class Configuration {
     return loadedResources.contains(resource);
   }
 
+  public Set<String> getLoadedResources() {
+    return Collections.unmodifiableSet(loadedResources);
+  }
+
   public Environment getEnvironment() {
     return environment;
   }
@@ -493,6 +607,69 @@ public class Configuration {
 	  this.reflectorFactory = reflectorFactory;
   }
 
+  public CacheInvalidationBus getCacheInvalidationBus() {
+    return cacheInvalidationBus;
+  }
+
+  /**
+   * 设置事件总线， 在 {@link #startCacheInvalidationBus()} 之后才开始接收其他节点的事件
+   */
+  public void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+    this.cacheInvalidationBus = cacheInvalidationBus;
+    this.cacheInvalidationBusStarted = false;
+  }
+
+  /**
+   * 启动事件总线， 收到的事件应用到当前 Configuration 的缓存上。
+   * 接收线程会读取 caches， 需要在所有映射文件解析完成后调用； 重复调用时忽略
+   */
+  public synchronized void startCacheInvalidationBus() {
+    if (cacheInvalidationBus != null && !cacheInvalidationBusStarted) {
+      cacheInvalidationBus.start(this::invalidateCache);
+      cacheInvalidationBusStarted = true;
+    }
+  }
+
+  /**
+   * 应用其他节点发布的缓存失效事件， 不会再次发布
+   */
+  public void invalidateCache(CacheInvalidationEvent event) {
+    if (event.isTableInvalidation()) {
+      if (cacheInvalidationScope == CacheInvalidationScope.TABLE) {
+        tableDependencyTracker.invalidate(event.getTables());
+      } else {
+        // 本节点没有记录依赖的表， 只能清空所有缓存； 短名称冲突时 caches 中的值可能是 Ambiguity
+        for (Object cache : caches.values()) {
+          if (cache instanceof Cache) {
+            ((Cache) cache).clear();
+          }
+        }
+      }
+      return;
+    }
+    if (!hasCache(event.getCacheId())) {
+      return;
+    }
+    Cache cache = getCache(event.getCacheId());
+    if (event.isFlush()) {
+      cache.clear();
+    } else {
+      cache.removeObject(event.getKey());
+    }
+  }
+
+  public CacheInvalidationScope getCacheInvalidationScope() {
+    return cacheInvalidationScope;
+  }
+
+  public void setCacheInvalidationScope(CacheInvalidationScope cacheInvalidationScope) {
+    this.cacheInvalidationScope = cacheInvalidationScope;
+  }
+
+  public TableDependencyTracker getTableDependencyTracker() {
+    return tableDependencyTracker;
+  }
+
   public ObjectFactory getObjectFactory() {
     return objectFactory;
   }
@@ -516,6 +693,14 @@ public class Configuration {
     return interceptorChain.getInterceptors();
   }
 
+  public PluginMode getPluginMode() {
+    return interceptorChain.getPluginMode();
+  }
+
+  public void setPluginMode(PluginMode pluginMode) {
+    interceptorChain.setPluginMode(pluginMode);
+  }
+
   public LanguageDriverRegistry getLanguageRegistry() {
     return languageRegistry;
   }
@@ -570,13 +755,16 @@ public class Configuration {
     Executor executor;
     if (ExecutorType.BATCH == executorType) {
       executor = new BatchExecutor(this, transaction);
+    } else if (ExecutorType.MULTI_ROW_BATCH == executorType) {
+      executor = new MultiRowBatchExecutor(this, transaction);
     } else if (ExecutorType.REUSE == executorType) {
       executor = new ReuseExecutor(this, transaction);
     } else {
       executor = new SimpleExecutor(this, transaction);
     }
     if (cacheEnabled) {
-      executor = new CachingExecutor(executor);
+      executor = new CachingExecutor(executor, cacheInvalidationBus,
+          cacheInvalidationScope == CacheInvalidationScope.TABLE ? tableDependencyTracker : null);
     }
     executor = (Executor) interceptorChain.pluginAll(executor);
     return executor;
@@ -604,6 +792,9 @@ public class Configuration {
 
   public void addCache(Cache cache) {
     caches.put(cache.getId(), cache);
+    if (cacheStatsJmxEnabled) {
+      JmxCacheStats.register(environment == null ? null : environment.getId(), cache);
+    }
   }
 
   public Collection<String> getCacheNames() {
@@ -618,10 +809,38 @@ public class Configuration {
     return caches.get(id);
   }
 
+  /**
+   * 所有二级缓存的统计信息快照， key 为缓存的 id， 不保存统计信息的缓存不包括在内
+   */
+  public Map<String, CacheStats> getCacheStats() {
+    Map<String, CacheStats> stats = new TreeMap<>();
+    for (Object value : caches.values()) {
+      // StrictMap 中简称冲突时值为 Ambiguity
+      if (value instanceof Cache) {
+        CacheStats cacheStats = ((Cache) value).getStats();
+        if (cacheStats != null) {
+          stats.put(cacheStats.getId(), cacheStats);
+        }
+      }
+    }
+    return stats;
+  }
+
   public boolean hasCache(String id) {
     return caches.containsKey(id);
   }
 
+  /**
+   * 记录缓存的创建方式， 未记录的缓存（如直接调用 addCache 添加的）不能写入配置快照
+   */
+  public void addCacheDefinition(String id, CacheBuilder definition) {
+    cacheDefinitions.put(id, definition);
+  }
+
+  public CacheBuilder getCacheDefinition(String id) {
+    return cacheDefinitions.get(id);
+  }
+
   public void addResultMap(ResultMap rm) {
     resultMaps.put(rm.getId(), rm);
     checkLocallyForDiscriminatedNestedResultMaps(rm);
@@ -764,6 +983,10 @@ public class Configuration {
     cacheRefMap.put(namespace, referencedNamespace);
   }
 
+  public Map<String, String> getCacheRefs() {
+    return Collections.unmodifiableMap(cacheRefMap);
+  }
+
   /*
    * Parses all the unprocessed statement nodes in the cache. It is recommended
    * to call this method once all the mappers are added as it provides fail-fast
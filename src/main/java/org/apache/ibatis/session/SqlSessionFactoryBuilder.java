@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2016 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.util.Properties;
 
+import org.apache.ibatis.builder.snapshot.ConfigurationSnapshot;
 import org.apache.ibatis.builder.xml.XMLConfigBuilder;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.ErrorContext;
@@ -32,6 +33,17 @@ import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
  */
 public class SqlSessionFactoryBuilder {
 
+  private boolean streamingXmlParsing;
+
+  /**
+   * 使用 {@link org.apache.ibatis.parsing.StaxXPathParser} 流式解析配置文件及映射文件，
+   * 不加载 DTD， 也不做校验， 可以减少启动时间及内存占用
+   */
+  public SqlSessionFactoryBuilder streamingXmlParsing(boolean streamingXmlParsing) {
+    this.streamingXmlParsing = streamingXmlParsing;
+    return this;
+  }
+
   public SqlSessionFactory build(Reader reader) {
     return build(reader, null, null);
   }
@@ -46,7 +58,7 @@ public class SqlSessionFactoryBuilder {
 
   public SqlSessionFactory build(Reader reader, String environment, Properties properties) {
     try {
-      XMLConfigBuilder parser = new XMLConfigBuilder(reader, environment, properties);
+      XMLConfigBuilder parser = new XMLConfigBuilder(reader, environment, properties, streamingXmlParsing);
       return build(parser.parse());
     } catch (Exception e) {
       throw ExceptionFactory.wrapException("Error building SqlSession.", e);
@@ -74,7 +86,7 @@ public class SqlSessionFactoryBuilder {
 
   public SqlSessionFactory build(InputStream inputStream, String environment, Properties properties) {
     try {
-      XMLConfigBuilder parser = new XMLConfigBuilder(inputStream, environment, properties);
+      XMLConfigBuilder parser = new XMLConfigBuilder(inputStream, environment, properties, streamingXmlParsing);
       return build(parser.parse());
     } catch (Exception e) {
       throw ExceptionFactory.wrapException("Error building SqlSession.", e);
@@ -88,7 +100,38 @@ public class SqlSessionFactoryBuilder {
     }
   }
     
+  /**
+   * 使用 {@link ConfigurationSnapshot#create} 生成的配置快照， 配置文件及映射文件与快照一致时直接恢复，
+   * 不再解析映射文件， 否则正常解析
+   */
+  public SqlSessionFactory build(InputStream inputStream, InputStream snapshot) {
+    return build(inputStream, snapshot, null, null);
+  }
+
+  public SqlSessionFactory build(InputStream inputStream, InputStream snapshot, String environment, Properties properties) {
+    try {
+      XMLConfigBuilder parser = new XMLConfigBuilder(inputStream, snapshot, environment, properties, streamingXmlParsing);
+      return build(parser.parse());
+    } catch (Exception e) {
+      throw ExceptionFactory.wrapException("Error building SqlSession.", e);
+    } finally {
+      ErrorContext.instance().reset();
+      try {
+        inputStream.close();
+      } catch (IOException e) {
+        // Intentionally ignore. Prefer previous error.
+      }
+      try {
+        snapshot.close();
+      } catch (IOException e) {
+        // Intentionally ignore. Prefer previous error.
+      }
+    }
+  }
+
   public SqlSessionFactory build(Configuration config) {
+    // 通过 Java 代码配置时在此启动缓存失效事件总线
+    config.startCacheInvalidationBus();
     return new DefaultSqlSessionFactory(config);
   }
 
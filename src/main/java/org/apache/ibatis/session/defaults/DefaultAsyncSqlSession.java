@@ -0,0 +1,383 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.defaults;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.AsyncSqlSession;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * AsyncSqlSession 的默认实现， 将一个同步的 SqlSession 固定在一个串行通道上执行
+ */
+public class DefaultAsyncSqlSession implements AsyncSqlSession {
+
+  private final SqlSession sqlSession;
+  private final SessionLane lane;
+
+  public DefaultAsyncSqlSession(SqlSession sqlSession) {
+    this(sqlSession, sqlSession.getConfiguration().getAsyncExecutor());
+  }
+
+  /**
+   * @param sqlSession 底层的同步会话
+   * @param executor 执行任务的线程池， 为 null 时使用默认线程池
+   */
+  public DefaultAsyncSqlSession(SqlSession sqlSession, Executor executor) {
+    this.sqlSession = sqlSession;
+    this.lane = new SessionLane(executor != null ? executor : DefaultExecutorHolder.EXECUTOR);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> executeAsync(Function<SqlSession, T> action) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    lane.execute(() -> {
+      try {
+        future.complete(action.apply(sqlSession));
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * 同步执行： 在通道内部发起的调用直接执行， 否则排队并等待结果
+   */
+  private <T> T execute(Function<SqlSession, T> action) {
+    if (lane.isOwnedByCurrentThread()) {
+      return action.apply(sqlSession);
+    }
+    try {
+      return executeAsync(action).join();
+    } catch (CompletionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<T> selectOneAsync(String statement) {
+    return executeAsync(session -> session.<T>selectOne(statement));
+  }
+
+  @Override
+  public <T> CompletableFuture<T> selectOneAsync(String statement, Object parameter) {
+    return executeAsync(session -> session.<T>selectOne(statement, parameter));
+  }
+
+  @Override
+  public <E> CompletableFuture<List<E>> selectListAsync(String statement) {
+    return executeAsync(session -> session.<E>selectList(statement));
+  }
+
+  @Override
+  public <E> CompletableFuture<List<E>> selectListAsync(String statement, Object parameter) {
+    return executeAsync(session -> session.<E>selectList(statement, parameter));
+  }
+
+  @Override
+  public <E> CompletableFuture<List<E>> selectListAsync(String statement, Object parameter, RowBounds rowBounds) {
+    return executeAsync(session -> session.<E>selectList(statement, parameter, rowBounds));
+  }
+
+  @Override
+  public <K, V> CompletableFuture<Map<K, V>> selectMapAsync(String statement, Object parameter, String mapKey) {
+    return executeAsync(session -> session.<K, V>selectMap(statement, parameter, mapKey));
+  }
+
+  @Override
+  public CompletableFuture<Integer> insertAsync(String statement) {
+    return executeAsync(session -> session.insert(statement));
+  }
+
+  @Override
+  public CompletableFuture<Integer> insertAsync(String statement, Object parameter) {
+    return executeAsync(session -> session.insert(statement, parameter));
+  }
+
+  @Override
+  public CompletableFuture<Integer> updateAsync(String statement) {
+    return executeAsync(session -> session.update(statement));
+  }
+
+  @Override
+  public CompletableFuture<Integer> updateAsync(String statement, Object parameter) {
+    return executeAsync(session -> session.update(statement, parameter));
+  }
+
+  @Override
+  public CompletableFuture<Integer> deleteAsync(String statement) {
+    return executeAsync(session -> session.delete(statement));
+  }
+
+  @Override
+  public CompletableFuture<Integer> deleteAsync(String statement, Object parameter) {
+    return executeAsync(session -> session.delete(statement, parameter));
+  }
+
+  @Override
+  public CompletableFuture<List<BatchResult>> flushStatementsAsync() {
+    return executeAsync(SqlSession::flushStatements);
+  }
+
+  @Override
+  public CompletableFuture<Void> commitAsync() {
+    return executeAsync(session -> {
+      session.commit();
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> rollbackAsync() {
+    return executeAsync(session -> {
+      session.rollback();
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> closeAsync() {
+    return executeAsync(session -> {
+      session.close();
+      return null;
+    });
+  }
+
+  @Override
+  public <T> T selectOne(String statement) {
+    return execute(session -> session.<T>selectOne(statement));
+  }
+
+  @Override
+  public <T> T selectOne(String statement, Object parameter) {
+    return execute(session -> session.<T>selectOne(statement, parameter));
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement) {
+    return execute(session -> session.<E>selectList(statement));
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement, Object parameter) {
+    return execute(session -> session.<E>selectList(statement, parameter));
+  }
+
+  @Override
+  public <E> List<E> selectList(String statement, Object parameter, RowBounds rowBounds) {
+    return execute(session -> session.<E>selectList(statement, parameter, rowBounds));
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, String mapKey) {
+    return execute(session -> session.<K, V>selectMap(statement, mapKey));
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+    return execute(session -> session.<K, V>selectMap(statement, parameter, mapKey));
+  }
+
+  @Override
+  public <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey, RowBounds rowBounds) {
+    return execute(session -> session.<K, V>selectMap(statement, parameter, mapKey, rowBounds));
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement) {
+    return execute(session -> session.<T>selectCursor(statement));
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter) {
+    return execute(session -> session.<T>selectCursor(statement, parameter));
+  }
+
+  @Override
+  public <T> Cursor<T> selectCursor(String statement, Object parameter, RowBounds rowBounds) {
+    return execute(session -> session.<T>selectCursor(statement, parameter, rowBounds));
+  }
+
+  @Override
+  public void select(String statement, Object parameter, ResultHandler handler) {
+    execute(session -> {
+      session.select(statement, parameter, handler);
+      return null;
+    });
+  }
+
+  @Override
+  public void select(String statement, ResultHandler handler) {
+    execute(session -> {
+      session.select(statement, handler);
+      return null;
+    });
+  }
+
+  @Override
+  public void select(String statement, Object parameter, RowBounds rowBounds, ResultHandler handler) {
+    execute(session -> {
+      session.select(statement, parameter, rowBounds, handler);
+      return null;
+    });
+  }
+
+  @Override
+  public int insert(String statement) {
+    return execute(session -> session.insert(statement));
+  }
+
+  @Override
+  public int insert(String statement, Object parameter) {
+    return execute(session -> session.insert(statement, parameter));
+  }
+
+  @Override
+  public int update(String statement) {
+    return execute(session -> session.update(statement));
+  }
+
+  @Override
+  public int update(String statement, Object parameter) {
+    return execute(session -> session.update(statement, parameter));
+  }
+
+  @Override
+  public int delete(String statement) {
+    return execute(session -> session.delete(statement));
+  }
+
+  @Override
+  public int delete(String statement, Object parameter) {
+    return execute(session -> session.delete(statement, parameter));
+  }
+
+  @Override
+  public void commit() {
+    execute(session -> {
+      session.commit();
+      return null;
+    });
+  }
+
+  @Override
+  public void commit(boolean force) {
+    execute(session -> {
+      session.commit(force);
+      return null;
+    });
+  }
+
+  @Override
+  public void rollback() {
+    execute(session -> {
+      session.rollback();
+      return null;
+    });
+  }
+
+  @Override
+  public void rollback(boolean force) {
+    execute(session -> {
+      session.rollback(force);
+      return null;
+    });
+  }
+
+  @Override
+  public List<BatchResult> flushStatements() {
+    return execute(SqlSession::flushStatements);
+  }
+
+  @Override
+  public void close() {
+    execute(session -> {
+      session.close();
+      return null;
+    });
+  }
+
+  @Override
+  public void clearCache() {
+    execute(session -> {
+      session.clearCache();
+      return null;
+    });
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return sqlSession.getConfiguration();
+  }
+
+  /**
+   * 返回的 Mapper 绑定在当前异步会话上， 返回 CompletableFuture 的方法在通道上异步执行
+   */
+  @Override
+  public <T> T getMapper(Class<T> type) {
+    return getConfiguration().getMapper(type, this);
+  }
+
+  @Override
+  public Connection getConnection() {
+    return execute(SqlSession::getConnection);
+  }
+
+  /**
+   * 默认线程池： 运行环境支持虚拟线程时每个任务一个虚拟线程， 否则使用守护线程的缓存线程池
+   */
+  private static class DefaultExecutorHolder {
+
+    private static final Executor EXECUTOR = createDefaultExecutor();
+
+    private static Executor createDefaultExecutor() {
+      try {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (Executor) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        // JDK 21 之前没有虚拟线程
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+          Thread thread = new Thread(runnable, "mybatis-async-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session.defaults;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 会话的串行执行通道： 任务按提交顺序逐个执行， 同一时刻最多只有一个线程在执行该会话的任务，
+ * 但不会长期占用某个固定的线程
+ */
+final class SessionLane implements Executor {
+
+  private final Executor executor;
+  private final Queue<Runnable> tasks = new ArrayDeque<>();
+  // 是否已经有线程在消费队列， 由 this 保护
+  private boolean running;
+  // 正在消费队列的线程， 用于识别在通道内部发起的重入调用
+  private volatile Thread owner;
+
+  SessionLane(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    synchronized (this) {
+      tasks.add(task);
+      if (running) {
+        return;
+      }
+      running = true;
+    }
+    try {
+      executor.execute(this::drain);
+    } catch (RejectedExecutionException e) {
+      // 线程池拒绝时由调用线程执行， 保证已入队的任务都能完成
+      drain();
+    }
+  }
+
+  /**
+   * 当前线程是否正在执行该通道的任务
+   */
+  boolean isOwnedByCurrentThread() {
+    return owner == Thread.currentThread();
+  }
+
+  private void drain() {
+    owner = Thread.currentThread();
+    for (;;) {
+      final Runnable task;
+      synchronized (this) {
+        task = tasks.poll();
+        if (task == null) {
+          owner = null;
+          running = false;
+          return;
+        }
+      }
+      task.run();
+    }
+  }
+
+}
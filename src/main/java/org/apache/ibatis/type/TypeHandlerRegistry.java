@@ -61,7 +61,7 @@ public final class TypeHandlerRegistry {
   // UNKNOWN_TYPE_HANDLER
   private final TypeHandler<Object> UNKNOWN_TYPE_HANDLER = new UnknownTypeHandler(this);
   // 所有的 TypeHandler 类型及其相应的 TypeHandler 对象
-  private final Map<Class<?>, TypeHandler<?>> ALL_TYPE_HANDLERS_MAP = new HashMap<>();
+  private final Map<Class<?>, TypeHandler<?>> ALL_TYPE_HANDLERS_MAP = new ConcurrentHashMap<>();
 
   // NULL
   private static final Map<JdbcType, TypeHandler<?>> NULL_TYPE_HANDLER_MAP = Collections.emptyMap();
@@ -180,6 +180,11 @@ public final class TypeHandlerRegistry {
     this.defaultEnumTypeHandler = typeHandler;
   }
 
+  @SuppressWarnings("rawtypes")
+  public Class<? extends TypeHandler> getDefaultEnumTypeHandler() {
+    return defaultEnumTypeHandler;
+  }
+
   public boolean hasTypeHandler(Class<?> javaType) {
     return hasTypeHandler(javaType, null);
   }
@@ -200,6 +205,21 @@ public final class TypeHandlerRegistry {
     return ALL_TYPE_HANDLERS_MAP.get(handlerType);
   }
 
+  /**
+   * 按处理器的类型找回 TypeHandler， 用于从配置快照中恢复参数映射及结果映射。
+   * 优先使用 javaType 及 jdbcType 对应的已注册实例， 其次是同类型的已注册实例， 都没有时创建新的实例
+   */
+  public TypeHandler<?> resolveTypeHandler(Class<?> javaType, JdbcType jdbcType, Class<?> handlerType) {
+    if (javaType != null) {
+      TypeHandler<?> handler = getTypeHandler((Type) javaType, jdbcType);
+      if (handler != null && handler.getClass() == handlerType) {
+        return handler;
+      }
+    }
+    TypeHandler<?> handler = ALL_TYPE_HANDLERS_MAP.get(handlerType);
+    return handler != null ? handler : getInstance(javaType, handlerType);
+  }
+
   public <T> TypeHandler<T> getTypeHandler(Class<T> type) {
     return getTypeHandler((Type) type, null);
   }
@@ -258,7 +278,8 @@ public final class TypeHandlerRegistry {
         jdbcHandlerMap = getJdbcHandlerMapForSuperclass(clazz);
       }
     }
-    TYPE_HANDLER_MAP.put(type, jdbcHandlerMap == null ? NULL_TYPE_HANDLER_MAP : jdbcHandlerMap);
+    // 不覆盖其他线程同时注册的处理器
+    TYPE_HANDLER_MAP.putIfAbsent(type, jdbcHandlerMap == null ? NULL_TYPE_HANDLER_MAP : jdbcHandlerMap);
     return jdbcHandlerMap;
   }
 
@@ -378,12 +399,13 @@ public final class TypeHandlerRegistry {
 
   private void register(Type javaType, JdbcType jdbcType, TypeHandler<?> handler) {
     if (javaType != null) {
-      Map<JdbcType, TypeHandler<?>> map = TYPE_HANDLER_MAP.get(javaType);
-      if (map == null || map == NULL_TYPE_HANDLER_MAP) {
-        map = new HashMap<>();
-        TYPE_HANDLER_MAP.put(javaType, map);
+      // 并行解析映射文件时会同时注册枚举的处理器： 复制后整体替换， 读取方不会看到修改到一半的 Map
+      synchronized (TYPE_HANDLER_MAP) {
+        Map<JdbcType, TypeHandler<?>> map = TYPE_HANDLER_MAP.get(javaType);
+        Map<JdbcType, TypeHandler<?>> newMap = map == null || map == NULL_TYPE_HANDLER_MAP ? new HashMap<>() : new HashMap<>(map);
+        newMap.put(jdbcType, handler);
+        TYPE_HANDLER_MAP.put(javaType, newMap);
       }
-      map.put(jdbcType, handler);
     }
     ALL_TYPE_HANDLERS_MAP.put(handler.getClass(), handler);
   }
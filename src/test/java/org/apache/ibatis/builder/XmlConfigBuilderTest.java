@@ -15,9 +15,12 @@
  */
 package org.apache.ibatis.builder;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.CallableStatement;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -26,6 +29,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.ibatis.builder.mapper.CustomMapper;
 import org.apache.ibatis.builder.typehandler.CustomIntegerTypeHandler;
@@ -42,7 +46,9 @@ import org.apache.ibatis.io.JBoss6VFS;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.logging.slf4j.Slf4jImpl;
 import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.scripting.defaults.RawLanguageDriver;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
 import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
@@ -301,4 +307,126 @@ public class XmlConfigBuilderTest {
       .hasMessageContaining("The properties element cannot specify both a URL and a resource based property file reference.  Please specify one or the other.");
   }
 
+  @Test
+  public void shouldParseMappersInParallel() throws Exception {
+    Configuration sequential = parseBlogMappers(false, false);
+    Configuration parallel = parseBlogMappers(true, false);
+
+    assertThat(parallel.isParallelMapperParsing()).isTrue();
+    assertThat(new TreeSet<>(parallel.getMappedStatementNames())).isEqualTo(new TreeSet<>(sequential.getMappedStatementNames()));
+    assertThat(new TreeSet<>(parallel.getResultMapNames())).isEqualTo(new TreeSet<>(sequential.getResultMapNames()));
+    assertThat(new TreeSet<>(parallel.getCacheNames())).isEqualTo(new TreeSet<>(sequential.getCacheNames()));
+    assertThat(parallel.getIncompleteResultMaps()).isEmpty();
+    assertThat(parallel.getIncompleteCacheRefs()).isEmpty();
+    assertThat(parallel.getIncompleteStatements()).isEmpty();
+    assertThat(parallel.getIncompleteMethods()).isEmpty();
+    // getMappedStatements() also contains the ambiguous short names
+    for (Object value : sequential.getMappedStatements()) {
+      if (value instanceof MappedStatement && ((MappedStatement) value).getSqlSource() instanceof RawSqlSource) {
+        MappedStatement statement = (MappedStatement) value;
+        assertThat(parallel.getMappedStatement(statement.getId()).getBoundSql(null).getSql())
+            .isEqualTo(statement.getBoundSql(null).getSql());
+      }
+    }
+  }
+
+  @Test
+  public void shouldParseMappersWithStreamingParser() throws Exception {
+    Configuration dom = parseBlogMappers(false, false);
+    Configuration streaming = parseBlogMappers(false, true);
+
+    assertThat(streaming.isStreamingXmlParsing()).isTrue();
+    assertThat(new TreeSet<>(streaming.getMappedStatementNames())).isEqualTo(new TreeSet<>(dom.getMappedStatementNames()));
+    assertThat(new TreeSet<>(streaming.getResultMapNames())).isEqualTo(new TreeSet<>(dom.getResultMapNames()));
+    assertThat(new TreeSet<>(streaming.getCacheNames())).isEqualTo(new TreeSet<>(dom.getCacheNames()));
+    assertThat(new TreeSet<>(streaming.getSqlFragments().keySet())).isEqualTo(new TreeSet<>(dom.getSqlFragments().keySet()));
+    assertThat(streaming.getIncompleteStatements()).isEmpty();
+    for (Object value : dom.getMappedStatements()) {
+      if (value instanceof MappedStatement && ((MappedStatement) value).getSqlSource() instanceof RawSqlSource) {
+        MappedStatement statement = (MappedStatement) value;
+        assertThat(streaming.getMappedStatement(statement.getId()).getBoundSql(null).getSql())
+            .isEqualTo(statement.getBoundSql(null).getSql());
+      }
+    }
+  }
+
+  @Test
+  public void shouldRegisterEnumTypeHandlersWhileParsingMappersInParallel() throws Exception {
+    String[] enumTypes = {"java.util.concurrent.TimeUnit", "java.lang.Thread$State", "java.time.DayOfWeek",
+        "java.time.format.FormatStyle", "java.math.RoundingMode", "java.lang.annotation.ElementType",
+        "java.lang.annotation.RetentionPolicy", "java.nio.file.AccessMode", "java.nio.file.LinkOption",
+        "java.nio.file.StandardOpenOption", "java.time.format.TextStyle", "java.time.temporal.ChronoUnit",
+        "java.time.temporal.ChronoField", "java.sql.JDBCType", "java.sql.ClientInfoStatus", "java.sql.RowIdLifetime",
+        "java.time.format.ResolverStyle", "java.time.format.SignStyle", "java.net.Proxy$Type",
+        "java.text.Normalizer$Form", "java.util.Locale$Category", "java.security.CryptoPrimitive"};
+    int fileCount = 8;
+    File dir = Files.createTempDirectory("mybatis-parallel").toFile();
+    dir.deleteOnExit();
+    StringBuilder mappers = new StringBuilder();
+    for (int file = 0; file < fileCount; file++) {
+      StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+          + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n"
+          + "<mapper namespace=\"parallel.EnumMapper" + file + "\">\n");
+      for (int i = 0; i < enumTypes.length; i++) {
+        // every file uses every enum, each file in a different order
+        String enumType = enumTypes[(i + file * 3) % enumTypes.length];
+        xml.append("  <select id=\"select").append(i).append("\" resultType=\"int\">")
+            .append("select 1 from dual where value = #{value,javaType=").append(enumType).append("}</select>\n");
+      }
+      xml.append("</mapper>\n");
+      File mapper = new File(dir, "EnumMapper" + file + ".xml");
+      mapper.deleteOnExit();
+      Files.write(mapper.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+      mappers.append("    <mapper url=\"").append(mapper.toURI()).append("\"/>\n");
+    }
+    final String MAPPER_CONFIG = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+        + "<configuration>\n"
+        + "  <settings>\n"
+        + "    <setting name=\"parallelMapperParsing\" value=\"true\"/>\n"
+        + "  </settings>\n"
+        + "  <mappers>\n"
+        + mappers
+        + "  </mappers>\n"
+        + "</configuration>\n";
+
+    // enum handlers are registered on first use, by whichever thread parses such a parameter first
+    for (int round = 0; round < 20; round++) {
+      Configuration configuration = new XMLConfigBuilder(new StringReader(MAPPER_CONFIG)).parse();
+      TypeHandlerRegistry registry = configuration.getTypeHandlerRegistry();
+      for (String enumType : enumTypes) {
+        assertThat(registry.getTypeHandler(Resources.classForName(enumType))).isInstanceOf(EnumTypeHandler.class);
+      }
+      for (int file = 0; file < fileCount; file++) {
+        for (int i = 0; i < enumTypes.length; i++) {
+          MappedStatement statement = configuration.getMappedStatement("parallel.EnumMapper" + file + ".select" + i);
+          assertThat(statement.getBoundSql(null).getParameterMappings().get(0).getTypeHandler())
+              .isInstanceOf(EnumTypeHandler.class);
+        }
+      }
+    }
+  }
+
+  private Configuration parseBlogMappers(boolean parallel, boolean streaming) {
+    final String MAPPER_CONFIG = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+            + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+            + "<configuration>\n"
+            + "  <settings>\n"
+            + "    <setting name=\"parallelMapperParsing\" value=\"" + parallel + "\"/>\n"
+            + "  </settings>\n"
+            + "  <typeAliases>\n"
+            + "    <package name=\"org.apache.ibatis.domain.blog\"/>\n"
+            + "  </typeAliases>\n"
+            + "  <mappers>\n"
+            + "    <mapper resource=\"org/apache/ibatis/builder/AuthorMapper.xml\"/>\n"
+            + "    <mapper resource=\"org/apache/ibatis/builder/BlogMapper.xml\"/>\n"
+            + "    <mapper resource=\"org/apache/ibatis/builder/CachedAuthorMapper.xml\"/>\n"
+            + "    <mapper resource=\"org/apache/ibatis/builder/PostMapper.xml\"/>\n"
+            + "    <mapper resource=\"org/apache/ibatis/builder/NestedBlogMapper.xml\"/>\n"
+            + "  </mappers>\n"
+            + "</configuration>\n";
+
+    return new XMLConfigBuilder(new StringReader(MAPPER_CONFIG), null, null, streaming).parse();
+  }
+
 }
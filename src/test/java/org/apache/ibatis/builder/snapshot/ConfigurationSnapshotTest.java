@@ -0,0 +1,315 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.apache.ibatis.binding.BoundBlogMapper;
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigurationSnapshotTest {
+
+  private static final String SCANNED_PACKAGE = "org.apache.ibatis.builder.snapshot.scanned";
+
+  private File mapperFile;
+
+  @Before
+  public void setUp() throws IOException {
+    mapperFile = File.createTempFile("SnapshotMapper", ".xml");
+  }
+
+  @After
+  public void tearDown() {
+    mapperFile.delete();
+  }
+
+  @Test
+  public void shouldRestoreMappersFromSnapshot() throws Exception {
+    byte[] config = config("<package name=\"org.apache.ibatis.domain.blog\"/>",
+        "<mapper resource=\"org/apache/ibatis/builder/AuthorMapper.xml\"/>"
+        + "<mapper resource=\"org/apache/ibatis/builder/BlogMapper.xml\"/>"
+        + "<mapper resource=\"org/apache/ibatis/builder/CachedAuthorMapper.xml\"/>"
+        + "<mapper resource=\"org/apache/ibatis/builder/PostMapper.xml\"/>"
+        + "<mapper resource=\"org/apache/ibatis/builder/NestedBlogMapper.xml\"/>"
+        + "<mapper class=\"org.apache.ibatis.binding.BoundBlogMapper\"/>"
+        + "<mapper class=\"org.apache.ibatis.binding.BoundAuthorMapper\"/>");
+    byte[] snapshot = createSnapshot(config, null);
+
+    Configuration parsed = new XMLConfigBuilder(new ByteArrayInputStream(config)).parse();
+    Configuration restored = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, null).parse();
+
+    // sql fragments are not stored, so none means the mappers were not parsed
+    assertFalse(parsed.getSqlFragments().isEmpty());
+    assertTrue(restored.getSqlFragments().isEmpty());
+    assertEquals(new TreeSet<>(parsed.getMappedStatementNames()), new TreeSet<>(restored.getMappedStatementNames()));
+    assertEquals(new TreeSet<>(parsed.getResultMapNames()), new TreeSet<>(restored.getResultMapNames()));
+    assertEquals(new TreeSet<>(parsed.getCacheNames()), new TreeSet<>(restored.getCacheNames()));
+    assertEquals(new TreeSet<>(parsed.getKeyGeneratorNames()), new TreeSet<>(restored.getKeyGeneratorNames()));
+    assertTrue(restored.hasMapper(BoundBlogMapper.class));
+    // getMappedStatements() also contains the ambiguous short names
+    for (Object value : parsed.getMappedStatements()) {
+      if (value instanceof MappedStatement && ((MappedStatement) value).getSqlSource() instanceof RawSqlSource) {
+        MappedStatement statement = (MappedStatement) value;
+        MappedStatement restoredStatement = restored.getMappedStatement(statement.getId());
+        assertSame(restored, restoredStatement.getConfiguration());
+        assertEquals(statement.getBoundSql(null).getSql(), restoredStatement.getBoundSql(null).getSql());
+      }
+    }
+
+    MappedStatement cachedStatement = restored.getMappedStatement("org.apache.ibatis.builder.CachedAuthorMapper.selectAllAuthors");
+    assertSame(restored.getCache("org.apache.ibatis.builder.CachedAuthorMapper"), cachedStatement.getCache());
+    MappedStatement insertStatement = restored.getMappedStatement("org.apache.ibatis.binding.BoundAuthorMapper.insertAuthor");
+    assertSame(restored.getKeyGenerator("org.apache.ibatis.binding.BoundAuthorMapper.insertAuthor!selectKey"), insertStatement.getKeyGenerator());
+    assertTrue(insertStatement.getKeyGenerator() instanceof SelectKeyGenerator);
+    MappedStatement providerStatement = restored.getMappedStatement("org.apache.ibatis.binding.BoundBlogMapper.selectBlogsUsingProvider");
+    assertEquals(parsed.getMappedStatement(providerStatement.getId()).getBoundSql(null).getSql(), providerStatement.getBoundSql(null).getSql());
+  }
+
+  @Test
+  public void shouldIgnoreSnapshotOfAnotherConfiguration() throws Exception {
+    byte[] config = config("", "<mapper resource=\"org/apache/ibatis/builder/AuthorMapper.xml\"/>");
+    byte[] snapshot = createSnapshot(config, null);
+    byte[] changed = config("", "<mapper resource=\"org/apache/ibatis/builder/BlogMapper.xml\"/>");
+
+    assertNull(ConfigurationSnapshot.read(new ByteArrayInputStream(snapshot), changed));
+  }
+
+  @Test
+  public void shouldParseMapperThatChangedAfterSnapshot() throws Exception {
+    writeMapper("<select id=\"selectAll\" resultType=\"map\">select * from blog</select>");
+    byte[] config = config("", "<mapper url=\"" + mapperFile.toURI() + "\"/>");
+    byte[] snapshot = createSnapshot(config, null);
+    writeMapper("<select id=\"selectAll\" resultType=\"map\">select * from blog</select>"
+        + "<select id=\"selectOne\" resultType=\"map\">select * from blog where id = #{id}</select>");
+
+    Configuration configuration = new SqlSessionFactoryBuilder()
+        .build(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot)).getConfiguration();
+
+    assertTrue(configuration.hasStatement("snapshot.SnapshotMapper.selectOne"));
+  }
+
+  @Test
+  public void shouldParseMapperWhenReferencedVariableChanged() throws Exception {
+    writeMapper("<select id=\"selectAll\" resultType=\"map\">select * from ${table}</select>");
+    byte[] config = config("", "<mapper url=\"" + mapperFile.toURI() + "\"/>");
+    Properties blog = new Properties();
+    blog.setProperty("table", "blog");
+    byte[] snapshot = createSnapshot(config, blog);
+    Properties author = new Properties();
+    author.setProperty("table", "author");
+
+    Configuration sameVariables = new SqlSessionFactoryBuilder()
+        .build(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, blog).getConfiguration();
+    Configuration changedVariables = new SqlSessionFactoryBuilder()
+        .build(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, author).getConfiguration();
+
+    assertEquals("select * from blog", sameVariables.getMappedStatement("snapshot.SnapshotMapper.selectAll").getBoundSql(null).getSql());
+    assertEquals("select * from author", changedVariables.getMappedStatement("snapshot.SnapshotMapper.selectAll").getBoundSql(null).getSql());
+  }
+
+  @Test
+  public void shouldParseMappersWhenSettingUsedByParserChanged() throws Exception {
+    writeMapper("<resultMap id=\"blogMap\" type=\"map\">"
+        + "<association property=\"author\" column=\"author_id\" javaType=\"map\" select=\"selectAuthor\"/></resultMap>"
+        + "<select id=\"selectBlog\" resultMap=\"blogMap\">select * from blog</select>"
+        + "<select id=\"selectAuthor\" resultType=\"map\">select * from author where id = #{id}</select>");
+    byte[] config = config("<setting name=\"lazyLoadingEnabled\" value=\"${lazy}\"/>", "", "<mapper url=\"" + mapperFile.toURI() + "\"/>");
+    Properties eager = new Properties();
+    eager.setProperty("lazy", "false");
+    byte[] snapshot = createSnapshot(config, eager);
+    Properties lazy = new Properties();
+    lazy.setProperty("lazy", "true");
+
+    Configuration sameSettings = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, eager).parse();
+    Configuration changedSettings = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, lazy).parse();
+
+    assertFalse(sameSettings.getResultMap("snapshot.SnapshotMapper.blogMap").getPropertyResultMappings().get(0).isLazy());
+    assertTrue(changedSettings.getResultMap("snapshot.SnapshotMapper.blogMap").getPropertyResultMappings().get(0).isLazy());
+  }
+
+  @Test
+  public void shouldNotResolveClassesTheSnapshotDidNotRecord() throws Exception {
+    writeMapper("<sql id=\"columns\">*</sql>"
+        + "<select id=\"selectDates\" resultType=\"java.util.Date\">select <include refid=\"columns\"/> from dates</select>");
+    byte[] config = config("", "<mapper url=\"" + mapperFile.toURI() + "\"/>");
+    byte[] snapshot = createSnapshot(config, null);
+
+    Configuration restored = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, null).parse();
+    assertTrue(restored.getSqlFragments().isEmpty());
+
+    // the header lists the classes the snapshot refers to, ahead of the payload
+    String content = new String(snapshot, StandardCharsets.ISO_8859_1);
+    int index = content.indexOf("java.util.Date");
+    assertTrue(index > 0);
+    byte[] tampered = snapshot.clone();
+    tampered[index + "java.util.Dat".length()] = 'a';
+    Configuration parsed = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(tampered), null, null).parse();
+    assertFalse(parsed.getSqlFragments().isEmpty());
+    assertEquals(java.util.Date.class, parsed.getMappedStatement("snapshot.SnapshotMapper.selectDates").getResultMaps().get(0).getType());
+  }
+
+  @Test
+  public void shouldParseMappersWhenScannedPackageChanged() throws Exception {
+    File classes = Files.createTempDirectory("snapshot").toFile();
+    ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {classes.toURI().toURL()}, contextClassLoader)) {
+      Thread.currentThread().setContextClassLoader(classLoader);
+      writeInterface(classes, SCANNED_PACKAGE + ".FirstMapper");
+      writeMapper("<sql id=\"columns\">*</sql>");
+      byte[] config = config("", "<mapper url=\"" + mapperFile.toURI() + "\"/><package name=\"" + SCANNED_PACKAGE + "\"/>");
+      byte[] snapshot = createSnapshot(config, null);
+
+      Configuration restored = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, null).parse();
+      assertTrue(restored.getSqlFragments().isEmpty());
+      assertTrue(restored.hasMapper(classLoader.loadClass(SCANNED_PACKAGE + ".FirstMapper")));
+
+      // a mapper interface added to the package after the snapshot was created
+      writeInterface(classes, SCANNED_PACKAGE + ".SecondMapper");
+      Configuration parsed = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, null).parse();
+      assertFalse(parsed.getSqlFragments().isEmpty());
+      assertTrue(parsed.hasMapper(classLoader.loadClass(SCANNED_PACKAGE + ".FirstMapper")));
+      assertTrue(parsed.hasMapper(classLoader.loadClass(SCANNED_PACKAGE + ".SecondMapper")));
+    } finally {
+      Thread.currentThread().setContextClassLoader(contextClassLoader);
+      delete(classes);
+    }
+  }
+
+  @Test
+  public void shouldParseMapperXmlAddedNextToMapperInterface() throws Exception {
+    File classes = Files.createTempDirectory("snapshot").toFile();
+    ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {classes.toURI().toURL()}, contextClassLoader)) {
+      Thread.currentThread().setContextClassLoader(classLoader);
+      writeInterface(classes, SCANNED_PACKAGE + ".FirstMapper");
+      writeMapper("<sql id=\"columns\">*</sql>");
+      byte[] config = config("", "<mapper url=\"" + mapperFile.toURI() + "\"/><mapper class=\"" + SCANNED_PACKAGE + ".FirstMapper\"/>");
+      byte[] snapshot = createSnapshot(config, null);
+      Configuration restored = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, null).parse();
+      assertTrue(restored.getSqlFragments().isEmpty());
+      assertTrue(restored.hasMapper(classLoader.loadClass(SCANNED_PACKAGE + ".FirstMapper")));
+
+      File xml = new File(classes, SCANNED_PACKAGE.replace('.', '/') + "/FirstMapper.xml");
+      String mapper = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+          + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n"
+          + "<mapper namespace=\"" + SCANNED_PACKAGE + ".FirstMapper\"><sql id=\"columns\">*</sql></mapper>";
+      Files.write(xml.toPath(), mapper.getBytes(StandardCharsets.UTF_8));
+      Configuration parsed = new XMLConfigBuilder(new ByteArrayInputStream(config), new ByteArrayInputStream(snapshot), null, null).parse();
+      assertTrue(parsed.getSqlFragments().containsKey(SCANNED_PACKAGE + ".FirstMapper.columns"));
+    } finally {
+      Thread.currentThread().setContextClassLoader(contextClassLoader);
+      delete(classes);
+    }
+  }
+
+  private byte[] createSnapshot(byte[] config, Properties properties) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ConfigurationSnapshot.create(new ByteArrayInputStream(config), null, properties, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes the class file of an empty public interface.
+   */
+  private static void writeInterface(File classes, String name) throws IOException {
+    File classFile = new File(classes, name.replace('.', '/') + ".class");
+    classFile.getParentFile().mkdirs();
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(classFile))) {
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);
+      out.writeShort(52);
+      // constant pool: #1 this class name, #2 this class, #3 super class name, #4 super class
+      out.writeShort(5);
+      out.writeByte(1);
+      out.writeUTF(name.replace('.', '/'));
+      out.writeByte(7);
+      out.writeShort(1);
+      out.writeByte(1);
+      out.writeUTF("java/lang/Object");
+      out.writeByte(7);
+      out.writeShort(3);
+      // public abstract interface, no interfaces, fields, methods or attributes
+      out.writeShort(0x0601);
+      out.writeShort(2);
+      out.writeShort(4);
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(0);
+      out.writeShort(0);
+    }
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private void writeMapper(String statements) throws IOException {
+    String mapper = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n"
+        + "<mapper namespace=\"snapshot.SnapshotMapper\">" + statements + "</mapper>";
+    try (OutputStream out = new FileOutputStream(mapperFile)) {
+      out.write(mapper.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static byte[] config(String typeAliases, String mappers) {
+    return config("", typeAliases, mappers);
+  }
+
+  private static byte[] config(String settings, String typeAliases, String mappers) {
+    String config = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+        + "<configuration>\n"
+        + (settings.isEmpty() ? "" : "  <settings>" + settings + "</settings>\n")
+        + "  <typeAliases>" + typeAliases + "</typeAliases>\n"
+        + "  <mappers>" + mappers + "</mappers>\n"
+        + "</configuration>\n";
+    return config.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
@@ -16,6 +16,8 @@
 package org.apache.ibatis.builder.xml.dynamic;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -25,6 +27,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ibatis.BaseDataTest;
 import org.apache.ibatis.io.Resources;
@@ -364,6 +367,88 @@ public class DynamicSqlSourceTest extends BaseDataTest {
     assertEquals("__frch_u_0", boundSql.getParameterMappings().get(3).getProperty());
   }
 
+  @Test
+  public void shouldReuseParsedSqlForSameShape() throws Exception {
+    DynamicSqlSource source = createShapeCachedDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG"),
+        new WhereSqlNode(new Configuration(), mixedContents(
+            new IfSqlNode(mixedContents(new TextSqlNode("AND ID = #{id} ")), "id != null"),
+            new IfSqlNode(mixedContents(new TextSqlNode("AND NAME = #{name}")), "name != null"))));
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("id", 1);
+    parameterObject.put("name", null);
+    BoundSql first = source.getBoundSql(parameterObject);
+    parameterObject.put("id", 2);
+    BoundSql second = source.getBoundSql(parameterObject);
+    assertEquals("SELECT * FROM BLOG WHERE  ID = ?", first.getSql());
+    assertSame(first.getSql(), second.getSql());
+    assertSame(first.getParameterMappings(), second.getParameterMappings());
+    parameterObject.put("name", "Jim");
+    BoundSql third = source.getBoundSql(parameterObject);
+    assertEquals("SELECT * FROM BLOG WHERE  ID = ? AND NAME = ?", third.getSql());
+    assertEquals(2, third.getParameterMappings().size());
+  }
+
+  @Test
+  public void shouldDistinguishForEachSizesAndTextValuesInShape() throws Exception {
+    DynamicSqlSource source = createShapeCachedDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM ${table} WHERE ID in"),
+        new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "list", null, "item", "(", ")", ","));
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("table", "BLOG");
+    parameterObject.put("list", Arrays.asList(1, 2));
+    assertEquals("SELECT * FROM BLOG WHERE ID in (  ? , ? )", source.getBoundSql(parameterObject).getSql());
+    parameterObject.put("list", Arrays.asList(1, 2, 3));
+    BoundSql boundSql = source.getBoundSql(parameterObject);
+    assertEquals("SELECT * FROM BLOG WHERE ID in (  ? , ? , ? )", boundSql.getSql());
+    assertEquals(3, boundSql.getAdditionalParameter("__frch_item_2"));
+    parameterObject.put("table", "AUTHOR");
+    assertEquals("SELECT * FROM AUTHOR WHERE ID in (  ? , ? , ? )", source.getBoundSql(parameterObject).getSql());
+  }
+
+  @Test
+  public void shouldNotReuseParameterMappingsWhenBoundValueTypesDiffer() throws Exception {
+    DynamicSqlSource source = createShapeCachedDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG WHERE ID in"),
+        new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "list", null, "item", "(", ")", ","));
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("list", Arrays.asList(1));
+    BoundSql integers = source.getBoundSql(parameterObject);
+    parameterObject.put("list", Arrays.asList("1"));
+    BoundSql strings = source.getBoundSql(parameterObject);
+    assertEquals(integers.getSql(), strings.getSql());
+    assertNotSame(integers.getParameterMappings(), strings.getParameterMappings());
+    assertEquals(Integer.class, integers.getParameterMappings().get(0).getJavaType());
+    assertEquals(String.class, strings.getParameterMappings().get(0).getJavaType());
+  }
+
+  @Test
+  public void shouldApplySqlNodesOnceWhenShapeCacheIsFull() throws Exception {
+    AtomicInteger applied = new AtomicInteger();
+    DynamicSqlSource source = createShapeCachedDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG ORDER BY ${column}"),
+        context -> {
+          applied.incrementAndGet();
+          return true;
+        });
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("column", "C0");
+    BoundSql cached = source.getBoundSql(parameterObject);
+    for (int i = 1; i < 256; i++) {
+      parameterObject.put("column", "C" + i);
+      source.getBoundSql(parameterObject);
+    }
+
+    applied.set(0);
+    parameterObject.put("column", "NAME");
+    assertEquals("SELECT * FROM BLOG ORDER BY NAME", source.getBoundSql(parameterObject).getSql());
+    assertEquals(1, applied.get());
+
+    // shapes cached before the cache was full are still reused
+    parameterObject.put("column", "C0");
+    assertSame(cached.getSql(), source.getBoundSql(parameterObject).getSql());
+  }
+
   private DynamicSqlSource createDynamicSqlSource(SqlNode... contents) throws IOException, SQLException {
     createBlogDataSource();
     final String resource = "org/apache/ibatis/builder/MapperConfig.xml";
@@ -374,6 +459,16 @@ public class DynamicSqlSourceTest extends BaseDataTest {
     return new DynamicSqlSource(configuration, sqlNode);
   }
 
+  private DynamicSqlSource createShapeCachedDynamicSqlSource(SqlNode... contents) throws IOException, SQLException {
+    createBlogDataSource();
+    final String resource = "org/apache/ibatis/builder/MapperConfig.xml";
+    final Reader reader = Resources.getResourceAsReader(resource);
+    SqlSessionFactory sqlMapper = new SqlSessionFactoryBuilder().build(reader);
+    Configuration configuration = sqlMapper.getConfiguration();
+    configuration.setDynamicSqlShapeCacheEnabled(true);
+    return new DynamicSqlSource(configuration, mixedContents(contents));
+  }
+
   private MixedSqlNode mixedContents(SqlNode... contents) {
     return new MixedSqlNode(Arrays.asList(contents));
   }
@@ -90,6 +90,72 @@ public class CacheKeyTest {
     assertTrue(key1.equals(key2));
   }
 
+  @Test
+  public void shouldTestCacheKeysWithPrimitives() {
+    CacheKey key1 = new CacheKey(2);
+    key1.update("statement");
+    key1.update(0);
+    key1.update(Long.MAX_VALUE);
+    CacheKey key2 = new CacheKey(2);
+    key2.update("statement");
+    key2.update(Integer.valueOf(0));
+    key2.update(Long.valueOf(Long.MAX_VALUE));
+    assertEquals(key1, key2);
+    assertEquals(key1.hashCode(), key2.hashCode());
+    assertEquals(key1.toString(), key2.toString());
+    assertEquals(3, key1.getUpdateCount());
+  }
+
+  @Test
+  public void shouldTreatBoxedAndPrimitiveComponentsAsEqual() {
+    CacheKey key1 = new CacheKey();
+    key1.update(1);
+    CacheKey key2 = new CacheKey();
+    key2.update(Integer.valueOf(1));
+    assertEquals(key1, key2);
+    assertEquals(key2, key1);
+    assertEquals(key1.hashCode(), key2.hashCode());
+  }
+
+  @Test
+  public void shouldNotTreatIntAndLongComponentsAsEqual() {
+    CacheKey key1 = new CacheKey();
+    key1.update(1);
+    CacheKey key2 = new CacheKey();
+    key2.update(1L);
+    assertFalse(key1.equals(key2));
+    assertFalse(key2.equals(key1));
+  }
+
+  @Test
+  public void shouldGrowBeyondExpectedUpdateCount() {
+    CacheKey key1 = new CacheKey(1);
+    CacheKey key2 = new CacheKey(100);
+    for (int i = 0; i < 50; i++) {
+      key1.update("value" + i);
+      key1.update(i);
+      key2.update("value" + i);
+      key2.update(i);
+    }
+    assertEquals(key1, key2);
+    key2.update(50);
+    assertFalse(key1.equals(key2));
+  }
+
+  @Test
+  public void shouldNotShareComponentsWithClone() throws Exception {
+    CacheKey key = new CacheKey();
+    key.update("hello");
+    key.update(1);
+    CacheKey cloned = key.clone();
+    assertEquals(key, cloned);
+    cloned.update(2);
+    cloned.update("world");
+    assertFalse(key.equals(cloned));
+    assertEquals(2, key.getUpdateCount());
+    assertEquals(4, cloned.getUpdateCount());
+  }
+
   @Test (expected = NotSerializableException.class)
   public void serializationExceptionTest() throws Exception {
     CacheKey cacheKey = new CacheKey();
@@ -101,6 +167,7 @@ public class CacheKeyTest {
   public void serializationTest() throws Exception {
     CacheKey cacheKey = new CacheKey();
     cacheKey.update("serializable");
+    cacheKey.update(100);
     Assert.assertEquals(cacheKey, serialize(cacheKey));
   }
 
@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.jmx.JmxCacheStats;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class CacheStatsTest {
+
+  @Test
+  public void shouldCountHitsMissesAndUpdates() {
+    Cache cache = new LoggingCache(new PerpetualCache("default"));
+    cache.putObject(1, "one");
+    cache.getObject(1);
+    cache.getObject(1);
+    cache.getObject(2);
+    cache.removeObject(1);
+    cache.clear();
+
+    CacheStats stats = cache.getStats();
+    assertEquals("default", stats.getId());
+    assertEquals(3, stats.getRequestCount());
+    assertEquals(2, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+    assertEquals(2.0 / 3, stats.getHitRatio(), 0.0001);
+    assertEquals(1, stats.getPutCount());
+    assertEquals(1, stats.getRemoveCount());
+    assertEquals(1, stats.getClearCount());
+    assertEquals(0, stats.getSize());
+    assertTrue(stats.getTotalGetTime() >= 0);
+  }
+
+  @Test
+  public void shouldNotKeepStatsWithoutLoggingCache() {
+    assertNull(new PerpetualCache("default").getStats());
+  }
+
+  @Test
+  public void shouldCountEvictionsThroughOuterDecorators() {
+    Cache cache = new CacheBuilder("default").addDecorator(LruCache.class).size(2).blocking(true).build();
+    for (int i = 0; i < 5; i++) {
+      cache.getObject(i);
+      cache.putObject(i, i);
+    }
+    CacheStats stats = cache.getStats();
+    assertNotNull(stats);
+    assertEquals(3, stats.getEvictionCount());
+    assertEquals(5, stats.getMissCount());
+    assertEquals(2, stats.getSize());
+  }
+
+  @Test
+  public void shouldRecordLoads() {
+    Cache cache = new LoggingCache(new PerpetualCache("default"));
+    cache.getStatsCounter().recordLoad(100);
+    cache.getStatsCounter().recordLoad(300);
+    CacheStats stats = cache.getStats();
+    assertEquals(2, stats.getLoadCount());
+    assertEquals(400, stats.getTotalLoadTime());
+    assertEquals(200.0, stats.getAverageLoadTime(), 0.0001);
+  }
+
+  @Test
+  public void shouldRegisterStatsAsMBean() throws Exception {
+    Cache cache = new LoggingCache(new PerpetualCache("org.apache.ibatis.cache.CacheStatsTest"));
+    cache.putObject(1, "one");
+    cache.getObject(1);
+    ObjectName name = JmxCacheStats.register("test", cache);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertEquals(1L, server.getAttribute(name, "HitCount"));
+      assertEquals(1, server.getAttribute(name, "Size"));
+      server.invoke(name, "clear", null, null);
+      assertEquals(0, cache.getSize());
+    } finally {
+      JmxCacheStats.unregister("test", cache.getId());
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+}
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -57,4 +57,36 @@ public class FifoCacheTest {
     assertNull(cache.getObject(4));
   }
 
+  @Test
+  public void shouldRemoveFirstItemsBeyondMaxWeight() {
+    FifoCache cache = new FifoCache(new PerpetualCache("default"));
+    cache.setWeigher((key, value) -> ((Integer) value).longValue());
+    cache.setMaxWeight(30);
+    for (int i = 0; i < 3; i++) {
+      cache.putObject(i, 10);
+    }
+    assertEquals(30, cache.getTotalWeight());
+    cache.putObject(3, 10);
+    assertNull(cache.getObject(0));
+    assertEquals(3, cache.getSize());
+    assertEquals(30, cache.getTotalWeight());
+    cache.putObject(4, 25);
+    assertEquals(1, cache.getSize());
+    assertEquals(25, cache.getTotalWeight());
+  }
+
+  @Test
+  public void shouldReleaseWeightOnRemoveAndClear() {
+    FifoCache cache = new FifoCache(new PerpetualCache("default"));
+    cache.setMaxWeight(1024 * 1024);
+    cache.putObject(0, "value");
+    cache.putObject(1, "another value");
+    long weight = cache.getTotalWeight();
+    assertTrue(weight > 0);
+    cache.removeObject(0);
+    assertTrue(cache.getTotalWeight() < weight);
+    cache.clear();
+    assertEquals(0, cache.getTotalWeight());
+  }
+
 }
@@ -0,0 +1,165 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.cache.serializer.CompactCacheSerializer;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class OffHeapCacheTest {
+
+  @Test
+  public void shouldReturnCopiesOfStoredObjects() {
+    OffHeapCache cache = new OffHeapCache("default");
+    List<Integer> value = newList(1000);
+    cache.putObject("list", value);
+    Object first = cache.getObject("list");
+    assertEquals(value, first);
+    assertNotSame(first, cache.getObject("list"));
+    assertTrue(cache.getUsedBytes() > 4000);
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedObjectsWhenFull() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setMaxBytes(16 * 1024);
+    cache.setBlockSize(128);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, newList(10));
+      cache.getObject(0);
+    }
+    assertTrue(cache.getSize() < 1000);
+    assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+    assertNotNull(cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertNotNull(cache.getObject(999));
+  }
+
+  @Test
+  public void shouldEvictInInsertionOrderWithFifo() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setMaxBytes(16 * 1024);
+    cache.setBlockSize(128);
+    cache.setEviction("FIFO");
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, newList(10));
+      cache.getObject(0);
+    }
+    assertNull(cache.getObject(0));
+    assertNotNull(cache.getObject(999));
+  }
+
+  @Test
+  public void shouldNotCacheObjectsLargerThanStorage() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setMaxBytes(1024);
+    cache.putObject("large", newList(1000));
+    assertNull(cache.getObject("large"));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldRemoveAndClearObjects() {
+    OffHeapCache cache = new OffHeapCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, newList(i));
+    }
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+    assertEquals(4, cache.getSize());
+    cache.clear();
+    assertNull(cache.getObject(4));
+    assertEquals(0, cache.getSize());
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  @Test
+  public void shouldStoreObjectsInMemoryMappedFile() throws Exception {
+    File file = File.createTempFile("mybatis-offheap", ".cache");
+    file.deleteOnExit();
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setFile(file.getAbsolutePath());
+    cache.setMaxBytes(1024 * 1024);
+    cache.setSerializer(CompactCacheSerializer.class);
+    cache.putObject("list", newList(1000));
+    assertEquals(newList(1000), cache.getObject("list"));
+    assertEquals(1024 * 1024, file.length());
+  }
+
+  @Test
+  public void shouldBeConfiguredThroughCacheBuilder() {
+    Properties props = new Properties();
+    props.setProperty("maxBytes", "65536");
+    props.setProperty("blockSize", "512");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).properties(props).build();
+    cache.putObject("list", newList(10));
+    assertEquals(newList(10), cache.getObject("list"));
+  }
+
+  @Test
+  public void shouldResolveSerializerPropertyThroughTypeAliases() {
+    Configuration configuration = new Configuration();
+    configuration.getTypeAliasRegistry().registerAlias("CUSTOM_SERIALIZER", CountingSerializer.class);
+    Properties props = new Properties();
+    props.setProperty("serializer", "CUSTOM_SERIALIZER");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class)
+        .typeAliasRegistry(configuration.getTypeAliasRegistry()).properties(props).build();
+    cache.putObject("list", newList(10));
+    assertEquals(newList(10), cache.getObject("list"));
+    assertTrue(CountingSerializer.serialized.get() > 0);
+
+    props.setProperty("serializer", "COMPACT");
+    cache = new CacheBuilder("default").implementation(OffHeapCache.class)
+        .typeAliasRegistry(configuration.getTypeAliasRegistry()).properties(props).build();
+    cache.putObject("list", newList(10));
+    assertEquals(newList(10), cache.getObject("list"));
+  }
+
+  public static class CountingSerializer extends JdkCacheSerializer {
+    static final AtomicInteger serialized = new AtomicInteger();
+
+    @Override
+    public ByteBuffer serialize(Object value) {
+      serialized.incrementAndGet();
+      return super.serialize(value);
+    }
+  }
+
+  private static List<Integer> newList(int size) {
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+
+}
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2009-2015 the original author or authors.
+ *    Copyright 2009-2018 the original author or authors.
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.cache;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
@@ -65,4 +68,89 @@ public class ScheduledCacheTest {
     assertNull(cache.getObject(4));
   }
 
+  @Test
+  public void shouldClearOnceWhenThreadsFindItStaleTogether() throws Exception {
+    AtomicInteger clears = new AtomicInteger();
+    ScheduledCache cache = new ScheduledCache(new PerpetualCache("DefaultCache") {
+      @Override
+      public void clear() {
+        clears.incrementAndGet();
+        super.clear();
+      }
+    });
+    cache.setClearInterval(50);
+    cache.putObject(0, 0);
+    Thread.sleep(100);
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+          cache.getObject(0);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, clears.get());
+  }
+
+  @Test
+  public void shouldExpireEachObjectAfterItsTimeToLive() throws Exception {
+    ScheduledCache cache = new ScheduledCache(new PerpetualCache("DefaultCache"));
+    cache.setClearInterval(0);
+    cache.setTimeToLive(1000);
+    cache.putObject(0, 0);
+    Thread.sleep(600);
+    cache.putObject(1, 1);
+    Thread.sleep(600);
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getObject(1));
+    Thread.sleep(600);
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void shouldMissOnlyOnceWithinRefreshAheadPeriod() throws Exception {
+    ScheduledCache cache = new ScheduledCache(new PerpetualCache("DefaultCache"));
+    cache.setClearInterval(0);
+    cache.setTimeToLive(1000);
+    cache.setRefreshAhead(600);
+    cache.putObject(0, 0);
+    assertEquals(0, cache.getObject(0));
+    Thread.sleep(600);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getObject(0));
+    cache.putObject(0, 1);
+    assertEquals(1, cache.getObject(0));
+  }
+
+  @Test
+  public void shouldShortenTimeToLiveByJitter() throws Exception {
+    ScheduledCache cache = new ScheduledCache(new PerpetualCache("DefaultCache"));
+    cache.setClearInterval(0);
+    cache.setTimeToLive(2000);
+    cache.setTimeToLiveJitter(1000);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    Thread.sleep(1500);
+    int cached = 0;
+    for (int i = 0; i < 100; i++) {
+      if (cache.getObject(i) != null) {
+        cached++;
+      }
+    }
+    assertTrue(cached > 0 && cached < 100);
+    Thread.sleep(600);
+    assertNull(cache.getObject(0));
+  }
+
 }
\ No newline at end of file
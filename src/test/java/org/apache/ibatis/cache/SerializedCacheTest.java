@@ -0,0 +1,304 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.CacheSerializer;
+import org.apache.ibatis.cache.serializer.CompactCacheSerializer;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.Test;
+
+public class SerializedCacheTest {
+
+  @Test
+  public void shouldCopyObjectGraphWithCompactSerializer() {
+    Cache cache = new SerializedCache(new PerpetualCache("default"), new CompactCacheSerializer(), false);
+    Order order = newOrder();
+    List<Order> orders = new ArrayList<>();
+    orders.add(order);
+    orders.add(order);
+    cache.putObject("orders", orders);
+
+    @SuppressWarnings("unchecked")
+    List<Order> copy = (List<Order>) cache.getObject("orders");
+    assertEquals(2, copy.size());
+    Order copied = copy.get(0);
+    assertNotSame(order, copied);
+    assertSame(copied, copy.get(1));
+    assertEquals(Long.valueOf(1L), copied.getId());
+    assertEquals("first", copied.getName());
+    assertEquals(Status.SHIPPED, copied.getStatus());
+    assertEquals(new BigDecimal("10.50"), copied.getTotal());
+    assertEquals(order.getCreated(), copied.getCreated());
+    assertEquals(order.getAttributes(), copied.getAttributes());
+    assertArrayEquals(order.getData(), copied.getData());
+    assertEquals(2, copied.getLines().size());
+    assertSame(copied, copied.getLines().get(1).getOrder());
+    assertNull(copied.getLines().get(0).getNote());
+  }
+
+  @Test
+  public void shouldStoreCompactFormSmallerThanJdkSerialization() {
+    Order order = newOrder();
+    assertTrue(new CompactCacheSerializer().serialize(order).remaining() < new JdkCacheSerializer().serialize(order).remaining());
+  }
+
+  @Test
+  public void shouldFallBackToJdkSerializationForCustomSerialization() {
+    Cache cache = new SerializedCache(new PerpetualCache("default"), new CompactCacheSerializer(), false);
+    Order order = newOrder();
+    List<Object> values = new ArrayList<>();
+    values.add(order);
+    values.add(new Custom("custom", order));
+    cache.putObject(0, values);
+
+    List<?> copy = (List<?>) cache.getObject(0);
+    Custom custom = (Custom) copy.get(1);
+    assertEquals("custom", custom.getValue());
+    assertTrue(custom.isWritten());
+    assertSame(copy.get(0), custom.getOrder());
+  }
+
+  @Test
+  public void shouldStoreSerializableByteArrayOnHeap() throws Exception {
+    for (CacheSerializer serializer : new CacheSerializer[] {new JdkCacheSerializer(), new CompactCacheSerializer()}) {
+      PerpetualCache delegate = new PerpetualCache("default");
+      Cache cache = new SerializedCache(delegate, serializer, false);
+      cache.putObject(0, newOrder());
+      Object stored = delegate.getObject(0);
+      assertTrue(stored instanceof byte[]);
+      // the stored form must itself be serializable for distributed delegates
+      new ObjectOutputStream(new java.io.ByteArrayOutputStream()).writeObject(stored);
+      assertEquals("first", ((Order) cache.getObject(0)).getName());
+    }
+  }
+
+  @Test
+  public void shouldStoreSerializedFormOffHeap() {
+    for (CacheSerializer serializer : new CacheSerializer[] {new JdkCacheSerializer(), new CompactCacheSerializer()}) {
+      PerpetualCache delegate = new PerpetualCache("default");
+      Cache cache = new SerializedCache(delegate, serializer, true);
+      for (int i = 0; i < 100; i++) {
+        cache.putObject(i, newOrder());
+      }
+      assertTrue(((java.nio.ByteBuffer) delegate.getObject(0)).isDirect());
+      for (int i = 0; i < 100; i++) {
+        Order first = (Order) cache.getObject(i);
+        Order second = (Order) cache.getObject(i);
+        assertNotSame(first, second);
+        assertEquals("first", second.getName());
+      }
+    }
+  }
+
+  @Test
+  public void shouldConfigureSerializerThroughCacheBuilder() {
+    Cache cache = new CacheBuilder("default").readWrite(true).serializer(CompactCacheSerializer.class).offHeap(true).build();
+    cache.putObject("order", newOrder());
+    assertEquals("first", ((Order) cache.getObject("order")).getName());
+    assertFalse(cache.getObject("order") == cache.getObject("order"));
+  }
+
+  private static Order newOrder() {
+    Order order = new Order();
+    order.setId(1L);
+    order.setName("first");
+    order.setStatus(Status.SHIPPED);
+    order.setTotal(new BigDecimal("10.50"));
+    order.setCreated(new Timestamp(1500000000000L));
+    Map<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("priority", 1);
+    attributes.put("gift", Boolean.TRUE);
+    order.setAttributes(attributes);
+    order.setData(new byte[] {1, 2, 3});
+    for (int i = 0; i < 2; i++) {
+      OrderLine line = new OrderLine();
+      line.setOrder(order);
+      line.setQuantity(i + 1);
+      line.setNote("not copied");
+      order.getLines().add(line);
+    }
+    return order;
+  }
+
+  public enum Status {
+    NEW, SHIPPED
+  }
+
+  public static class Entity implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private Long id;
+
+    public Long getId() {
+      return id;
+    }
+
+    public void setId(Long id) {
+      this.id = id;
+    }
+  }
+
+  public static class Order extends Entity {
+    private static final long serialVersionUID = 1L;
+    private String name;
+    private Status status;
+    private BigDecimal total;
+    private Timestamp created;
+    private Map<String, Object> attributes;
+    private byte[] data;
+    private List<OrderLine> lines = new ArrayList<>();
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public void setStatus(Status status) {
+      this.status = status;
+    }
+
+    public BigDecimal getTotal() {
+      return total;
+    }
+
+    public void setTotal(BigDecimal total) {
+      this.total = total;
+    }
+
+    public Timestamp getCreated() {
+      return created;
+    }
+
+    public void setCreated(Timestamp created) {
+      this.created = created;
+    }
+
+    public Map<String, Object> getAttributes() {
+      return attributes;
+    }
+
+    public void setAttributes(Map<String, Object> attributes) {
+      this.attributes = attributes;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    public void setData(byte[] data) {
+      this.data = data;
+    }
+
+    public List<OrderLine> getLines() {
+      return lines;
+    }
+
+    public void setLines(List<OrderLine> lines) {
+      this.lines = lines;
+    }
+  }
+
+  public static class OrderLine implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private Order order;
+    private int quantity;
+    private transient String note;
+
+    public Order getOrder() {
+      return order;
+    }
+
+    public void setOrder(Order order) {
+      this.order = order;
+    }
+
+    public int getQuantity() {
+      return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+      this.quantity = quantity;
+    }
+
+    public String getNote() {
+      return note;
+    }
+
+    public void setNote(String note) {
+      this.note = note;
+    }
+  }
+
+  public static class Custom implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String value;
+    private Order order;
+    private boolean written;
+
+    public Custom() {
+    }
+
+    Custom(String value, Order order) {
+      this.value = value;
+      this.order = order;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public Order getOrder() {
+      return order;
+    }
+
+    public boolean isWritten() {
+      return written;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      written = true;
+      out.defaultWriteObject();
+    }
+  }
+
+}
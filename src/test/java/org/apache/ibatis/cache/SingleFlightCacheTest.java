@@ -0,0 +1,197 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.cache.decorators.SingleFlightCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.JdkCacheSerializer;
+import org.apache.ibatis.executor.CachingExecutor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightCacheTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldShareOneQueryBetweenConcurrentMisses() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    AtomicInteger queries = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> result = new ArrayList<>(Arrays.asList("a", "b"));
+    Future<Object> leader = executor.submit(() -> cache.load(1, () -> {
+      queries.incrementAndGet();
+      await(release);
+      return result;
+    }));
+    waitForFlight(cache, 0);
+    List<Future<Object>> followers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      followers.add(executor.submit(() -> cache.load(1, () -> {
+        queries.incrementAndGet();
+        return null;
+      })));
+    }
+    waitForFlight(cache, 3);
+    release.countDown();
+    assertSame(result, leader.get());
+    for (Future<Object> follower : followers) {
+      assertSame(result, follower.get());
+    }
+    assertEquals(1, queries.get());
+    assertEquals(-1, cache.getNumberOfDependents(1));
+  }
+
+  @Test
+  public void shouldGiveEachFollowerItsOwnCopy() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"), new JdkCacheSerializer());
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> result = new ArrayList<>(Arrays.asList("a", "b"));
+    Future<Object> leader = executor.submit(() -> cache.load(1, () -> {
+      await(release);
+      return result;
+    }));
+    waitForFlight(cache, 0);
+    Future<Object> first = executor.submit(() -> cache.load(1, () -> null));
+    Future<Object> second = executor.submit(() -> cache.load(1, () -> null));
+    waitForFlight(cache, 2);
+    release.countDown();
+    assertSame(result, leader.get());
+    assertEquals(result, first.get());
+    assertEquals(result, second.get());
+    assertNotSame(result, first.get());
+    assertNotSame(first.get(), second.get());
+  }
+
+  @Test
+  public void shouldQueryAgainWhenLeaderFails() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    CountDownLatch release = new CountDownLatch(1);
+    Future<Object> leader = executor.submit(() -> cache.load(1, () -> {
+      await(release);
+      throw new SQLException("failed");
+    }));
+    waitForFlight(cache, 0);
+    Future<Object> follower = executor.submit(() -> cache.load(1, () -> "own"));
+    waitForFlight(cache, 1);
+    release.countDown();
+    try {
+      leader.get();
+      fail();
+    } catch (Exception e) {
+      assertTrue(e.getCause() instanceof SQLException);
+    }
+    assertEquals("own", follower.get());
+    assertEquals(-1, cache.getNumberOfDependents(1));
+  }
+
+  @Test
+  public void shouldQueryAgainAfterTimeout() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    cache.setTimeout(100);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<Object> leader = executor.submit(() -> cache.load(1, () -> {
+      await(release);
+      return "shared";
+    }));
+    waitForFlight(cache, 0);
+    assertEquals("own", cache.load(1, () -> "own"));
+    release.countDown();
+    assertEquals("shared", leader.get());
+  }
+
+  @Test
+  public void shouldNotJoinQueryWhileSessionHasUncommittedWrites() throws Exception {
+    SingleFlightCache cache = new SingleFlightCache(new PerpetualCache("default"));
+    CacheKey key = new CacheKey(new Object[] {"select"});
+    CountDownLatch release = new CountDownLatch(1);
+    Future<Object> leader = executor.submit(() -> cache.load(key, () -> {
+      await(release);
+      return Collections.singletonList("committed");
+    }));
+    while (cache.getNumberOfDependents(key) != 0) {
+      Thread.sleep(10);
+    }
+    Configuration configuration = new Configuration();
+    SqlSource sqlSource = new StaticSqlSource(configuration, "select");
+    MappedStatement select = new MappedStatement.Builder(configuration, "select", sqlSource, SqlCommandType.SELECT)
+        .cache(cache).useCache(true).build();
+    MappedStatement update = new MappedStatement.Builder(configuration, "update", sqlSource, SqlCommandType.UPDATE).build();
+    Executor delegate = (Executor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Executor.class},
+        (proxy, method, args) -> {
+          if ("query".equals(method.getName())) {
+            return Collections.singletonList("uncommitted");
+          }
+          return "update".equals(method.getName()) ? 1 : null;
+        });
+    CachingExecutor cachingExecutor = new CachingExecutor(delegate);
+    cachingExecutor.update(update, null);
+    Future<List<Object>> query = executor.submit(
+        () -> cachingExecutor.<Object> query(select, null, RowBounds.DEFAULT, null, key, select.getBoundSql(null)));
+    // must run on its own instead of waiting for, or sharing with, the other session
+    assertEquals(Collections.singletonList("uncommitted"), query.get(5, TimeUnit.SECONDS));
+    release.countDown();
+    assertEquals(Collections.singletonList("committed"), leader.get());
+  }
+
+  private static void await(CountDownLatch latch) throws SQLException {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new SQLException(e);
+    }
+  }
+
+  private void waitForFlight(SingleFlightCache cache, int dependents) throws InterruptedException {
+    while (cache.getNumberOfDependents(1) != dependents) {
+      Thread.sleep(10);
+    }
+  }
+
+}
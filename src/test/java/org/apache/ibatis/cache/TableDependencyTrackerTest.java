@@ -0,0 +1,121 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.Test;
+
+public class TableDependencyTrackerTest {
+
+  @Test
+  public void shouldRemoveOnlyDependentEntriesAcrossCaches() {
+    TableDependencyTracker tracker = new TableDependencyTracker();
+    Cache users = new PerpetualCache("users");
+    Cache orders = new PerpetualCache("orders");
+    put(tracker, users, "byId", tables("users"));
+    put(tracker, users, "withRoles", tables("users", "roles"));
+    put(tracker, orders, "withCustomer", tables("orders", "users"));
+    put(tracker, orders, "byId", tables("orders"));
+
+    tracker.invalidate(tables("users"));
+
+    assertNull(users.getObject("byId"));
+    assertNull(users.getObject("withRoles"));
+    assertNull(orders.getObject("withCustomer"));
+    assertNotNull(orders.getObject("byId"));
+    assertEquals(0, tracker.getTrackedKeys(users));
+    assertEquals(1, tracker.getTrackedKeys(orders));
+  }
+
+  @Test
+  public void shouldRemoveUnknownDependenciesOnAnyWrite() {
+    TableDependencyTracker tracker = new TableDependencyTracker();
+    Cache cache = new PerpetualCache("default");
+    put(tracker, cache, "unknown", null);
+    put(tracker, cache, "known", tables("users"));
+
+    tracker.invalidate(tables("orders"));
+
+    assertNull(cache.getObject("unknown"));
+    assertNotNull(cache.getObject("known"));
+  }
+
+  @Test
+  public void shouldForgetKeysWhenCacheIsCleared() {
+    TableDependencyTracker tracker = new TableDependencyTracker();
+    Cache cache = new PerpetualCache("default");
+    put(tracker, cache, "key", tables("users"));
+    tracker.clear(cache);
+    assertEquals(0, tracker.getTrackedKeys(cache));
+  }
+
+  @Test
+  public void shouldInvalidateTablesOnCommit() {
+    TableDependencyTracker tracker = new TableDependencyTracker();
+    Cache cache = new PerpetualCache("default");
+    CacheKey key = new CacheKey(new Object[] {"users"});
+    TransactionalCacheManager reader = new TransactionalCacheManager(null, tracker);
+    reader.putObject(cache, key, "value", tables("users"));
+    assertEquals(0, tracker.getTrackedKeys(cache));
+    reader.commit();
+    assertEquals("value", cache.getObject(key));
+    assertEquals(1, tracker.getTrackedKeys(cache));
+
+    TransactionalCacheManager writer = new TransactionalCacheManager(null, tracker);
+    writer.invalidateTables(tables("users"));
+    assertTrue(writer.isInvalidated(tables("users")));
+    assertTrue(writer.isInvalidated(null));
+    assertFalse(writer.isInvalidated(tables("orders")));
+    assertEquals("value", cache.getObject(key));
+    writer.commit();
+    assertNull(cache.getObject(key));
+    assertFalse(writer.isInvalidated(null));
+  }
+
+  @Test
+  public void shouldDiscardPendingDependenciesOnRollback() {
+    TableDependencyTracker tracker = new TableDependencyTracker();
+    Cache cache = new PerpetualCache("default");
+    TransactionalCacheManager tcm = new TransactionalCacheManager(null, tracker);
+    tcm.putObject(cache, new CacheKey(new Object[] {"users"}), "value", tables("users"));
+    tcm.invalidateTables(tables("users"));
+    tcm.rollback();
+    tcm.commit();
+    assertEquals(0, tracker.getTrackedKeys(cache));
+    assertEquals(0, cache.getSize());
+  }
+
+  private static void put(TableDependencyTracker tracker, Cache cache, Object key, Set<String> tables) {
+    cache.putObject(key, key);
+    tracker.register(cache, key, tables);
+  }
+
+  private static Set<String> tables(String... tables) {
+    return tables.length == 0 ? Collections.<String>emptySet() : new HashSet<>(Arrays.asList(tables));
+  }
+
+}
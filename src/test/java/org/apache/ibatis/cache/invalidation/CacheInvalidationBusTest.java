@@ -0,0 +1,239 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class CacheInvalidationBusTest {
+
+  @Test
+  public void shouldFlushCacheOfOtherNodeOnCommit() {
+    Configuration local = newNode("flush");
+    Configuration remote = newNode("flush");
+    try {
+      Cache localCache = cache(local, "ns");
+      Cache remoteCache = cache(remote, "ns");
+      localCache.putObject("key", "value");
+      remoteCache.putObject("key", "value");
+
+      TransactionalCacheManager tcm = new TransactionalCacheManager(local.getCacheInvalidationBus());
+      tcm.clear(localCache);
+      assertEquals("value", remoteCache.getObject("key"));
+      tcm.commit();
+
+      assertEquals(0, localCache.getSize());
+      assertEquals(0, remoteCache.getSize());
+    } finally {
+      local.getCacheInvalidationBus().close();
+      remote.getCacheInvalidationBus().close();
+    }
+  }
+
+  @Test
+  public void shouldNotPublishWhenNothingWasFlushed() {
+    Configuration local = newNode("noflush");
+    Configuration remote = newNode("noflush");
+    try {
+      Cache localCache = cache(local, "ns");
+      Cache remoteCache = cache(remote, "ns");
+      remoteCache.putObject("key", "value");
+
+      TransactionalCacheManager tcm = new TransactionalCacheManager(local.getCacheInvalidationBus());
+      tcm.putObject(localCache, new CacheKey(), "value");
+      tcm.commit();
+
+      assertEquals("value", remoteCache.getObject("key"));
+    } finally {
+      local.getCacheInvalidationBus().close();
+      remote.getCacheInvalidationBus().close();
+    }
+  }
+
+  @Test
+  public void shouldEvictSingleKeyAndIgnoreUnknownCaches() {
+    Configuration local = newNode("evict");
+    Configuration remote = newNode("evict");
+    try {
+      Cache remoteCache = cache(remote, "ns");
+      remoteCache.putObject("a", "value");
+      remoteCache.putObject("b", "value");
+
+      local.getCacheInvalidationBus().publish(CacheInvalidationEvent.evict("ns", "a"));
+      local.getCacheInvalidationBus().publish(CacheInvalidationEvent.flush("unknown"));
+
+      assertNull(remoteCache.getObject("a"));
+      assertEquals("value", remoteCache.getObject("b"));
+    } finally {
+      local.getCacheInvalidationBus().close();
+      remote.getCacheInvalidationBus().close();
+    }
+  }
+
+  @Test
+  public void shouldDeliverEventsOverUdp() throws Exception {
+    BlockingQueue<CacheInvalidationEvent> localEvents = new LinkedBlockingQueue<>();
+    BlockingQueue<CacheInvalidationEvent> remoteEvents = new LinkedBlockingQueue<>();
+    UdpInvalidationBus local = new UdpInvalidationBus();
+    UdpInvalidationBus remote = new UdpInvalidationBus();
+    Properties properties = new Properties();
+    properties.setProperty("host", "127.0.0.1");
+    local.setProperties(properties);
+    remote.setProperties(properties);
+    local.start(localEvents::add);
+    remote.start(remoteEvents::add);
+    try {
+      local.addPeer("127.0.0.1:" + local.getLocalPort());
+      local.addPeer("127.0.0.1:" + remote.getLocalPort());
+      remote.addPeer("127.0.0.1:" + local.getLocalPort());
+      CacheKey key = new CacheKey();
+      key.update("select 1");
+      key.update(1);
+
+      local.publish(CacheInvalidationEvent.evict("ns", key));
+      local.publish(CacheInvalidationEvent.evict("ns", new Object()));
+
+      assertEquals(CacheInvalidationEvent.evict("ns", key), remoteEvents.poll(5, TimeUnit.SECONDS));
+      // 无法序列化的 key 改为清空整个缓存
+      assertEquals(CacheInvalidationEvent.flush("ns"), remoteEvents.poll(5, TimeUnit.SECONDS));
+      assertNull(localEvents.poll(200, TimeUnit.MILLISECONDS));
+    } finally {
+      local.close();
+      remote.close();
+    }
+  }
+
+  @Test
+  public void shouldOnlyRestoreKeysOfAllowedClasses() throws Exception {
+    BlockingQueue<CacheInvalidationEvent> remoteEvents = new LinkedBlockingQueue<>();
+    UdpInvalidationBus local = new UdpInvalidationBus();
+    UdpInvalidationBus remote = new UdpInvalidationBus();
+    local.start(event -> { });
+    remote.start(remoteEvents::add);
+    try {
+      local.addPeer("127.0.0.1:" + remote.getLocalPort());
+      remote.addPeer("127.0.0.1:" + local.getLocalPort());
+      CacheKey key = new CacheKey();
+      key.update(Thread.State.NEW);
+      key.update(new java.sql.Timestamp(0L));
+      key.update(new byte[] {1, 2});
+
+      local.publish(CacheInvalidationEvent.evict("ns", key));
+      local.publish(CacheInvalidationEvent.evict("ns", new java.util.HashMap<String, String>()));
+
+      assertEquals(CacheInvalidationEvent.evict("ns", key), remoteEvents.poll(5, TimeUnit.SECONDS));
+      // classes outside the allowed set are never instantiated, the whole cache is flushed instead
+      assertEquals(CacheInvalidationEvent.flush("ns"), remoteEvents.poll(5, TimeUnit.SECONDS));
+    } finally {
+      local.close();
+      remote.close();
+    }
+  }
+
+  @Test
+  public void shouldDropPacketsFromUnknownHostsOrWithWrongSecret() throws Exception {
+    BlockingQueue<CacheInvalidationEvent> remoteEvents = new LinkedBlockingQueue<>();
+    UdpInvalidationBus stranger = new UdpInvalidationBus();
+    UdpInvalidationBus wrongSecret = newUdpBus("other");
+    UdpInvalidationBus local = newUdpBus("secret");
+    UdpInvalidationBus remote = newUdpBus("secret");
+    stranger.start(event -> { });
+    wrongSecret.start(event -> { });
+    local.start(event -> { });
+    remote.start(remoteEvents::add);
+    try {
+      stranger.addPeer("127.0.0.1:" + remote.getLocalPort());
+      wrongSecret.addPeer("127.0.0.1:" + remote.getLocalPort());
+      local.addPeer("127.0.0.1:" + remote.getLocalPort());
+
+      stranger.publish(CacheInvalidationEvent.flush("stranger"));
+      assertNull(remoteEvents.poll(200, TimeUnit.MILLISECONDS));
+
+      remote.addPeer("127.0.0.1:" + local.getLocalPort());
+      wrongSecret.publish(CacheInvalidationEvent.flush("wrong"));
+      local.publish(CacheInvalidationEvent.flush("signed"));
+      assertEquals(CacheInvalidationEvent.flush("signed"), remoteEvents.poll(5, TimeUnit.SECONDS));
+      assertNull(remoteEvents.poll(200, TimeUnit.MILLISECONDS));
+    } finally {
+      stranger.close();
+      wrongSecret.close();
+      local.close();
+      remote.close();
+    }
+  }
+
+  @Test
+  public void shouldStartBusOnlyWhenRequested() {
+    LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+    Properties properties = new Properties();
+    properties.setProperty("channel", getClass().getName() + ".deferred");
+    bus.setProperties(properties);
+    Configuration local = newNode("deferred");
+    Configuration remote = new Configuration();
+    remote.setCacheInvalidationBus(bus);
+    try {
+      Cache remoteCache = cache(remote, "ns");
+      remoteCache.putObject("key", "value");
+      local.getCacheInvalidationBus().publish(CacheInvalidationEvent.flush("ns"));
+      assertEquals("value", remoteCache.getObject("key"));
+
+      remote.startCacheInvalidationBus();
+      remote.startCacheInvalidationBus();
+      local.getCacheInvalidationBus().publish(CacheInvalidationEvent.flush("ns"));
+      assertEquals(0, remoteCache.getSize());
+    } finally {
+      local.getCacheInvalidationBus().close();
+      bus.close();
+    }
+  }
+
+  private UdpInvalidationBus newUdpBus(String secret) {
+    UdpInvalidationBus bus = new UdpInvalidationBus();
+    Properties properties = new Properties();
+    properties.setProperty("secret", secret);
+    bus.setProperties(properties);
+    return bus;
+  }
+
+  private Configuration newNode(String channel) {
+    LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+    Properties properties = new Properties();
+    properties.setProperty("channel", getClass().getName() + "." + channel);
+    bus.setProperties(properties);
+    Configuration configuration = new Configuration();
+    configuration.setCacheInvalidationBus(bus);
+    configuration.startCacheInvalidationBus();
+    return configuration;
+  }
+
+  private Cache cache(Configuration configuration, String id) {
+    Cache cache = new PerpetualCache(id);
+    configuration.addCache(cache);
+    return cache;
+  }
+
+}
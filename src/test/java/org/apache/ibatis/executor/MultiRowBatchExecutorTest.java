@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.executor.MultiRowBatchExecutor.InsertTemplate;
+import org.apache.ibatis.executor.keygen.SelectKeyGenerator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
+import org.junit.Test;
+
+public class MultiRowBatchExecutorTest extends BaseExecutorTest {
+
+  @Test
+  public void shouldCombineConsecutiveInsertsIntoMultiRowStatements() throws Exception {
+    config.setMultiRowBatchMaxRows(2);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement selectStatement = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      for (int i = 0; i < 5; i++) {
+        Author author = new Author(1000 + i, "someone" + i, "******", "someone@apache.org", null, Section.NEWS);
+        assertEquals(BatchExecutor.BATCH_UPDATE_RETURN_VALUE, executor.update(insertStatement, author));
+      }
+      List<BatchResult> results = executor.flushStatements();
+      // 2 + 2 行共用一条语句， 最后 1 行为另一条语句
+      assertEquals(2, results.size());
+      assertEquals("INSERT INTO author (id,username,password,email,bio,favourite_section) values(?,?,?,?,?,?), (?,?,?,?,?,?)",
+          results.get(0).getSql());
+      assertEquals(4, results.get(0).getParameterObjects().size());
+      assertArrayEquals(new int[] {1, 1, 1, 1}, results.get(0).getUpdateCounts());
+      assertArrayEquals(new int[] {1}, results.get(1).getUpdateCounts());
+      for (int i = 0; i < 5; i++) {
+        List<Author> authors = executor.query(selectStatement, 1000 + i, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        assertEquals(1, authors.size());
+        assertEquals("someone" + i, authors.get(0).getUsername());
+      }
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldStartNewStatementWhenParameterLimitIsReached() throws Exception {
+    // 每行 6 个参数， 两行即达到上限
+    config.setMultiRowBatchMaxParameters(12);
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatement(config);
+      MappedStatement selectStatement = ExecutorTestHelper.prepareSelectOneAuthorMappedStatement(config);
+      for (int i = 0; i < 7; i++) {
+        Author author = new Author(1000 + i, "someone" + i, "******", "someone@apache.org", null, Section.NEWS);
+        assertEquals(BatchExecutor.BATCH_UPDATE_RETURN_VALUE, executor.update(insertStatement, author));
+      }
+      List<BatchResult> results = executor.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(6, results.get(0).getParameterObjects().size());
+      assertArrayEquals(new int[] {1, 1, 1, 1, 1, 1}, results.get(0).getUpdateCounts());
+      assertArrayEquals(new int[] {1}, results.get(1).getUpdateCounts());
+      for (int i = 0; i < 7; i++) {
+        List<Author> authors = executor.query(selectStatement, 1000 + i, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        assertEquals(1, authors.size());
+      }
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldRunBeforeSelectKeyOnceWhenInsertIsNotCombined() throws Exception {
+    Executor executor = createExecutor(new JdbcTransaction(ds, null, false));
+    try {
+      MappedStatement insertStatement = ExecutorTestHelper.prepareInsertAuthorMappedStatementWithBeforeAutoKey(config);
+      final AtomicInteger selectKeyCount = new AtomicInteger();
+      SelectKeyGenerator keyGenerator = new SelectKeyGenerator(config.getMappedStatement("insertAuthor!selectKey"), true) {
+        @Override
+        public void processBefore(Executor executor, MappedStatement ms, Statement stmt, Object parameter) {
+          selectKeyCount.incrementAndGet();
+          super.processBefore(executor, ms, stmt, parameter);
+        }
+      };
+      MappedStatement countingStatement = new MappedStatement.Builder(config, "insertAuthorCountingSelectKey",
+          insertStatement.getSqlSource(), SqlCommandType.INSERT)
+          .parameterMap(insertStatement.getParameterMap())
+          .keyGenerator(keyGenerator)
+          .keyProperty("id")
+          .build();
+      Author author = new Author(-1, "someone", "******", "someone@apache.org", null, Section.NEWS);
+      assertEquals(BatchExecutor.BATCH_UPDATE_RETURN_VALUE, executor.update(countingStatement, author));
+      executor.flushStatements();
+      assertEquals(1, selectKeyCount.get());
+      assertEquals(123456, author.getId());
+    } finally {
+      executor.rollback(true);
+      executor.close(false);
+    }
+  }
+
+  @Test
+  public void shouldParseSingleRowInsert() {
+    InsertTemplate template = InsertTemplate.parse("insert into t (a, b) values (?, upper(?)) on conflict do nothing");
+    assertEquals("insert into t (a, b) values (?, upper(?)), (?, upper(?)) on conflict do nothing", template.toSql(2));
+    template = InsertTemplate.parse("INSERT INTO t (values_count, note) VALUES(?, 'a)b')");
+    assertEquals("INSERT INTO t (values_count, note) VALUES(?, 'a)b'), (?, 'a)b')", template.toSql(2));
+  }
+
+  @Test
+  public void shouldNotParseStatementsThatCannotBeCombined() {
+    assertNull(InsertTemplate.parse("insert into t (a) select a from s where b = ?"));
+    assertNull(InsertTemplate.parse("insert into t (a) values (?), (?)"));
+    assertNull(InsertTemplate.parse("insert into t (a) values (?) on duplicate key update a = ?"));
+  }
+
+  @Override
+  protected Executor createExecutor(Transaction transaction) {
+    return new MultiRowBatchExecutor(config, transaction);
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.DataSourceException;
+import org.apache.ibatis.datasource.pooled.ConcurrentPooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.junit.Test;
+
+public class ConcurrentPooledDataSourceTest extends BaseDataTest {
+
+  @Test
+  public void shouldProperlyMaintainPoolOf3ActiveAnd2IdleConnections() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMaximumActiveConnections(3);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolTimeToWait(10000);
+      List<Connection> connections = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      assertEquals(3, ds.getPoolState().getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(4, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getHadToWaitCount());
+      assertNotNull(ds.getPoolState().toString());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldReuseConnectionReturnedByTheSameThread() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      Connection c = ds.getConnection();
+      Connection realConnection = PooledDataSource.unwrapConnection(c);
+      c.close();
+      c = ds.getConnection();
+      assertSame(realConnection, PooledDataSource.unwrapConnection(c));
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+      c.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldHandOffConnectionsToWaitingThreads() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMaximumActiveConnections(2);
+    ds.setPoolMaximumIdleConnections(2);
+    ds.setPoolTimeToWait(10000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 50; j++) {
+            try (Connection c = ds.getConnection()) {
+              assertTrue(ds.getPoolState().getActiveConnectionCount() <= 2);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      assertEquals(400, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(0, ds.getPoolState().getClaimedOverdueConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldNeverHoldMoreConnectionsThanMaximumActive() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    AtomicInteger opened = new AtomicInteger();
+    UnpooledDataSource unpooledDataSource = new UnpooledDataSource(props.getProperty("driver"), props.getProperty("url"),
+        props.getProperty("username"), props.getProperty("password")) {
+      @Override
+      public Connection getConnection() throws SQLException {
+        opened.incrementAndGet();
+        return super.getConnection();
+      }
+    };
+    ConcurrentPooledDataSource ds = new ConcurrentPooledDataSource(unpooledDataSource);
+    ds.setPoolMaximumActiveConnections(2);
+    ds.setPoolMaximumIdleConnections(2);
+    ds.setPoolTimeToWait(10000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 200; j++) {
+            ds.getConnection().close();
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      // idle connections are never closed, so every connection opened is still held by the pool
+      assertTrue(opened.get() <= 2);
+      assertEquals(opened.get(), ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldWakeWaitingThreadWhenConnectionIsClosed() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolMaximumIdleConnections(0);
+    ds.setPoolTimeToWait(20000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Connection c = ds.getConnection();
+      Future<Long> waited = executor.submit(() -> {
+        long start = System.currentTimeMillis();
+        ds.getConnection().close();
+        return System.currentTimeMillis() - start;
+      });
+      Thread.sleep(200);
+      // no idle slot: the connection is closed and the waiting thread opens a new one
+      c.close();
+      assertTrue(waited.get() < 10000);
+      assertEquals(1, ds.getPoolState().getHadToWaitCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  public void shouldCloseConnectionWhenRollbackFailsOnCheckout() throws Exception {
+    Connection realConnection = mock(Connection.class);
+    when(realConnection.getAutoCommit()).thenReturn(false);
+    doThrow(new SQLException("rollback failed")).when(realConnection).rollback();
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource(realConnection);
+    try {
+      ds.getConnection();
+      fail("Expected rollback failure");
+    } catch (SQLException e) {
+      verify(realConnection).close();
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+    }
+  }
+
+  @Test
+  public void shouldCloseConnectionWhenRollbackFailsOnReturn() throws Exception {
+    Connection realConnection = mock(Connection.class);
+    when(realConnection.getAutoCommit()).thenReturn(false);
+    doNothing().doThrow(new SQLException("rollback failed")).when(realConnection).rollback();
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource(realConnection);
+    Connection c = ds.getConnection();
+    try {
+      c.close();
+      fail("Expected rollback failure");
+    } catch (SQLException e) {
+      verify(realConnection).close();
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(0, ds.getPoolState().getIdleConnectionCount());
+    }
+  }
+
+  @Test
+  public void shouldSelectPoolModeOnFactory() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    PooledDataSourceFactory factory = new PooledDataSourceFactory();
+    Properties properties = new Properties();
+    properties.setProperty("poolMode", "CONCURRENT");
+    properties.setProperty("driver", props.getProperty("driver"));
+    properties.setProperty("url", props.getProperty("url"));
+    properties.setProperty("poolMaximumActiveConnections", "7");
+    factory.setProperties(properties);
+    assertTrue(factory.getDataSource() instanceof ConcurrentPooledDataSource);
+    assertEquals(7, ((PooledDataSource) factory.getDataSource()).getPoolMaximumActiveConnections());
+    assertEquals("CONCURRENT", properties.getProperty("poolMode"));
+  }
+
+  @Test(expected = DataSourceException.class)
+  public void shouldRejectUnknownPoolMode() {
+    PooledDataSourceFactory factory = new PooledDataSourceFactory();
+    Properties properties = new Properties();
+    properties.setProperty("poolMode", "UNKNOWN");
+    factory.setProperties(properties);
+  }
+
+  private ConcurrentPooledDataSource createConcurrentPooledDataSource() throws Exception {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    ConcurrentPooledDataSource ds = new ConcurrentPooledDataSource();
+    ds.setDriver(props.getProperty("driver"));
+    ds.setUrl(props.getProperty("url"));
+    ds.setUsername(props.getProperty("username"));
+    ds.setPassword(props.getProperty("password"));
+    return ds;
+  }
+
+  private ConcurrentPooledDataSource createConcurrentPooledDataSource(Connection realConnection) throws SQLException {
+    UnpooledDataSource unpooledDataSource = mock(UnpooledDataSource.class);
+    when(unpooledDataSource.getConnection()).thenReturn(realConnection);
+    return new ConcurrentPooledDataSource(unpooledDataSource);
+  }
+
+}
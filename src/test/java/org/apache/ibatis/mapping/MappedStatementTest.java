@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.scripting.xmltags.StaticTextSqlNode;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+public class MappedStatementTest {
+
+  @Test
+  public void shouldInternCacheKeySqlUpToTotalLength() {
+    Configuration configuration = new Configuration();
+    MappedStatement ms = new MappedStatement.Builder(configuration, "select",
+        new StaticSqlSource(configuration, "select 1"), SqlCommandType.SELECT).build();
+
+    String sql1 = sql('a', 40000);
+    assertSame(sql1, ms.internCacheKeySql(sql1));
+    assertSame(sql1, ms.internCacheKeySql(new String(sql1)));
+
+    // not interned once the total length would exceed the limit
+    String sql2 = sql('b', 40000);
+    assertSame(sql2, ms.internCacheKeySql(sql2));
+    String copy = new String(sql2);
+    assertSame(copy, ms.internCacheKeySql(copy));
+
+    String sql3 = sql('c', 100);
+    assertSame(sql3, ms.internCacheKeySql(sql3));
+    assertSame(sql3, ms.internCacheKeySql(new String(sql3)));
+  }
+
+  @Test
+  public void shouldResolveTablesOfNestedQueries() {
+    Configuration configuration = new Configuration();
+    addResultMap(configuration, "empty");
+    addResultMap(configuration, "withPosts", "posts");
+    addResultMap(configuration, "withComments", "comments");
+    addStatement(configuration, "posts", new StaticSqlSource(configuration, "select * from posts where author_id = ?"), "empty");
+    addStatement(configuration, "comments", new DynamicSqlSource(configuration, new StaticTextSqlNode("select * from comments")), "empty");
+
+    MappedStatement author = addStatement(configuration, "author", new StaticSqlSource(configuration, "select * from authors"), "withPosts");
+    assertEquals(Collections.singleton("posts"), author.getNestedQueryTableDependencies());
+    assertTrue(configuration.getMappedStatement("posts").getNestedQueryTableDependencies().isEmpty());
+
+    // the SQL of a dynamic nested query is unknown until it runs
+    MappedStatement post = addStatement(configuration, "post", new StaticSqlSource(configuration, "select * from posts"), "withComments");
+    assertNull(post.getNestedQueryTableDependencies());
+  }
+
+  private static MappedStatement addStatement(Configuration configuration, String id, SqlSource sqlSource, String resultMapId) {
+    MappedStatement ms = new MappedStatement.Builder(configuration, id, sqlSource, SqlCommandType.SELECT)
+        .resultMaps(Collections.singletonList(configuration.getResultMap(resultMapId))).build();
+    configuration.addMappedStatement(ms);
+    return ms;
+  }
+
+  private static void addResultMap(Configuration configuration, String id, String... nestedQueryIds) {
+    List<ResultMapping> resultMappings = new ArrayList<>();
+    for (String nestedQueryId : nestedQueryIds) {
+      resultMappings.add(new ResultMapping.Builder(configuration, nestedQueryId, "id", Object.class)
+          .nestedQueryId(nestedQueryId).build());
+    }
+    configuration.addResultMap(new ResultMap.Builder(configuration, id, Object.class, resultMappings).build());
+  }
+
+  private static String sql(char c, int length) {
+    char[] chars = new char[length];
+    Arrays.fill(chars, c);
+    return "select '" + new String(chars) + "'";
+  }
+
+}
@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class SqlTableParserTest {
+
+  @Test
+  public void shouldParseJoinedTables() {
+    assertTables("select * from users u inner join user_roles r on u.id = r.user_id left join roles on r.role_id = roles.id",
+        "users", "user_roles", "roles");
+  }
+
+  @Test
+  public void shouldParseCommaSeparatedTables() {
+    assertTables("select * from users u, user_roles r where u.id = r.user_id order by u.name", "users", "user_roles");
+  }
+
+  @Test
+  public void shouldParseSubqueries() {
+    assertTables("select * from users where id in (select user_id from user_roles, roles where roles.name = 'admin')",
+        "users", "user_roles", "roles");
+    assertTables("select * from (select * from orders) o, customers c", "orders", "customers");
+  }
+
+  @Test
+  public void shouldParseWriteStatements() {
+    assertTables("insert into users (id, name) values (#{id}, #{name})", "users");
+    assertTables("insert into archive select * from users", "archive", "users");
+    assertTables("update users set name = ? where id = ?", "users");
+    assertTables("delete from users where id = ?", "users");
+    assertTables("merge into users using staged_users on (users.id = staged_users.id)", "users", "staged_users");
+  }
+
+  @Test
+  public void shouldNormalizeSchemaAndQuotedNames() {
+    assertTables("select * from app.USERS join \"Roles\" on 1 = 1 join `audit`.`log` on 1 = 1 join [dbo].[Items] on 1 = 1",
+        "users", "roles", "log", "items");
+    assertEquals("users", SqlTableParser.normalize(" app.\"Users\" "));
+  }
+
+  @Test
+  public void shouldIgnoreCommentsAndStrings() {
+    assertTables("select * /* from secrets */ from users -- join passwords\n where name = 'from x join y'", "users");
+  }
+
+  @Test
+  public void shouldReturnEmptySetWithoutTables() {
+    assertTrue(SqlTableParser.parse("select 1").isEmpty());
+  }
+
+  private void assertTables(String sql, String... tables) {
+    Set<String> expected = new HashSet<>(Arrays.asList(tables));
+    assertEquals(expected, SqlTableParser.parse(sql));
+  }
+
+}
@@ -0,0 +1,86 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.io.Resources;
+import org.junit.Test;
+
+public class StaxXPathParserTest {
+
+  @Test
+  public void shouldTestStaxXPathParserMethods() throws Exception {
+    String resource = "resources/nodelet_test.xml";
+    try (InputStream inputStream = Resources.getResourceAsStream(resource)) {
+      XPathParser parser = new StaxXPathParser(inputStream, null);
+      assertEquals((Long) 1970l, parser.evalLong("/employee/birth_date/year"));
+      assertEquals((short) 6, (short) parser.evalShort("/employee/birth_date/month"));
+      assertEquals((Integer) 15, parser.evalInteger("/employee/birth_date/day"));
+      assertEquals((Float) 5.8f, parser.evalFloat("/employee/height"));
+      assertEquals((Double) 5.8d, parser.evalDouble("/employee/height"));
+      assertEquals("${id_var}", parser.evalString("/employee/@id"));
+      assertEquals(Boolean.TRUE, parser.evalBoolean("/employee/active"));
+      assertEquals("<id>${id_var}</id>", parser.evalNode("/employee/@id").toString().trim());
+      assertEquals(7, parser.evalNodes("/employee/*").size());
+      assertEquals(2, parser.evalNodes("/employee/first_name|/employee/last_name").size());
+      assertNull(parser.evalNode("/employee/middle_name"));
+      XNode node = parser.evalNode("/employee/height");
+      assertEquals("employee/height", node.getPath());
+      assertEquals("employee[${id_var}]_height", node.getValueBasedIdentifier());
+      assertEquals("ft", node.getStringAttribute("units"));
+      assertEquals(3, node.getParent().evalNode("birth_date").getChildren().size());
+    }
+  }
+
+  @Test
+  public void shouldBuildSameNodesAsXPathParser() throws Exception {
+    String resource = "org/apache/ibatis/builder/BlogMapper.xml";
+    XPathParser domParser;
+    try (InputStream inputStream = Resources.getResourceAsStream(resource)) {
+      domParser = new XPathParser(inputStream, true, null, new XMLMapperEntityResolver());
+    }
+    XPathParser staxParser;
+    try (InputStream inputStream = Resources.getResourceAsStream(resource)) {
+      staxParser = new StaxXPathParser(inputStream, null);
+    }
+    XNode domMapper = domParser.evalNode("/mapper");
+    XNode staxMapper = staxParser.evalNode("/mapper");
+    assertEquals(domMapper.toString(), staxMapper.toString());
+
+    List<XNode> domStatements = domMapper.evalNodes("select|insert|update|delete");
+    List<XNode> staxStatements = staxMapper.evalNodes("select|insert|update|delete");
+    assertEquals(domStatements.size(), staxStatements.size());
+    for (int i = 0; i < domStatements.size(); i++) {
+      assertEquals(domStatements.get(i).getStringAttribute("id"), staxStatements.get(i).getStringAttribute("id"));
+      assertEquals(domStatements.get(i).getNode().getChildNodes().getLength(), staxStatements.get(i).getNode().getChildNodes().getLength());
+    }
+  }
+
+  @Test
+  public void shouldKeepCDataSections() throws Exception {
+    XPathParser parser = new StaxXPathParser("<script>select * from t <![CDATA[where a < 1]]> and b = 2</script>", null);
+    XNode script = parser.evalNode("/script");
+    assertEquals(3, script.getNode().getChildNodes().getLength());
+    assertEquals("where a < 1", script.getNode().getChildNodes().item(1).getNodeValue());
+  }
+
+}
@@ -0,0 +1,205 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.junit.Test;
+
+public class ComposedPluginTest {
+
+  @Test
+  public void shouldNotWrapWhenNoInterceptorMatches() {
+    ParameterHandler target = new SimpleParameterHandler(new ArrayList<>());
+    assertSame(target, newChain(new StatementHandlerPlugin()).pluginAll(target));
+  }
+
+  @Test
+  public void shouldUseSingleDispatcherInsteadOfProxies() {
+    List<String> log = new ArrayList<>();
+    ParameterHandler handler = (ParameterHandler) newChain(new TracingPlugin("a", log), new TracingPlugin("b", log))
+        .pluginAll(new SimpleParameterHandler(log));
+    assertTrue(handler instanceof ParameterHandlerDispatcher);
+    assertFalse(Proxy.isProxyClass(handler.getClass()));
+  }
+
+  @Test
+  public void shouldInvokeInterceptorsInSameOrderAsProxyMode() throws Exception {
+    List<String> proxyLog = new ArrayList<>();
+    List<String> composedLog = new ArrayList<>();
+    InterceptorChain proxyChain = new InterceptorChain();
+    proxyChain.addInterceptor(new TracingPlugin("a", proxyLog));
+    proxyChain.addInterceptor(new TracingPlugin("b", proxyLog));
+    InterceptorChain composedChain = newChain(new TracingPlugin("a", composedLog), new TracingPlugin("b", composedLog));
+
+    ParameterHandler proxied = (ParameterHandler) proxyChain.pluginAll(new SimpleParameterHandler(proxyLog));
+    ParameterHandler composed = (ParameterHandler) composedChain.pluginAll(new SimpleParameterHandler(composedLog));
+    assertEquals(proxied.getParameterObject(), composed.getParameterObject());
+    assertEquals(proxyLog, composedLog);
+    assertEquals("b(a(param))", composed.getParameterObject());
+  }
+
+  @Test
+  public void shouldCallTargetDirectlyForMethodsNotIntercepted() throws Exception {
+    List<String> log = new ArrayList<>();
+    ParameterHandler handler = (ParameterHandler) newChain(new SetParametersPlugin()).pluginAll(new SimpleParameterHandler(log));
+    assertEquals("param", handler.getParameterObject());
+    assertEquals("[getParameterObject]", log.toString());
+  }
+
+  @Test
+  public void shouldUnwrapTargetExceptionLikeProxy() {
+    List<String> log = new ArrayList<>();
+    ParameterHandler handler = (ParameterHandler) newChain(new SetParametersPlugin()).pluginAll(new SimpleParameterHandler(log));
+    try {
+      handler.setParameters(null);
+      fail();
+    } catch (SQLException e) {
+      assertEquals("no statement", e.getMessage());
+    }
+  }
+
+  @Test
+  public void shouldFallBackToProxyForInterceptorWithoutAnnotation() {
+    ParameterHandler handler = (ParameterHandler) newChain(new TracingPlugin("a", new ArrayList<>()), new UnannotatedPlugin())
+        .pluginAll(new SimpleParameterHandler(new ArrayList<>()));
+    assertTrue(Proxy.isProxyClass(handler.getClass()));
+  }
+
+  private static InterceptorChain newChain(Interceptor... interceptors) {
+    InterceptorChain chain = new InterceptorChain();
+    chain.setPluginMode(PluginMode.COMPOSED);
+    for (Interceptor interceptor : interceptors) {
+      chain.addInterceptor(interceptor);
+    }
+    return chain;
+  }
+
+  private static class SimpleParameterHandler implements ParameterHandler {
+    private final List<String> log;
+
+    SimpleParameterHandler(List<String> log) {
+      this.log = log;
+    }
+
+    @Override
+    public Object getParameterObject() {
+      log.add("getParameterObject");
+      return "param";
+    }
+
+    @Override
+    public void setParameters(PreparedStatement ps) throws SQLException {
+      log.add("setParameters");
+      if (ps == null) {
+        throw new SQLException("no statement");
+      }
+    }
+  }
+
+  @Intercepts({
+      @Signature(type = ParameterHandler.class, method = "getParameterObject", args = {})})
+  public static class TracingPlugin implements Interceptor {
+    private final String name;
+    private final List<String> log;
+
+    TracingPlugin(String name, List<String> log) {
+      this.name = name;
+      this.log = log;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      log.add(name);
+      return name + "(" + invocation.proceed() + ")";
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+  }
+
+  @Intercepts({
+      @Signature(type = ParameterHandler.class, method = "setParameters", args = {PreparedStatement.class})})
+  public static class SetParametersPlugin implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+  }
+
+  @Intercepts({
+      @Signature(type = StatementHandler.class, method = "getBoundSql", args = {})})
+  public static class StatementHandlerPlugin implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+  }
+
+  public static class UnannotatedPlugin implements Interceptor {
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return target;
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+  }
+
+}
@@ -18,8 +18,10 @@ package org.apache.ibatis.reflection;
 import static org.junit.Assert.*;
 
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
 import java.util.List;
 
+import org.apache.ibatis.reflection.invoker.LambdaMethodInvoker;
 import org.junit.Assert;
 import org.junit.Test;
 import static com.googlecode.catchexception.apis.BDDCatchException.*;
@@ -210,4 +212,57 @@ public class ReflectorTest {
     Reflector reflector = reflectorFactory.findForClass(Bean.class);
     assertTrue((Boolean)reflector.getGetInvoker("bool").invoke(new Bean(), new Byte[0]));
   }
+
+  @Test
+  public void shouldInvokeAccessorsThroughLambdaInvokers() throws Exception {
+    DefaultReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+    reflectorFactory.setLambdaInvokerEnabled(true);
+    Reflector reflector = reflectorFactory.findForClass(Section.class);
+    assertTrue(reflector.getGetInvoker("id") instanceof LambdaMethodInvoker);
+    assertTrue(reflector.getSetInvoker("id") instanceof LambdaMethodInvoker);
+    Section section = new Section();
+    reflector.getSetInvoker("id").invoke(section, new Object[] { 1L });
+    assertEquals(1L, reflector.getGetInvoker("id").invoke(section, null));
+  }
+
+  @Test
+  public void shouldBoxAndUnboxPrimitivesInLambdaInvokers() throws Exception {
+    DefaultReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+    reflectorFactory.setLambdaInvokerEnabled(true);
+    Reflector reflector = reflectorFactory.findForClass(PrimitiveBean.class);
+    PrimitiveBean bean = new PrimitiveBean();
+    reflector.getSetInvoker("count").invoke(bean, new Object[] { 3 });
+    assertEquals(3, bean.getCount());
+    assertEquals(3, reflector.getGetInvoker("count").invoke(bean, null));
+    assertEquals(int.class, reflector.getSetInvoker("count").getType());
+  }
+
+  @Test
+  public void shouldWrapExceptionsThrownByLambdaInvokers() throws Exception {
+    DefaultReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+    reflectorFactory.setLambdaInvokerEnabled(true);
+    Reflector reflector = reflectorFactory.findForClass(PrimitiveBean.class);
+    try {
+      reflector.getSetInvoker("failing").invoke(new PrimitiveBean(), new Object[] { "x" });
+      fail();
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getTargetException() instanceof IllegalStateException);
+    }
+  }
+
+  static class PrimitiveBean {
+    private int count;
+
+    public int getCount() {
+      return count;
+    }
+
+    public void setCount(int count) {
+      this.count = count;
+    }
+
+    public void setFailing(String value) {
+      throw new IllegalStateException(value);
+    }
+  }
 }
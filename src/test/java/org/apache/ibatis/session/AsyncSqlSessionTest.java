@@ -0,0 +1,188 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.defaults.DefaultAsyncSqlSession;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class AsyncSqlSessionTest extends BaseDataTest {
+
+  private static final String SELECT_AUTHOR = "org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAuthor";
+  private static final String UPDATE_AUTHOR = "org.apache.ibatis.domain.blog.mappers.AuthorMapper.updateAuthor";
+
+  private static SqlSessionFactory sqlMapper;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    createBlogDataSource();
+    final String resource = "org/apache/ibatis/builder/MapperConfig.xml";
+    final Reader reader = Resources.getResourceAsReader(resource);
+    sqlMapper = new SqlSessionFactoryBuilder().build(reader);
+    sqlMapper.getConfiguration().addMapper(AsyncAuthorMapper.class);
+  }
+
+  @Test
+  public void shouldSelectAsynchronously() {
+    try (AsyncSqlSession session = sqlMapper.openAsyncSession()) {
+      Author author = session.<Author>selectOneAsync(SELECT_AUTHOR, 101).join();
+      assertEquals(101, author.getId());
+      List<Author> authors = session.<Author>selectListAsync("org.apache.ibatis.domain.blog.mappers.AuthorMapper.selectAllAuthors").join();
+      assertEquals(2, authors.size());
+    }
+  }
+
+  @Test
+  public void shouldOpenAsyncSessionFromFactoryImplementingOnlyOpenSession() {
+    // e.g. a third-party wrapper written before openAsyncSession existed
+    SqlSessionFactory wrapper = new SqlSessionFactory() {
+      @Override
+      public SqlSession openSession() {
+        return sqlMapper.openSession();
+      }
+
+      @Override
+      public SqlSession openSession(boolean autoCommit) {
+        return sqlMapper.openSession(autoCommit);
+      }
+
+      @Override
+      public SqlSession openSession(Connection connection) {
+        return sqlMapper.openSession(connection);
+      }
+
+      @Override
+      public SqlSession openSession(TransactionIsolationLevel level) {
+        return sqlMapper.openSession(level);
+      }
+
+      @Override
+      public SqlSession openSession(ExecutorType execType) {
+        return sqlMapper.openSession(execType);
+      }
+
+      @Override
+      public SqlSession openSession(ExecutorType execType, boolean autoCommit) {
+        return sqlMapper.openSession(execType, autoCommit);
+      }
+
+      @Override
+      public SqlSession openSession(ExecutorType execType, TransactionIsolationLevel level) {
+        return sqlMapper.openSession(execType, level);
+      }
+
+      @Override
+      public SqlSession openSession(ExecutorType execType, Connection connection) {
+        return sqlMapper.openSession(execType, connection);
+      }
+
+      @Override
+      public Configuration getConfiguration() {
+        return sqlMapper.getConfiguration();
+      }
+    };
+    try (AsyncSqlSession session = wrapper.openAsyncSession()) {
+      Author author = session.<Author>selectOneAsync(SELECT_AUTHOR, 101).join();
+      assertEquals(101, author.getId());
+    }
+  }
+
+  @Test
+  public void shouldExecuteOperationsInSubmissionOrder() {
+    try (AsyncSqlSession session = sqlMapper.openAsyncSession()) {
+      Author original = session.<Author>selectOneAsync(SELECT_AUTHOR, 101).join();
+      original.setEmail("async@email.com");
+      // 不等待前一个操作完成， 后续操作仍然能看到前面的修改
+      CompletableFuture<Integer> updates = session.updateAsync(UPDATE_AUTHOR, original);
+      CompletableFuture<Author> updated = session.selectOneAsync(SELECT_AUTHOR, 101);
+      CompletableFuture<Void> rollback = session.rollbackAsync();
+      CompletableFuture<Author> rolledBack = session.selectOneAsync(SELECT_AUTHOR, 101);
+      assertEquals(1, updates.join().intValue());
+      assertEquals("async@email.com", updated.join().getEmail());
+      rollback.join();
+      assertEquals("jim@ibatis.apache.org", rolledBack.join().getEmail());
+    }
+  }
+
+  @Test
+  public void shouldRunOnConfiguredExecutor() {
+    ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "async-test"));
+    try (AsyncSqlSession session = new DefaultAsyncSqlSession(sqlMapper.openSession(), executor)) {
+      String threadName = session.executeAsync(s -> Thread.currentThread().getName()).join();
+      assertEquals("async-test", threadName);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldCompleteExceptionallyOnFailure() {
+    try (AsyncSqlSession session = sqlMapper.openAsyncSession()) {
+      try {
+        session.selectOneAsync("org.apache.ibatis.domain.blog.mappers.AuthorMapper.unknownStatement").join();
+        fail("Exception expected.");
+      } catch (CompletionException e) {
+        assertTrue(e.getCause() instanceof PersistenceException);
+      }
+      // 失败之后会话仍然可以继续使用
+      assertEquals(101, session.<Author>selectOne(SELECT_AUTHOR, 101).getId());
+    }
+  }
+
+  @Test
+  public void shouldInvokeFutureReturningMapperMethodsOnTheSessionLane() {
+    try (AsyncSqlSession session = sqlMapper.openAsyncSession()) {
+      AsyncAuthorMapper mapper = session.getMapper(AsyncAuthorMapper.class);
+      CompletableFuture<Integer> updates = mapper.updateEmail(101, "mapper@email.com");
+      CompletableFuture<Author> updated = mapper.selectAuthor(101);
+      assertEquals(1, updates.join().intValue());
+      assertEquals("mapper@email.com", updated.join().getEmail());
+      assertNull(mapper.updateEmailIgnoringCount(101, "void@email.com").join());
+      // 同步方法排在之前提交的异步操作之后执行
+      assertEquals("void@email.com", mapper.selectAuthorSync(101).getEmail());
+      assertEquals(2, mapper.selectAllAuthors().join().size());
+      session.rollback(true);
+    }
+  }
+
+  @Test
+  public void shouldReturnCompletedFutureFromSynchronousSession() {
+    try (SqlSession session = sqlMapper.openSession()) {
+      AsyncAuthorMapper mapper = session.getMapper(AsyncAuthorMapper.class);
+      CompletableFuture<Author> author = mapper.selectAuthor(101);
+      assertTrue(author.isDone());
+      assertEquals("jim", author.join().getUsername());
+    }
+  }
+
+}
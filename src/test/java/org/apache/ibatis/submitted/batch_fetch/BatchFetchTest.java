@@ -0,0 +1,180 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.annotations.Many;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.FetchType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BatchFetchTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    // create a SqlSessionFactory
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_fetch/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    // populate in-memory database
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+            "org/apache/ibatis/submitted/batch_fetch/CreateDB.sql");
+  }
+
+  @Before
+  public void resetCounter() {
+    StatementCounter.COUNT.set(0);
+  }
+
+  @Test
+  public void shouldLoadNestedSelectsInBatches() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Order> orders = mapper.getOrders();
+      // 1 for orders, 1 for the customers of all orders, 2 for the line items in batches of 2 orders
+      Assert.assertEquals(4, StatementCounter.COUNT.get());
+      assertOrders(orders);
+      Assert.assertEquals("John", orders.get(0).getCustomer().getName());
+      Assert.assertEquals("Jane", orders.get(1).getCustomer().getName());
+      Assert.assertSame(orders.get(0).getCustomer(), orders.get(2).getCustomer());
+    }
+  }
+
+  @Test
+  public void shouldLoadNestedSelectsInBatchesWithAnnotations() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Order> orders = mapper.getOrdersWithAnnotations();
+      Assert.assertEquals(2, StatementCounter.COUNT.get());
+      assertOrders(orders);
+    }
+  }
+
+  @Test
+  public void shouldLoadLazyPropertiesOfSiblingsTogether() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Order> orders = mapper.getOrdersLazily();
+      Assert.assertEquals(1, StatementCounter.COUNT.get());
+      // loads the line items of orders 1 and 2
+      Assert.assertEquals(2, orders.get(0).getLineItems().size());
+      Assert.assertEquals(2, StatementCounter.COUNT.get());
+      Assert.assertEquals(1, orders.get(1).getLineItems().size());
+      Assert.assertEquals(2, StatementCounter.COUNT.get());
+      Assert.assertTrue(orders.get(2).getLineItems().isEmpty());
+      Assert.assertEquals(3, StatementCounter.COUNT.get());
+      // loads the customers of all orders
+      Assert.assertEquals("Jane", orders.get(1).getCustomer().getName());
+      Assert.assertEquals("John", orders.get(0).getCustomer().getName());
+      Assert.assertEquals("John", orders.get(2).getCustomer().getName());
+      Assert.assertEquals(4, StatementCounter.COUNT.get());
+      assertOrders(orders);
+    }
+  }
+
+  @Test
+  public void shouldDeferCyclicBatchesUntilTheRunningQueryCompletes() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Customer> customers = mapper.getCustomersWithOrdersByIds(Arrays.asList(1, 2));
+      // 1 for the customers, 1 for their orders; the customers of those orders are the ones still being loaded
+      Assert.assertEquals(2, StatementCounter.COUNT.get());
+      Assert.assertEquals(2, customers.size());
+      Customer john = customers.get(0);
+      Customer jane = customers.get(1);
+      Assert.assertEquals(2, john.getOrders().size());
+      Assert.assertEquals(1, jane.getOrders().size());
+      Assert.assertSame(john, john.getOrders().get(0).getCustomer());
+      Assert.assertSame(john, john.getOrders().get(1).getCustomer());
+      Assert.assertSame(jane, jane.getOrders().get(0).getCustomer());
+    }
+  }
+
+  @Test
+  public void shouldRejectNonPositiveBatchSizeInXml() throws Exception {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"
+        + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">"
+        + "<mapper namespace=\"org.apache.ibatis.submitted.batch_fetch.InvalidMapper\">"
+        + "<resultMap id=\"OrderMap\" type=\"org.apache.ibatis.submitted.batch_fetch.Order\">"
+        + "<collection property=\"lineItems\" column=\"id\" select=\"org.apache.ibatis.submitted.batch_fetch.Mapper.getLineItemsByOrderIds\""
+        + " fetchType=\"batch\" batchSize=\"0\" batchKeyProperty=\"orderId\" />"
+        + "</resultMap>"
+        + "</mapper>";
+    Configuration configuration = new Configuration();
+    try (InputStream inputStream = new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))) {
+      new XMLMapperBuilder(inputStream, configuration, "InvalidMapper.xml", configuration.getSqlFragments()).parse();
+      Assert.fail("Should have rejected batchSize 0");
+    } catch (BuilderException e) {
+      Assert.assertTrue(e.getMessage().contains("The batchSize of property 'lineItems' must be greater than 0"));
+    }
+  }
+
+  @Test
+  public void shouldRejectNonPositiveBatchSizeInAnnotations() {
+    Configuration configuration = new Configuration();
+    try {
+      configuration.addMapper(InvalidBatchSizeMapper.class);
+      Assert.fail("Should have rejected batchSize 0");
+    } catch (BuilderException e) {
+      Assert.assertTrue(e.getMessage().contains("The batchSize of property 'lineItems' must be greater than 0"));
+    }
+  }
+
+  public interface InvalidBatchSizeMapper {
+    @Select("select * from orders")
+    @Results({
+        @Result(property = "lineItems", column = "id",
+            many = @Many(select = "getLineItemsByOrderIds", fetchType = FetchType.BATCH, batchSize = 0, batchKeyProperty = "orderId"))
+    })
+    List<Order> getOrders();
+
+    @Select("select * from line_items where order_id = #{id}")
+    List<LineItem> getLineItemsByOrderIds(int id);
+  }
+
+  private void assertOrders(List<Order> orders) {
+    Assert.assertEquals(3, orders.size());
+    Assert.assertEquals(2, orders.get(0).getLineItems().size());
+    Assert.assertEquals("pen", orders.get(0).getLineItems().get(0).getName());
+    Assert.assertEquals("ink", orders.get(0).getLineItems().get(1).getName());
+    Assert.assertEquals(1, orders.get(1).getLineItems().size());
+    Assert.assertEquals("paper", orders.get(1).getLineItems().get(0).getName());
+    Assert.assertTrue(orders.get(2).getLineItems().isEmpty());
+  }
+
+}
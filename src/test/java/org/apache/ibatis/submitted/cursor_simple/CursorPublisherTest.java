@@ -0,0 +1,172 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cursor_simple;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.cursor.reactivestreams.CursorPublisher;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+public class CursorPublisherTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    // create a SqlSessionFactory
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cursor_simple/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    // populate in-memory database
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/cursor_simple/CreateDB.sql");
+  }
+
+  @Test
+  public void shouldEmitOnlyRequestedUsers() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsersWithFetchSize");
+      RecordingSubscriber subscriber = new RecordingSubscriber(0);
+      new CursorPublisher<>(usersCursor).subscribe(subscriber);
+
+      Assert.assertFalse(usersCursor.isOpen());
+
+      subscriber.subscription.request(2);
+      Assert.assertEquals(2, subscriber.names.size());
+      Assert.assertTrue(usersCursor.isOpen());
+      Assert.assertFalse(subscriber.completed);
+
+      subscriber.subscription.request(10);
+      Assert.assertEquals(5, subscriber.names.size());
+      Assert.assertEquals("User5", subscriber.names.get(4));
+      Assert.assertTrue(subscriber.completed);
+      Assert.assertTrue(usersCursor.isConsumed());
+    }
+  }
+
+  @Test
+  public void shouldRequestFromOnNext() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsers");
+      RecordingSubscriber subscriber = new RecordingSubscriber(1) {
+        @Override
+        public void onNext(User user) {
+          super.onNext(user);
+          subscription.request(1);
+        }
+      };
+      new CursorPublisher<>(usersCursor).subscribe(subscriber);
+
+      Assert.assertEquals(5, subscriber.names.size());
+      Assert.assertTrue(subscriber.completed);
+    }
+  }
+
+  @Test
+  public void shouldCompleteWhenRowBoundIsReached() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsers", null, new RowBounds(1, 2));
+      RecordingSubscriber subscriber = new RecordingSubscriber(2);
+      new CursorPublisher<>(usersCursor).subscribe(subscriber);
+
+      Assert.assertEquals(2, subscriber.names.size());
+      Assert.assertEquals("User2", subscriber.names.get(0));
+      Assert.assertTrue(subscriber.completed);
+    }
+  }
+
+  @Test
+  public void shouldCloseCursorOnCancel() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsers");
+      RecordingSubscriber subscriber = new RecordingSubscriber(2);
+      new CursorPublisher<>(usersCursor).subscribe(subscriber);
+
+      subscriber.subscription.cancel();
+      subscriber.subscription.request(10);
+
+      Assert.assertEquals(2, subscriber.names.size());
+      Assert.assertFalse(usersCursor.isOpen());
+      Assert.assertFalse(subscriber.completed);
+    }
+  }
+
+  @Test
+  public void shouldRejectSecondSubscriberAndNonPositiveRequest() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      CursorPublisher<User> publisher = new CursorPublisher<>(sqlSession.<User>selectCursor("getAllUsers"));
+      RecordingSubscriber first = new RecordingSubscriber(0);
+      RecordingSubscriber second = new RecordingSubscriber(0);
+      publisher.subscribe(first);
+      publisher.subscribe(second);
+      Assert.assertTrue(second.error instanceof IllegalStateException);
+
+      first.subscription.request(0);
+      Assert.assertTrue(first.error instanceof IllegalArgumentException);
+    }
+  }
+
+  private static class RecordingSubscriber implements Subscriber<User> {
+
+    private final long initialRequest;
+    final List<String> names = new ArrayList<>();
+    Subscription subscription;
+    boolean completed;
+    Throwable error;
+
+    RecordingSubscriber(long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      if (initialRequest > 0) {
+        subscription.request(initialRequest);
+      }
+    }
+
+    @Override
+    public void onNext(User user) {
+      names.add(user.getName());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      this.error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      this.completed = true;
+    }
+  }
+
+}
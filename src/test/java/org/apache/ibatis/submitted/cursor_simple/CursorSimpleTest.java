@@ -157,6 +157,56 @@ public class CursorSimpleTest {
     }
   }
 
+  @Test
+  public void shouldFetchInBatchesOfFetchSize() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsersWithFetchSize");
+      Iterator<User> iterator = usersCursor.iterator();
+
+      List<String> names = new ArrayList<>();
+      while (iterator.hasNext()) {
+        Assert.assertFalse(usersCursor.isConsumed());
+        names.add(iterator.next().getName());
+      }
+      Assert.assertEquals(5, names.size());
+      Assert.assertEquals("User1", names.get(0));
+      Assert.assertEquals("User5", names.get(4));
+      Assert.assertEquals(4, usersCursor.getCurrentIndex());
+      Assert.assertFalse(usersCursor.isOpen());
+      Assert.assertTrue(usersCursor.isConsumed());
+    }
+  }
+
+  @Test
+  public void shouldFetchInBatchesWithRowBound() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsersWithFetchSize", null, new RowBounds(1, 3));
+      Iterator<User> iterator = usersCursor.iterator();
+
+      Assert.assertEquals("User2", iterator.next().getName());
+      Assert.assertEquals("User3", iterator.next().getName());
+      Assert.assertEquals("User4", iterator.next().getName());
+      Assert.assertEquals(3, usersCursor.getCurrentIndex());
+
+      Assert.assertFalse(iterator.hasNext());
+      Assert.assertTrue(usersCursor.isConsumed());
+    }
+  }
+
+  @Test
+  public void shouldDiscardFetchedBatchOnClose() throws IOException {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Cursor<User> usersCursor = sqlSession.selectCursor("getAllUsersWithFetchSize");
+      Iterator<User> iterator = usersCursor.iterator();
+
+      Assert.assertEquals("User1", iterator.next().getName());
+      usersCursor.close();
+
+      Assert.assertFalse(iterator.hasNext());
+      Assert.assertFalse(usersCursor.isConsumed());
+    }
+  }
+
   @Test
   public void testCursorIteratorNoSuchElementExceptionWithHasNext() throws IOException {
 
@@ -0,0 +1,90 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.table_cache_invalidation;
+
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TableCacheInvalidationTest {
+
+  private static final String GET_AUTHOR = "org.apache.ibatis.submitted.table_cache_invalidation.AuthorMapper.getAuthor";
+  private static final String UPDATE_POST_TITLE = "org.apache.ibatis.submitted.table_cache_invalidation.PostMapper.updatePostTitle";
+  private static final String INSERT_TAG = "org.apache.ibatis.submitted.table_cache_invalidation.PostMapper.insertTag";
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    // create a SqlSessionFactory
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/table_cache_invalidation/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    // populate in-memory database
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+            "org/apache/ibatis/submitted/table_cache_invalidation/CreateDB.sql");
+  }
+
+  @Test
+  public void shouldEvictParentWhenNestedSelectTableIsWritten() {
+    Author cached = selectAuthor();
+    Assert.assertEquals("first", cached.getPosts().get(0).getTitle());
+
+    write(UPDATE_POST_TITLE, 1, "title", "changed");
+
+    Author author = selectAuthor();
+    Assert.assertNotSame(cached, author);
+    Assert.assertEquals("changed", author.getPosts().get(0).getTitle());
+  }
+
+  @Test
+  public void shouldKeepParentWhenUnrelatedTableIsWritten() {
+    Author cached = selectAuthor();
+
+    write(INSERT_TAG, 1, "name", "java");
+
+    Assert.assertSame(cached, selectAuthor());
+  }
+
+  private Author selectAuthor() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Author author = sqlSession.selectOne(GET_AUTHOR, 1);
+      sqlSession.commit();
+      return author;
+    }
+  }
+
+  private void write(String statement, int id, String property, String value) {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Map<String, Object> parameter = new HashMap<>();
+      parameter.put("id", id);
+      parameter.put(property, value);
+      sqlSession.update(statement, parameter);
+      sqlSession.commit();
+    }
+  }
+
+}